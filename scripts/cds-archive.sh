@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+#
+# 生成AppCDS归档
+#
+# 解压可执行jar，用训练运行（Spring上下文刷新完成后立即退出）记录加载的类，
+# 生成 target/startup/app.jsa。之后以同样的类路径启动即可复用归档：
+#
+#   cd target/startup/app
+#   java -XX:SharedArchiveFile=../app.jsa -Dspring.aot.enabled=true -Dspring.profiles.active=fast \
+#        -cp "BOOT-INF/classes:BOOT-INF/lib/*" com.nyx.springAIDemo20250715.Main
+#
+# 用法：mvn -Pfast-startup package && scripts/cds-archive.sh
+# 未使用fast-startup构建时设置 AOT=false
+#
+# @author nyx
+# @version 1.0
+# @since 2025-07-15
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+AOT="${AOT:-true}"
+JAR="$(ls target/springAI-Demo20250715-*.jar | grep -v '\.original$' | head -n 1)"
+OUT="target/startup"
+
+rm -rf "$OUT/app" "$OUT/app.jsa"
+mkdir -p "$OUT/app"
+(cd "$OUT/app" && jar -xf "../../../$JAR")
+
+echo "训练运行，生成CDS归档..."
+(cd "$OUT/app" && java \
+    -XX:ArchiveClassesAtExit=../app.jsa \
+    -Dspring.context.exit=onRefresh \
+    -Dspring.aot.enabled="$AOT" \
+    -Dspring.profiles.active=fast \
+    -Dspring.ai.storage.data-dir="$(mktemp -d)" \
+    -cp "BOOT-INF/classes:BOOT-INF/lib/*" \
+    com.nyx.springAIDemo20250715.Main) || true
+
+if [ ! -f "$OUT/app.jsa" ]; then
+    echo "CDS归档生成失败" >&2
+    exit 1
+fi
+echo "CDS归档已生成: $OUT/app.jsa ($(du -h "$OUT/app.jsa" | cut -f1))"
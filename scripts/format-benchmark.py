@@ -0,0 +1,159 @@
+#!/usr/bin/env python3
+#
+# 输入格式对比基准
+#
+# 依次以 input-format=prompt 和 input-format=messages 启动应用，上游指向
+# scripts/mock-upstream.py，在同一会话中连续进行多轮对话（历史逐轮累积），记录每轮的：
+#   ttft     - 客户端从发出请求到收到第一条带内容的增量的耗时
+#   input    - 上游统计的输入token数
+#   cached   - 上游前缀缓存命中的token数
+#   bytes    - 请求体字节数
+#
+# 需要先执行 mvn package 生成可执行jar。
+#
+# 用法：scripts/format-benchmark.py [--turns 8] [--system-prompt "..."]
+#
+# @author nyx
+# @version 1.0
+# @since 2025-07-15
+
+import argparse
+import glob
+import json
+import os
+import subprocess
+import sys
+import tempfile
+import time
+import urllib.request
+
+ROOT = os.path.dirname(os.path.dirname(os.path.abspath(__file__)))
+
+QUESTIONS = [
+    "介绍一下Java虚拟机的垃圾回收机制。",
+    "G1和ZGC的主要区别是什么？",
+    "什么场景下应该选择ZGC？",
+    "如何观察GC停顿时间？",
+    "堆大小应该怎么设置？",
+    "容器环境下有什么需要注意的？",
+    "怎么判断是否发生了内存泄漏？",
+    "总结一下以上内容。",
+]
+
+
+def http_json(url, data=None):
+    """发送请求并解析JSON响应"""
+    body = None if data is None else json.dumps(data).encode("utf-8")
+    request = urllib.request.Request(url, data=body, method="POST" if body is not None else "GET",
+                                     headers={"Content-Type": "application/json"})
+    with urllib.request.urlopen(request, timeout=30) as response:
+        return json.loads(response.read())
+
+
+def wait_ready(url, timeout):
+    """等待接口可用"""
+    deadline = time.time() + timeout
+    while time.time() < deadline:
+        try:
+            urllib.request.urlopen(url, timeout=1).read()
+            return True
+        except OSError:
+            time.sleep(0.2)
+    return False
+
+
+def chat(port, session, message, history):
+    """发起一次流式对话，返回(首个增量耗时毫秒, 完整回复)"""
+    body = json.dumps({"message": message, "history": history}).encode("utf-8")
+    request = urllib.request.Request(
+        "http://127.0.0.1:%d/api/chat/stream?sessionIdParam=%s" % (port, session), data=body,
+        headers={"Content-Type": "application/json", "Accept": "text/event-stream"})
+    start = time.perf_counter()
+    ttft = None
+    reply = []
+    with urllib.request.urlopen(request, timeout=60) as response:
+        for line in response:
+            line = line.decode("utf-8").strip()
+            if not line.startswith("data:"):
+                continue
+            event = json.loads(line[5:])
+            if event.get("error"):
+                raise RuntimeError(event["error"])
+            content = event.get("content")
+            if content:
+                if ttft is None:
+                    ttft = (time.perf_counter() - start) * 1000
+                reply.append(content)
+            if event.get("finished"):
+                break
+    return ttft, "".join(reply)
+
+
+def run_format(jar, fmt, args):
+    """以指定输入格式启动应用并完成多轮对话，返回每轮结果"""
+    data_dir = tempfile.mkdtemp()
+    command = ["java", "-jar", jar,
+               "--server.port=%d" % args.app_port,
+               "--spring.ai.storage.data-dir=" + data_dir,
+               "--spring.ai.retrieval.enabled=false",
+               "--spring.ai.qwen.api.key=mock",
+               "--spring.ai.qwen.api.url=http://127.0.0.1:%d/generation" % args.mock_port,
+               "--spring.ai.qwen.api.input-format=" + fmt]
+    if args.system_prompt:
+        command.append("--spring.ai.qwen.api.system-prompt=" + args.system_prompt)
+    app = subprocess.Popen(command, stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    try:
+        if not wait_ready("http://127.0.0.1:%d/api/chat/health" % args.app_port, 60):
+            raise RuntimeError("应用启动超时")
+        http_json("http://127.0.0.1:%d/reset" % args.mock_port, {})
+        history = []
+        ttfts = []
+        for turn in range(args.turns):
+            message = QUESTIONS[turn % len(QUESTIONS)]
+            ttft, reply = chat(args.app_port, "bench-" + fmt, message, history)
+            ttfts.append(ttft)
+            history.append({"role": "user", "content": message})
+            history.append({"role": "assistant", "content": reply})
+        stats = http_json("http://127.0.0.1:%d/stats" % args.mock_port)
+        return [dict(stat, turn=i + 1, clientTtftMillis=ttfts[i]) for i, stat in enumerate(stats)]
+    finally:
+        app.terminate()
+        app.wait()
+
+
+def main():
+    parser = argparse.ArgumentParser(description="对比prompt和messages两种输入格式")
+    parser.add_argument("--turns", type=int, default=8)
+    parser.add_argument("--app-port", type=int, default=18999)
+    parser.add_argument("--mock-port", type=int, default=18080)
+    parser.add_argument("--system-prompt", default="")
+    args = parser.parse_args()
+
+    jars = [jar for jar in glob.glob(os.path.join(ROOT, "target", "springAI-Demo20250715-*.jar"))
+            if not jar.endswith(".original")]
+    if not jars:
+        sys.exit("未找到可执行jar，请先执行 mvn package")
+
+    mock = subprocess.Popen([sys.executable, os.path.join(ROOT, "scripts", "mock-upstream.py"),
+                             "--port", str(args.mock_port)], stdout=subprocess.DEVNULL)
+    try:
+        if not wait_ready("http://127.0.0.1:%d/stats" % args.mock_port, 10):
+            sys.exit("模拟上游启动失败")
+        results = {fmt: run_format(jars[0], fmt, args) for fmt in ("prompt", "messages")}
+    finally:
+        mock.terminate()
+        mock.wait()
+
+    print("%-9s %5s %9s %11s %7s %7s %7s" % ("format", "turn", "ttft", "mock-ttft", "input", "cached", "bytes"))
+    for fmt, rows in results.items():
+        for row in rows:
+            print("%-9s %5d %7.1fms %9.1fms %7d %7d %7d" % (
+                fmt, row["turn"], row["clientTtftMillis"] or -1, row["ttftMillis"],
+                row["inputTokens"], row["cachedTokens"], row["requestBytes"]))
+        total_input = sum(row["inputTokens"] for row in rows)
+        total_cached = sum(row["cachedTokens"] for row in rows)
+        print("%-9s %5s %9s %11s %7d %7d" % (fmt, "sum", "", "", total_input, total_cached))
+
+
+if __name__ == "__main__":
+    main()
\ No newline at end of file
@@ -0,0 +1,201 @@
+#!/usr/bin/env python3
+#
+# 模拟通义千问流式接口
+#
+# 接收与DashScope文本生成接口相同的请求体（input.prompt或input.messages），
+# 以SSE返回增量结果，output和usage字段与真实接口一致。用于在没有API密钥时
+# 对比两种输入格式的首个增量耗时和提示词token开销（见 scripts/format-benchmark.py）。
+#
+# 耗时模型：
+#   首个增量耗时 = base-ms + 未命中缓存的输入token数 * per-token-ms
+#   上游按输入token序列的前缀缓存，命中长度按block-tokens向下取整，最多保留cache-entries条
+#   两种格式使用同一套缓存规则，差异只来自请求本身的token数和前缀是否稳定
+#
+# token按字符粗略估算：CJK字符每字一个token，连续的ASCII字母数字每4个一个token，
+# 其余字符各一个token；messages格式每条消息另加角色标记。
+#
+# 除流式接口外提供：
+#   GET  /stats  返回每个请求的格式、输入token数、命中缓存的token数和首个增量耗时
+#   POST /reset  清空统计和缓存
+#
+# 用法：scripts/mock-upstream.py [--port 18080] [--base-ms 80] [--per-token-ms 0.4]
+#
+# @author nyx
+# @version 1.0
+# @since 2025-07-15
+
+import argparse
+import json
+import re
+import threading
+import time
+from collections import OrderedDict
+from http.server import BaseHTTPRequestHandler, ThreadingHTTPServer
+
+TOKEN_PATTERN = re.compile(r"[㐀-鿿豈-﫿]|[A-Za-z0-9]{1,4}|\S|\s+")
+
+REPLY = "这是模拟上游返回的回复内容，用于对比不同输入格式的首个增量耗时和提示词开销。"
+
+
+def tokenize(text):
+    """按字符粗略切分token"""
+    return TOKEN_PATTERN.findall(text)
+
+
+def input_tokens(body):
+    """把请求体的输入部分转换为token序列，返回(格式, token序列)"""
+    payload = body.get("input", {})
+    if "messages" in payload:
+        tokens = []
+        for message in payload["messages"]:
+            tokens.append("<|" + str(message.get("role")) + "|>")
+            tokens.extend(tokenize(str(message.get("content", ""))))
+            tokens.append("<|end|>")
+        return "messages", tokens
+    return "prompt", tokenize(str(payload.get("prompt", "")))
+
+
+class PrefixCache:
+    """按token序列前缀命中的LRU缓存"""
+
+    def __init__(self, block_tokens, max_entries):
+        self.block_tokens = block_tokens
+        self.max_entries = max_entries
+        self.entries = OrderedDict()
+        self.lock = threading.Lock()
+
+    def lookup_and_store(self, tokens):
+        """返回命中缓存的token数，并把本次序列存入缓存"""
+        key = tuple(tokens)
+        with self.lock:
+            best = 0
+            best_key = None
+            for cached in self.entries:
+                shared = 0
+                limit = min(len(cached), len(key))
+                while shared < limit and cached[shared] == key[shared]:
+                    shared += 1
+                if shared > best:
+                    best, best_key = shared, cached
+            if best_key is not None:
+                self.entries.move_to_end(best_key)
+            self.entries[key] = True
+            self.entries.move_to_end(key)
+            while len(self.entries) > self.max_entries:
+                self.entries.popitem(last=False)
+        return best // self.block_tokens * self.block_tokens
+
+    def clear(self):
+        with self.lock:
+            self.entries.clear()
+
+
+class Handler(BaseHTTPRequestHandler):
+    protocol_version = "HTTP/1.1"
+
+    def log_message(self, fmt, *args):
+        pass
+
+    def do_GET(self):
+        if self.path == "/stats":
+            with self.server.stats_lock:
+                self.send_json(200, list(self.server.stats))
+        else:
+            self.send_json(404, {"error": "not found"})
+
+    def do_POST(self):
+        length = int(self.headers.get("Content-Length", 0))
+        raw = self.rfile.read(length)
+        if self.path == "/reset":
+            with self.server.stats_lock:
+                self.server.stats.clear()
+            self.server.cache.clear()
+            self.send_json(200, {"reset": True})
+            return
+        try:
+            body = json.loads(raw)
+        except ValueError:
+            self.send_json(400, {"error": "invalid json"})
+            return
+
+        fmt, tokens = input_tokens(body)
+        cached = self.server.cache.lookup_and_store(tokens)
+        delay_ms = self.server.base_ms + (len(tokens) - cached) * self.server.per_token_ms
+        with self.server.stats_lock:
+            self.server.stats.append({
+                "format": fmt,
+                "requestBytes": len(raw),
+                "inputTokens": len(tokens),
+                "cachedTokens": cached,
+                "ttftMillis": round(delay_ms, 1),
+            })
+
+        self.send_response(200)
+        self.send_header("Content-Type", "text/event-stream")
+        self.send_header("Cache-Control", "no-cache")
+        self.send_header("Connection", "close")
+        self.end_headers()
+        time.sleep(delay_ms / 1000)
+
+        chunks = [REPLY[i:i + 8] for i in range(0, len(REPLY), 8)]
+        output_tokens = 0
+        for index, chunk in enumerate(chunks):
+            output_tokens += len(tokenize(chunk))
+            finished = index == len(chunks) - 1
+            reason = "stop" if finished else "null"
+            if fmt == "messages":
+                output = {"choices": [{"message": {"role": "assistant", "content": chunk}, "finish_reason": reason}]}
+            else:
+                output = {"text": chunk, "finish_reason": reason}
+            event = {
+                "output": output,
+                "usage": {
+                    "input_tokens": len(tokens),
+                    "output_tokens": output_tokens,
+                    "prompt_tokens_details": {"cached_tokens": cached},
+                },
+            }
+            data = "id:%d\nevent:result\ndata:%s\n\n" % (index + 1, json.dumps(event, ensure_ascii=False))
+            try:
+                self.wfile.write(data.encode("utf-8"))
+                self.wfile.flush()
+            except (BrokenPipeError, ConnectionResetError):
+                return
+            time.sleep(self.server.delta_ms / 1000)
+
+    def send_json(self, status, value):
+        data = json.dumps(value, ensure_ascii=False).encode("utf-8")
+        self.send_response(status)
+        self.send_header("Content-Type", "application/json")
+        self.send_header("Content-Length", str(len(data)))
+        self.end_headers()
+        self.wfile.write(data)
+
+
+def main():
+    parser = argparse.ArgumentParser(description="模拟通义千问流式接口")
+    parser.add_argument("--port", type=int, default=18080)
+    parser.add_argument("--base-ms", type=float, default=80, help="首个增量的固定耗时")
+    parser.add_argument("--per-token-ms", type=float, default=0.4, help="每个未命中缓存的输入token增加的耗时")
+    parser.add_argument("--delta-ms", type=float, default=10, help="相邻增量的间隔")
+    parser.add_argument("--block-tokens", type=int, default=64, help="缓存命中长度的取整粒度")
+    parser.add_argument("--cache-entries", type=int, default=256, help="缓存保留的请求数")
+    args = parser.parse_args()
+
+    server = ThreadingHTTPServer(("127.0.0.1", args.port), Handler)
+    server.daemon_threads = True
+    server.base_ms = args.base_ms
+    server.per_token_ms = args.per_token_ms
+    server.delta_ms = args.delta_ms
+    server.cache = PrefixCache(args.block_tokens, args.cache_entries)
+    server.stats = []
+    server.stats_lock = threading.Lock()
+    print("mock upstream listening on http://127.0.0.1:%d" % args.port, flush=True)
+    try:
+        server.serve_forever()
+    except KeyboardInterrupt:
+        pass
+
+
+if __name__ == "__main__":
+    main()
\ No newline at end of file
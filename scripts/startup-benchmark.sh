@@ -0,0 +1,118 @@
+#!/usr/bin/env bash
+#
+# 启动性能基准
+#
+# 对比不同启动方式从进程启动到第一次流式响应成功（收到第一条带内容的增量）的耗时，
+# 以及此时进程的常驻内存（RSS）：
+#   jar      - 普通可执行jar
+#   aot      - 解压后的类路径 + AOT + fast配置文件
+#   aot-cds  - 在aot基础上使用CDS归档（需先执行 scripts/cds-archive.sh）
+#   native   - GraalVM原生镜像 target/springAI-Demo20250715（需先执行 mvn -Pnative,fast-startup native:compile）
+#
+# 需要设置 QWEN_API_KEY，否则流式请求只会返回错误，不计为成功。
+#
+# 用法：scripts/startup-benchmark.sh [轮数] [方式...]
+# 示例：scripts/startup-benchmark.sh 5 jar aot aot-cds
+#
+# @author nyx
+# @version 1.0
+# @since 2025-07-15
+
+set -uo pipefail
+
+cd "$(dirname "$0")/.."
+
+ROUNDS="${1:-5}"
+shift || true
+if [ $# -gt 0 ]; then
+    MODES=("$@")
+else
+    MODES=(jar aot aot-cds)
+fi
+PORT="${PORT:-18999}"
+JAR="$(ls target/springAI-Demo20250715-*.jar 2>/dev/null | grep -v '\.original$' | head -n 1)"
+APP_DIR="target/startup/app"
+TIMEOUT_SECONDS=60
+
+# 当前时间（毫秒）
+now_millis() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# 以指定方式启动应用，输出进程号
+launch() {
+    local mode="$1"
+    local data_dir="$2"
+    local args=(--server.port="$PORT" --spring.ai.storage.data-dir="$data_dir")
+    case "$mode" in
+        jar)
+            java -jar "$JAR" "${args[@]}" >/dev/null 2>&1 &
+            ;;
+        aot)
+            (cd "$APP_DIR" && exec java -Dspring.aot.enabled=true -Dspring.profiles.active=fast \
+                -cp "BOOT-INF/classes:BOOT-INF/lib/*" com.nyx.springAIDemo20250715.Main "${args[@]}") >/dev/null 2>&1 &
+            ;;
+        aot-cds)
+            (cd "$APP_DIR" && exec java -XX:SharedArchiveFile=../app.jsa -Dspring.aot.enabled=true -Dspring.profiles.active=fast \
+                -cp "BOOT-INF/classes:BOOT-INF/lib/*" com.nyx.springAIDemo20250715.Main "${args[@]}") >/dev/null 2>&1 &
+            ;;
+        native)
+            target/springAI-Demo20250715 -Dspring.profiles.active=fast "${args[@]}" >/dev/null 2>&1 &
+            ;;
+        *)
+            echo "未知启动方式: $mode" >&2
+            return 1
+            ;;
+    esac
+    echo $!
+}
+
+# 发起一次流式请求，收到第一条带内容的增量即返回成功
+first_stream() {
+    curl -sN --max-time 30 -X POST "http://localhost:$PORT/api/chat/stream?sessionIdParam=bench" \
+        -H 'Content-Type: application/json' \
+        -d '{"message":"你好","history":[]}' 2>/dev/null | grep -q -m 1 '"content":"[^"]'
+}
+
+# 读取进程常驻内存（MB）
+rss_mb() {
+    awk '/VmRSS/ { printf "%.1f", $2 / 1024 }' "/proc/$1/status" 2>/dev/null
+}
+
+printf "%-8s %-6s %14s %10s\n" "mode" "round" "first-stream" "rss"
+for mode in "${MODES[@]}"; do
+    total=0
+    success=0
+    for round in $(seq 1 "$ROUNDS"); do
+        data_dir="$(mktemp -d)"
+        start=$(now_millis)
+        pid=$(launch "$mode" "$data_dir") || exit 1
+
+        elapsed=""
+        deadline=$(( start + TIMEOUT_SECONDS * 1000 ))
+        while [ "$(now_millis)" -lt "$deadline" ]; do
+            # 端口未就绪时curl立即失败，稍后重试
+            if curl -s -o /dev/null "http://localhost:$PORT/api/chat/health" && first_stream; then
+                elapsed=$(( $(now_millis) - start ))
+                break
+            fi
+            sleep 0.02
+        done
+
+        rss="$(rss_mb "$pid")"
+        kill "$pid" 2>/dev/null
+        wait "$pid" 2>/dev/null
+        rm -rf "$data_dir"
+
+        if [ -n "$elapsed" ]; then
+            printf "%-8s %-6s %12sms %8sMB\n" "$mode" "$round" "$elapsed" "$rss"
+            total=$(( total + elapsed ))
+            success=$(( success + 1 ))
+        else
+            printf "%-8s %-6s %14s %8sMB\n" "$mode" "$round" "timeout" "$rss"
+        fi
+    done
+    if [ "$success" -gt 0 ]; then
+        printf "%-8s %-6s %12sms\n" "$mode" "avg" "$(( total / success ))"
+    fi
+done
@@ -0,0 +1,106 @@
+package com.nyx.springAIDemo20250715.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceTransformerChain;
+import org.springframework.web.servlet.resource.ResourceTransformerSupport;
+import org.springframework.web.servlet.resource.TransformedResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTML链接资源转换器
+ * 
+ * 将HTML页面中引用的本地脚本和样式表（src/href属性）改写为带内容指纹的URL，
+ * 例如将app.js改写为app-&lt;md5&gt;.js，使页面总能引用到最新版本的静态资源，
+ * 而资源本身可以被浏览器长期缓存。
+ * 
+ * 外部链接（http/https、协议相对地址、data:、锚点）保持不变。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class HtmlLinkResourceTransformer extends ResourceTransformerSupport {
+    
+    /** 匹配src和href属性的正则表达式 */
+    private static final Pattern LINK_PATTERN = Pattern.compile("\\b(src|href)=\"([^\"]+)\"");
+    
+    /**
+     * 转换HTML资源
+     * 
+     * @param request 当前请求
+     * @param resource 待转换的资源
+     * @param transformerChain 转换器链
+     * @return 转换后的资源，非HTML资源原样返回
+     * @throws IOException 读取资源失败时抛出
+     */
+    @Override
+    public Resource transform(HttpServletRequest request, Resource resource,
+                              ResourceTransformerChain transformerChain) throws IOException {
+        resource = transformerChain.transform(request, resource);
+        
+        String filename = resource.getFilename();
+        if (filename == null || !filename.endsWith(".html") || isEncoded(resource)) {
+            return resource;
+        }
+        
+        String content;
+        try (InputStream inputStream = resource.getInputStream()) {
+            content = StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
+        }
+        
+        Matcher matcher = LINK_PATTERN.matcher(content);
+        StringBuilder result = new StringBuilder(content.length());
+        boolean changed = false;
+        while (matcher.find()) {
+            String link = matcher.group(2);
+            String resolved = isLocal(link) ? resolveUrlPath(link, request, resource, transformerChain) : null;
+            String replacement = matcher.group(0);
+            if (resolved != null && !resolved.equals(link)) {
+                replacement = matcher.group(1) + "=\"" + resolved + "\"";
+                changed = true;
+            }
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
+        }
+        matcher.appendTail(result);
+        
+        if (!changed) {
+            return resource;
+        }
+        return new TransformedResource(resource, result.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * 判断链接是否指向本站静态资源
+     * 
+     * @param link 链接地址
+     * @return 本地资源返回true，否则返回false
+     */
+    private boolean isLocal(String link) {
+        return !link.isEmpty()
+                && !link.startsWith("#")
+                && !link.startsWith("//")
+                && !link.contains(":");
+    }
+    
+    /**
+     * 判断资源是否为预压缩版本
+     * 
+     * 预压缩资源的内容是二进制压缩数据，不能按文本改写
+     * 
+     * @param resource 资源
+     * @return 带有Content-Encoding的资源返回true
+     */
+    private boolean isEncoded(Resource resource) {
+        return resource instanceof HttpResource httpResource
+                && httpResource.getResponseHeaders().containsKey(HttpHeaders.CONTENT_ENCODING);
+    }
+}
\ No newline at end of file
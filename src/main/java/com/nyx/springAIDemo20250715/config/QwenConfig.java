@@ -3,6 +3,8 @@ package com.nyx.springAIDemo20250715.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+
 /**
  * 通义千问AI配置类
  * 
@@ -22,6 +24,24 @@ public class QwenConfig {
     /** API配置信息 */
     private Api api = new Api();
     
+    /** 超时配置信息 */
+    private Timeout timeout = new Timeout();
+    
+    /** 慢客户端背压配置信息 */
+    private Backpressure backpressure = new Backpressure();
+    
+    /** 上游并发调度配置信息 */
+    private Scheduler scheduler = new Scheduler();
+    
+    /** Token用量统计配置信息 */
+    private Usage usage = new Usage();
+    
+    /** 多模型对比配置信息 */
+    private Compare compare = new Compare();
+    
+    /** 就绪检查配置信息 */
+    private Readiness readiness = new Readiness();
+    
     /**
      * 获取API配置
      * 
@@ -40,6 +60,114 @@ public class QwenConfig {
         this.api = api;
     }
     
+    /**
+     * 获取超时配置
+     * 
+     * @return 超时配置对象
+     */
+    public Timeout getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * 设置超时配置
+     * 
+     * @param timeout 超时配置对象
+     */
+    public void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+    
+    /**
+     * 获取慢客户端背压配置
+     * 
+     * @return 慢客户端背压配置对象
+     */
+    public Backpressure getBackpressure() {
+        return backpressure;
+    }
+    
+    /**
+     * 设置慢客户端背压配置
+     * 
+     * @param backpressure 慢客户端背压配置对象
+     */
+    public void setBackpressure(Backpressure backpressure) {
+        this.backpressure = backpressure;
+    }
+    
+    /**
+     * 获取上游并发调度配置
+     * 
+     * @return 上游并发调度配置对象
+     */
+    public Scheduler getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * 设置上游并发调度配置
+     * 
+     * @param scheduler 上游并发调度配置对象
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+    
+    /**
+     * 获取Token用量统计配置
+     * 
+     * @return Token用量统计配置对象
+     */
+    public Usage getUsage() {
+        return usage;
+    }
+    
+    /**
+     * 设置Token用量统计配置
+     * 
+     * @param usage Token用量统计配置对象
+     */
+    public void setUsage(Usage usage) {
+        this.usage = usage;
+    }
+    
+    /**
+     * 获取多模型对比配置
+     * 
+     * @return 多模型对比配置对象
+     */
+    public Compare getCompare() {
+        return compare;
+    }
+    
+    /**
+     * 设置多模型对比配置
+     * 
+     * @param compare 多模型对比配置对象
+     */
+    public void setCompare(Compare compare) {
+        this.compare = compare;
+    }
+    
+    /**
+     * 获取就绪检查配置
+     * 
+     * @return 就绪检查配置对象
+     */
+    public Readiness getReadiness() {
+        return readiness;
+    }
+    
+    /**
+     * 设置就绪检查配置
+     * 
+     * @param readiness 就绪检查配置对象
+     */
+    public void setReadiness(Readiness readiness) {
+        this.readiness = readiness;
+    }
+    
     /**
      * API配置内部类
      * 
@@ -64,6 +192,18 @@ public class QwenConfig {
         /** 是否启用流式输出，默认为true */
         private Boolean stream = true;
         
+        /**
+         * 请求输入格式，默认为prompt
+         * 
+         * - prompt：历史记录和当前消息拼接为单个input.prompt字符串
+         * - messages：以input.messages角色消息列表发送，历史部分在多轮对话间逐字节保持不变，
+         *   便于上游复用前缀缓存
+         */
+        private String inputFormat = "prompt";
+        
+        /** 系统提示词，messages格式下作为第一条system消息发送，为空时不发送 */
+        private String systemPrompt;
+        
         /**
          * 获取API密钥
          * 
@@ -171,5 +311,633 @@ public class QwenConfig {
         public void setStream(Boolean stream) {
             this.stream = stream;
         }
+        
+        /**
+         * 获取请求输入格式
+         * 
+         * @return 请求输入格式（prompt或messages）
+         */
+        public String getInputFormat() {
+            return inputFormat;
+        }
+        
+        /**
+         * 设置请求输入格式
+         * 
+         * @param inputFormat 请求输入格式（prompt或messages）
+         */
+        public void setInputFormat(String inputFormat) {
+            this.inputFormat = inputFormat;
+        }
+        
+        /**
+         * 获取系统提示词
+         * 
+         * @return 系统提示词
+         */
+        public String getSystemPrompt() {
+            return systemPrompt;
+        }
+        
+        /**
+         * 设置系统提示词
+         * 
+         * @param systemPrompt 系统提示词
+         */
+        public void setSystemPrompt(String systemPrompt) {
+            this.systemPrompt = systemPrompt;
+        }
+    }
+    
+    /**
+     * 超时配置内部类
+     * 
+     * 将流式请求的超时拆分为多个阶段，上游停滞时可以在数秒内释放连接和异步请求上下文
+     */
+    public static class Timeout {
+        /** 建立上游连接的超时时间（毫秒），默认为5秒 */
+        private Integer connectMillis = 5000;
+        
+        /** 从发出请求到收到首个增量的超时时间（毫秒），默认为30秒 */
+        private Long firstDeltaMillis = 30000L;
+        
+        /** 相邻两个增量之间的最大间隔（毫秒），默认为15秒 */
+        private Long idleMillis = 15000L;
+        
+        /** 单次生成的总时长上限（毫秒），默认为5分钟 */
+        private Long totalMillis = 300000L;
+        
+        /**
+         * 获取连接超时时间
+         * 
+         * @return 连接超时时间（毫秒）
+         */
+        public Integer getConnectMillis() {
+            return connectMillis;
+        }
+        
+        /**
+         * 设置连接超时时间
+         * 
+         * @param connectMillis 连接超时时间（毫秒）
+         */
+        public void setConnectMillis(Integer connectMillis) {
+            this.connectMillis = connectMillis;
+        }
+        
+        /**
+         * 获取首个增量超时时间
+         * 
+         * @return 首个增量超时时间（毫秒）
+         */
+        public Long getFirstDeltaMillis() {
+            return firstDeltaMillis;
+        }
+        
+        /**
+         * 设置首个增量超时时间
+         * 
+         * @param firstDeltaMillis 首个增量超时时间（毫秒）
+         */
+        public void setFirstDeltaMillis(Long firstDeltaMillis) {
+            this.firstDeltaMillis = firstDeltaMillis;
+        }
+        
+        /**
+         * 获取增量间隔超时时间
+         * 
+         * @return 增量间隔超时时间（毫秒）
+         */
+        public Long getIdleMillis() {
+            return idleMillis;
+        }
+        
+        /**
+         * 设置增量间隔超时时间
+         * 
+         * @param idleMillis 增量间隔超时时间（毫秒）
+         */
+        public void setIdleMillis(Long idleMillis) {
+            this.idleMillis = idleMillis;
+        }
+        
+        /**
+         * 获取生成总时长上限
+         * 
+         * @return 生成总时长上限（毫秒）
+         */
+        public Long getTotalMillis() {
+            return totalMillis;
+        }
+        
+        /**
+         * 设置生成总时长上限
+         * 
+         * @param totalMillis 生成总时长上限（毫秒）
+         */
+        public void setTotalMillis(Long totalMillis) {
+            this.totalMillis = totalMillis;
+        }
+    }
+    
+    /**
+     * 慢客户端背压配置内部类
+     * 
+     * 每个流式响应在服务端最多缓冲maxBufferedBytes字节尚未被客户端读取的内容，
+     * 超出后按policy处理：
+     * - coalesce：客户端未就绪期间把待发送的增量合并为一条，达到上限后暂停读取上游
+     * - pause：逐条缓冲，达到上限后暂停读取上游
+     * - drop：达到上限后暂停读取上游，持续dropAfterMillis仍未恢复则断开该客户端
+     */
+    public static class Backpressure {
+        /** 超出缓冲上限时的处理策略，默认为coalesce */
+        private String policy = "coalesce";
+        
+        /** 单个流的最大缓冲字节数，默认为64KB */
+        private Integer maxBufferedBytes = 64 * 1024;
+        
+        /** 每次向上游请求的增量条数，默认为16 */
+        private Integer prefetch = 16;
+        
+        /** drop策略下缓冲持续满载多久后断开客户端（毫秒），默认为10秒 */
+        private Long dropAfterMillis = 10000L;
+        
+        /**
+         * 获取处理策略
+         * 
+         * @return 处理策略（coalesce、pause或drop）
+         */
+        public String getPolicy() {
+            return policy;
+        }
+        
+        /**
+         * 设置处理策略
+         * 
+         * @param policy 处理策略（coalesce、pause或drop）
+         */
+        public void setPolicy(String policy) {
+            this.policy = policy;
+        }
+        
+        /**
+         * 获取最大缓冲字节数
+         * 
+         * @return 最大缓冲字节数
+         */
+        public Integer getMaxBufferedBytes() {
+            return maxBufferedBytes;
+        }
+        
+        /**
+         * 设置最大缓冲字节数
+         * 
+         * @param maxBufferedBytes 最大缓冲字节数
+         */
+        public void setMaxBufferedBytes(Integer maxBufferedBytes) {
+            this.maxBufferedBytes = maxBufferedBytes;
+        }
+        
+        /**
+         * 获取预取条数
+         * 
+         * @return 每次向上游请求的增量条数
+         */
+        public Integer getPrefetch() {
+            return prefetch;
+        }
+        
+        /**
+         * 设置预取条数
+         * 
+         * @param prefetch 每次向上游请求的增量条数
+         */
+        public void setPrefetch(Integer prefetch) {
+            this.prefetch = prefetch;
+        }
+        
+        /**
+         * 获取断开客户端前的等待时间
+         * 
+         * @return 等待时间（毫秒）
+         */
+        public Long getDropAfterMillis() {
+            return dropAfterMillis;
+        }
+        
+        /**
+         * 设置断开客户端前的等待时间
+         * 
+         * @param dropAfterMillis 等待时间（毫秒）
+         */
+        public void setDropAfterMillis(Long dropAfterMillis) {
+            this.dropAfterMillis = dropAfterMillis;
+        }
+    }
+    
+    /**
+     * 上游并发调度配置内部类
+     * 
+     * 限制同时进行的上游流式请求数，并在交互式和批量两个通道之间按权重分配
+     */
+    public static class Scheduler {
+        /** 同时进行的上游请求上限，默认为16 */
+        private Integer maxConcurrency = 16;
+        
+        /** 交互式通道权重，默认为4 */
+        private Integer interactiveWeight = 4;
+        
+        /** 批量通道权重，默认为1 */
+        private Integer bulkWeight = 1;
+        
+        /** 为交互式请求保留、批量请求不可占用的并发数，默认为4 */
+        private Integer interactiveReserved = 4;
+        
+        /** 每个通道的最大排队数，超出时直接拒绝，默认为256 */
+        private Integer maxQueued = 256;
+        
+        /** 排队等待名额的最长时间（毫秒），超时直接返回错误，0表示不限制，默认为30000 */
+        private Long maxQueueWaitMillis = 30000L;
+        
+        /**
+         * 获取并发上限
+         * 
+         * @return 并发上限
+         */
+        public Integer getMaxConcurrency() {
+            return maxConcurrency;
+        }
+        
+        /**
+         * 设置并发上限
+         * 
+         * @param maxConcurrency 并发上限
+         */
+        public void setMaxConcurrency(Integer maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+        
+        /**
+         * 获取交互式通道权重
+         * 
+         * @return 交互式通道权重
+         */
+        public Integer getInteractiveWeight() {
+            return interactiveWeight;
+        }
+        
+        /**
+         * 设置交互式通道权重
+         * 
+         * @param interactiveWeight 交互式通道权重
+         */
+        public void setInteractiveWeight(Integer interactiveWeight) {
+            this.interactiveWeight = interactiveWeight;
+        }
+        
+        /**
+         * 获取批量通道权重
+         * 
+         * @return 批量通道权重
+         */
+        public Integer getBulkWeight() {
+            return bulkWeight;
+        }
+        
+        /**
+         * 设置批量通道权重
+         * 
+         * @param bulkWeight 批量通道权重
+         */
+        public void setBulkWeight(Integer bulkWeight) {
+            this.bulkWeight = bulkWeight;
+        }
+        
+        /**
+         * 获取为交互式请求保留的并发数
+         * 
+         * @return 保留并发数
+         */
+        public Integer getInteractiveReserved() {
+            return interactiveReserved;
+        }
+        
+        /**
+         * 设置为交互式请求保留的并发数
+         * 
+         * @param interactiveReserved 保留并发数
+         */
+        public void setInteractiveReserved(Integer interactiveReserved) {
+            this.interactiveReserved = interactiveReserved;
+        }
+        
+        /**
+         * 获取每个通道的最大排队数
+         * 
+         * @return 最大排队数
+         */
+        public Integer getMaxQueued() {
+            return maxQueued;
+        }
+        
+        /**
+         * 设置每个通道的最大排队数
+         * 
+         * @param maxQueued 最大排队数
+         */
+        public void setMaxQueued(Integer maxQueued) {
+            this.maxQueued = maxQueued;
+        }
+        
+        /**
+         * 获取排队等待名额的最长时间
+         * 
+         * @return 最长等待时间（毫秒）
+         */
+        public Long getMaxQueueWaitMillis() {
+            return maxQueueWaitMillis;
+        }
+        
+        /**
+         * 设置排队等待名额的最长时间
+         * 
+         * @param maxQueueWaitMillis 最长等待时间（毫秒）
+         */
+        public void setMaxQueueWaitMillis(Long maxQueueWaitMillis) {
+            this.maxQueueWaitMillis = maxQueueWaitMillis;
+        }
+    }
+    
+    /**
+     * Token用量统计配置内部类
+     * 
+     * 控制用量快照的写入间隔和统计维度的数量上限
+     */
+    public static class Usage {
+        /** 用量快照写入本地文件的间隔（秒），0表示只在关闭时写入，默认为60 */
+        private Long snapshotIntervalSeconds = 60L;
+        
+        /** 模型、API密钥、客户端组合的数量上限，超出后新客户端计入other，默认为1000 */
+        private Integer maxKeys = 1000;
+        
+        /**
+         * 获取快照写入间隔
+         * 
+         * @return 快照写入间隔（秒）
+         */
+        public Long getSnapshotIntervalSeconds() {
+            return snapshotIntervalSeconds;
+        }
+        
+        /**
+         * 设置快照写入间隔
+         * 
+         * @param snapshotIntervalSeconds 快照写入间隔（秒）
+         */
+        public void setSnapshotIntervalSeconds(Long snapshotIntervalSeconds) {
+            this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        }
+        
+        /**
+         * 获取统计维度的数量上限
+         * 
+         * @return 数量上限
+         */
+        public Integer getMaxKeys() {
+            return maxKeys;
+        }
+        
+        /**
+         * 设置统计维度的数量上限
+         * 
+         * @param maxKeys 数量上限
+         */
+        public void setMaxKeys(Integer maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+    }
+    
+    /**
+     * 多模型对比配置内部类
+     * 
+     * 限制对比接口可以使用的模型和单次对比的模型数
+     */
+    public static class Compare {
+        /** 允许对比的模型，默认为qwen-turbo、qwen-plus和qwen-max */
+        private List<String> allowedModels = List.of("qwen-turbo", "qwen-plus", "qwen-max");
+        
+        /** 单次对比的最大模型数，默认为4 */
+        private Integer maxModels = 4;
+        
+        /**
+         * 获取允许对比的模型
+         * 
+         * @return 模型名称列表
+         */
+        public List<String> getAllowedModels() {
+            return allowedModels;
+        }
+        
+        /**
+         * 设置允许对比的模型
+         * 
+         * @param allowedModels 模型名称列表
+         */
+        public void setAllowedModels(List<String> allowedModels) {
+            this.allowedModels = allowedModels;
+        }
+        
+        /**
+         * 获取单次对比的最大模型数
+         * 
+         * @return 最大模型数
+         */
+        public Integer getMaxModels() {
+            return maxModels;
+        }
+        
+        /**
+         * 设置单次对比的最大模型数
+         * 
+         * @param maxModels 最大模型数
+         */
+        public void setMaxModels(Integer maxModels) {
+            this.maxModels = maxModels;
+        }
+    }
+    
+    /**
+     * 就绪检查配置内部类
+     * 
+     * 控制就绪检查的各项阈值，任一指标超过上限时节点报告未就绪
+     */
+    public static class Readiness {
+        /** 统计首个增量耗时和错误率的时间窗口（秒），默认为60 */
+        private Long windowSeconds = 60L;
+        
+        /** 执行中和排队的请求数占并发上限的比例上限，默认为0.9 */
+        private Double maxUtilization = 0.9;
+        
+        /** 上游连接池中等待获取连接的请求数上限，默认为8 */
+        private Integer maxPendingAcquires = 8;
+        
+        /** 首个增量耗时使用的分位数，默认为0.95 */
+        private Double ttftPercentile = 0.95;
+        
+        /** 首个增量耗时分位数的上限（毫秒），默认为5000 */
+        private Long maxTtftMillis = 5000L;
+        
+        /** 上游请求错误率上限，默认为0.2 */
+        private Double maxErrorRate = 0.2;
+        
+        /** 窗口内样本数不足时不按首个增量耗时和错误率判断，默认为20 */
+        private Integer minSamples = 20;
+        
+        /** 未就绪后各指标需降到上限乘以该比例才恢复就绪，避免在阈值附近反复切换，默认为0.8 */
+        private Double recoverRatio = 0.8;
+        
+        /**
+         * 获取统计窗口
+         * 
+         * @return 统计窗口（秒）
+         */
+        public Long getWindowSeconds() {
+            return windowSeconds;
+        }
+        
+        /**
+         * 设置统计窗口
+         * 
+         * @param windowSeconds 统计窗口（秒）
+         */
+        public void setWindowSeconds(Long windowSeconds) {
+            this.windowSeconds = windowSeconds;
+        }
+        
+        /**
+         * 获取并发占用比例上限
+         * 
+         * @return 比例上限
+         */
+        public Double getMaxUtilization() {
+            return maxUtilization;
+        }
+        
+        /**
+         * 设置并发占用比例上限
+         * 
+         * @param maxUtilization 比例上限
+         */
+        public void setMaxUtilization(Double maxUtilization) {
+            this.maxUtilization = maxUtilization;
+        }
+        
+        /**
+         * 获取等待连接数上限
+         * 
+         * @return 等待连接数上限
+         */
+        public Integer getMaxPendingAcquires() {
+            return maxPendingAcquires;
+        }
+        
+        /**
+         * 设置等待连接数上限
+         * 
+         * @param maxPendingAcquires 等待连接数上限
+         */
+        public void setMaxPendingAcquires(Integer maxPendingAcquires) {
+            this.maxPendingAcquires = maxPendingAcquires;
+        }
+        
+        /**
+         * 获取首个增量耗时分位数
+         * 
+         * @return 分位数（0到1之间）
+         */
+        public Double getTtftPercentile() {
+            return ttftPercentile;
+        }
+        
+        /**
+         * 设置首个增量耗时分位数
+         * 
+         * @param ttftPercentile 分位数（0到1之间）
+         */
+        public void setTtftPercentile(Double ttftPercentile) {
+            this.ttftPercentile = ttftPercentile;
+        }
+        
+        /**
+         * 获取首个增量耗时上限
+         * 
+         * @return 耗时上限（毫秒）
+         */
+        public Long getMaxTtftMillis() {
+            return maxTtftMillis;
+        }
+        
+        /**
+         * 设置首个增量耗时上限
+         * 
+         * @param maxTtftMillis 耗时上限（毫秒）
+         */
+        public void setMaxTtftMillis(Long maxTtftMillis) {
+            this.maxTtftMillis = maxTtftMillis;
+        }
+        
+        /**
+         * 获取错误率上限
+         * 
+         * @return 错误率上限
+         */
+        public Double getMaxErrorRate() {
+            return maxErrorRate;
+        }
+        
+        /**
+         * 设置错误率上限
+         * 
+         * @param maxErrorRate 错误率上限
+         */
+        public void setMaxErrorRate(Double maxErrorRate) {
+            this.maxErrorRate = maxErrorRate;
+        }
+        
+        /**
+         * 获取最少样本数
+         * 
+         * @return 最少样本数
+         */
+        public Integer getMinSamples() {
+            return minSamples;
+        }
+        
+        /**
+         * 设置最少样本数
+         * 
+         * @param minSamples 最少样本数
+         */
+        public void setMinSamples(Integer minSamples) {
+            this.minSamples = minSamples;
+        }
+        
+        /**
+         * 获取恢复比例
+         * 
+         * @return 恢复比例（0到1之间）
+         */
+        public Double getRecoverRatio() {
+            return recoverRatio;
+        }
+        
+        /**
+         * 设置恢复比例
+         * 
+         * @param recoverRatio 恢复比例（0到1之间）
+         */
+        public void setRecoverRatio(Double recoverRatio) {
+            this.recoverRatio = recoverRatio;
+        }
     }
 }
\ No newline at end of file
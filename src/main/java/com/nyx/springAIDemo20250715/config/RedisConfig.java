@@ -0,0 +1,23 @@
+package com.nyx.springAIDemo20250715.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Redis连接配置类
+ * 
+ * Redis相关的自动配置在application.yml中统一排除，默认的内存会话存储不会创建Redis连接工厂，
+ * 启动时也不加载Lettuce和Netty客户端相关的类。只有spring.ai.session.store为redis时
+ * 才在这里引入RedisAutoConfiguration，连接配置仍使用spring.data.redis下的标准配置。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(prefix = "spring.ai.session", name = "store", havingValue = "redis")
+@Import(RedisAutoConfiguration.class)
+public class RedisConfig {
+}
\ No newline at end of file
@@ -0,0 +1,430 @@
+package com.nyx.springAIDemo20250715.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * 检索增强配置类
+ * 
+ * 用于从application.yml配置文件中读取本地向量检索相关配置，
+ * 包括嵌入模型、HNSW索引参数、注入提示词的资料数量和token预算，以及文档导入参数。
+ * 索引文件保存在spring.ai.storage.data-dir下的retrieval目录。
+ * 
+ * 配置前缀：spring.ai.retrieval
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.ai.retrieval")
+public class RetrievalConfig {
+    
+    /** 是否在对话时检索资料并注入提示词，默认为true */
+    private Boolean enabled = true;
+    
+    /** 嵌入模型，默认为hashing（本地哈希嵌入，结果确定，不依赖外部服务） */
+    private String embedder = "hashing";
+    
+    /** 哈希嵌入的向量维度，默认为256 */
+    private Integer dimension = 256;
+    
+    /** HNSW上层每个节点的最大邻居数（第0层为2倍），默认为16 */
+    private Integer m = 16;
+    
+    /** 插入时的候选集大小，越大图质量越高、插入越慢，默认为128 */
+    private Integer efConstruction = 128;
+    
+    /** 查询时的候选集大小，越大召回率越高、查询越慢，默认为64 */
+    private Integer efSearch = 64;
+    
+    /** 每次对话最多注入的资料条数，默认为4 */
+    private Integer topK = 4;
+    
+    /** 注入资料的最低相似度，默认为0.1 */
+    private Double minScore = 0.1;
+    
+    /** 注入资料的token预算，默认为1500 */
+    private Integer contextTokens = 1500;
+    
+    /** 启动时已删除节点占向量索引的比例超过该值则从资料日志重建索引，0表示不重建，默认为0.3 */
+    private Double rebuildDeletedRatio = 0.3;
+    
+    /** 后台补入索引失败后的重试次数，用尽后放弃补入，默认为5 */
+    private Integer catchUpRetries = 5;
+    
+    /** 补入首次重试前的等待时间（毫秒），之后每次翻倍，默认为1000 */
+    private Long catchUpRetryMillis = 1000L;
+    
+    /** 文档导入配置信息 */
+    private Ingest ingest = new Ingest();
+    
+    /**
+     * 获取是否启用检索增强
+     * 
+     * @return 是否启用
+     */
+    public Boolean getEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * 设置是否启用检索增强
+     * 
+     * @param enabled 是否启用
+     */
+    public void setEnabled(Boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * 获取嵌入模型名称
+     * 
+     * @return 嵌入模型名称
+     */
+    public String getEmbedder() {
+        return embedder;
+    }
+    
+    /**
+     * 设置嵌入模型名称
+     * 
+     * @param embedder 嵌入模型名称
+     */
+    public void setEmbedder(String embedder) {
+        this.embedder = embedder;
+    }
+    
+    /**
+     * 获取哈希嵌入的向量维度
+     * 
+     * @return 向量维度
+     */
+    public Integer getDimension() {
+        return dimension;
+    }
+    
+    /**
+     * 设置哈希嵌入的向量维度
+     * 
+     * @param dimension 向量维度
+     */
+    public void setDimension(Integer dimension) {
+        this.dimension = dimension;
+    }
+    
+    /**
+     * 获取最大邻居数
+     * 
+     * @return 最大邻居数
+     */
+    public Integer getM() {
+        return m;
+    }
+    
+    /**
+     * 设置最大邻居数
+     * 
+     * @param m 最大邻居数
+     */
+    public void setM(Integer m) {
+        this.m = m;
+    }
+    
+    /**
+     * 获取插入时的候选集大小
+     * 
+     * @return 候选集大小
+     */
+    public Integer getEfConstruction() {
+        return efConstruction;
+    }
+    
+    /**
+     * 设置插入时的候选集大小
+     * 
+     * @param efConstruction 候选集大小
+     */
+    public void setEfConstruction(Integer efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+    
+    /**
+     * 获取查询时的候选集大小
+     * 
+     * @return 候选集大小
+     */
+    public Integer getEfSearch() {
+        return efSearch;
+    }
+    
+    /**
+     * 设置查询时的候选集大小
+     * 
+     * @param efSearch 候选集大小
+     */
+    public void setEfSearch(Integer efSearch) {
+        this.efSearch = efSearch;
+    }
+    
+    /**
+     * 获取最多注入的资料条数
+     * 
+     * @return 资料条数
+     */
+    public Integer getTopK() {
+        return topK;
+    }
+    
+    /**
+     * 设置最多注入的资料条数
+     * 
+     * @param topK 资料条数
+     */
+    public void setTopK(Integer topK) {
+        this.topK = topK;
+    }
+    
+    /**
+     * 获取注入资料的最低相似度
+     * 
+     * @return 最低相似度
+     */
+    public Double getMinScore() {
+        return minScore;
+    }
+    
+    /**
+     * 设置注入资料的最低相似度
+     * 
+     * @param minScore 最低相似度
+     */
+    public void setMinScore(Double minScore) {
+        this.minScore = minScore;
+    }
+    
+    /**
+     * 获取注入资料的token预算
+     * 
+     * @return token预算
+     */
+    public Integer getContextTokens() {
+        return contextTokens;
+    }
+    
+    /**
+     * 设置注入资料的token预算
+     * 
+     * @param contextTokens token预算
+     */
+    public void setContextTokens(Integer contextTokens) {
+        this.contextTokens = contextTokens;
+    }
+    
+    /**
+     * 获取触发索引重建的已删除节点比例
+     * 
+     * @return 已删除节点比例
+     */
+    public Double getRebuildDeletedRatio() {
+        return rebuildDeletedRatio;
+    }
+    
+    /**
+     * 设置触发索引重建的已删除节点比例
+     * 
+     * @param rebuildDeletedRatio 已删除节点比例
+     */
+    public void setRebuildDeletedRatio(Double rebuildDeletedRatio) {
+        this.rebuildDeletedRatio = rebuildDeletedRatio;
+    }
+    
+    /**
+     * 获取补入索引失败后的重试次数
+     * 
+     * @return 重试次数
+     */
+    public Integer getCatchUpRetries() {
+        return catchUpRetries;
+    }
+    
+    /**
+     * 设置补入索引失败后的重试次数
+     * 
+     * @param catchUpRetries 重试次数
+     */
+    public void setCatchUpRetries(Integer catchUpRetries) {
+        this.catchUpRetries = catchUpRetries;
+    }
+    
+    /**
+     * 获取补入首次重试前的等待时间
+     * 
+     * @return 等待时间（毫秒）
+     */
+    public Long getCatchUpRetryMillis() {
+        return catchUpRetryMillis;
+    }
+    
+    /**
+     * 设置补入首次重试前的等待时间
+     * 
+     * @param catchUpRetryMillis 等待时间（毫秒）
+     */
+    public void setCatchUpRetryMillis(Long catchUpRetryMillis) {
+        this.catchUpRetryMillis = catchUpRetryMillis;
+    }
+    
+    /**
+     * 获取文档导入配置
+     * 
+     * @return 文档导入配置对象
+     */
+    public Ingest getIngest() {
+        return ingest;
+    }
+    
+    /**
+     * 设置文档导入配置
+     * 
+     * @param ingest 文档导入配置对象
+     */
+    public void setIngest(Ingest ingest) {
+        this.ingest = ingest;
+    }
+    
+    /**
+     * 文档导入配置内部类
+     * 
+     * 包含分块大小、并行度以及资料目录扫描的配置参数
+     */
+    public static class Ingest {
+        /** 每个资料块的token上限，默认为400 */
+        private Integer chunkTokens = 400;
+        
+        /** 分块和计算向量的并行度，0表示使用CPU核数，默认为0 */
+        private Integer parallelism = 0;
+        
+        /** 扫描导入的资料目录，为空时不启用目录扫描 */
+        private String directory = "";
+        
+        /** 扫描导入的文件扩展名，默认为md和txt */
+        private List<String> extensions = List.of("md", "txt");
+        
+        /** 单个文件的最大字节数，超过的文件跳过，默认为16MB */
+        private Long maxFileBytes = 16L * 1024 * 1024;
+        
+        /** 定时扫描间隔（秒），0表示只在调用扫描接口时扫描，默认为0 */
+        private Long scanIntervalSeconds = 0L;
+        
+        /**
+         * 获取每个资料块的token上限
+         * 
+         * @return token上限
+         */
+        public Integer getChunkTokens() {
+            return chunkTokens;
+        }
+        
+        /**
+         * 设置每个资料块的token上限
+         * 
+         * @param chunkTokens token上限
+         */
+        public void setChunkTokens(Integer chunkTokens) {
+            this.chunkTokens = chunkTokens;
+        }
+        
+        /**
+         * 获取并行度
+         * 
+         * @return 并行度
+         */
+        public Integer getParallelism() {
+            return parallelism;
+        }
+        
+        /**
+         * 设置并行度
+         * 
+         * @param parallelism 并行度
+         */
+        public void setParallelism(Integer parallelism) {
+            this.parallelism = parallelism;
+        }
+        
+        /**
+         * 获取资料目录
+         * 
+         * @return 资料目录
+         */
+        public String getDirectory() {
+            return directory;
+        }
+        
+        /**
+         * 设置资料目录
+         * 
+         * @param directory 资料目录
+         */
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+        
+        /**
+         * 获取扫描导入的文件扩展名
+         * 
+         * @return 文件扩展名列表
+         */
+        public List<String> getExtensions() {
+            return extensions;
+        }
+        
+        /**
+         * 设置扫描导入的文件扩展名
+         * 
+         * @param extensions 文件扩展名列表
+         */
+        public void setExtensions(List<String> extensions) {
+            this.extensions = extensions;
+        }
+        
+        /**
+         * 获取单个文件的最大字节数
+         * 
+         * @return 最大字节数
+         */
+        public Long getMaxFileBytes() {
+            return maxFileBytes;
+        }
+        
+        /**
+         * 设置单个文件的最大字节数
+         * 
+         * @param maxFileBytes 最大字节数
+         */
+        public void setMaxFileBytes(Long maxFileBytes) {
+            this.maxFileBytes = maxFileBytes;
+        }
+        
+        /**
+         * 获取定时扫描间隔
+         * 
+         * @return 定时扫描间隔（秒）
+         */
+        public Long getScanIntervalSeconds() {
+            return scanIntervalSeconds;
+        }
+        
+        /**
+         * 设置定时扫描间隔
+         * 
+         * @param scanIntervalSeconds 定时扫描间隔（秒）
+         */
+        public void setScanIntervalSeconds(Long scanIntervalSeconds) {
+            this.scanIntervalSeconds = scanIntervalSeconds;
+        }
+    }
+}
\ No newline at end of file
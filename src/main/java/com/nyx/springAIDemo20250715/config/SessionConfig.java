@@ -0,0 +1,107 @@
+package com.nyx.springAIDemo20250715.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 会话状态存储配置类
+ * 
+ * 用于从application.yml配置文件中读取会话状态存储相关配置。
+ * 单节点部署使用内存存储；多节点部署时改为redis，各节点共享会话活跃状态，
+ * 并通过Redis发布订阅广播停止请求，负载均衡不需要会话粘滞。
+ * Redis连接本身使用spring.data.redis下的标准配置。
+ * 
+ * 配置前缀：spring.ai.session
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.ai.session")
+public class SessionConfig {
+    
+    /** 存储类型：memory（默认）或redis */
+    private String store = "memory";
+    
+    /** Redis键和频道名称前缀，默认为spring-ai:chat: */
+    private String keyPrefix = "spring-ai:chat:";
+    
+    /** 会话活跃标记的过期时间（毫秒），节点宕机后标记自动失效，默认为360000 */
+    private Long ttlMillis = 360000L;
+    
+    /** 查询Redis的超时时间（毫秒），默认为1000 */
+    private Long queryTimeoutMillis = 1000L;
+    
+    /**
+     * 获取存储类型
+     * 
+     * @return 存储类型
+     */
+    public String getStore() {
+        return store;
+    }
+    
+    /**
+     * 设置存储类型
+     * 
+     * @param store 存储类型
+     */
+    public void setStore(String store) {
+        this.store = store;
+    }
+    
+    /**
+     * 获取键和频道名称前缀
+     * 
+     * @return 名称前缀
+     */
+    public String getKeyPrefix() {
+        return keyPrefix;
+    }
+    
+    /**
+     * 设置键和频道名称前缀
+     * 
+     * @param keyPrefix 名称前缀
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+    
+    /**
+     * 获取会话活跃标记的过期时间
+     * 
+     * @return 过期时间（毫秒）
+     */
+    public Long getTtlMillis() {
+        return ttlMillis;
+    }
+    
+    /**
+     * 设置会话活跃标记的过期时间
+     * 
+     * @param ttlMillis 过期时间（毫秒）
+     */
+    public void setTtlMillis(Long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+    
+    /**
+     * 获取查询超时时间
+     * 
+     * @return 查询超时时间（毫秒）
+     */
+    public Long getQueryTimeoutMillis() {
+        return queryTimeoutMillis;
+    }
+    
+    /**
+     * 设置查询超时时间
+     * 
+     * @param queryTimeoutMillis 查询超时时间（毫秒）
+     */
+    public void setQueryTimeoutMillis(Long queryTimeoutMillis) {
+        this.queryTimeoutMillis = queryTimeoutMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,87 @@
+package com.nyx.springAIDemo20250715.config;
+
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import com.nyx.springAIDemo20250715.dto.ChatSearchHit;
+import com.nyx.springAIDemo20250715.dto.CompareEvent;
+import com.nyx.springAIDemo20250715.dto.PassageHit;
+import com.nyx.springAIDemo20250715.dto.UsageStat;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.retrieval.EmbeddingProvider;
+import com.nyx.springAIDemo20250715.retrieval.IngestService;
+import com.nyx.springAIDemo20250715.retrieval.RetrievalService;
+import com.nyx.springAIDemo20250715.search.ChatSearchIndex;
+import com.nyx.springAIDemo20250715.session.RedisSessionStore;
+import com.nyx.springAIDemo20250715.session.SessionStore;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
+import com.nyx.springAIDemo20250715.store.JobResultStore;
+import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 启动优化配置类
+ * 
+ * 配合fast配置文件（application-fast.yml）和fast-startup构建配置使用：
+ * - 开启懒加载时，需要在启动阶段完成数据恢复的存储组件仍然立即初始化，
+ *   避免恢复耗时落到第一个聊天请求上；会话状态存储也立即初始化，启动后即开始订阅停止广播；
+ *   检索服务立即初始化，需要重建向量索引时在启动后即开始；文档导入服务立即初始化，
+ *   配置了定时扫描时在启动后即开始扫描资料目录
+ * - 为AOT和GraalVM原生镜像注册Jackson序列化所需的反射信息。控制器方法签名中的
+ *   DTO由AOT自动推断，这里补充放在Map中返回或通过TypeReference解析的类型
+ * - AOT处理时按构建时的配置确定@ConditionalOnProperty的结果，运行时修改spring.ai.session.store
+ *   或spring.ai.retrieval.embedder不会换用其他实现；启动时检查实际使用的实现与配置是否一致，
+ *   不一致时启动失败，而不是静默使用构建时的实现
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration
+@RegisterReflectionForBinding({ChatMessage.class, ChatResponse.class, ChatSearchHit.class, PassageHit.class,
+        UsageStat.class, CompareEvent.class})
+public class StartupConfig {
+    
+    /**
+     * 懒加载排除规则
+     * 
+     * @return 排除存储和索引组件的懒加载过滤器
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter storageLazyInitializationExcludeFilter() {
+        return LazyInitializationExcludeFilter.forBeanTypes(ConversationLog.class, JobResultStore.class, ChatSearchIndex.class,
+                SessionStore.class, RetrievalService.class, IngestService.class);
+    }
+    
+    /**
+     * 条件装配一致性检查
+     * 
+     * 非AOT运行时条件按运行时配置求值，检查总是通过
+     * 
+     * @param sessionConfig 会话状态存储配置
+     * @param sessionStores 实际装配的会话状态存储
+     * @param retrievalConfig 检索增强配置
+     * @param embedders 实际装配的嵌入模型
+     * @return 启动完成后执行检查的ApplicationRunner
+     */
+    @Bean
+    public ApplicationRunner conditionalBeanCheck(SessionConfig sessionConfig, ObjectProvider<SessionStore> sessionStores,
+                                                  RetrievalConfig retrievalConfig, ObjectProvider<EmbeddingProvider> embedders) {
+        return args -> {
+            SessionStore sessionStore = sessionStores.getIfAvailable();
+            String actualStore = sessionStore == null ? "无" : sessionStore instanceof RedisSessionStore ? "redis" : "memory";
+            if (!actualStore.equalsIgnoreCase(sessionConfig.getStore())) {
+                throw new IllegalStateException("spring.ai.session.store=" + sessionConfig.getStore()
+                        + " 与构建时确定的会话状态存储（" + actualStore + "）不一致，AOT构建需按运行时配置重新打包");
+            }
+            EmbeddingProvider embedder = embedders.getIfAvailable();
+            String actualEmbedder = embedder == null ? "无" : embedder.name();
+            if (!actualEmbedder.equalsIgnoreCase(retrievalConfig.getEmbedder())) {
+                throw new IllegalStateException("spring.ai.retrieval.embedder=" + retrievalConfig.getEmbedder()
+                        + " 与构建时确定的嵌入模型（" + actualEmbedder + "）不一致，AOT构建需按运行时配置重新打包");
+            }
+        };
+    }
+}
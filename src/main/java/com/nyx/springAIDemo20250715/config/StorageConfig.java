@@ -0,0 +1,462 @@
+package com.nyx.springAIDemo20250715.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 本地存储配置类
+ * 
+ * 用于从application.yml配置文件中读取服务端本地存储相关配置，
+ * 包括数据根目录以及异步任务结果存储等参数。
+ * 
+ * 配置前缀：spring.ai.storage
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration
+@ConfigurationProperties(prefix = "spring.ai.storage")
+public class StorageConfig {
+    
+    /** 数据根目录，默认为当前工作目录下的data目录 */
+    private String dataDir = "./data";
+    
+    /** 异步任务配置信息 */
+    private Jobs jobs = new Jobs();
+    
+    /** 会话历史日志配置信息 */
+    private History history = new History();
+    
+    /** 会话全文检索配置信息 */
+    private Search search = new Search();
+    
+    /**
+     * 获取数据根目录
+     * 
+     * @return 数据根目录
+     */
+    public String getDataDir() {
+        return dataDir;
+    }
+    
+    /**
+     * 设置数据根目录
+     * 
+     * @param dataDir 数据根目录
+     */
+    public void setDataDir(String dataDir) {
+        this.dataDir = dataDir;
+    }
+    
+    /**
+     * 获取异步任务配置
+     * 
+     * @return 异步任务配置对象
+     */
+    public Jobs getJobs() {
+        return jobs;
+    }
+    
+    /**
+     * 设置异步任务配置
+     * 
+     * @param jobs 异步任务配置对象
+     */
+    public void setJobs(Jobs jobs) {
+        this.jobs = jobs;
+    }
+    
+    /**
+     * 获取会话历史日志配置
+     * 
+     * @return 会话历史日志配置对象
+     */
+    public History getHistory() {
+        return history;
+    }
+    
+    /**
+     * 设置会话历史日志配置
+     * 
+     * @param history 会话历史日志配置对象
+     */
+    public void setHistory(History history) {
+        this.history = history;
+    }
+    
+    /**
+     * 获取会话全文检索配置
+     * 
+     * @return 会话全文检索配置对象
+     */
+    public Search getSearch() {
+        return search;
+    }
+    
+    /**
+     * 设置会话全文检索配置
+     * 
+     * @param search 会话全文检索配置对象
+     */
+    public void setSearch(Search search) {
+        this.search = search;
+    }
+    
+    /**
+     * 异步任务配置内部类
+     * 
+     * 包含任务工作线程池和结果段文件的配置参数
+     */
+    public static class Jobs {
+        /** 工作线程数量，默认为4 */
+        private Integer workers = 4;
+        
+        /** 等待队列容量，队列满时拒绝新任务，默认为100 */
+        private Integer queueCapacity = 100;
+        
+        /** 单个段文件的最大字节数，超过后滚动到新段，默认为64MB */
+        private Long segmentBytes = 64L * 1024 * 1024;
+        
+        /** 流式尾随接口的轮询间隔（毫秒），默认为200 */
+        private Long tailPollMillis = 200L;
+        
+        /** 已结束任务的保留时长（秒），超过后从索引中移除，0表示永久保留，默认为86400 */
+        private Long retentionSeconds = 86400L;
+        
+        /** 过期任务清理间隔（秒），默认为300 */
+        private Long cleanupIntervalSeconds = 300L;
+        
+        /**
+         * 获取工作线程数量
+         * 
+         * @return 工作线程数量
+         */
+        public Integer getWorkers() {
+            return workers;
+        }
+        
+        /**
+         * 设置工作线程数量
+         * 
+         * @param workers 工作线程数量
+         */
+        public void setWorkers(Integer workers) {
+            this.workers = workers;
+        }
+        
+        /**
+         * 获取等待队列容量
+         * 
+         * @return 等待队列容量
+         */
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        /**
+         * 设置等待队列容量
+         * 
+         * @param queueCapacity 等待队列容量
+         */
+        public void setQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        /**
+         * 获取段文件最大字节数
+         * 
+         * @return 段文件最大字节数
+         */
+        public Long getSegmentBytes() {
+            return segmentBytes;
+        }
+        
+        /**
+         * 设置段文件最大字节数
+         * 
+         * @param segmentBytes 段文件最大字节数
+         */
+        public void setSegmentBytes(Long segmentBytes) {
+            this.segmentBytes = segmentBytes;
+        }
+        
+        /**
+         * 获取尾随轮询间隔
+         * 
+         * @return 尾随轮询间隔（毫秒）
+         */
+        public Long getTailPollMillis() {
+            return tailPollMillis;
+        }
+        
+        /**
+         * 设置尾随轮询间隔
+         * 
+         * @param tailPollMillis 尾随轮询间隔（毫秒）
+         */
+        public void setTailPollMillis(Long tailPollMillis) {
+            this.tailPollMillis = tailPollMillis;
+        }
+        
+        /**
+         * 获取已结束任务的保留时长
+         * 
+         * @return 保留时长（秒）
+         */
+        public Long getRetentionSeconds() {
+            return retentionSeconds;
+        }
+        
+        /**
+         * 设置已结束任务的保留时长
+         * 
+         * @param retentionSeconds 保留时长（秒）
+         */
+        public void setRetentionSeconds(Long retentionSeconds) {
+            this.retentionSeconds = retentionSeconds;
+        }
+        
+        /**
+         * 获取过期任务清理间隔
+         * 
+         * @return 清理间隔（秒）
+         */
+        public Long getCleanupIntervalSeconds() {
+            return cleanupIntervalSeconds;
+        }
+        
+        /**
+         * 设置过期任务清理间隔
+         * 
+         * @param cleanupIntervalSeconds 清理间隔（秒）
+         */
+        public void setCleanupIntervalSeconds(Long cleanupIntervalSeconds) {
+            this.cleanupIntervalSeconds = cleanupIntervalSeconds;
+        }
+    }
+    
+    /**
+     * 会话历史日志配置内部类
+     * 
+     * 包含内存映射段文件、组提交队列和段压缩的配置参数
+     */
+    public static class History {
+        /** 是否启用会话历史日志，默认为true */
+        private Boolean enabled = true;
+        
+        /** 单个段文件的字节数（预分配并整体映射），默认为64MB */
+        private Integer segmentBytes = 64 * 1024 * 1024;
+        
+        /** 写入队列容量，默认为65536 */
+        private Integer queueCapacity = 65536;
+        
+        /** 删除会话时写入队列已满、等待空位的最长时间（毫秒），超时后删除失败；追加消息不等待，默认为200 */
+        private Long offerTimeoutMillis = 200L;
+        
+        /** 单次组提交的最大记录数，默认为1024 */
+        private Integer batchSize = 1024;
+        
+        /** 段压缩检查间隔（秒），默认为300 */
+        private Long compactionIntervalSeconds = 300L;
+        
+        /** 段内有效数据占比低于该值时触发压缩，默认为0.5 */
+        private Double compactionThreshold = 0.5;
+        
+        /**
+         * 获取是否启用会话历史日志
+         * 
+         * @return 是否启用
+         */
+        public Boolean getEnabled() {
+            return enabled;
+        }
+        
+        /**
+         * 设置是否启用会话历史日志
+         * 
+         * @param enabled 是否启用
+         */
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        /**
+         * 获取段文件字节数
+         * 
+         * @return 段文件字节数
+         */
+        public Integer getSegmentBytes() {
+            return segmentBytes;
+        }
+        
+        /**
+         * 设置段文件字节数
+         * 
+         * @param segmentBytes 段文件字节数
+         */
+        public void setSegmentBytes(Integer segmentBytes) {
+            this.segmentBytes = segmentBytes;
+        }
+        
+        /**
+         * 获取写入队列容量
+         * 
+         * @return 写入队列容量
+         */
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+        
+        /**
+         * 设置写入队列容量
+         * 
+         * @param queueCapacity 写入队列容量
+         */
+        public void setQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+        
+        /**
+         * 获取删除会话时等待写入队列空位的最长时间
+         * 
+         * @return 等待时间（毫秒）
+         */
+        public Long getOfferTimeoutMillis() {
+            return offerTimeoutMillis;
+        }
+        
+        /**
+         * 设置删除会话时等待写入队列空位的最长时间
+         * 
+         * @param offerTimeoutMillis 等待时间（毫秒）
+         */
+        public void setOfferTimeoutMillis(Long offerTimeoutMillis) {
+            this.offerTimeoutMillis = offerTimeoutMillis;
+        }
+        
+        /**
+         * 获取单次组提交的最大记录数
+         * 
+         * @return 最大记录数
+         */
+        public Integer getBatchSize() {
+            return batchSize;
+        }
+        
+        /**
+         * 设置单次组提交的最大记录数
+         * 
+         * @param batchSize 最大记录数
+         */
+        public void setBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+        }
+        
+        /**
+         * 获取段压缩检查间隔
+         * 
+         * @return 段压缩检查间隔（秒）
+         */
+        public Long getCompactionIntervalSeconds() {
+            return compactionIntervalSeconds;
+        }
+        
+        /**
+         * 设置段压缩检查间隔
+         * 
+         * @param compactionIntervalSeconds 段压缩检查间隔（秒）
+         */
+        public void setCompactionIntervalSeconds(Long compactionIntervalSeconds) {
+            this.compactionIntervalSeconds = compactionIntervalSeconds;
+        }
+        
+        /**
+         * 获取段压缩触发阈值
+         * 
+         * @return 有效数据占比阈值
+         */
+        public Double getCompactionThreshold() {
+            return compactionThreshold;
+        }
+        
+        /**
+         * 设置段压缩触发阈值
+         * 
+         * @param compactionThreshold 有效数据占比阈值
+         */
+        public void setCompactionThreshold(Double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+        }
+    }
+    
+    /**
+     * 会话全文检索配置内部类
+     * 
+     * 包含倒排索引开关和查询结果数量上限
+     */
+    public static class Search {
+        /** 是否启用会话全文检索，默认为true */
+        private Boolean enabled = true;
+        
+        /** 单次查询返回结果数量上限，默认为50 */
+        private Integer maxLimit = 50;
+        
+        /** 已删除文档占比超过该值时回收索引，默认为0.25 */
+        private Double compactionDeletedRatio = 0.25;
+        
+        /**
+         * 获取是否启用会话全文检索
+         * 
+         * @return 是否启用
+         */
+        public Boolean getEnabled() {
+            return enabled;
+        }
+        
+        /**
+         * 设置是否启用会话全文检索
+         * 
+         * @param enabled 是否启用
+         */
+        public void setEnabled(Boolean enabled) {
+            this.enabled = enabled;
+        }
+        
+        /**
+         * 获取查询结果数量上限
+         * 
+         * @return 查询结果数量上限
+         */
+        public Integer getMaxLimit() {
+            return maxLimit;
+        }
+        
+        /**
+         * 设置查询结果数量上限
+         * 
+         * @param maxLimit 查询结果数量上限
+         */
+        public void setMaxLimit(Integer maxLimit) {
+            this.maxLimit = maxLimit;
+        }
+        
+        /**
+         * 获取触发索引回收的已删除文档占比
+         * 
+         * @return 已删除文档占比阈值
+         */
+        public Double getCompactionDeletedRatio() {
+            return compactionDeletedRatio;
+        }
+        
+        /**
+         * 设置触发索引回收的已删除文档占比
+         * 
+         * @param compactionDeletedRatio 已删除文档占比阈值
+         */
+        public void setCompactionDeletedRatio(Double compactionDeletedRatio) {
+            this.compactionDeletedRatio = compactionDeletedRatio;
+        }
+    }
+}
\ No newline at end of file
@@ -1,16 +1,32 @@
 package com.nyx.springAIDemo20250715.config;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.CssLinkResourceTransformer;
+import org.springframework.web.servlet.resource.EncodedResourceResolver;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 /**
  * Web配置类
  * 
  * 配置Spring MVC相关设置，包括：
  * - CORS跨域访问配置
- * - 静态资源处理配置
+ * - 静态资源处理配置（预压缩、内容指纹、分级缓存）
  * 
  * @author nyx
  * @version 1.0
@@ -19,6 +35,18 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     
+    /** 带内容指纹的资源路径，如app-0123456789abcdef0123456789abcdef.js */
+    private static final Pattern FINGERPRINTED_PATH = Pattern.compile(".*-[0-9a-f]{32}\\.[a-zA-Z0-9]+$");
+    
+    /** 带指纹资源的缓存策略：内容不变则URL不变，可永久缓存 */
+    private static final CacheControl FINGERPRINTED_CACHE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable();
+    
+    /** HTML页面的缓存策略：每次使用前都需通过ETag重新验证 */
+    private static final CacheControl HTML_CACHE = CacheControl.noCache();
+    
+    /** 未带指纹的其他资源的缓存策略 */
+    private static final CacheControl DEFAULT_CACHE = CacheControl.maxAge(1, TimeUnit.HOURS);
+    
     /**
      * 配置跨域访问
      * 
@@ -39,7 +67,13 @@ public class WebConfig implements WebMvcConfigurer {
     /**
      * 配置静态资源处理
      * 
-     * 设置静态资源的访问路径和缓存策略
+     * 资源解析链依次为：
+     * - 缓存解析结果，避免重复计算内容指纹和查找压缩文件
+     * - EncodedResourceResolver：按Accept-Encoding返回构建时生成的.br/.gz预压缩文件
+     * - VersionResourceResolver：支持app-&lt;md5&gt;.js形式的内容指纹URL
+     * 
+     * 转换链负责将index.html和CSS中的本地链接改写为带指纹的URL。
+     * 缓存头不在这里统一设置，而是由{@link #addInterceptors}按资源类型区分。
      * 
      * @param registry 资源处理器注册器
      */
@@ -48,6 +82,59 @@ public class WebConfig implements WebMvcConfigurer {
         // 配置静态资源处理：将所有请求映射到classpath:/static/目录
         registry.addResourceHandler("/**")
                 .addResourceLocations("classpath:/static/")
-                .setCachePeriod(3600);  // 设置缓存时间为1小时
+                .resourceChain(true)  // 缓存资源解析结果
+                .addResolver(new EncodedResourceResolver())  // 优先返回预压缩文件
+                .addResolver(new VersionResourceResolver().addContentVersionStrategy("/**"))  // 内容指纹
+                .addTransformer(new CssLinkResourceTransformer())
+                .addTransformer(new HtmlLinkResourceTransformer());
+    }
+    
+    /**
+     * 配置拦截器
+     * 
+     * 为静态资源设置分级缓存策略：
+     * - 带内容指纹的资源：缓存一年并标记为immutable
+     * - HTML页面：no-cache，配合ETag做条件请求
+     * - 其他资源：缓存1小时
+     * 
+     * @param registry 拦截器注册器
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                if (handler instanceof ResourceHttpRequestHandler) {
+                    String path = request.getRequestURI();
+                    CacheControl cacheControl;
+                    if (FINGERPRINTED_PATH.matcher(path).matches()) {
+                        cacheControl = FINGERPRINTED_CACHE;
+                    } else if (path.endsWith(".html") || path.endsWith("/")) {
+                        cacheControl = HTML_CACHE;
+                    } else {
+                        cacheControl = DEFAULT_CACHE;
+                    }
+                    response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+                }
+                return true;
+            }
+        });
+    }
+    
+    /**
+     * 为index.html注册ETag过滤器
+     * 
+     * 使用弱ETag：Tomcat默认不会压缩带强ETag的响应，弱ETag可以与server.compression共存
+     * 
+     * @return ETag过滤器注册Bean
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> htmlEtagFilter() {
+        ShallowEtagHeaderFilter filter = new ShallowEtagHeaderFilter();
+        filter.setWriteWeakETag(true);
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/index.html");
+        registration.setName("htmlEtagFilter");
+        return registration;
     }
 }
\ No newline at end of file
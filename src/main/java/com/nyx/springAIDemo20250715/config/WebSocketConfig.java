@@ -0,0 +1,69 @@
+package com.nyx.springAIDemo20250715.config;
+
+import com.nyx.springAIDemo20250715.websocket.ChatWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
+
+/**
+ * WebSocket配置类
+ * 
+ * 注册多路复用聊天WebSocket端点/ws/chat，并调整容器的消息缓冲区大小
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfig implements WebSocketConfigurer {
+    
+    /** 单条文本消息的最大字节数，start帧会携带完整历史记录 */
+    private static final int MAX_TEXT_MESSAGE_BYTES = 512 * 1024;
+    
+    /** 连接空闲超时时间（毫秒） */
+    private static final long MAX_SESSION_IDLE_MILLIS = 10 * 60 * 1000L;
+    
+    /** 聊天WebSocket处理器 */
+    private final ChatWebSocketHandler chatWebSocketHandler;
+    
+    /**
+     * 构造函数，注入ChatWebSocketHandler依赖
+     * 
+     * @param chatWebSocketHandler 聊天WebSocket处理器实例
+     */
+    @Autowired
+    public WebSocketConfig(ChatWebSocketHandler chatWebSocketHandler) {
+        this.chatWebSocketHandler = chatWebSocketHandler;
+    }
+    
+    /**
+     * 注册WebSocket处理器
+     * 
+     * @param registry WebSocket处理器注册器
+     */
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(chatWebSocketHandler, "/ws/chat")
+                .setAllowedOrigins("*");  // 允许跨域访问
+    }
+    
+    /**
+     * 配置WebSocket容器参数
+     * 
+     * Tomcat默认的文本消息缓冲区只有8KB，携带较长历史记录的start帧会被拒绝
+     * 
+     * @return WebSocket容器工厂Bean
+     */
+    @Bean
+    public ServletServerContainerFactoryBean createWebSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(MAX_TEXT_MESSAGE_BYTES);
+        container.setMaxSessionIdleTimeout(MAX_SESSION_IDLE_MILLIS);
+        return container;
+    }
+}
\ No newline at end of file
@@ -2,15 +2,27 @@ package com.nyx.springAIDemo20250715.controller;
 
 import com.nyx.springAIDemo20250715.dto.ChatRequest;
 import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import com.nyx.springAIDemo20250715.dto.CompareEvent;
+import com.nyx.springAIDemo20250715.dto.UsageStat;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import com.nyx.springAIDemo20250715.service.ModelCompareService;
 import com.nyx.springAIDemo20250715.service.QwenAIService;
+import com.nyx.springAIDemo20250715.service.ReadinessMonitor;
+import com.nyx.springAIDemo20250715.service.SlowClientBuffer;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import com.nyx.springAIDemo20250715.service.UsageMeter;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -19,9 +31,12 @@ import java.util.UUID;
  * 
  * 提供AI聊天相关的REST API接口，包括：
  * - 流式聊天对话
+ * - 多模型对比
  * - 停止流式传输
  * - 检查流状态
  * - 健康检查
+ * - 流式传输指标
+ * - Token用量统计
  * 
  * 使用Server-Sent Events (SSE)技术实现实时流式响应
  * 
@@ -40,14 +55,46 @@ public class ChatController {
     /** 通义千问AI服务 */
     private final QwenAIService qwenAIService;
     
+    /** 会话历史日志 */
+    private final ConversationLog conversationLog;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 慢客户端有界缓冲 */
+    private final SlowClientBuffer slowClientBuffer;
+    
+    /** Token用量统计 */
+    private final UsageMeter usageMeter;
+    
+    /** 多模型对比服务 */
+    private final ModelCompareService modelCompareService;
+    
+    /** 就绪状态监控 */
+    private final ReadinessMonitor readinessMonitor;
+    
     /**
-     * 构造函数，注入QwenAIService依赖
+     * 构造函数，注入QwenAIService、ConversationLog、StreamMetrics、SlowClientBuffer、UsageMeter、ModelCompareService和ReadinessMonitor依赖
      * 
      * @param qwenAIService 通义千问AI服务实例
+     * @param conversationLog 会话历史日志实例
+     * @param streamMetrics 流式传输指标实例
+     * @param slowClientBuffer 慢客户端有界缓冲实例
+     * @param usageMeter Token用量统计实例
+     * @param modelCompareService 多模型对比服务实例
+     * @param readinessMonitor 就绪状态监控实例
      */
     @Autowired
-    public ChatController(QwenAIService qwenAIService) {
+    public ChatController(QwenAIService qwenAIService, ConversationLog conversationLog,
+                          StreamMetrics streamMetrics, SlowClientBuffer slowClientBuffer, UsageMeter usageMeter,
+                          ModelCompareService modelCompareService, ReadinessMonitor readinessMonitor) {
         this.qwenAIService = qwenAIService;
+        this.conversationLog = conversationLog;
+        this.streamMetrics = streamMetrics;
+        this.slowClientBuffer = slowClientBuffer;
+        this.usageMeter = usageMeter;
+        this.modelCompareService = modelCompareService;
+        this.readinessMonitor = readinessMonitor;
     }
     
     /**
@@ -58,20 +105,46 @@ public class ChatController {
      * 
      * @param request 聊天请求对象，包含用户消息和历史记录
      * @param sessionIdParam 会话ID参数，如果为空则自动生成新的会话ID
+     * @param priorityHeader X-Chat-Priority请求头，请求体未指定优先级时使用，默认为interactive
+     * @param clientId X-Client-Id请求头，用于按客户端统计token用量
      * @return 返回包含AI响应数据的响应式流
      */
     @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
     public Flux<String> streamChat(@RequestBody ChatRequest request,
-                                   @RequestParam(name = "sessionIdParam", defaultValue = "") String sessionIdParam) {
+                                   @RequestParam(name = "sessionIdParam", defaultValue = "") String sessionIdParam,
+                                   @RequestHeader(name = "X-Chat-Priority", required = false) String priorityHeader,
+                                   @RequestHeader(name = "X-Client-Id", required = false) String clientId) {
         
         // 如果没有提供sessionId，生成一个新的
         String sessionId = sessionIdParam.isEmpty() ? UUID.randomUUID().toString() : sessionIdParam;
+        ChatPriority priority = ChatPriority.parse(request.getPriority(),
+                ChatPriority.parse(priorityHeader, ChatPriority.INTERACTIVE));
+        
+        // 空消息直接返回错误，不发往上游
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            return Flux.just(objectToJson(ChatResponse.error("消息内容不能为空")));
+        }
         
         logger.info("Starting stream chat for session: {}, message: {}", sessionId, request.getMessage());
         
-        return qwenAIService.streamChat(request.getMessage(), request.getHistory(), sessionId)
-                .doOnNext(response -> logger.debug("Controller收到响应 - sessionId: {}, content: {}, finished: {}", 
-                        sessionId, response.getContent(), response.getFinished()))
+        // 记录用户消息，AI回复在流结束（含停止和断开）时整体记录；写入由后台线程完成
+        conversationLog.append(sessionId, new ChatMessage("user", request.getMessage()));
+        StringBuilder reply = new StringBuilder();
+        
+        // 客户端读取缓慢时，服务端为该流缓冲的内容不超过配置的上限
+        return slowClientBuffer.apply(qwenAIService.streamChat(request.getMessage(), request.getHistory(), sessionId, priority, clientId), sessionId)
+                .doOnNext(response -> {
+                    logger.debug("Controller收到响应 - sessionId: {}, content: {}, finished: {}", 
+                            sessionId, response.getContent(), response.getFinished());
+                    if (response.getContent() != null) {
+                        reply.append(response.getContent());
+                    }
+                })
+                .doFinally(signal -> {
+                    if (reply.length() > 0) {
+                        conversationLog.append(sessionId, new ChatMessage("assistant", reply.toString()));
+                    }
+                })
                 .map(response -> {
                     try {
                         // 转换为JSON格式（Spring Boot会自动添加SSE格式）
@@ -87,6 +160,40 @@ public class ChatController {
                 .doOnError(error -> logger.error("Stream error for session: {}", sessionId, error));
     }
     
+    /**
+     * 多模型对比接口
+     * 
+     * 把同一个问题同时发给请求体models中的各个模型，各模型的增量以带model字段的事件
+     * 合并在一个SSE流中返回；每个模型结束时返回done事件，最后返回包含各模型
+     * 首个增量耗时和总耗时的summary事件。每个模型的会话ID为{sessionId}:{model}
+     * 
+     * @param request 聊天请求对象，models为对比的模型列表
+     * @param sessionIdParam 会话ID参数，如果为空则自动生成新的会话ID
+     * @param priorityHeader X-Chat-Priority请求头，请求体未指定优先级时使用，默认为interactive
+     * @param clientId X-Client-Id请求头，用于按客户端统计token用量
+     * @return 返回合并后的对比事件流，参数无效时返回400和一条error事件
+     */
+    @PostMapping(value = "/compare", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<CompareEvent>> compare(@RequestBody ChatRequest request,
+                                                      @RequestParam(name = "sessionIdParam", defaultValue = "") String sessionIdParam,
+                                                      @RequestHeader(name = "X-Chat-Priority", required = false) String priorityHeader,
+                                                      @RequestHeader(name = "X-Client-Id", required = false) String clientId) {
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            return ResponseEntity.badRequest().body(Flux.just(CompareEvent.error("消息内容不能为空")));
+        }
+        List<String> models;
+        try {
+            models = modelCompareService.validateModels(request.getModels());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Flux.just(CompareEvent.error(e.getMessage())));
+        }
+        String sessionId = sessionIdParam.isEmpty() ? UUID.randomUUID().toString() : sessionIdParam;
+        ChatPriority priority = ChatPriority.parse(request.getPriority(),
+                ChatPriority.parse(priorityHeader, ChatPriority.INTERACTIVE));
+        return ResponseEntity.ok(modelCompareService.compare(request.getMessage(), request.getHistory(), models,
+                sessionId, priority, clientId));
+    }
+    
     /**
      * 停止流式传输
      * 
@@ -126,7 +233,7 @@ public class ChatController {
     /**
      * 健康检查接口
      * 
-     * 提供服务健康状态检查，用于监控和负载均衡
+     * 只表示进程存活，用于存活探针；负载均衡应使用/ready判断是否转发请求
      * 
      * @return 返回服务状态信息，包含状态、服务名称和时间戳
      */
@@ -139,6 +246,65 @@ public class ChatController {
         ));
     }
     
+    /**
+     * 就绪检查接口
+     * 
+     * 并发占用、连接池等待、首个增量耗时或错误率超过上限时返回503，
+     * 负载均衡据此把流量转到其他节点，指标回落到恢复阈值以下后重新返回200
+     * 
+     * @return 返回就绪状态、未就绪原因和各项指标
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<Map<String, Object>> ready() {
+        ReadinessMonitor.Status status = readinessMonitor.status();
+        return ResponseEntity.status(status.ready() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                "status", status.ready() ? "ready" : "not_ready",
+                "reasons", status.reasons(),
+                "activeStreams", status.inFlight(),
+                "queued", status.queued(),
+                "capacity", status.capacity(),
+                "utilization", status.utilization(),
+                "pendingAcquires", status.pendingAcquires(),
+                "ttftMillis", status.ttftMillis(),
+                "errorRate", status.errorRate(),
+                "timestamp", System.currentTimeMillis()
+        ));
+    }
+    
+    /**
+     * 流式传输指标接口
+     * 
+     * 返回各类流式传输事件（如分阶段超时）的累计次数
+     * 
+     * @return 返回指标名称到累计次数的映射
+     */
+    @GetMapping("/metrics")
+    public ResponseEntity<Map<String, Object>> metrics() {
+        return ResponseEntity.ok(Map.of(
+                "metrics", streamMetrics.snapshot(),
+                "timestamp", System.currentTimeMillis()
+        ));
+    }
+    
+    /**
+     * Token用量统计接口
+     * 
+     * 返回按模型、API密钥（脱敏）、客户端累计的上游请求数和token用量，以及各项合计
+     * 
+     * @return 返回用量列表和合计
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<Map<String, Object>> usage() {
+        List<UsageStat> usage = usageMeter.snapshot();
+        return ResponseEntity.ok(Map.of(
+                "usage", usage,
+                "totalRequests", usage.stream().mapToLong(UsageStat::getRequests).sum(),
+                "totalInputTokens", usage.stream().mapToLong(UsageStat::getInputTokens).sum(),
+                "totalOutputTokens", usage.stream().mapToLong(UsageStat::getOutputTokens).sum(),
+                "timestamp", System.currentTimeMillis()
+        ));
+    }
+    
     /**
      * 简单的JSON转换方法
      * 
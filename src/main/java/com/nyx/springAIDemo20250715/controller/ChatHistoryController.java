@@ -0,0 +1,87 @@
+package com.nyx.springAIDemo20250715.controller;
+
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
+import com.nyx.springAIDemo20250715.store.HistoryUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话历史控制器
+ * 
+ * 提供服务端持久化会话历史的查询接口，包括：
+ * - 按会话ID读取历史消息
+ * - 删除会话历史
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@RestController
+@RequestMapping("/api/chat/history")
+@CrossOrigin(origins = "*") // 允许跨域访问
+public class ChatHistoryController {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ChatHistoryController.class);
+    
+    /** 会话历史日志 */
+    private final ConversationLog conversationLog;
+    
+    /**
+     * 构造函数，注入ConversationLog依赖
+     * 
+     * @param conversationLog 会话历史日志实例
+     */
+    @Autowired
+    public ChatHistoryController(ConversationLog conversationLog) {
+        this.conversationLog = conversationLog;
+    }
+    
+    /**
+     * 读取会话历史
+     * 
+     * @param sessionId 会话ID
+     * @return 返回会话ID及按时间顺序排列的消息列表
+     */
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<Map<String, Object>> getHistory(@PathVariable String sessionId) {
+        List<ChatMessage> messages = conversationLog.readSession(sessionId);
+        return ResponseEntity.ok(Map.of(
+                "sessionId", sessionId,
+                "messages", messages
+        ));
+    }
+    
+    /**
+     * 删除会话历史
+     * 
+     * @param sessionId 会话ID
+     * @return 返回操作结果，会话不存在时返回404，写入队列繁忙、删除未执行时返回503
+     */
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Map<String, Object>> deleteHistory(@PathVariable String sessionId) {
+        logger.info("Deleting history for session: {}", sessionId);
+        try {
+            if (!conversationLog.deleteSession(sessionId)) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (HistoryUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "success", false,
+                    "message", "会话历史写入繁忙，请稍后重试"
+            ));
+        }
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "sessionId", sessionId
+        ));
+    }
+}
\ No newline at end of file
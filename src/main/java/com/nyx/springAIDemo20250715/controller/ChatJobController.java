@@ -0,0 +1,164 @@
+package com.nyx.springAIDemo20250715.controller;
+
+import com.nyx.springAIDemo20250715.dto.ChatRequest;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import com.nyx.springAIDemo20250715.model.ChatJob;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import com.nyx.springAIDemo20250715.service.ChatJobService;
+import com.nyx.springAIDemo20250715.store.JobExpiredException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 异步聊天任务控制器
+ * 
+ * 提供长文本生成的异步任务接口，包括：
+ * - 提交任务（立即返回任务ID）
+ * - 查询任务状态和结果
+ * - 流式尾随读取任务增量
+ * - 取消任务
+ * 
+ * 客户端无需为长时间生成保持HTTP连接，可按需轮询或尾随读取
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@RestController
+@RequestMapping("/api/chat/jobs")
+@CrossOrigin(origins = "*") // 允许跨域访问
+public class ChatJobController {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ChatJobController.class);
+    
+    /** 异步聊天任务服务 */
+    private final ChatJobService chatJobService;
+    
+    /**
+     * 构造函数，注入ChatJobService依赖
+     * 
+     * @param chatJobService 异步聊天任务服务实例
+     */
+    @Autowired
+    public ChatJobController(ChatJobService chatJobService) {
+        this.chatJobService = chatJobService;
+    }
+    
+    /**
+     * 提交异步生成任务
+     * 
+     * @param request 聊天请求对象，包含用户消息、历史记录和可选的优先级（默认bulk）
+     * @return 返回202及任务ID；消息为空时返回400，任务队列已满时返回503
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(@RequestBody ChatRequest request) {
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", "消息内容不能为空"
+            ));
+        }
+        try {
+            ChatJob job = chatJobService.submit(request.getMessage(), request.getHistory(),
+                    ChatPriority.parse(request.getPriority(), ChatPriority.BULK));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                    "jobId", job.getId(),
+                    "status", job.getStatus().name()
+            ));
+        } catch (RejectedExecutionException e) {
+            logger.warn("异步任务被拒绝: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                    "success", false,
+                    "message", "任务队列已满，请稍后重试"
+            ));
+        }
+    }
+    
+    /**
+     * 查询任务状态和结果
+     * 
+     * 任务结束后返回完整结果；运行中的任务仅在partial为true时返回已生成的部分内容
+     * 
+     * @param jobId 任务ID
+     * @param partial 是否返回运行中任务的部分内容
+     * @return 返回任务状态信息，任务不存在时返回404，结果已过期时返回410
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId,
+                                                      @RequestParam(name = "partial", defaultValue = "false") boolean partial) {
+        ChatJob job = chatJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("jobId", job.getId());
+        body.put("status", job.getStatus().name());
+        body.put("createdAt", job.getCreatedAt());
+        if (job.getFinishedAt() != null) {
+            body.put("finishedAt", job.getFinishedAt());
+        }
+        if (job.getError() != null) {
+            body.put("error", job.getError());
+        }
+        if (job.getStatus().isTerminal() || partial) {
+            try {
+                body.put("content", chatJobService.getContent(job));
+            } catch (JobExpiredException e) {
+                return ResponseEntity.status(HttpStatus.GONE).body(Map.of(
+                        "success", false,
+                        "message", e.getMessage()
+                ));
+            }
+        }
+        return ResponseEntity.ok(body);
+    }
+    
+    /**
+     * 流式尾随读取任务增量
+     * 
+     * 先推送已生成的内容，再持续推送新增内容，任务结束时发送完成标记
+     * 
+     * @param jobId 任务ID
+     * @return 返回任务增量的响应式流，任务不存在时返回单条错误响应
+     */
+    @GetMapping(value = "/{jobId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ChatResponse> tail(@PathVariable String jobId) {
+        ChatJob job = chatJobService.getJob(jobId);
+        if (job == null) {
+            return Flux.just(ChatResponse.error("任务不存在: " + jobId));
+        }
+        return chatJobService.tail(job);
+    }
+    
+    /**
+     * 取消任务
+     * 
+     * @param jobId 任务ID
+     * @return 返回操作结果，任务不存在时返回404
+     */
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String jobId) {
+        ChatJob job = chatJobService.getJob(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        chatJobService.cancel(job);
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "jobId", jobId,
+                "status", job.getStatus().name()
+        ));
+    }
+}
\ No newline at end of file
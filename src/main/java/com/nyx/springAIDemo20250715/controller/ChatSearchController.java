@@ -0,0 +1,60 @@
+package com.nyx.springAIDemo20250715.controller;
+
+import com.nyx.springAIDemo20250715.search.ChatSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 会话检索控制器
+ * 
+ * 提供服务端历史消息的全文检索接口，支持中英文混合查询，
+ * 结果按BM25相关度排序。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@RestController
+@RequestMapping("/api/chat/search")
+@CrossOrigin(origins = "*") // 允许跨域访问
+public class ChatSearchController {
+    
+    /** 会话全文检索索引 */
+    private final ChatSearchIndex chatSearchIndex;
+    
+    /**
+     * 构造函数，注入ChatSearchIndex依赖
+     * 
+     * @param chatSearchIndex 会话全文检索索引实例
+     */
+    @Autowired
+    public ChatSearchController(ChatSearchIndex chatSearchIndex) {
+        this.chatSearchIndex = chatSearchIndex;
+    }
+    
+    /**
+     * 检索历史消息
+     * 
+     * @param query 查询文本，多个词之间为“且”关系
+     * @param sessionId 限定的会话ID，为空时检索全部会话
+     * @param limit 返回结果数量，默认为10
+     * @return 返回命中总数、耗时和按相关度排序的结果列表
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> search(@RequestParam(name = "q") String query,
+                                                      @RequestParam(name = "sessionId", defaultValue = "") String sessionId,
+                                                      @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        long start = System.nanoTime();
+        ChatSearchIndex.Result result = chatSearchIndex.search(query, sessionId.isEmpty() ? null : sessionId, limit);
+        long tookMicros = (System.nanoTime() - start) / 1000;
+        return ResponseEntity.ok(Map.of(
+                "query", query,
+                "total", result.total(),
+                "tookMicros", tookMicros,
+                "results", result.hits()
+        ));
+    }
+}
\ No newline at end of file
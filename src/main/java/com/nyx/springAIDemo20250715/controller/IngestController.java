@@ -0,0 +1,102 @@
+package com.nyx.springAIDemo20250715.controller;
+
+import com.nyx.springAIDemo20250715.retrieval.IngestService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * 文档导入控制器
+ * 
+ * 提供文档导入、删除和资料目录扫描接口。文档按token上限切分为资料块后写入资料库，
+ * 同一来源再次导入时只写入变化的资料块。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@RestController
+@RequestMapping("/api/ingest")
+@CrossOrigin(origins = "*") // 允许跨域访问
+public class IngestController {
+    
+    /** 文档导入服务 */
+    private final IngestService ingestService;
+    
+    /**
+     * 构造函数，注入IngestService依赖
+     * 
+     * @param ingestService 文档导入服务实例
+     */
+    @Autowired
+    public IngestController(IngestService ingestService) {
+        this.ingestService = ingestService;
+    }
+    
+    /**
+     * 导入一个文档
+     * 
+     * @param request 请求体，包含source（来源，同一来源再次导入时替换）和text（正文）
+     * @return 返回资料块数以及新增、删除、沿用的资料块数，参数缺失时返回400
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> ingest(@RequestBody Map<String, String> request) {
+        String source = request.get("source");
+        String text = request.get("text");
+        if (source == null || source.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "文档来源不能为空"));
+        }
+        if (text == null || text.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "文档正文不能为空"));
+        }
+        IngestService.Result result = ingestService.ingest(source, text);
+        return ResponseEntity.ok(Map.of(
+                "source", result.source(),
+                "chunks", result.chunks(),
+                "added", result.added(),
+                "removed", result.removed(),
+                "unchanged", result.unchanged()
+        ));
+    }
+    
+    /**
+     * 删除一个文档的全部资料块
+     * 
+     * @param source 文档来源
+     * @return 返回删除的资料块数，文档不存在时返回404
+     */
+    @DeleteMapping
+    public ResponseEntity<Map<String, Object>> remove(@RequestParam(name = "source") String source) {
+        int removed = ingestService.remove(source);
+        if (removed < 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(Map.of("source", source, "removed", removed));
+    }
+    
+    /**
+     * 扫描配置的资料目录（spring.ai.retrieval.ingest.directory）
+     * 
+     * @return 返回文件数、跳过和变化的文件数、资料块变化和耗时，未配置资料目录时返回400
+     */
+    @PostMapping("/scan")
+    public ResponseEntity<Map<String, Object>> scan() {
+        try {
+            IngestService.ScanResult result = ingestService.scan();
+            return ResponseEntity.ok(Map.of(
+                    "files", result.files(),
+                    "skipped", result.skipped(),
+                    "changed", result.changed(),
+                    "failed", result.failed(),
+                    "deleted", result.deleted(),
+                    "chunksAdded", result.chunksAdded(),
+                    "chunksRemoved", result.chunksRemoved(),
+                    "tookMillis", result.tookMillis()
+            ));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
\ No newline at end of file
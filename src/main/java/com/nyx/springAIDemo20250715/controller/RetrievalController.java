@@ -0,0 +1,76 @@
+package com.nyx.springAIDemo20250715.controller;
+
+import com.nyx.springAIDemo20250715.dto.PassageHit;
+import com.nyx.springAIDemo20250715.retrieval.RetrievalService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 资料检索控制器
+ * 
+ * 提供本地资料库的写入和向量检索接口，检索结果与对话时注入提示词的资料一致，
+ * 可用于检查资料是否被正确命中。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@RestController
+@RequestMapping("/api/retrieval")
+@CrossOrigin(origins = "*") // 允许跨域访问
+public class RetrievalController {
+    
+    /** 检索增强服务 */
+    private final RetrievalService retrievalService;
+    
+    /**
+     * 构造函数，注入RetrievalService依赖
+     * 
+     * @param retrievalService 检索增强服务实例
+     */
+    @Autowired
+    public RetrievalController(RetrievalService retrievalService) {
+        this.retrievalService = retrievalService;
+    }
+    
+    /**
+     * 添加一条资料
+     * 
+     * @param request 请求体，包含source（来源）和text（正文）
+     * @return 返回资料键，正文为空时返回400
+     */
+    @PostMapping("/passages")
+    public ResponseEntity<Map<String, Object>> addPassage(@RequestBody Map<String, String> request) {
+        String text = request.get("text");
+        if (text == null || text.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "资料正文不能为空"));
+        }
+        String source = request.getOrDefault("source", "");
+        long key = retrievalService.addPassage(source == null ? "" : source, text);
+        return ResponseEntity.ok(Map.of("key", key));
+    }
+    
+    /**
+     * 检索资料
+     * 
+     * @param query 查询文本
+     * @param limit 返回结果数量，默认为5
+     * @return 返回耗时和按相似度排序的资料列表
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Map<String, Object>> search(@RequestParam(name = "q") String query,
+                                                      @RequestParam(name = "limit", defaultValue = "5") int limit) {
+        long start = System.nanoTime();
+        List<PassageHit> results = retrievalService.search(query, Math.min(limit, 100));
+        long tookMicros = (System.nanoTime() - start) / 1000;
+        return ResponseEntity.ok(Map.of(
+                "query", query,
+                "tookMicros", tookMicros,
+                "results", results
+        ));
+    }
+}
\ No newline at end of file
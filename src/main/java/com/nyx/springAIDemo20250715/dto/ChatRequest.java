@@ -28,6 +28,14 @@ public class ChatRequest {
     @JsonProperty("stream")
     private Boolean stream = true;
     
+    /** 请求优先级（interactive或bulk），为空时使用接口的默认优先级 */
+    @JsonProperty("priority")
+    private String priority;
+    
+    /** 多模型对比接口使用的模型列表，其他接口忽略 */
+    @JsonProperty("models")
+    private List<String> models;
+    
     /**
      * 默认构造函数
      */
@@ -97,4 +105,40 @@ public class ChatRequest {
     public void setStream(Boolean stream) {
         this.stream = stream;
     }
+    
+    /**
+     * 获取请求优先级
+     * 
+     * @return 请求优先级（interactive或bulk）
+     */
+    public String getPriority() {
+        return priority;
+    }
+    
+    /**
+     * 设置请求优先级
+     * 
+     * @param priority 请求优先级（interactive或bulk）
+     */
+    public void setPriority(String priority) {
+        this.priority = priority;
+    }
+    
+    /**
+     * 获取对比的模型列表
+     * 
+     * @return 模型名称列表
+     */
+    public List<String> getModels() {
+        return models;
+    }
+    
+    /**
+     * 设置对比的模型列表
+     * 
+     * @param models 模型名称列表
+     */
+    public void setModels(List<String> models) {
+        this.models = models;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package com.nyx.springAIDemo20250715.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 会话检索结果数据传输对象
+ * 
+ * 用于封装一条命中的历史消息，包含所属会话、角色、时间戳、相关度得分和内容摘要
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class ChatSearchHit {
+    
+    /** 所属会话ID */
+    @JsonProperty("sessionId")
+    private String sessionId;
+    
+    /** 消息角色（user/assistant） */
+    @JsonProperty("role")
+    private String role;
+    
+    /** 消息时间戳 */
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    /** BM25相关度得分 */
+    @JsonProperty("score")
+    private Double score;
+    
+    /** 命中位置附近的内容摘要 */
+    @JsonProperty("snippet")
+    private String snippet;
+    
+    /**
+     * 默认构造函数
+     */
+    public ChatSearchHit() {}
+    
+    /**
+     * 带参数的构造函数
+     * 
+     * @param sessionId 所属会话ID
+     * @param role 消息角色
+     * @param timestamp 消息时间戳
+     * @param score 相关度得分
+     * @param snippet 内容摘要
+     */
+    public ChatSearchHit(String sessionId, String role, Long timestamp, Double score, String snippet) {
+        this.sessionId = sessionId;
+        this.role = role;
+        this.timestamp = timestamp;
+        this.score = score;
+        this.snippet = snippet;
+    }
+    
+    /**
+     * 获取所属会话ID
+     * 
+     * @return 所属会话ID
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+    
+    /**
+     * 设置所属会话ID
+     * 
+     * @param sessionId 所属会话ID
+     */
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+    
+    /**
+     * 获取消息角色
+     * 
+     * @return 消息角色
+     */
+    public String getRole() {
+        return role;
+    }
+    
+    /**
+     * 设置消息角色
+     * 
+     * @param role 消息角色
+     */
+    public void setRole(String role) {
+        this.role = role;
+    }
+    
+    /**
+     * 获取消息时间戳
+     * 
+     * @return 消息时间戳
+     */
+    public Long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * 设置消息时间戳
+     * 
+     * @param timestamp 消息时间戳
+     */
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * 获取相关度得分
+     * 
+     * @return 相关度得分
+     */
+    public Double getScore() {
+        return score;
+    }
+    
+    /**
+     * 设置相关度得分
+     * 
+     * @param score 相关度得分
+     */
+    public void setScore(Double score) {
+        this.score = score;
+    }
+    
+    /**
+     * 获取内容摘要
+     * 
+     * @return 内容摘要
+     */
+    public String getSnippet() {
+        return snippet;
+    }
+    
+    /**
+     * 设置内容摘要
+     * 
+     * @param snippet 内容摘要
+     */
+    public void setSnippet(String snippet) {
+        this.snippet = snippet;
+    }
+}
\ No newline at end of file
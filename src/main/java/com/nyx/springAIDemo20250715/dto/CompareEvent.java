@@ -0,0 +1,295 @@
+package com.nyx.springAIDemo20250715.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * 多模型对比事件数据传输对象
+ * 
+ * 多模型对比接口的SSE流中的一条事件，按type区分：
+ * - delta：某个模型的一段增量内容
+ * - done：某个模型生成结束，包含首个增量耗时、总耗时和输出字符数，失败时包含错误信息
+ * - summary：所有模型都已结束，results按请求顺序包含各模型的done事件
+ * - error：请求参数无效，没有发出上游请求
+ * 
+ * 值为null的字段不输出
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CompareEvent {
+    
+    /** 事件类型：delta、done、summary或error */
+    @JsonProperty("type")
+    private String type;
+    
+    /** 模型名称 */
+    @JsonProperty("model")
+    private String model;
+    
+    /** 增量内容 */
+    @JsonProperty("content")
+    private String content;
+    
+    /** 错误信息 */
+    @JsonProperty("error")
+    private String error;
+    
+    /** 首个增量耗时（毫秒），没有收到增量时为null */
+    @JsonProperty("ttftMillis")
+    private Long ttftMillis;
+    
+    /** 总耗时（毫秒） */
+    @JsonProperty("totalMillis")
+    private Long totalMillis;
+    
+    /** 输出字符数 */
+    @JsonProperty("chars")
+    private Long chars;
+    
+    /** 各模型的结束事件，仅summary事件包含 */
+    @JsonProperty("results")
+    private List<CompareEvent> results;
+    
+    /** 事件时间戳 */
+    @JsonProperty("timestamp")
+    private Long timestamp;
+    
+    /**
+     * 默认构造函数
+     * 自动设置当前时间戳
+     */
+    public CompareEvent() {
+        this.timestamp = System.currentTimeMillis();
+    }
+    
+    /**
+     * 创建增量事件
+     * 
+     * @param model 模型名称
+     * @param content 增量内容
+     * @return 增量事件
+     */
+    public static CompareEvent delta(String model, String content) {
+        CompareEvent event = new CompareEvent();
+        event.type = "delta";
+        event.model = model;
+        event.content = content;
+        return event;
+    }
+    
+    /**
+     * 创建模型结束事件
+     * 
+     * @param model 模型名称
+     * @param ttftMillis 首个增量耗时（毫秒），没有收到增量时为null
+     * @param totalMillis 总耗时（毫秒）
+     * @param chars 输出字符数
+     * @param error 错误信息，成功时为null
+     * @return 结束事件
+     */
+    public static CompareEvent done(String model, Long ttftMillis, Long totalMillis, Long chars, String error) {
+        CompareEvent event = new CompareEvent();
+        event.type = "done";
+        event.model = model;
+        event.ttftMillis = ttftMillis;
+        event.totalMillis = totalMillis;
+        event.chars = chars;
+        event.error = error;
+        return event;
+    }
+    
+    /**
+     * 创建汇总事件
+     * 
+     * @param results 各模型的结束事件
+     * @param totalMillis 整个对比的总耗时（毫秒）
+     * @return 汇总事件
+     */
+    public static CompareEvent summary(List<CompareEvent> results, Long totalMillis) {
+        CompareEvent event = new CompareEvent();
+        event.type = "summary";
+        event.results = results;
+        event.totalMillis = totalMillis;
+        return event;
+    }
+    
+    /**
+     * 创建参数错误事件
+     * 
+     * @param error 错误信息
+     * @return 错误事件
+     */
+    public static CompareEvent error(String error) {
+        CompareEvent event = new CompareEvent();
+        event.type = "error";
+        event.error = error;
+        return event;
+    }
+    
+    /**
+     * 获取事件类型
+     * 
+     * @return 事件类型
+     */
+    public String getType() {
+        return type;
+    }
+    
+    /**
+     * 设置事件类型
+     * 
+     * @param type 事件类型
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * 获取模型名称
+     * 
+     * @return 模型名称
+     */
+    public String getModel() {
+        return model;
+    }
+    
+    /**
+     * 设置模型名称
+     * 
+     * @param model 模型名称
+     */
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    /**
+     * 获取增量内容
+     * 
+     * @return 增量内容
+     */
+    public String getContent() {
+        return content;
+    }
+    
+    /**
+     * 设置增量内容
+     * 
+     * @param content 增量内容
+     */
+    public void setContent(String content) {
+        this.content = content;
+    }
+    
+    /**
+     * 获取错误信息
+     * 
+     * @return 错误信息
+     */
+    public String getError() {
+        return error;
+    }
+    
+    /**
+     * 设置错误信息
+     * 
+     * @param error 错误信息
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    /**
+     * 获取首个增量耗时
+     * 
+     * @return 首个增量耗时（毫秒）
+     */
+    public Long getTtftMillis() {
+        return ttftMillis;
+    }
+    
+    /**
+     * 设置首个增量耗时
+     * 
+     * @param ttftMillis 首个增量耗时（毫秒）
+     */
+    public void setTtftMillis(Long ttftMillis) {
+        this.ttftMillis = ttftMillis;
+    }
+    
+    /**
+     * 获取总耗时
+     * 
+     * @return 总耗时（毫秒）
+     */
+    public Long getTotalMillis() {
+        return totalMillis;
+    }
+    
+    /**
+     * 设置总耗时
+     * 
+     * @param totalMillis 总耗时（毫秒）
+     */
+    public void setTotalMillis(Long totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+    
+    /**
+     * 获取输出字符数
+     * 
+     * @return 输出字符数
+     */
+    public Long getChars() {
+        return chars;
+    }
+    
+    /**
+     * 设置输出字符数
+     * 
+     * @param chars 输出字符数
+     */
+    public void setChars(Long chars) {
+        this.chars = chars;
+    }
+    
+    /**
+     * 获取各模型的结束事件
+     * 
+     * @return 结束事件列表
+     */
+    public List<CompareEvent> getResults() {
+        return results;
+    }
+    
+    /**
+     * 设置各模型的结束事件
+     * 
+     * @param results 结束事件列表
+     */
+    public void setResults(List<CompareEvent> results) {
+        this.results = results;
+    }
+    
+    /**
+     * 获取事件时间戳
+     * 
+     * @return 事件时间戳
+     */
+    public Long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * 设置事件时间戳
+     * 
+     * @param timestamp 事件时间戳
+     */
+    public void setTimestamp(Long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package com.nyx.springAIDemo20250715.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 资料检索结果数据传输对象
+ * 
+ * 用于封装一条向量检索命中的资料，包含资料键、来源、相似度和正文
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class PassageHit {
+    
+    /** 资料键 */
+    @JsonProperty("key")
+    private Long key;
+    
+    /** 资料来源 */
+    @JsonProperty("source")
+    private String source;
+    
+    /** 与查询的余弦相似度 */
+    @JsonProperty("score")
+    private Double score;
+    
+    /** 资料正文 */
+    @JsonProperty("text")
+    private String text;
+    
+    /**
+     * 默认构造函数
+     */
+    public PassageHit() {}
+    
+    /**
+     * 带参数的构造函数
+     * 
+     * @param key 资料键
+     * @param source 资料来源
+     * @param score 相似度
+     * @param text 资料正文
+     */
+    public PassageHit(Long key, String source, Double score, String text) {
+        this.key = key;
+        this.source = source;
+        this.score = score;
+        this.text = text;
+    }
+    
+    /**
+     * 获取资料键
+     * 
+     * @return 资料键
+     */
+    public Long getKey() {
+        return key;
+    }
+    
+    /**
+     * 设置资料键
+     * 
+     * @param key 资料键
+     */
+    public void setKey(Long key) {
+        this.key = key;
+    }
+    
+    /**
+     * 获取资料来源
+     * 
+     * @return 资料来源
+     */
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * 设置资料来源
+     * 
+     * @param source 资料来源
+     */
+    public void setSource(String source) {
+        this.source = source;
+    }
+    
+    /**
+     * 获取相似度
+     * 
+     * @return 相似度
+     */
+    public Double getScore() {
+        return score;
+    }
+    
+    /**
+     * 设置相似度
+     * 
+     * @param score 相似度
+     */
+    public void setScore(Double score) {
+        this.score = score;
+    }
+    
+    /**
+     * 获取资料正文
+     * 
+     * @return 资料正文
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * 设置资料正文
+     * 
+     * @param text 资料正文
+     */
+    public void setText(String text) {
+        this.text = text;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+package com.nyx.springAIDemo20250715.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Token用量统计数据传输对象
+ * 
+ * 用于封装一个模型、API密钥和客户端组合的累计请求数和token用量，
+ * API密钥只保留首尾几位用于区分
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class UsageStat {
+    
+    /** 模型名称 */
+    @JsonProperty("model")
+    private String model;
+    
+    /** 脱敏后的API密钥 */
+    @JsonProperty("apiKey")
+    private String apiKey;
+    
+    /** 客户端标识 */
+    @JsonProperty("client")
+    private String client;
+    
+    /** 上游请求数 */
+    @JsonProperty("requests")
+    private Long requests;
+    
+    /** 输入token数 */
+    @JsonProperty("inputTokens")
+    private Long inputTokens;
+    
+    /** 输出token数 */
+    @JsonProperty("outputTokens")
+    private Long outputTokens;
+    
+    /**
+     * 默认构造函数
+     */
+    public UsageStat() {}
+    
+    /**
+     * 带参数的构造函数
+     * 
+     * @param model 模型名称
+     * @param apiKey 脱敏后的API密钥
+     * @param client 客户端标识
+     * @param requests 上游请求数
+     * @param inputTokens 输入token数
+     * @param outputTokens 输出token数
+     */
+    public UsageStat(String model, String apiKey, String client, Long requests, Long inputTokens, Long outputTokens) {
+        this.model = model;
+        this.apiKey = apiKey;
+        this.client = client;
+        this.requests = requests;
+        this.inputTokens = inputTokens;
+        this.outputTokens = outputTokens;
+    }
+    
+    /**
+     * 获取模型名称
+     * 
+     * @return 模型名称
+     */
+    public String getModel() {
+        return model;
+    }
+    
+    /**
+     * 设置模型名称
+     * 
+     * @param model 模型名称
+     */
+    public void setModel(String model) {
+        this.model = model;
+    }
+    
+    /**
+     * 获取脱敏后的API密钥
+     * 
+     * @return 脱敏后的API密钥
+     */
+    public String getApiKey() {
+        return apiKey;
+    }
+    
+    /**
+     * 设置脱敏后的API密钥
+     * 
+     * @param apiKey 脱敏后的API密钥
+     */
+    public void setApiKey(String apiKey) {
+        this.apiKey = apiKey;
+    }
+    
+    /**
+     * 获取客户端标识
+     * 
+     * @return 客户端标识
+     */
+    public String getClient() {
+        return client;
+    }
+    
+    /**
+     * 设置客户端标识
+     * 
+     * @param client 客户端标识
+     */
+    public void setClient(String client) {
+        this.client = client;
+    }
+    
+    /**
+     * 获取上游请求数
+     * 
+     * @return 上游请求数
+     */
+    public Long getRequests() {
+        return requests;
+    }
+    
+    /**
+     * 设置上游请求数
+     * 
+     * @param requests 上游请求数
+     */
+    public void setRequests(Long requests) {
+        this.requests = requests;
+    }
+    
+    /**
+     * 获取输入token数
+     * 
+     * @return 输入token数
+     */
+    public Long getInputTokens() {
+        return inputTokens;
+    }
+    
+    /**
+     * 设置输入token数
+     * 
+     * @param inputTokens 输入token数
+     */
+    public void setInputTokens(Long inputTokens) {
+        this.inputTokens = inputTokens;
+    }
+    
+    /**
+     * 获取输出token数
+     * 
+     * @return 输出token数
+     */
+    public Long getOutputTokens() {
+        return outputTokens;
+    }
+    
+    /**
+     * 设置输出token数
+     * 
+     * @param outputTokens 输出token数
+     */
+    public void setOutputTokens(Long outputTokens) {
+        this.outputTokens = outputTokens;
+    }
+}
\ No newline at end of file
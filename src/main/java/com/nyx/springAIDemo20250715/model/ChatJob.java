@@ -0,0 +1,174 @@
+package com.nyx.springAIDemo20250715.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 异步聊天任务模型类
+ * 
+ * 表示一次在后台执行的长文本生成任务，记录任务状态、时间信息，
+ * 以及该任务在结果段文件中各条增量记录的位置（用于顺序读取结果）。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class ChatJob {
+    
+    /**
+     * 任务状态枚举
+     */
+    public enum Status {
+        /** 已提交，等待工作线程执行 */
+        QUEUED,
+        /** 正在生成 */
+        RUNNING,
+        /** 生成完成 */
+        SUCCEEDED,
+        /** 生成失败 */
+        FAILED,
+        /** 被用户取消 */
+        CANCELLED;
+        
+        /**
+         * 判断是否为终止状态
+         * 
+         * @return 终止状态返回true，否则返回false
+         */
+        public boolean isTerminal() {
+            return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+        }
+    }
+    
+    /** 任务ID */
+    private final String id;
+    
+    /** 任务状态 */
+    private volatile Status status = Status.QUEUED;
+    
+    /** 创建时间戳 */
+    private final long createdAt;
+    
+    /** 结束时间戳，未结束时为null */
+    private volatile Long finishedAt;
+    
+    /** 错误信息 */
+    private volatile String error;
+    
+    /** 增量记录位置列表，每个元素为编码后的段号与偏移量 */
+    private final List<Long> deltaPositions = new ArrayList<>();
+    
+    /**
+     * 带参数的构造函数
+     * 
+     * @param id 任务ID
+     * @param createdAt 创建时间戳
+     */
+    public ChatJob(String id, long createdAt) {
+        this.id = id;
+        this.createdAt = createdAt;
+    }
+    
+    /**
+     * 获取任务ID
+     * 
+     * @return 任务ID
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * 获取任务状态
+     * 
+     * @return 任务状态
+     */
+    public Status getStatus() {
+        return status;
+    }
+    
+    /**
+     * 设置任务状态
+     * 
+     * @param status 任务状态
+     */
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+    
+    /**
+     * 获取创建时间戳
+     * 
+     * @return 创建时间戳
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    /**
+     * 获取结束时间戳
+     * 
+     * @return 结束时间戳，未结束时为null
+     */
+    public Long getFinishedAt() {
+        return finishedAt;
+    }
+    
+    /**
+     * 设置结束时间戳
+     * 
+     * @param finishedAt 结束时间戳
+     */
+    public void setFinishedAt(Long finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+    
+    /**
+     * 获取错误信息
+     * 
+     * @return 错误信息
+     */
+    public String getError() {
+        return error;
+    }
+    
+    /**
+     * 设置错误信息
+     * 
+     * @param error 错误信息
+     */
+    public void setError(String error) {
+        this.error = error;
+    }
+    
+    /**
+     * 追加一条增量记录位置
+     * 
+     * @param position 编码后的记录位置
+     */
+    public synchronized void addDeltaPosition(long position) {
+        deltaPositions.add(position);
+    }
+    
+    /**
+     * 获取从指定序号开始的增量记录位置快照
+     * 
+     * @param fromIndex 起始序号（包含）
+     * @return 增量记录位置列表副本
+     */
+    public synchronized List<Long> getDeltaPositions(int fromIndex) {
+        if (fromIndex >= deltaPositions.size()) {
+            return List.of();
+        }
+        return new ArrayList<>(deltaPositions.subList(fromIndex, deltaPositions.size()));
+    }
+    
+    /**
+     * 获取已写入的增量记录数量
+     * 
+     * @return 增量记录数量
+     */
+    public synchronized int getDeltaCount() {
+        return deltaPositions.size();
+    }
+}
\ No newline at end of file
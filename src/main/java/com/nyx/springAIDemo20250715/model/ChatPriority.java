@@ -0,0 +1,41 @@
+package com.nyx.springAIDemo20250715.model;
+
+import java.util.Locale;
+
+/**
+ * 聊天请求优先级
+ * 
+ * 决定请求在上游并发调度中所在的通道：
+ * - INTERACTIVE：用户正在等待的交互式对话
+ * - BULK：异步任务等后台批量请求，交互式请求增多时让出排队位置
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public enum ChatPriority {
+    
+    /** 交互式请求 */
+    INTERACTIVE,
+    
+    /** 后台批量请求 */
+    BULK;
+    
+    /**
+     * 解析优先级
+     * 
+     * @param value 优先级文本（interactive或bulk，不区分大小写）
+     * @param defaultPriority 文本为空或无法识别时使用的默认值
+     * @return 优先级
+     */
+    public static ChatPriority parse(String value, ChatPriority defaultPriority) {
+        if (value == null || value.isBlank()) {
+            return defaultPriority;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return defaultPriority;
+        }
+    }
+}
\ No newline at end of file
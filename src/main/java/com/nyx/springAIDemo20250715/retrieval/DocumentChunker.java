@@ -0,0 +1,180 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文档分块
+ * 
+ * 把文档切分为不超过token上限的资料块，切分结果只取决于文本本身：
+ * - 先按空行切分为段落，代码块（``` 围起的部分）内的空行不切分
+ * - 超过上限的段落在句末标点处切开，找不到句末标点时按上限硬切
+ * - 段落按顺序合并为块：遇到标题（# 开头）、或加入下一段会超过上限时结束当前块；
+ *   此外当前块达到上限的1/4后，遇到内容哈希满足条件的段落也结束当前块
+ * 
+ * 最后一条规则让块边界由段落内容决定而不是由位置决定：文档中间插入或删除一段，
+ * 只影响附近的一两个块，之后的块边界与修改前一致，增量导入时可以按内容哈希跳过。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class DocumentChunker {
+    
+    /** 句末标点 */
+    private static final String SENTENCE_ENDS = "。！？；.!?;\n";
+    
+    /** 内容决定的块边界的平均间隔（段落数，2的幂） */
+    private static final int ANCHOR_INTERVAL = 4;
+    
+    /**
+     * 私有构造函数，工具类不允许实例化
+     */
+    private DocumentChunker() {
+    }
+    
+    /**
+     * 切分文档
+     * 
+     * @param text 文档正文
+     * @param maxTokens 每块的token上限
+     * @return 按文档顺序排列的资料块，不含空块
+     */
+    static List<String> split(String text, int maxTokens) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+        for (String paragraph : paragraphs(text)) {
+            for (String piece : pieces(paragraph, maxTokens)) {
+                int tokens = TokenEstimator.estimate(piece);
+                if (current.length() > 0 && (piece.startsWith("#") || currentTokens + tokens > maxTokens)) {
+                    chunks.add(current.toString());
+                    current.setLength(0);
+                    currentTokens = 0;
+                }
+                if (current.length() > 0) {
+                    current.append("\n\n");
+                }
+                current.append(piece);
+                currentTokens += tokens;
+                if (currentTokens >= maxTokens / 4 && isAnchor(piece)) {
+                    chunks.add(current.toString());
+                    current.setLength(0);
+                    currentTokens = 0;
+                }
+            }
+        }
+        if (current.length() > 0) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+    
+    /**
+     * 计算资料块的内容哈希
+     * 
+     * @param chunk 资料块
+     * @return SHA-256的前8个字节
+     */
+    static long contentHash(String chunk) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(chunk.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JDK缺少SHA-256实现", e);
+        }
+    }
+    
+    /**
+     * 按空行切分段落，代码块内的空行不切分
+     * 
+     * @param text 文档正文
+     * @return 去掉首尾空白的非空段落
+     */
+    private static List<String> paragraphs(String text) {
+        List<String> paragraphs = new ArrayList<>();
+        StringBuilder paragraph = new StringBuilder();
+        boolean inFence = false;
+        for (String line : text.split("\r?\n", -1)) {
+            if (line.strip().startsWith("```")) {
+                inFence = !inFence;
+            }
+            if (line.isBlank() && !inFence) {
+                addParagraph(paragraphs, paragraph);
+                continue;
+            }
+            paragraph.append(line).append('\n');
+        }
+        addParagraph(paragraphs, paragraph);
+        return paragraphs;
+    }
+    
+    /**
+     * 把已收集的段落加入列表并清空缓冲
+     * 
+     * @param paragraphs 段落列表
+     * @param paragraph 段落缓冲
+     */
+    private static void addParagraph(List<String> paragraphs, StringBuilder paragraph) {
+        String stripped = paragraph.toString().strip();
+        if (!stripped.isEmpty()) {
+            paragraphs.add(stripped);
+        }
+        paragraph.setLength(0);
+    }
+    
+    /**
+     * 把超过上限的段落在句末切开
+     * 
+     * @param paragraph 段落
+     * @param maxTokens token上限
+     * @return 不超过上限的片段
+     */
+    private static List<String> pieces(String paragraph, int maxTokens) {
+        if (TokenEstimator.estimate(paragraph) <= maxTokens) {
+            return List.of(paragraph);
+        }
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        int length = paragraph.length();
+        while (start < length) {
+            int end = TokenEstimator.prefixEnd(paragraph, start, maxTokens);
+            if (end <= start) {
+                end = start + Character.charCount(paragraph.codePointAt(start));
+            }
+            if (end < length) {
+                // 在后半段中找最后一个句末标点
+                for (int i = end - 1; i > start + (end - start) / 2; i--) {
+                    if (SENTENCE_ENDS.indexOf(paragraph.charAt(i)) >= 0) {
+                        end = i + 1;
+                        break;
+                    }
+                }
+            }
+            String piece = paragraph.substring(start, end).strip();
+            if (!piece.isEmpty()) {
+                pieces.add(piece);
+            }
+            start = end;
+        }
+        return pieces;
+    }
+    
+    /**
+     * 判断段落之后是否为内容决定的块边界
+     * 
+     * @param piece 段落
+     * @return 是边界返回true
+     */
+    private static boolean isAnchor(String piece) {
+        int hash = piece.hashCode() * 0x9E3779B9;
+        return (hash >>> 30 & (ANCHOR_INTERVAL - 1)) == 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+/**
+ * 文本嵌入模型
+ * 
+ * 把文本映射为固定维度的向量，资料和查询使用同一个实现。
+ * 默认实现为HashingEmbedder；接入其他本地模型时实现该接口并注册为Bean，
+ * 同时把spring.ai.retrieval.embedder改为其他值以关闭默认实现。
+ * 更换模型或维度后，已有向量索引会在启动时按新模型重建。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public interface EmbeddingProvider {
+    
+    /**
+     * 模型名称，与维度一起用于判断已有索引是否由当前模型生成
+     * 
+     * @return 模型名称
+     */
+    String name();
+    
+    /**
+     * 向量维度
+     * 
+     * @return 维度
+     */
+    int dimension();
+    
+    /**
+     * 计算文本的嵌入向量
+     * 
+     * @param text 文本
+     * @return 长度为dimension()的向量，不要求已归一化
+     */
+    float[] embed(String text);
+}
\ No newline at end of file
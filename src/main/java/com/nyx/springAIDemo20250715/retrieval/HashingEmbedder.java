@@ -0,0 +1,84 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import com.nyx.springAIDemo20250715.config.RetrievalConfig;
+import com.nyx.springAIDemo20250715.search.BigramTokenizer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * 哈希嵌入模型
+ * 
+ * 不依赖外部服务的默认嵌入实现（feature hashing）：
+ * - 使用BigramTokenizer分词，中文按二元组、英文按单词
+ * - 每个词哈希到一个维度，并由哈希的另一部分决定取+1还是-1，减少哈希冲突带来的偏差
+ * - 同一个词重复出现时按1 + ln(词频)计权，避免长文本被高频词主导
+ * 
+ * 结果只取决于文本本身，同一文本在任何节点、任何时间得到相同的向量，适合离线测试；
+ * 相似度反映的是词面重合度，不理解同义词。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+@ConditionalOnProperty(prefix = "spring.ai.retrieval", name = "embedder", havingValue = "hashing", matchIfMissing = true)
+public class HashingEmbedder implements EmbeddingProvider {
+    
+    /** 向量维度 */
+    private final int dimension;
+    
+    /**
+     * 构造函数，从RetrievalConfig读取向量维度
+     * 
+     * @param retrievalConfig 检索增强配置对象
+     */
+    @Autowired
+    public HashingEmbedder(RetrievalConfig retrievalConfig) {
+        this.dimension = retrievalConfig.getDimension();
+    }
+    
+    @Override
+    public String name() {
+        return "hashing";
+    }
+    
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+    
+    @Override
+    public float[] embed(String text) {
+        float[] counts = new float[dimension];
+        float[] vector = new float[dimension];
+        for (String token : BigramTokenizer.tokenize(text)) {
+            int hash = mix(token.hashCode());
+            int index = Math.floorMod(hash, dimension);
+            counts[index] += hash < 0 ? -1f : 1f;
+        }
+        for (int i = 0; i < dimension; i++) {
+            float count = counts[i];
+            if (count != 0f) {
+                float weight = 1f + (float) Math.log(Math.abs(count));
+                vector[i] = count > 0 ? weight : -weight;
+            }
+        }
+        return vector;
+    }
+    
+    /**
+     * 打散String.hashCode的低位，使相近的词落到不同维度
+     * 
+     * @param hash 原始哈希
+     * @return 打散后的哈希
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,949 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于内存映射文件的HNSW向量图
+ * 
+ * 分层可导航小世界图（Hierarchical Navigable Small World）近似最近邻索引，
+ * 向量、节点表和邻接表全部保存在内存映射文件中，不占用Java堆：
+ * - index.meta：魔数、版本、维度、M、节点数、入口节点、最高层、已删除数、上层邻接表分配位置、向量来源标识、正在插入的节点
+ * - vectors.bin：节点i的向量位于 i * dimension 个float处
+ * - nodes.bin：每个节点24字节：[long 外部键][int 层数][int 标志][long 上层邻接表位置]
+ * - links0.bin：第0层邻接表，每个节点 1 + 2M 个int：[数量][邻居...]
+ * - links.bin：第1层及以上的邻接表，每层 1 + M 个int，按节点连续分配
+ * 
+ * 向量在写入前归一化，相似度为点积（即余弦相似度）。
+ * 插入互斥执行，查询之间可以并发；删除只打标记，被删除的节点仍参与图遍历但不出现在结果中。
+ * 节点数在节点完整写入后才更新。插入过程中已有节点会先写入指向新节点的反向边，
+ * 因此插入前在元数据中记录正在插入的节点；进程异常退出后重新打开时如果存在该记录，
+ * 删除所有指向未提交节点的边，避免它们指向下一次插入复用的编号。
+ * 邻居已满的节点为新节点替换掉的旧边无法恢复，只会略微降低该节点附近的召回率。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class HnswGraph implements AutoCloseable {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(HnswGraph.class);
+    
+    /** 文件魔数 */
+    private static final int MAGIC = 0x484E5357;
+    
+    /** 文件格式版本 */
+    private static final int VERSION = 1;
+    
+    /** 每个映射段容纳的节点数（2的幂） */
+    private static final int NODE_SHIFT = 16;
+    
+    /** 每个映射段容纳的节点数 */
+    private static final int NODES_PER_SEGMENT = 1 << NODE_SHIFT;
+    
+    /** 节点表每个节点的字节数 */
+    private static final int NODE_BYTES = 24;
+    
+    /** 上层邻接表每段的int数（2的幂） */
+    private static final int UPPER_SHIFT = 22;
+    
+    /** 节点层数上限 */
+    private static final int MAX_LEVEL = 15;
+    
+    /** 节点标志：已删除 */
+    private static final int FLAG_DELETED = 1;
+    
+    /** 元数据字段偏移 */
+    private static final int META_MAGIC = 0;
+    private static final int META_VERSION = 4;
+    private static final int META_DIMENSION = 8;
+    private static final int META_M = 12;
+    private static final int META_COUNT = 16;
+    private static final int META_ENTRY = 20;
+    private static final int META_MAX_LEVEL = 24;
+    private static final int META_DELETED = 28;
+    private static final int META_UPPER_TAIL = 32;
+    private static final int META_SIGNATURE = 40;
+    private static final int META_PENDING = 44;
+    
+    /** 向量维度 */
+    private final int dimension;
+    
+    /** 向量来源标识 */
+    private final int signature;
+    
+    /** 上层每个节点的最大邻居数，第0层为2M */
+    private final int m;
+    
+    /** 插入时的候选集大小 */
+    private final int efConstruction;
+    
+    /** 层数生成参数 1/ln(M) */
+    private final double levelMultiplier;
+    
+    /** 元数据 */
+    private final MappedRegion meta;
+    
+    /** 向量 */
+    private final MappedRegion vectors;
+    
+    /** 节点表 */
+    private final MappedRegion nodes;
+    
+    /** 第0层邻接表 */
+    private final MappedRegion links0;
+    
+    /** 上层邻接表 */
+    private final MappedRegion upperLinks;
+    
+    /** 插入与查询之间的读写锁 */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /** 每个线程复用的查询上下文 */
+    private final ThreadLocal<SearchContext> contexts;
+    
+    /** 节点数 */
+    private volatile int count;
+    
+    /** 入口节点 */
+    private int entryPoint;
+    
+    /** 最高层 */
+    private int maxLevel;
+    
+    /** 已删除节点数 */
+    private int deleted;
+    
+    /** 上层邻接表的下一个分配位置（int下标） */
+    private long upperTail;
+    
+    /**
+     * 打开或创建向量图，已有文件的维度、M或向量来源标识与参数不一致时清空
+     * 
+     * @param directory 文件目录
+     * @param dimension 向量维度
+     * @param m 上层最大邻居数
+     * @param efConstruction 插入时的候选集大小
+     * @param signature 向量来源标识（如嵌入模型名称的哈希），不同来源的向量不能混用
+     */
+    HnswGraph(Path directory, int dimension, int m, int efConstruction, int signature) {
+        this.dimension = dimension;
+        this.signature = signature;
+        this.m = m;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.levelMultiplier = 1.0 / Math.log(Math.max(m, 2));
+        this.meta = new MappedRegion(directory.resolve("index.meta"), 4096);
+        this.vectors = new MappedRegion(directory.resolve("vectors.bin"), NODES_PER_SEGMENT * dimension * Float.BYTES);
+        this.nodes = new MappedRegion(directory.resolve("nodes.bin"), NODES_PER_SEGMENT * NODE_BYTES);
+        this.links0 = new MappedRegion(directory.resolve("links0.bin"), NODES_PER_SEGMENT * (1 + 2 * m) * Integer.BYTES);
+        this.upperLinks = new MappedRegion(directory.resolve("links.bin"), (1 << UPPER_SHIFT) * Integer.BYTES);
+        this.contexts = ThreadLocal.withInitial(SearchContext::new);
+        
+        ByteBuffer header = meta.bytes(0);
+        if (header.getInt(META_MAGIC) == MAGIC && header.getInt(META_VERSION) == VERSION
+                && header.getInt(META_DIMENSION) == dimension && header.getInt(META_M) == m
+                && header.getInt(META_SIGNATURE) == signature) {
+            count = header.getInt(META_COUNT);
+            entryPoint = header.getInt(META_ENTRY);
+            maxLevel = header.getInt(META_MAX_LEVEL);
+            deleted = header.getInt(META_DELETED);
+            upperTail = header.getLong(META_UPPER_TAIL);
+            if (header.getInt(META_PENDING) != 0) {
+                dropUncommittedLinks();
+            }
+        } else {
+            clear();
+        }
+    }
+    
+    /**
+     * 节点总数（含已删除）
+     * 
+     * @return 节点数
+     */
+    int size() {
+        return count;
+    }
+    
+    /**
+     * 未删除的节点数
+     * 
+     * @return 节点数
+     */
+    int liveSize() {
+        lock.readLock().lock();
+        try {
+            return count - deleted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 向量维度
+     * 
+     * @return 维度
+     */
+    int dimension() {
+        return dimension;
+    }
+    
+    /**
+     * 插入向量
+     * 
+     * @param key 外部键，随查询结果返回
+     * @param vector 已归一化的向量
+     * @return 节点编号
+     */
+    int add(long key, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: " + vector.length + " != " + dimension);
+        }
+        lock.writeLock().lock();
+        try {
+            int node = count;
+            int level = randomLevel();
+            writeVector(node, vector);
+            ByteBuffer nodeTable = nodes.bytes(node >>> NODE_SHIFT);
+            int nodeOffset = (node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES;
+            nodeTable.putLong(nodeOffset, key);
+            nodeTable.putInt(nodeOffset + 8, level);
+            nodeTable.putInt(nodeOffset + 12, 0);
+            nodeTable.putLong(nodeOffset + 16, level > 0 ? allocateUpper(level) : -1L);
+            for (int l = 0; l <= level; l++) {
+                linkBuffer(node, l).put(linkBase(node, l), 0);
+            }
+            
+            if (node == 0) {
+                entryPoint = 0;
+                maxLevel = level;
+                count = 1;
+                writeHeader();
+                return node;
+            }
+            
+            // 以下会修改已有节点的邻接表，先记录正在插入的节点，节点数更新后由writeHeader清除
+            meta.bytes(0).putInt(META_PENDING, node + 1);
+            SearchContext context = contexts.get();
+            int current = entryPoint;
+            float currentScore = similarity(vector, current);
+            for (int l = maxLevel; l > level; l--) {
+                int[] best = greedy(vector, current, currentScore, l, context);
+                current = best[0];
+                currentScore = Float.intBitsToFloat(best[1]);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                ScoreHeap candidates = searchLayer(vector, current, currentScore, efConstruction, l, context);
+                int size = candidates.size();
+                int[] ids = new int[size];
+                float[] scores = new float[size];
+                // 结果堆是最小堆，倒序取出得到按相似度降序的候选
+                for (int i = size - 1; i >= 0; i--) {
+                    scores[i] = candidates.peekScore();
+                    ids[i] = candidates.pop();
+                }
+                int[] selected = selectNeighbors(ids, scores, size, m, context);
+                writeLinks(node, l, selected, selected.length);
+                int maxConnections = l == 0 ? 2 * m : m;
+                for (int neighbor : selected) {
+                    connect(neighbor, node, l, maxConnections, context);
+                }
+                current = ids[0];
+                currentScore = scores[0];
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            count = node + 1;
+            writeHeader();
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 标记节点为已删除
+     * 
+     * @param node 节点编号
+     * @return 节点原本未删除返回true
+     */
+    boolean delete(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node < 0 || node >= count) {
+                return false;
+            }
+            ByteBuffer nodeTable = nodes.bytes(node >>> NODE_SHIFT);
+            int flagsOffset = (node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES + 12;
+            int flags = nodeTable.getInt(flagsOffset);
+            if ((flags & FLAG_DELETED) != 0) {
+                return false;
+            }
+            nodeTable.putInt(flagsOffset, flags | FLAG_DELETED);
+            deleted++;
+            writeHeader();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 按外部键查找节点，要求外部键按插入顺序递增
+     * 
+     * @param key 外部键
+     * @return 节点编号，不存在时返回-1
+     */
+    int find(long key) {
+        lock.readLock().lock();
+        try {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleKey = key(middle);
+                if (middleKey < key) {
+                    low = middle + 1;
+                } else if (middleKey > key) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 最后插入的节点的外部键
+     * 
+     * @return 外部键，索引为空时返回-1
+     */
+    long lastKey() {
+        lock.readLock().lock();
+        try {
+            return count == 0 ? -1L : key(count - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 查询最相似的k个未删除节点
+     * 
+     * @param query 已归一化的查询向量
+     * @param k 返回数量
+     * @param ef 第0层候选集大小，越大召回率越高、耗时越长
+     * @return 按相似度降序排列的结果
+     */
+    List<Hit> search(float[] query, int k, int ef) {
+        if (query.length != dimension) {
+            throw new IllegalArgumentException("向量维度不匹配: " + query.length + " != " + dimension);
+        }
+        lock.readLock().lock();
+        try {
+            if (count == 0 || k <= 0) {
+                return List.of();
+            }
+            SearchContext context = contexts.get();
+            int current = entryPoint;
+            float currentScore = similarity(query, current);
+            for (int l = maxLevel; l > 0; l--) {
+                int[] best = greedy(query, current, currentScore, l, context);
+                current = best[0];
+                currentScore = Float.intBitsToFloat(best[1]);
+            }
+            ScoreHeap results = searchLayer(query, current, currentScore, Math.max(ef, k), 0, context);
+            int size = results.size();
+            int[] ids = new int[size];
+            float[] scores = new float[size];
+            for (int i = size - 1; i >= 0; i--) {
+                scores[i] = results.peekScore();
+                ids[i] = results.pop();
+            }
+            List<Hit> hits = new ArrayList<>(Math.min(k, size));
+            for (int i = 0; i < size && hits.size() < k; i++) {
+                int node = ids[i];
+                ByteBuffer nodeTable = nodes.bytes(node >>> NODE_SHIFT);
+                int nodeOffset = (node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES;
+                if ((nodeTable.getInt(nodeOffset + 12) & FLAG_DELETED) == 0) {
+                    hits.add(new Hit(node, nodeTable.getLong(nodeOffset), scores[i]));
+                }
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 将修改刷入磁盘
+     */
+    void force() {
+        lock.readLock().lock();
+        try {
+            meta.force();
+            vectors.force();
+            nodes.force();
+            links0.force();
+            upperLinks.force();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 清空索引
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            vectors.truncate();
+            nodes.truncate();
+            links0.truncate();
+            upperLinks.truncate();
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            meta.close();
+            vectors.close();
+            nodes.close();
+            links0.close();
+            upperLinks.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 读取节点的外部键
+     * 
+     * @param node 节点
+     * @return 外部键
+     */
+    private long key(int node) {
+        return nodes.bytes(node >>> NODE_SHIFT).getLong((node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES);
+    }
+    
+    /**
+     * 在指定层上贪心移动到与查询最相似的节点
+     * 
+     * @param query 查询向量
+     * @param start 起始节点
+     * @param startScore 起始节点的相似度
+     * @param level 层
+     * @param context 查询上下文
+     * @return [节点编号, 相似度的float位]
+     */
+    private int[] greedy(float[] query, int start, float startScore, int level, SearchContext context) {
+        int current = start;
+        float currentScore = startScore;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            IntBuffer links = linkBuffer(current, level);
+            int base = linkBase(current, level);
+            int size = links.get(base);
+            for (int i = 1; i <= size; i++) {
+                int neighbor = links.get(base + i);
+                float score = similarity(query, neighbor);
+                if (score > currentScore) {
+                    currentScore = score;
+                    current = neighbor;
+                    changed = true;
+                }
+            }
+        }
+        return new int[] {current, Float.floatToRawIntBits(currentScore)};
+    }
+    
+    /**
+     * 在指定层上做束搜索
+     * 
+     * @param query 查询向量
+     * @param entry 入口节点
+     * @param entryScore 入口节点的相似度
+     * @param ef 候选集大小
+     * @param level 层
+     * @param context 查询上下文
+     * @return 结果最小堆（堆顶为结果中相似度最低者），最多ef个
+     */
+    private ScoreHeap searchLayer(float[] query, int entry, float entryScore, int ef, int level, SearchContext context) {
+        context.beginVisit(count);
+        ScoreHeap candidates = context.candidates;
+        ScoreHeap results = context.results;
+        candidates.clear();
+        results.clear();
+        context.visit(entry);
+        candidates.push(entry, entryScore);
+        results.push(entry, entryScore);
+        
+        while (candidates.size() > 0) {
+            float candidateScore = candidates.peekScore();
+            if (results.size() >= ef && candidateScore < results.peekScore()) {
+                break;
+            }
+            int candidate = candidates.pop();
+            IntBuffer links = linkBuffer(candidate, level);
+            int base = linkBase(candidate, level);
+            int size = links.get(base);
+            for (int i = 1; i <= size; i++) {
+                int neighbor = links.get(base + i);
+                if (!context.visit(neighbor)) {
+                    continue;
+                }
+                float score = similarity(query, neighbor);
+                if (results.size() < ef || score > results.peekScore()) {
+                    candidates.push(neighbor, score);
+                    results.push(neighbor, score);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 启发式选择邻居：候选按相似度降序依次考察，只保留比已选邻居更接近基准点的候选，
+     * 使邻居分布在不同方向上，保持图的连通性
+     * 
+     * @param ids 按相似度降序排列的候选
+     * @param scores 候选与基准点的相似度
+     * @param size 候选数
+     * @param limit 最多选择的邻居数
+     * @param context 查询上下文
+     * @return 选中的邻居
+     */
+    private int[] selectNeighbors(int[] ids, float[] scores, int size, int limit, SearchContext context) {
+        int[] selected = new int[Math.min(size, limit)];
+        int selectedCount = 0;
+        float[] candidateVector = context.candidateVector;
+        for (int i = 0; i < size && selectedCount < limit; i++) {
+            readVector(ids[i], candidateVector);
+            boolean keep = true;
+            for (int j = 0; j < selectedCount; j++) {
+                if (similarity(candidateVector, selected[j]) > scores[i]) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[selectedCount++] = ids[i];
+            }
+        }
+        return selectedCount == selected.length ? selected : Arrays.copyOf(selected, selectedCount);
+    }
+    
+    /**
+     * 为已有节点添加一条指向新节点的边，邻居已满时重新选择
+     * 
+     * @param node 已有节点
+     * @param newNeighbor 新节点
+     * @param level 层
+     * @param maxConnections 该层最大邻居数
+     * @param context 查询上下文
+     */
+    private void connect(int node, int newNeighbor, int level, int maxConnections, SearchContext context) {
+        IntBuffer links = linkBuffer(node, level);
+        int base = linkBase(node, level);
+        int size = links.get(base);
+        if (size < maxConnections) {
+            links.put(base + 1 + size, newNeighbor);
+            links.put(base, size + 1);
+            return;
+        }
+        
+        float[] nodeVector = context.nodeVector;
+        readVector(node, nodeVector);
+        int total = size + 1;
+        int[] ids = new int[total];
+        float[] scores = new float[total];
+        for (int i = 0; i < size; i++) {
+            ids[i] = links.get(base + 1 + i);
+        }
+        ids[size] = newNeighbor;
+        for (int i = 0; i < total; i++) {
+            scores[i] = similarity(nodeVector, ids[i]);
+        }
+        sortDescending(ids, scores, total);
+        int[] selected = selectNeighbors(ids, scores, total, maxConnections, context);
+        writeLinks(node, level, selected, selected.length);
+    }
+    
+    /**
+     * 写入节点在某层的邻居
+     * 
+     * @param node 节点
+     * @param level 层
+     * @param neighbors 邻居
+     * @param size 邻居数
+     */
+    private void writeLinks(int node, int level, int[] neighbors, int size) {
+        IntBuffer links = linkBuffer(node, level);
+        int base = linkBase(node, level);
+        for (int i = 0; i < size; i++) {
+            links.put(base + 1 + i, neighbors[i]);
+        }
+        links.put(base, size);
+    }
+    
+    /**
+     * 节点某层邻接表所在的缓冲区
+     * 
+     * @param node 节点
+     * @param level 层
+     * @return int缓冲区
+     */
+    private IntBuffer linkBuffer(int node, int level) {
+        if (level == 0) {
+            return links0.ints(node >>> NODE_SHIFT);
+        }
+        return upperLinks.ints((int) (upperOffset(node, level) >>> UPPER_SHIFT));
+    }
+    
+    /**
+     * 节点某层邻接表在缓冲区中的起始下标
+     * 
+     * @param node 节点
+     * @param level 层
+     * @return int下标
+     */
+    private int linkBase(int node, int level) {
+        if (level == 0) {
+            return (node & (NODES_PER_SEGMENT - 1)) * (1 + 2 * m);
+        }
+        return (int) (upperOffset(node, level) & ((1 << UPPER_SHIFT) - 1));
+    }
+    
+    /**
+     * 节点第level层（level &gt;= 1）邻接表的全局int位置
+     * 
+     * @param node 节点
+     * @param level 层
+     * @return 全局int位置
+     */
+    private long upperOffset(int node, int level) {
+        ByteBuffer nodeTable = nodes.bytes(node >>> NODE_SHIFT);
+        long start = nodeTable.getLong((node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES + 16);
+        return start + (long) (level - 1) * (1 + m);
+    }
+    
+    /**
+     * 为新节点分配上层邻接表，同一节点的各层位于同一段内
+     * 
+     * @param level 节点层数
+     * @return 全局int位置
+     */
+    private long allocateUpper(int level) {
+        int length = level * (1 + m);
+        long segmentInts = 1L << UPPER_SHIFT;
+        if ((upperTail & (segmentInts - 1)) + length > segmentInts) {
+            upperTail = (upperTail + segmentInts) & ~(segmentInts - 1);
+        }
+        long offset = upperTail;
+        upperTail += length;
+        return offset;
+    }
+    
+    /**
+     * 计算查询向量与节点向量的相似度，直接读取映射内存，不复制节点向量
+     * 
+     * @param query 查询向量
+     * @param node 节点
+     * @return 点积相似度
+     */
+    private float similarity(float[] query, int node) {
+        return VectorOps.dot(query, vectors.bytes(node >>> NODE_SHIFT), (node & (NODES_PER_SEGMENT - 1)) * dimension * Float.BYTES);
+    }
+    
+    /**
+     * 从映射文件读取节点向量
+     * 
+     * @param node 节点
+     * @param target 目标数组
+     */
+    private void readVector(int node, float[] target) {
+        vectors.floats(node >>> NODE_SHIFT).get((node & (NODES_PER_SEGMENT - 1)) * dimension, target, 0, dimension);
+    }
+    
+    /**
+     * 写入节点向量
+     * 
+     * @param node 节点
+     * @param vector 向量
+     */
+    private void writeVector(int node, float[] vector) {
+        vectors.floats(node >>> NODE_SHIFT).put((node & (NODES_PER_SEGMENT - 1)) * dimension, vector, 0, dimension);
+    }
+    
+    /**
+     * 随机生成新节点的层数，第l层的节点数约为第0层的 M^-l
+     * 
+     * @return 层数
+     */
+    private int randomLevel() {
+        double random = ThreadLocalRandom.current().nextDouble();
+        return Math.min(MAX_LEVEL, (int) (-Math.log(1.0 - random) * levelMultiplier));
+    }
+    
+    /**
+     * 重置为空索引并写入元数据
+     */
+    private void reset() {
+        count = 0;
+        entryPoint = 0;
+        maxLevel = 0;
+        deleted = 0;
+        upperTail = 0;
+        ByteBuffer header = meta.bytes(0);
+        header.putInt(META_MAGIC, MAGIC);
+        header.putInt(META_VERSION, VERSION);
+        header.putInt(META_DIMENSION, dimension);
+        header.putInt(META_M, m);
+        header.putInt(META_SIGNATURE, signature);
+        writeHeader();
+    }
+    
+    /**
+     * 写入可变的元数据字段，节点数写入后再清除正在插入的节点
+     */
+    private void writeHeader() {
+        ByteBuffer header = meta.bytes(0);
+        header.putInt(META_ENTRY, entryPoint);
+        header.putInt(META_MAX_LEVEL, maxLevel);
+        header.putInt(META_DELETED, deleted);
+        header.putLong(META_UPPER_TAIL, upperTail);
+        header.putInt(META_COUNT, count);
+        header.putInt(META_PENDING, 0);
+    }
+    
+    /**
+     * 删除已有节点中指向未提交节点（编号不小于节点数）的边
+     * 
+     * 只在上次插入未完成时调用，需要遍历所有节点的邻接表
+     */
+    private void dropUncommittedLinks() {
+        int removed = 0;
+        for (int node = 0; node < count; node++) {
+            int level = nodes.bytes(node >>> NODE_SHIFT).getInt((node & (NODES_PER_SEGMENT - 1)) * NODE_BYTES + 8);
+            for (int l = 0; l <= level; l++) {
+                IntBuffer links = linkBuffer(node, l);
+                int base = linkBase(node, l);
+                int size = links.get(base);
+                int kept = 0;
+                for (int i = 1; i <= size; i++) {
+                    int neighbor = links.get(base + i);
+                    if (neighbor < count) {
+                        links.put(base + 1 + kept++, neighbor);
+                    }
+                }
+                links.put(base, kept);
+                removed += size - kept;
+            }
+        }
+        writeHeader();
+        logger.warn("向量索引上次插入未完成，已删除指向未提交节点的边 - 节点数: {}, 删除边数: {}", count, removed);
+    }
+    
+    /**
+     * 按相似度降序排序（插入排序，数组长度不超过2M+1）
+     * 
+     * @param ids 节点
+     * @param scores 相似度
+     * @param size 元素个数
+     */
+    private static void sortDescending(int[] ids, float[] scores, int size) {
+        for (int i = 1; i < size; i++) {
+            int id = ids[i];
+            float score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                ids[j + 1] = ids[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            scores[j + 1] = score;
+        }
+    }
+    
+    /**
+     * 查询结果
+     * 
+     * @param node 节点编号
+     * @param key 外部键
+     * @param score 相似度
+     */
+    record Hit(int node, long key, float score) {
+    }
+    
+    /**
+     * 每个线程复用的查询状态，避免每次查询分配数组
+     */
+    private final class SearchContext {
+        
+        /** 选择邻居时的候选向量 */
+        private final float[] candidateVector = new float[dimension];
+        
+        /** 重新选择邻居时的基准节点向量 */
+        private final float[] nodeVector = new float[dimension];
+        
+        /** 候选队列（最大堆） */
+        private final ScoreHeap candidates = new ScoreHeap(true);
+        
+        /** 结果集（最小堆） */
+        private final ScoreHeap results = new ScoreHeap(false);
+        
+        /** 访问标记，值等于当前代数表示本轮已访问 */
+        private int[] visited = new int[0];
+        
+        /** 当前代数，每轮搜索加一，避免清空访问标记 */
+        private int generation;
+        
+        /**
+         * 开始新一轮搜索
+         * 
+         * @param nodeCount 当前节点数
+         */
+        private void beginVisit(int nodeCount) {
+            if (visited.length < nodeCount + 1) {
+                visited = new int[Math.max(nodeCount + 1, visited.length * 2)];
+                generation = 0;
+            }
+            generation++;
+            if (generation == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                generation = 1;
+            }
+        }
+        
+        /**
+         * 标记节点已访问
+         * 
+         * @param node 节点
+         * @return 本轮首次访问返回true
+         */
+        private boolean visit(int node) {
+            if (visited[node] == generation) {
+                return false;
+            }
+            visited[node] = generation;
+            return true;
+        }
+    }
+    
+    /**
+     * 以相似度为键的二叉堆，保存节点编号
+     */
+    private static final class ScoreHeap {
+        
+        /** true为最大堆，false为最小堆 */
+        private final boolean max;
+        
+        /** 节点编号 */
+        private int[] ids = new int[64];
+        
+        /** 相似度 */
+        private float[] scores = new float[64];
+        
+        /** 元素个数 */
+        private int size;
+        
+        private ScoreHeap(boolean max) {
+            this.max = max;
+        }
+        
+        private int size() {
+            return size;
+        }
+        
+        private void clear() {
+            size = 0;
+        }
+        
+        private float peekScore() {
+            return scores[0];
+        }
+        
+        private void push(int id, float score) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                scores = Arrays.copyOf(scores, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(score, scores[parent])) {
+                    break;
+                }
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        }
+        
+        private int pop() {
+            int top = ids[0];
+            size--;
+            if (size > 0) {
+                int id = ids[size];
+                float score = scores[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(scores[child + 1], scores[child])) {
+                        child++;
+                    }
+                    if (!before(scores[child], score)) {
+                        break;
+                    }
+                    ids[i] = ids[child];
+                    scores[i] = scores[child];
+                    i = child;
+                }
+                ids[i] = id;
+                scores[i] = score;
+            }
+            return top;
+        }
+        
+        /**
+         * 判断a是否应排在b之前
+         * 
+         * @param a 相似度a
+         * @param b 相似度b
+         * @return 最大堆中a更大、最小堆中a更小时返回true
+         */
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,348 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * 文档导入清单
+ * 
+ * 记录每个已导入文档的修改时间、大小，以及各资料块的内容哈希和资料键，
+ * 重新导入时据此跳过未修改的文件和未变化的资料块。
+ * 
+ * 清单为只追加的文件，每次导入追加该文档的完整记录，启动时顺序重放、同一文档以最后一条为准：
+ * [int 长度][int CRC32][short 来源长度][来源][long 修改时间][long 大小][int 块数][块数 × (long 内容哈希, long 资料键)]。
+ * 删除文档时追加块数为-1的记录。记录数超过文档数的两倍时，启动时把当前状态重写为新文件。
+ * 
+ * 写入或删除资料块之前先追加块数为-2的意图记录，资料块和清单都更新完成后追加块数为-3的完成记录。
+ * 启动后仍未完成的意图说明该文档的导入或删除中途退出，由IngestService对照资料日志修复。
+ * 
+ * 非线程安全，由IngestService串行调用。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class IngestManifest implements AutoCloseable {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(IngestManifest.class);
+    
+    /** 记录头长度（长度字段 + CRC字段） */
+    private static final int HEADER_BYTES = 8;
+    
+    /** 正文中来源之后的固定字段长度（修改时间 + 大小 + 块数） */
+    private static final int FIXED_BYTES = 8 + 8 + 4;
+    
+    /** 删除记录的块数标记 */
+    private static final int REMOVED = -1;
+    
+    /** 意图记录的块数标记 */
+    private static final int PENDING = -2;
+    
+    /** 完成记录的块数标记 */
+    private static final int DONE = -3;
+    
+    /** 清单文件 */
+    private final Path file;
+    
+    /** 各文档的最新记录 */
+    private final Map<String, Entry> entries = new HashMap<>();
+    
+    /** 尚未完成的导入或删除的来源 */
+    private final Set<String> pending = new HashSet<>();
+    
+    /** 清单文件通道 */
+    private FileChannel channel;
+    
+    /** 下一条记录的写入位置 */
+    private long writePosition;
+    
+    /**
+     * 打开或创建清单，重放已有记录，必要时压缩
+     * 
+     * @param file 清单文件
+     */
+    IngestManifest(Path file) {
+        this.file = file;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long records = replay();
+            if (records > 2L * (entries.size() + pending.size()) + 16) {
+                compact(records);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开导入清单: " + file, e);
+        }
+    }
+    
+    /**
+     * 获取文档的最新记录
+     * 
+     * @param source 来源
+     * @return 记录，未导入或已删除时返回null
+     */
+    Entry get(String source) {
+        return entries.get(source);
+    }
+    
+    /**
+     * 已导入的来源
+     * 
+     * @return 来源集合的副本
+     */
+    Set<String> sources() {
+        return Set.copyOf(entries.keySet());
+    }
+    
+    /**
+     * 已导入的文档数
+     * 
+     * @return 文档数
+     */
+    int size() {
+        return entries.size();
+    }
+    
+    /**
+     * 尚未完成的导入或删除
+     * 
+     * @return 来源集合的副本
+     */
+    Set<String> pending() {
+        return Set.copyOf(pending);
+    }
+    
+    /**
+     * 在写入或删除文档的资料块之前追加意图记录
+     * 
+     * @param source 来源
+     */
+    void begin(String source) {
+        appendMarker(source, PENDING);
+        pending.add(source);
+    }
+    
+    /**
+     * 资料块和清单都更新完成后追加完成记录
+     * 
+     * @param source 来源
+     */
+    void end(String source) {
+        if (pending.remove(source)) {
+            appendMarker(source, DONE);
+        }
+    }
+    
+    /**
+     * 追加文档的完整记录
+     * 
+     * @param source 来源
+     * @param entry 记录
+     */
+    void put(String source, Entry entry) {
+        append(source, entry.modified(), entry.size(), entry.hashes(), entry.keys());
+        entries.put(source, entry);
+    }
+    
+    /**
+     * 追加文档的删除记录
+     * 
+     * @param source 来源
+     */
+    void remove(String source) {
+        if (entries.remove(source) != null) {
+            append(source, 0, 0, null, null);
+        }
+    }
+    
+    @Override
+    public void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭导入清单失败", e);
+        }
+    }
+    
+    /**
+     * 顺序重放记录，截断不完整的尾部
+     * 
+     * @return 有效记录数
+     * @throws IOException 读取失败时抛出
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        long records = 0;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= size) {
+            int bodyLength = buffer.getInt(offset);
+            if (bodyLength < 2 + FIXED_BYTES || offset + HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = buffer.slice(offset + HEADER_BYTES, bodyLength);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            decode(body);
+            records++;
+            offset += HEADER_BYTES + bodyLength;
+        }
+        if (offset < size) {
+            logger.warn("导入清单尾部存在不完整记录，已截断 - offset: {}", offset);
+            channel.truncate(offset);
+        }
+        writePosition = offset;
+        return records;
+    }
+    
+    /**
+     * 解码一条记录并更新内存状态
+     * 
+     * @param body 记录正文
+     */
+    private void decode(ByteBuffer body) {
+        int sourceLength = body.getShort() & 0xFFFF;
+        byte[] sourceBytes = new byte[sourceLength];
+        body.get(sourceBytes);
+        String source = new String(sourceBytes, StandardCharsets.UTF_8);
+        long modified = body.getLong();
+        long size = body.getLong();
+        int chunks = body.getInt();
+        if (chunks == PENDING) {
+            pending.add(source);
+            return;
+        }
+        if (chunks == DONE) {
+            pending.remove(source);
+            return;
+        }
+        if (chunks == REMOVED) {
+            entries.remove(source);
+            return;
+        }
+        long[] hashes = new long[chunks];
+        long[] keys = new long[chunks];
+        for (int i = 0; i < chunks; i++) {
+            hashes[i] = body.getLong();
+            keys[i] = body.getLong();
+        }
+        entries.put(source, new Entry(modified, size, hashes, keys));
+    }
+    
+    /**
+     * 追加一条记录
+     * 
+     * @param source 来源
+     * @param modified 修改时间
+     * @param size 大小
+     * @param hashes 内容哈希，为null时写入删除记录
+     * @param keys 资料键
+     */
+    private void append(String source, long modified, long size, long[] hashes, long[] keys) {
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        if (sourceBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("资料来源过长: " + sourceBytes.length + " 字节");
+        }
+        int chunks = hashes == null ? 0 : hashes.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 2 + sourceBytes.length + FIXED_BYTES + chunks * 16);
+        record.putInt(0).putInt(0).putShort((short) sourceBytes.length).put(sourceBytes)
+                .putLong(modified).putLong(size).putInt(hashes == null ? REMOVED : chunks);
+        for (int i = 0; i < chunks; i++) {
+            record.putLong(hashes[i]).putLong(keys[i]);
+        }
+        write(record);
+    }
+    
+    /**
+     * 追加一条意图或完成记录
+     * 
+     * @param source 来源
+     * @param marker PENDING或DONE
+     */
+    private void appendMarker(String source, int marker) {
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        if (sourceBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("资料来源过长: " + sourceBytes.length + " 字节");
+        }
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 2 + sourceBytes.length + FIXED_BYTES);
+        record.putInt(0).putInt(0).putShort((short) sourceBytes.length).put(sourceBytes)
+                .putLong(0).putLong(0).putInt(marker);
+        write(record);
+    }
+    
+    /**
+     * 填写记录头并写入文件
+     * 
+     * @param record 已写入正文、头部留空的记录，position位于末尾
+     */
+    private void write(ByteBuffer record) {
+        int bodyLength = record.position() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                writePosition += channel.write(record, writePosition);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入导入清单失败", e);
+        }
+    }
+    
+    /**
+     * 把当前状态写入临时文件后原子替换清单
+     * 
+     * @param records 压缩前的记录数
+     * @throws IOException 写入失败时抛出
+     */
+    private void compact(long records) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        channel.close();
+        channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writePosition = 0;
+        entries.forEach((source, entry) -> append(source, entry.modified(), entry.size(), entry.hashes(), entry.keys()));
+        pending.forEach(source -> appendMarker(source, PENDING));
+        channel.force(false);
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logger.info("导入清单已压缩 - 记录数: {} -> {}", records, entries.size());
+    }
+    
+    /**
+     * 文档记录
+     * 
+     * @param modified 文件修改时间（毫秒），通过接口提交的文档为-1
+     * @param size 文件字节数，通过接口提交的文档为-1
+     * @param hashes 各资料块的内容哈希，按文档顺序
+     * @param keys 各资料块的资料键，与hashes一一对应
+     */
+    record Entry(long modified, long size, long[] hashes, long[] keys) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,486 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import com.nyx.springAIDemo20250715.config.RetrievalConfig;
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 文档导入服务
+ * 
+ * 把文档切分为资料块写入RetrievalService，支持通过接口提交单个文档和扫描资料目录两种方式：
+ * - 分块、内容哈希和向量计算在专用的ForkJoinPool中并行执行，写入资料日志和索引时串行
+ * - 目录中的文件通过内存映射读取，修改时间和大小都未变的文件直接跳过
+ * - 文档变化时按内容哈希与上次导入的资料块比对，未变化的块沿用原资料键，
+ *   只为新增的块计算向量并写入，不再出现的块从资料库删除。
+ *   DocumentChunker的块边界由内容决定，小范围修改只影响附近的块
+ * - 目录扫描按线程池并行度分批读取、分块和写入，同一时刻只有一批文件的正文和向量在内存中；
+ *   每批写入后释放锁，期间接口提交的文档可以导入
+ * - 上次扫描存在、本次扫描不存在的文件，其资料块从资料库删除
+ * 
+ * 导入状态保存在IngestManifest中，导入操作串行执行。写入或删除资料块之前先在清单中记录意图，
+ * 资料块和清单都更新后再记录完成；启动时对仍有意图的文档对照资料日志修复：删除清单未引用的资料块，
+ * 清单引用的资料块已被部分删除时（删除中途退出）删除整个文档，目录扫描时会重新导入。
+ * 
+ * 指标（见StreamMetrics）：
+ * - ingest.documents：已导入的文档数
+ * - ingest.chunks.added / ingest.chunks.removed / ingest.chunks.unchanged：新增、删除、沿用的资料块数
+ * - ingest.files.skipped：扫描时未修改而跳过的文件数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Service
+public class IngestService {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(IngestService.class);
+    
+    /** 文档导入配置 */
+    private final RetrievalConfig.Ingest config;
+    
+    /** 检索增强服务 */
+    private final RetrievalService retrievalService;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 导入清单 */
+    private final IngestManifest manifest;
+    
+    /** 分块和计算向量的线程池 */
+    private final ForkJoinPool pool;
+    
+    /** 定时扫描线程，未配置定时扫描时为null */
+    private final ScheduledExecutorService scanner;
+    
+    /** 扫描锁，保证同一时刻只有一次目录扫描 */
+    private final Object scanLock = new Object();
+    
+    /**
+     * 构造函数，打开导入清单，配置了资料目录和扫描间隔时启动定时扫描
+     * 
+     * @param retrievalConfig 检索增强配置对象
+     * @param storageConfig 本地存储配置对象
+     * @param retrievalService 检索增强服务
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public IngestService(RetrievalConfig retrievalConfig, StorageConfig storageConfig,
+                         RetrievalService retrievalService, StreamMetrics streamMetrics) {
+        this.config = retrievalConfig.getIngest();
+        this.retrievalService = retrievalService;
+        this.streamMetrics = streamMetrics;
+        this.manifest = new IngestManifest(Paths.get(storageConfig.getDataDir(), "retrieval", "ingest.manifest"));
+        int parallelism = config.getParallelism() > 0 ? config.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("retrieval-ingest-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        streamMetrics.registerGauge("ingest.documents", manifest::size);
+        recover();
+        
+        long interval = config.getScanIntervalSeconds();
+        if (interval > 0 && !config.getDirectory().isBlank()) {
+            this.scanner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "retrieval-ingest-scanner");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scanner.scheduleWithFixedDelay(this::scheduledScan, 0, interval, TimeUnit.SECONDS);
+        } else {
+            this.scanner = null;
+        }
+        logger.info("文档导入服务已启动 - 已导入文档: {}, 并行度: {}, 资料目录: {}, 扫描间隔: {}s",
+                manifest.size(), parallelism, config.getDirectory(), interval);
+    }
+    
+    /**
+     * 导入一个文档，同一来源再次导入时替换上次的内容
+     * 
+     * @param source 来源
+     * @param text 正文
+     * @return 导入结果
+     */
+    public synchronized Result ingest(String source, String text) {
+        Prepared prepared = pool.submit(() -> prepare(source, text, -1, -1)).join();
+        return commit(prepared);
+    }
+    
+    /**
+     * 删除一个文档的全部资料块
+     * 
+     * @param source 来源
+     * @return 删除的资料块数，文档不存在时返回-1
+     */
+    public synchronized int remove(String source) {
+        IngestManifest.Entry entry = manifest.get(source);
+        if (entry == null) {
+            return -1;
+        }
+        manifest.begin(source);
+        for (long key : entry.keys()) {
+            retrievalService.removePassage(key);
+        }
+        manifest.remove(source);
+        manifest.end(source);
+        streamMetrics.add("ingest.chunks.removed", entry.keys().length);
+        return entry.keys().length;
+    }
+    
+    /**
+     * 扫描资料目录，导入新增和修改的文件，删除已不存在的文件
+     * 
+     * 变化的文件按线程池并行度分批处理，每批准备完成后立即写入，内存占用不随变化文件数增长
+     * 
+     * @return 扫描结果
+     * @throws IllegalStateException 未配置资料目录或目录不存在时抛出
+     */
+    public ScanResult scan() {
+        synchronized (scanLock) {
+            long start = System.currentTimeMillis();
+            Path root = directory();
+            List<Candidate> changed = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            int skipped = 0;
+            synchronized (this) {
+                try (Stream<Path> paths = Files.walk(root)) {
+                    for (Path path : (Iterable<Path>) paths::iterator) {
+                        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                        if (!attributes.isRegularFile() || !hasExtension(path) || attributes.size() > config.getMaxFileBytes()) {
+                            continue;
+                        }
+                        String source = root.relativize(path).toString().replace(File.separatorChar, '/');
+                        long modified = attributes.lastModifiedTime().toMillis();
+                        seen.add(source);
+                        IngestManifest.Entry previous = manifest.get(source);
+                        if (previous != null && previous.modified() == modified && previous.size() == attributes.size()) {
+                            skipped++;
+                            continue;
+                        }
+                        changed.add(new Candidate(path, source, modified, attributes.size()));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("扫描资料目录失败: " + root, e);
+                }
+            }
+            streamMetrics.add("ingest.files.skipped", skipped);
+            
+            int batchSize = pool.getParallelism();
+            int imported = 0;
+            int added = 0;
+            int removed = 0;
+            for (int from = 0; from < changed.size(); from += batchSize) {
+                List<Candidate> batch = changed.subList(from, Math.min(from + batchSize, changed.size()));
+                synchronized (this) {
+                    List<Prepared> prepared = pool.submit(() -> batch.parallelStream()
+                            .map(this::prepareFile)
+                            .filter(Objects::nonNull)
+                            .toList()).join();
+                    for (Prepared document : prepared) {
+                        Result result = commit(document);
+                        added += result.added();
+                        removed += result.removed();
+                    }
+                    imported += prepared.size();
+                }
+            }
+            int deleted = 0;
+            synchronized (this) {
+                for (String source : manifest.sources()) {
+                    IngestManifest.Entry entry = manifest.get(source);
+                    // 只删除目录扫描导入的文档，通过接口提交的文档修改时间为-1
+                    if (entry.modified() >= 0 && !seen.contains(source)) {
+                        removed += remove(source);
+                        deleted++;
+                    }
+                }
+            }
+            return new ScanResult(seen.size(), skipped, imported, changed.size() - imported, deleted,
+                    added, removed, System.currentTimeMillis() - start);
+        }
+    }
+    
+    /**
+     * 停止定时扫描和线程池，关闭导入清单
+     */
+    @PreDestroy
+    public void close() {
+        if (scanner != null) {
+            scanner.shutdownNow();
+        }
+        pool.shutdownNow();
+        synchronized (this) {
+            manifest.close();
+        }
+    }
+    
+    /**
+     * 修复中途退出的导入和删除
+     * 
+     * 导入中途退出时，新写入的资料块或待删除的旧资料块不在清单中；删除中途退出时，
+     * 清单中的部分资料块已被删除。前者删除多出的资料块并保留清单记录，后者删除整个文档。
+     */
+    private void recover() {
+        for (String source : manifest.pending()) {
+            IngestManifest.Entry entry = manifest.get(source);
+            Set<Long> live = retrievalService.liveKeys(source);
+            Set<Long> referenced = new HashSet<>();
+            if (entry != null) {
+                for (long key : entry.keys()) {
+                    referenced.add(key);
+                }
+            }
+            if (entry != null && !live.containsAll(referenced)) {
+                live.forEach(retrievalService::removePassage);
+                manifest.remove(source);
+                manifest.end(source);
+                logger.warn("文档删除曾中途退出，已删除剩余资料块 - source: {}, 资料块: {}", source, live.size());
+                continue;
+            }
+            live.removeAll(referenced);
+            live.forEach(retrievalService::removePassage);
+            manifest.end(source);
+            logger.warn("文档导入曾中途退出，已删除清单未引用的资料块 - source: {}, 资料块: {}", source, live.size());
+        }
+    }
+    
+    /**
+     * 定时扫描，只记录日志不抛出异常
+     */
+    private void scheduledScan() {
+        try {
+            ScanResult result = scan();
+            if (result.changed() > 0 || result.deleted() > 0 || result.failed() > 0) {
+                logger.info("资料目录扫描完成 - {}", result);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("资料目录扫描失败", e);
+        }
+    }
+    
+    /**
+     * 解析资料目录
+     * 
+     * @return 资料目录
+     * @throws IllegalStateException 未配置资料目录或目录不存在时抛出
+     */
+    private Path directory() {
+        if (config.getDirectory().isBlank()) {
+            throw new IllegalStateException("未配置资料目录（spring.ai.retrieval.ingest.directory）");
+        }
+        Path root = Paths.get(config.getDirectory()).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root)) {
+            throw new IllegalStateException("资料目录不存在: " + root);
+        }
+        return root;
+    }
+    
+    /**
+     * 判断文件扩展名是否在导入范围内
+     * 
+     * @param path 文件路径
+     * @return 在导入范围内返回true
+     */
+    private boolean hasExtension(Path path) {
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && config.getExtensions().contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * 读取文件并准备导入，在线程池中执行
+     * 
+     * @param candidate 待导入的文件
+     * @return 准备结果，读取失败时返回null
+     */
+    private Prepared prepareFile(Candidate candidate) {
+        try {
+            String text = readMapped(candidate.path(), candidate.size());
+            return prepare(candidate.source(), text, candidate.modified(), candidate.size());
+        } catch (IOException e) {
+            logger.warn("读取资料文件失败，已跳过 - file: {}", candidate.path(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * 通过内存映射读取文件，非法的UTF-8字节替换为替换字符
+     * 
+     * @param path 文件路径
+     * @param size 扫描时的文件大小
+     * @return 文件内容
+     * @throws IOException 读取失败时抛出
+     */
+    private static String readMapped(Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, channel.size()));
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(buffer)
+                    .toString();
+        }
+    }
+    
+    /**
+     * 分块并与上次导入的资料块比对，为新增的块并行计算向量，在线程池中执行
+     * 
+     * @param source 来源
+     * @param text 正文
+     * @param modified 文件修改时间，接口提交的文档为-1
+     * @param size 文件字节数，接口提交的文档为-1
+     * @return 准备结果
+     */
+    private Prepared prepare(String source, String text, long modified, long size) {
+        List<String> chunks = DocumentChunker.split(text, config.getChunkTokens());
+        int count = chunks.size();
+        long[] hashes = new long[count];
+        long[] keys = new long[count];
+        Map<Long, ArrayDeque<Long>> reusable = new HashMap<>();
+        IngestManifest.Entry previous = manifest.get(source);
+        if (previous != null) {
+            for (int i = 0; i < previous.keys().length; i++) {
+                reusable.computeIfAbsent(previous.hashes()[i], hash -> new ArrayDeque<>()).add(previous.keys()[i]);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            hashes[i] = DocumentChunker.contentHash(chunks.get(i));
+            ArrayDeque<Long> candidates = reusable.get(hashes[i]);
+            keys[i] = candidates == null || candidates.isEmpty() ? -1 : candidates.poll();
+        }
+        float[][] vectors = new float[count][];
+        IntStream.range(0, count).parallel()
+                .filter(i -> keys[i] < 0)
+                .forEach(i -> vectors[i] = retrievalService.embed(chunks.get(i)));
+        List<Long> stale = new ArrayList<>();
+        reusable.values().forEach(stale::addAll);
+        return new Prepared(source, modified, size, chunks, hashes, keys, vectors, stale);
+    }
+    
+    /**
+     * 先记录意图，再写入新增的资料块和导入清单，最后删除不再出现的资料块
+     * 
+     * @param prepared 准备结果
+     * @return 导入结果
+     */
+    private Result commit(Prepared prepared) {
+        long[] keys = prepared.keys();
+        boolean changesPassages = !prepared.stale().isEmpty();
+        for (long key : keys) {
+            changesPassages |= key < 0;
+        }
+        if (changesPassages) {
+            manifest.begin(prepared.source());
+        }
+        int added = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] < 0) {
+                keys[i] = retrievalService.addPassage(prepared.source(), prepared.chunks().get(i), prepared.vectors()[i]);
+                added++;
+            }
+        }
+        manifest.put(prepared.source(), new IngestManifest.Entry(prepared.modified(), prepared.size(), prepared.hashes(), keys));
+        for (long key : prepared.stale()) {
+            retrievalService.removePassage(key);
+        }
+        manifest.end(prepared.source());
+        int unchanged = keys.length - added;
+        streamMetrics.add("ingest.chunks.added", added);
+        streamMetrics.add("ingest.chunks.removed", prepared.stale().size());
+        streamMetrics.add("ingest.chunks.unchanged", unchanged);
+        logger.debug("文档已导入 - source: {}, 块数: {}, 新增: {}, 删除: {}, 沿用: {}",
+                prepared.source(), keys.length, added, prepared.stale().size(), unchanged);
+        return new Result(prepared.source(), keys.length, added, prepared.stale().size(), unchanged);
+    }
+    
+    /**
+     * 文档导入结果
+     * 
+     * @param source 来源
+     * @param chunks 资料块数
+     * @param added 新增的资料块数
+     * @param removed 删除的资料块数
+     * @param unchanged 沿用的资料块数
+     */
+    public record Result(String source, int chunks, int added, int removed, int unchanged) {
+    }
+    
+    /**
+     * 目录扫描结果
+     * 
+     * @param files 目录中符合条件的文件数
+     * @param skipped 未修改而跳过的文件数
+     * @param changed 新增或修改的文件数
+     * @param failed 读取失败的文件数
+     * @param deleted 已不存在而删除的文件数
+     * @param chunksAdded 新增的资料块数
+     * @param chunksRemoved 删除的资料块数
+     * @param tookMillis 耗时（毫秒）
+     */
+    public record ScanResult(int files, int skipped, int changed, int failed, int deleted,
+                             int chunksAdded, int chunksRemoved, long tookMillis) {
+    }
+    
+    /**
+     * 待导入的文件
+     * 
+     * @param path 文件路径
+     * @param source 来源（相对资料目录的路径）
+     * @param modified 修改时间
+     * @param size 字节数
+     */
+    private record Candidate(Path path, String source, long modified, long size) {
+    }
+    
+    /**
+     * 已分块、待写入的文档
+     * 
+     * @param source 来源
+     * @param modified 修改时间
+     * @param size 字节数
+     * @param chunks 资料块正文
+     * @param hashes 资料块内容哈希
+     * @param keys 沿用的资料键，新增的块为-1
+     * @param vectors 新增资料块的向量，沿用的块为null
+     * @param stale 不再出现的资料键
+     */
+    private record Prepared(String source, long modified, long size, List<String> chunks, long[] hashes,
+                            long[] keys, float[][] vectors, List<Long> stale) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 分段内存映射文件
+ * 
+ * 把一个文件按固定大小切分为若干段，每段单独映射（单个MappedByteBuffer不能超过2GB），
+ * 首次访问某段时才映射，映射超出文件末尾的段会自动扩展文件。
+ * 数据保存在堆外的页缓存中，不占用Java堆，进程重启后由操作系统按需换入。
+ * 
+ * 读写均使用绝对位置，不修改缓冲区的position，多个线程可以并发读取。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class MappedRegion implements AutoCloseable {
+    
+    /** 文件通道 */
+    private final FileChannel channel;
+    
+    /** 每段字节数 */
+    private final int segmentBytes;
+    
+    /** 已映射的段，按段号索引 */
+    private volatile Segment[] segments = new Segment[0];
+    
+    /**
+     * 打开或创建映射文件
+     * 
+     * @param file 文件路径
+     * @param segmentBytes 每段字节数
+     */
+    MappedRegion(Path file, int segmentBytes) {
+        this.segmentBytes = segmentBytes;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开映射文件: " + file, e);
+        }
+    }
+    
+    /**
+     * 获取每段字节数
+     * 
+     * @return 每段字节数
+     */
+    int segmentBytes() {
+        return segmentBytes;
+    }
+    
+    /**
+     * 获取指定段的字节视图
+     * 
+     * @param index 段号
+     * @return 段缓冲区（本机字节序）
+     */
+    MappedByteBuffer bytes(int index) {
+        return segment(index).bytes;
+    }
+    
+    /**
+     * 获取指定段的int视图，下标以int为单位
+     * 
+     * @param index 段号
+     * @return int缓冲区
+     */
+    IntBuffer ints(int index) {
+        return segment(index).ints;
+    }
+    
+    /**
+     * 获取指定段的float视图，下标以float为单位
+     * 
+     * @param index 段号
+     * @return float缓冲区
+     */
+    FloatBuffer floats(int index) {
+        return segment(index).floats;
+    }
+    
+    /**
+     * 获取指定段，尚未映射时映射该段
+     * 
+     * @param index 段号
+     * @return 段
+     */
+    private Segment segment(int index) {
+        Segment[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        return map(index);
+    }
+    
+    /**
+     * 映射指定段
+     * 
+     * @param index 段号
+     * @return 段
+     */
+    private synchronized Segment map(int index) {
+        Segment[] current = segments;
+        if (index < current.length && current[index] != null) {
+            return current[index];
+        }
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * segmentBytes, segmentBytes);
+            buffer.order(ByteOrder.nativeOrder());
+            Segment segment = new Segment(buffer);
+            Segment[] grown = index < current.length ? current.clone() : Arrays.copyOf(current, index + 1);
+            grown[index] = segment;
+            segments = grown;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("映射文件段失败: " + index, e);
+        }
+    }
+    
+    /**
+     * 将已映射段的修改刷入磁盘
+     */
+    void force() {
+        for (Segment segment : segments) {
+            if (segment != null) {
+                segment.bytes.force();
+            }
+        }
+    }
+    
+    /**
+     * 清空文件内容并取消已有映射
+     */
+    synchronized void truncate() {
+        segments = new Segment[0];
+        try {
+            channel.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("清空映射文件失败", e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭映射文件失败", e);
+        }
+    }
+    
+    /**
+     * 已映射的段及其int、float视图
+     */
+    private static final class Segment {
+        
+        /** 字节视图 */
+        private final MappedByteBuffer bytes;
+        
+        /** int视图 */
+        private final IntBuffer ints;
+        
+        /** float视图 */
+        private final FloatBuffer floats;
+        
+        private Segment(MappedByteBuffer bytes) {
+            this.bytes = bytes;
+            this.ints = bytes.asIntBuffer();
+            this.floats = bytes.asFloatBuffer();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,302 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * 资料文本存储
+ * 
+ * 只追加（append-only）的资料日志，向量索引中的外部键就是资料记录在文件中的偏移，
+ * 命中后按偏移直接读取原文，不需要额外的内存索引。
+ * 
+ * 记录格式：[int 长度][int CRC32][short 来源长度][来源][正文]，文本均为UTF-8。
+ * 删除资料时追加删除记录：[int 长度][int CRC32][short -1][long 资料键]，
+ * 来源长度不会超过Short.MAX_VALUE，因此-1不会与资料记录混淆。
+ * 启动时顺序校验记录，截断异常退出留下的不完整尾部。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class PassageStore implements AutoCloseable {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(PassageStore.class);
+    
+    /** 记录头长度（长度字段 + CRC字段） */
+    private static final int HEADER_BYTES = 8;
+    
+    /** 来源的最大字节数 */
+    private static final int MAX_SOURCE_BYTES = Short.MAX_VALUE;
+    
+    /** 删除记录的来源长度标记 */
+    private static final short TOMBSTONE = -1;
+    
+    /** 日志文件通道 */
+    private final FileChannel channel;
+    
+    /** 下一条记录的写入位置 */
+    private long writePosition;
+    
+    /** 资料记录条数 */
+    private long count;
+    
+    /** 删除记录条数 */
+    private long deleted;
+    
+    /**
+     * 打开或创建资料日志，并截断不完整的尾部
+     * 
+     * @param file 日志文件
+     */
+    PassageStore(Path file) {
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.writePosition = replay(0, channel.size(), null, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开资料日志: " + file, e);
+        }
+    }
+    
+    /**
+     * 追加一条资料
+     * 
+     * @param source 来源（如文件路径或标题）
+     * @param text 正文
+     * @return 资料键（记录偏移）
+     */
+    synchronized long append(String source, String text) {
+        byte[] sourceBytes = source.getBytes(StandardCharsets.UTF_8);
+        if (sourceBytes.length > MAX_SOURCE_BYTES) {
+            throw new IllegalArgumentException("资料来源过长: " + sourceBytes.length + " 字节");
+        }
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 2 + sourceBytes.length + textBytes.length);
+        record.putInt(0).putInt(0).putShort((short) sourceBytes.length).put(sourceBytes).put(textBytes);
+        long offset = write(record);
+        count++;
+        return offset;
+    }
+    
+    /**
+     * 追加删除记录
+     * 
+     * @param key 被删除的资料键
+     */
+    synchronized void delete(long key) {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + 2 + 8);
+        record.putInt(0).putInt(0).putShort(TOMBSTONE).putLong(key);
+        write(record);
+        deleted++;
+    }
+    
+    /**
+     * 按键读取资料
+     * 
+     * @param key 资料键
+     * @return 资料，键无效时返回null
+     */
+    Entry read(long key) {
+        try {
+            if (key < 0 || key + HEADER_BYTES > size()) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(header, key);
+            int bodyLength = header.getInt(0);
+            if (bodyLength < 2 || key + HEADER_BYTES + bodyLength > size()) {
+                return null;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(body, key + HEADER_BYTES);
+            return body.getShort(0) == TOMBSTONE ? null : decode(key, body);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取资料日志失败", e);
+        }
+    }
+    
+    /**
+     * 按写入顺序遍历一段记录
+     * 
+     * @param start 起始位置，必须是某条记录的键或0
+     * @param end 遍历到该位置为止（通常为之前调用size()的结果）
+     * @param passages 资料记录的消费者
+     * @param tombstones 删除记录的消费者，参数为被删除的资料键
+     */
+    void forEach(long start, long end, Consumer<Entry> passages, LongConsumer tombstones) {
+        try {
+            replay(start, Math.min(end, size()), passages, tombstones);
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取资料日志失败", e);
+        }
+    }
+    
+    /**
+     * 有效数据的字节数，即下一条资料的键
+     * 
+     * @return 字节数
+     */
+    synchronized long size() {
+        return writePosition;
+    }
+    
+    /**
+     * 未删除的资料条数
+     * 
+     * @return 条数
+     */
+    synchronized long count() {
+        return count - deleted;
+    }
+    
+    /**
+     * 将已写入的资料刷入磁盘
+     */
+    void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("刷新资料日志失败", e);
+        }
+    }
+    
+    @Override
+    public void close() {
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭资料日志失败", e);
+        }
+    }
+    
+    /**
+     * 顺序校验并读取记录，首次打开时截断不完整的尾部并统计记录数
+     * 
+     * @param start 起始位置
+     * @param size 读取到该位置为止
+     * @param passages 资料记录的消费者，为null时只做校验
+     * @param tombstones 删除记录的消费者，为null时忽略
+     * @return 有效数据的结束位置
+     * @throws IOException 读取失败时抛出
+     */
+    private long replay(long start, long size, Consumer<Entry> passages, LongConsumer tombstones) throws IOException {
+        boolean recovering = passages == null;
+        long offset = start;
+        long records = 0;
+        long tombstoneRecords = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (offset + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(header, offset);
+            int bodyLength = header.getInt(0);
+            if (bodyLength < 2 || offset + HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(body, offset + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            if (body.getShort(0) == TOMBSTONE) {
+                tombstoneRecords++;
+                if (tombstones != null) {
+                    tombstones.accept(body.getLong(2));
+                }
+            } else {
+                records++;
+                if (passages != null) {
+                    passages.accept(decode(offset, body));
+                }
+            }
+            offset += HEADER_BYTES + bodyLength;
+        }
+        if (recovering) {
+            if (offset < size) {
+                logger.warn("资料日志尾部存在不完整记录，已截断 - offset: {}", offset);
+                channel.truncate(offset);
+            }
+            count = records;
+            deleted = tombstoneRecords;
+        }
+        return offset;
+    }
+    
+    /**
+     * 填写记录头并追加到文件末尾
+     * 
+     * @param record 已写入正文、头部留空的记录，position位于末尾
+     * @return 记录偏移
+     */
+    private long write(ByteBuffer record) {
+        int bodyLength = record.position() - HEADER_BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, bodyLength);
+        record.putInt(0, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        try {
+            long offset = writePosition;
+            while (record.hasRemaining()) {
+                writePosition += channel.write(record, writePosition);
+            }
+            return offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入资料日志失败", e);
+        }
+    }
+    
+    /**
+     * 解码记录正文
+     * 
+     * @param key 资料键
+     * @param body 记录正文
+     * @return 资料
+     */
+    private static Entry decode(long key, ByteBuffer body) {
+        byte[] bytes = body.array();
+        int sourceLength = body.getShort(0) & 0xFFFF;
+        String source = new String(bytes, 2, sourceLength, StandardCharsets.UTF_8);
+        String text = new String(bytes, 2 + sourceLength, bytes.length - 2 - sourceLength, StandardCharsets.UTF_8);
+        return new Entry(key, source, text);
+    }
+    
+    /**
+     * 从指定位置读满缓冲区
+     * 
+     * @param buffer 目标缓冲区
+     * @param position 文件位置
+     * @throws IOException 读取失败或文件提前结束时抛出
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("资料日志意外结束");
+            }
+        }
+    }
+    
+    /**
+     * 资料记录
+     * 
+     * @param key 资料键（记录偏移）
+     * @param source 来源
+     * @param text 正文
+     */
+    record Entry(long key, String source, String text) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,431 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import com.nyx.springAIDemo20250715.config.RetrievalConfig;
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.PassageHit;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 检索增强服务
+ * 
+ * 管理本地资料库并为对话检索参考资料，提供以下功能：
+ * - 资料原文追加写入PassageStore，向量写入HnswGraph，两者都保存在磁盘文件中
+ * - 按查询文本检索最相似的资料
+ * - 在token预算内把命中资料拼接为提示词前缀，由QwenRequestWriter放在当前用户消息之前
+ * 
+ * 资料键随写入递增，资料按键的顺序写入索引，因此可以按键二分查找索引节点。
+ * 启动时在后台把索引中最后一条资料之后的资料补入索引；更换嵌入模型或维度后索引被清空，
+ * 相当于从头补入。HnswGraph的删除只打标记，已删除节点仍占用空间并参与图遍历，
+ * 因此启动时已删除节点的比例超过rebuildDeletedRatio时同样清空索引，从资料日志重建。
+ * 补入期间新增的资料只写入资料日志，由补入线程按顺序写入索引，检索只能命中已写入索引的部分。
+ * 补入失败时从上次完成的位置重试，重试catchUpRetries次仍失败则放弃补入：推迟的删除立即生效，
+ * 之后新增的资料直接写入索引，失败位置之后已有的资料要等删除索引文件重建后才能检索。
+ * 
+ * 指标（见StreamMetrics）：
+ * - retrieval.passages：可检索的资料数
+ * - retrieval.queries：检索次数
+ * - retrieval.search-micros.max：单次向量检索的最长耗时（微秒）
+ * - retrieval.context-injected：注入了参考资料的对话数
+ * - retrieval.catching-up：正在补入索引时为1
+ * - retrieval.catch-up.failures：补入失败次数
+ * - retrieval.catch-up.failed：补入已放弃、索引缺少部分资料时为1
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Service
+public class RetrievalService {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalService.class);
+    
+    /** 参考资料前的说明 */
+    private static final String CONTEXT_HEADER = "请参考以下资料回答问题，资料与问题无关时忽略资料。\n\n";
+    
+    /** 参考资料后、用户问题前的标签 */
+    private static final String QUESTION_LABEL = "问题：";
+    
+    /** 检索增强配置 */
+    private final RetrievalConfig config;
+    
+    /** 嵌入模型 */
+    private final EmbeddingProvider embeddingProvider;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 资料原文 */
+    private final PassageStore passageStore;
+    
+    /** 向量索引 */
+    private final HnswGraph graph;
+    
+    /** 重建索引的后台线程 */
+    private final ExecutorService indexer;
+    
+    /** 写入锁，保证资料按键的顺序写入索引 */
+    private final Object indexLock = new Object();
+    
+    /** 补入期间删除的资料键，补入完成后统一从索引中删除 */
+    private final Set<Long> deferredDeletes = new HashSet<>();
+    
+    /** 是否正在从资料日志补入索引 */
+    private volatile boolean catchingUp = true;
+    
+    /** 补入是否已在重试用尽后放弃 */
+    private volatile boolean catchUpFailed;
+    
+    /** 是否正在关闭，补入线程据此提前结束 */
+    private volatile boolean closing;
+    
+    /**
+     * 构造函数，打开资料日志和向量索引，并在后台补入尚未写入索引的资料
+     * 
+     * @param retrievalConfig 检索增强配置对象
+     * @param storageConfig 本地存储配置对象
+     * @param embeddingProvider 嵌入模型
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public RetrievalService(RetrievalConfig retrievalConfig, StorageConfig storageConfig,
+                            EmbeddingProvider embeddingProvider, StreamMetrics streamMetrics) {
+        this.config = retrievalConfig;
+        this.embeddingProvider = embeddingProvider;
+        this.streamMetrics = streamMetrics;
+        Path directory = Paths.get(storageConfig.getDataDir(), "retrieval");
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建检索索引目录: " + directory, e);
+        }
+        this.passageStore = new PassageStore(directory.resolve("passages.log"));
+        this.graph = new HnswGraph(directory, embeddingProvider.dimension(), retrievalConfig.getM(),
+                retrievalConfig.getEfConstruction(), embeddingProvider.name().hashCode());
+        this.indexer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "retrieval-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        streamMetrics.registerGauge("retrieval.passages", graph::liveSize);
+        streamMetrics.registerGauge("retrieval.catching-up", () -> catchingUp ? 1 : 0);
+        streamMetrics.registerGauge("retrieval.catch-up.failed", () -> catchUpFailed ? 1 : 0);
+        
+        int indexed = graph.size();
+        int deletedNodes = indexed - graph.liveSize();
+        double rebuildRatio = retrievalConfig.getRebuildDeletedRatio();
+        if (rebuildRatio > 0 && indexed > 0 && deletedNodes > indexed * rebuildRatio) {
+            logger.info("向量索引中已删除节点过多，从资料日志重建 - 向量数: {}, 已删除: {}", indexed, deletedNodes);
+            graph.clear();
+        }
+        long lastKey = graph.lastKey();
+        indexer.execute(() -> catchUp(Math.max(lastKey, 0L)));
+        logger.info("检索索引已加载 - 目录: {}, 嵌入模型: {}, 维度: {}, 资料数: {}, 向量数: {}, SIMD: {}",
+                directory, embeddingProvider.name(), embeddingProvider.dimension(), passageStore.count(),
+                graph.size(), VectorOps.isSimd());
+    }
+    
+    /**
+     * 添加一条资料
+     * 
+     * @param source 来源（如文件路径或标题）
+     * @param text 正文
+     * @return 资料键
+     */
+    public long addPassage(String source, String text) {
+        return addPassage(source, text, embed(text));
+    }
+    
+    /**
+     * 添加一条已计算向量的资料，调用方可以并行计算向量后串行写入
+     * 
+     * @param source 来源
+     * @param text 正文
+     * @param vector embed(text)的结果
+     * @return 资料键
+     */
+    public long addPassage(String source, String text, float[] vector) {
+        synchronized (indexLock) {
+            long key = passageStore.append(source, text);
+            if (!catchingUp) {
+                graph.add(key, vector);
+            }
+            return key;
+        }
+    }
+    
+    /**
+     * 删除一条资料，删除后不再被检索命中
+     * 
+     * @param key 资料键
+     */
+    public void removePassage(long key) {
+        synchronized (indexLock) {
+            passageStore.delete(key);
+            if (catchingUp) {
+                deferredDeletes.add(key);
+            } else {
+                deleteNode(key);
+            }
+        }
+    }
+    
+    /**
+     * 查找某个来源未删除的全部资料
+     * 
+     * 顺序读取整个资料日志，只在导入中断后的恢复中使用
+     * 
+     * @param source 来源
+     * @return 资料键
+     */
+    Set<Long> liveKeys(String source) {
+        Set<Long> keys = new HashSet<>();
+        Set<Long> removed = new HashSet<>();
+        passageStore.forEach(0, passageStore.size(), entry -> {
+            if (entry.source().equals(source)) {
+                keys.add(entry.key());
+            }
+        }, removed::add);
+        keys.removeAll(removed);
+        return keys;
+    }
+    
+    /**
+     * 计算归一化的嵌入向量
+     * 
+     * @param text 文本
+     * @return 单位向量
+     */
+    public float[] embed(String text) {
+        return VectorOps.normalize(embeddingProvider.embed(text));
+    }
+    
+    /**
+     * 检索与查询最相似的资料
+     * 
+     * @param query 查询文本
+     * @param limit 返回数量
+     * @return 按相似度降序排列的资料
+     */
+    public List<PassageHit> search(String query, int limit) {
+        if (limit <= 0 || graph.size() == 0) {
+            return List.of();
+        }
+        float[] vector = embed(query);
+        long start = System.nanoTime();
+        List<HnswGraph.Hit> hits = graph.search(vector, limit, Math.max(config.getEfSearch(), limit));
+        streamMetrics.increment("retrieval.queries");
+        streamMetrics.recordMax("retrieval.search-micros.max", (System.nanoTime() - start) / 1000);
+        
+        List<PassageHit> results = new ArrayList<>(hits.size());
+        for (HnswGraph.Hit hit : hits) {
+            PassageStore.Entry entry = passageStore.read(hit.key());
+            if (entry != null) {
+                results.add(new PassageHit(entry.key(), entry.source(), (double) hit.score(), entry.text()));
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 为用户消息构建参考资料前缀
+     * 
+     * 按相似度从高到低依次加入不低于minScore的资料，放不下的资料跳过；
+     * 只有第一条资料超出预算时才截断正文
+     * 
+     * @param message 用户当前输入的消息
+     * @return 以“问题：”结尾的提示词前缀，未启用、资料库为空或没有相关资料时返回null
+     */
+    public String buildContext(String message) {
+        if (!config.getEnabled() || message == null || message.isBlank() || graph.size() == 0) {
+            return null;
+        }
+        List<PassageHit> hits = search(message, config.getTopK());
+        int remaining = config.getContextTokens()
+                - TokenEstimator.estimate(CONTEXT_HEADER) - TokenEstimator.estimate(QUESTION_LABEL);
+        StringBuilder context = new StringBuilder(CONTEXT_HEADER);
+        int included = 0;
+        for (PassageHit hit : hits) {
+            if (hit.getScore() < config.getMinScore()) {
+                break;
+            }
+            String label = "[" + (included + 1) + "] 来源: " + hit.getSource() + "\n";
+            int labelTokens = TokenEstimator.estimate(label);
+            String text = hit.getText();
+            int tokens = labelTokens + TokenEstimator.estimate(text);
+            if (tokens > remaining) {
+                if (included > 0 || remaining <= labelTokens) {
+                    continue;
+                }
+                text = text.substring(0, TokenEstimator.prefixEnd(text, 0, remaining - labelTokens));
+                tokens = remaining;
+            }
+            context.append(label).append(text).append("\n\n");
+            remaining -= tokens;
+            included++;
+        }
+        if (included == 0) {
+            return null;
+        }
+        streamMetrics.increment("retrieval.context-injected");
+        logger.debug("注入参考资料 - 条数: {}, 剩余预算: {}", included, remaining);
+        return context.append(QUESTION_LABEL).toString();
+    }
+    
+    /**
+     * 关闭索引和资料日志
+     */
+    @PreDestroy
+    public void close() {
+        // 不中断补入线程：线程在FileChannel读写时被中断会关闭通道
+        closing = true;
+        indexer.shutdown();
+        try {
+            if (!indexer.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("检索索引补入未能在关闭前结束");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        graph.close();
+        passageStore.close();
+    }
+    
+    /**
+     * 把资料日志中start之后、尚未写入索引的资料按顺序补入索引，直到追上资料日志末尾
+     * 
+     * 每次处理一段资料日志，失败时从该段开头重试，已写入索引的资料按lastKey跳过；
+     * 重试用尽后放弃补入，结束补入状态并执行推迟的删除
+     * 
+     * @param start 起始位置（索引中最后一条资料的键，索引为空时为0）
+     */
+    private void catchUp(long start) {
+        long begin = System.currentTimeMillis();
+        int indexedBefore = graph.size();
+        long position = start;
+        int failures = 0;
+        while (true) {
+            long end;
+            synchronized (indexLock) {
+                end = passageStore.size();
+                if (position >= end) {
+                    finishCatchUp();
+                    break;
+                }
+            }
+            try {
+                indexRange(position, end);
+                position = end;
+                failures = 0;
+            } catch (RuntimeException e) {
+                if (closing) {
+                    logger.info("检索索引补入已取消 - 向量数: {}", graph.size());
+                    return;
+                }
+                streamMetrics.increment("retrieval.catch-up.failures");
+                if (++failures > config.getCatchUpRetries()) {
+                    synchronized (indexLock) {
+                        catchUpFailed = true;
+                        finishCatchUp();
+                    }
+                    logger.error("检索索引补入多次失败，已放弃 - 资料日志位置{}之后的资料不在索引中，删除索引文件后重启可重建",
+                            position, e);
+                    break;
+                }
+                long delay = config.getCatchUpRetryMillis() << Math.min(failures - 1, 16);
+                logger.warn("检索索引补入失败，{}ms后从位置{}重试 - 第{}次", delay, position, failures, e);
+                if (!awaitRetry(delay)) {
+                    return;
+                }
+            }
+        }
+        int added = graph.size() - indexedBefore;
+        if (added > 0) {
+            graph.force();
+            logger.info("检索索引补入完成 - 补入: {}, 向量数: {}, 耗时: {}ms",
+                    added, graph.size(), System.currentTimeMillis() - begin);
+        }
+    }
+    
+    /**
+     * 把资料日志[position, end)中未删除、尚未写入索引的资料写入索引
+     * 
+     * @param position 起始位置
+     * @param end 结束位置
+     */
+    private void indexRange(long position, long end) {
+        // 删除记录总在被删除的资料之后，先收集本段的删除记录再写入未删除的资料
+        Set<Long> removed = new HashSet<>();
+        passageStore.forEach(position, end, entry -> { }, removed::add);
+        long lastKey = graph.lastKey();
+        passageStore.forEach(position, end, entry -> {
+            if (closing) {
+                throw new IllegalStateException("索引补入已取消");
+            }
+            if (entry.key() > lastKey && !removed.contains(entry.key())) {
+                graph.add(entry.key(), embed(entry.text()));
+            }
+        }, key -> { });
+        removed.forEach(this::deleteNode);
+    }
+    
+    /**
+     * 结束补入状态并执行补入期间推迟的删除，调用方持有indexLock
+     */
+    private void finishCatchUp() {
+        catchingUp = false;
+        deferredDeletes.forEach(this::deleteNode);
+        deferredDeletes.clear();
+    }
+    
+    /**
+     * 等待下一次补入重试，关闭时提前返回
+     * 
+     * close()不中断补入线程，按短间隔检查关闭标记
+     * 
+     * @param millis 等待时间（毫秒）
+     * @return 等待结束仍未关闭时返回true
+     */
+    private boolean awaitRetry(long millis) {
+        long deadline = System.currentTimeMillis() + millis;
+        try {
+            while (!closing && System.currentTimeMillis() < deadline) {
+                Thread.sleep(Math.min(100, Math.max(1, deadline - System.currentTimeMillis())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !closing;
+    }
+    
+    /**
+     * 从索引中删除资料对应的节点
+     * 
+     * @param key 资料键
+     */
+    private void deleteNode(long key) {
+        int node = graph.find(key);
+        if (node >= 0) {
+            graph.delete(node);
+        }
+    }
+}
\ No newline at end of file
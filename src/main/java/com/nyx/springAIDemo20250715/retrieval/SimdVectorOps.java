@@ -0,0 +1,88 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 基于JDK Vector API的向量运算
+ * 
+ * 只能通过VectorOps访问：未加载jdk.incubator.vector模块时这个类无法链接
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class SimdVectorOps {
+    
+    /** 当前CPU上的首选向量宽度 */
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    
+    /** 从缓冲区读取向量时复用的线程私有数组，长度按需增长 */
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+    
+    /**
+     * 私有构造函数，工具类不允许实例化
+     */
+    private SimdVectorOps() {
+    }
+    
+    /**
+     * 计算两个向量的点积，按a的长度计算，b的长度不小于a
+     * 
+     * @param a 向量a
+     * @param b 向量b
+     * @return 点积
+     */
+    static float dot(float[] a, float[] b) {
+        FloatVector sum = FloatVector.zero(SPECIES);
+        int i = 0;
+        int bound = SPECIES.loopBound(a.length);
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector va = FloatVector.fromArray(SPECIES, a, i);
+            FloatVector vb = FloatVector.fromArray(SPECIES, b, i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+    
+    /**
+     * 计算数组向量与缓冲区中向量的点积
+     * 
+     * 先将向量b批量复制到线程私有的数组再按数组计算：FloatVector.fromByteBuffer在JDK 19中被移除，
+     * 只用fromArray可以让本类在各个JDK版本上编译
+     * 
+     * @param a 向量a
+     * @param buffer 本机字节序的缓冲区
+     * @param byteOffset 向量b的字节偏移
+     * @return 点积
+     */
+    static float dot(float[] a, ByteBuffer buffer, int byteOffset) {
+        float[] b = SCRATCH.get();
+        if (b.length < a.length) {
+            b = new float[a.length];
+            SCRATCH.set(b);
+        }
+        buffer.slice(byteOffset, a.length * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer()
+                .get(b, 0, a.length);
+        return dot(a, b);
+    }
+    
+    /**
+     * 向量通道数
+     * 
+     * @return 每个向量寄存器容纳的float个数
+     */
+    static int lanes() {
+        return SPECIES.length();
+    }
+}
\ No newline at end of file
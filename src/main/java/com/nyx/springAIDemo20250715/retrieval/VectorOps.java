@@ -0,0 +1,138 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 向量运算
+ * 
+ * 运行时带有 --add-modules jdk.incubator.vector 参数时使用JDK Vector API（SIMD）计算点积，
+ * 否则（包括GraalVM原生镜像）回退到标量循环。两种实现的结果只有浮点舍入上的差别。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public final class VectorOps {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(VectorOps.class);
+    
+    /** 是否可以使用Vector API */
+    private static final boolean SIMD = detectSimd();
+    
+    /**
+     * 私有构造函数，工具类不允许实例化
+     */
+    private VectorOps() {
+    }
+    
+    /**
+     * 计算两个等长向量的点积
+     * 
+     * @param a 向量a
+     * @param b 向量b
+     * @return 点积
+     */
+    public static float dot(float[] a, float[] b) {
+        if (SIMD) {
+            return SimdVectorOps.dot(a, b);
+        }
+        return scalarDot(a, b);
+    }
+    
+    /**
+     * 计算数组向量与缓冲区中向量的点积，直接读取缓冲区（如内存映射文件），不为每个向量分配数组
+     * 
+     * @param a 向量a
+     * @param buffer 本机字节序的缓冲区
+     * @param byteOffset 向量b在缓冲区中的字节偏移，长度与a相同
+     * @return 点积
+     */
+    public static float dot(float[] a, ByteBuffer buffer, int byteOffset) {
+        if (SIMD) {
+            return SimdVectorOps.dot(a, buffer, byteOffset);
+        }
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * buffer.getFloat(byteOffset + i * Float.BYTES);
+        }
+        return sum;
+    }
+    
+    /**
+     * 将向量归一化为单位长度，零向量保持不变
+     * 
+     * @param vector 向量，原地修改
+     * @return 同一个向量
+     */
+    public static float[] normalize(float[] vector) {
+        float norm = (float) Math.sqrt(scalarDot(vector, vector));
+        if (norm > 0f) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] /= norm;
+            }
+        }
+        return vector;
+    }
+    
+    /**
+     * 是否正在使用Vector API
+     * 
+     * @return 使用SIMD实现返回true
+     */
+    public static boolean isSimd() {
+        return SIMD;
+    }
+    
+    /**
+     * 标量点积
+     * 
+     * @param a 向量a
+     * @param b 向量b
+     * @return 点积
+     */
+    static float scalarDot(float[] a, float[] b) {
+        float sum = 0f;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+    
+    /**
+     * 检测Vector API是否可用
+     * 
+     * jdk.incubator.vector模块未加载时，引用它的SimdVectorOps类无法链接，回退到标量实现。
+     * 孵化API在不同JDK版本间会变化，因此两个重载都要实际执行一次向量循环：方法在第一次调用时才链接，
+     * 缺失的方法此时以NoSuchMethodError暴露，而不是在检索时抛出。
+     * 
+     * @return 可用返回true
+     */
+    private static boolean detectSimd() {
+        try {
+            // 长度超过两个向量宽度，保证向量循环和尾部标量循环都会执行
+            float[] probe = new float[SimdVectorOps.lanes() * 2 + 1];
+            ByteBuffer buffer = ByteBuffer.allocate(probe.length * Float.BYTES).order(ByteOrder.nativeOrder());
+            for (int i = 0; i < probe.length; i++) {
+                probe[i] = i + 1;
+                buffer.putFloat(i * Float.BYTES, probe[i]);
+            }
+            float expected = scalarDot(probe, probe);
+            boolean available = SimdVectorOps.dot(probe, probe) == expected
+                    && SimdVectorOps.dot(probe, buffer, 0) == expected;
+            if (available) {
+                logger.info("向量运算使用JDK Vector API - lanes: {}", SimdVectorOps.lanes());
+            } else {
+                logger.warn("JDK Vector API计算结果与标量实现不一致，向量运算使用标量实现");
+            }
+            return available;
+        } catch (LinkageError e) {
+            logger.info("JDK Vector API不可用，向量运算使用标量实现: {}", e.toString());
+            return false;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,111 @@
+package com.nyx.springAIDemo20250715.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * CJK二元分词器
+ * 
+ * 面向中英文混合聊天内容的轻量分词器：
+ * - 连续的中日韩字符按相邻二元组（bigram）切分，单个孤立汉字保留为一元词
+ * - 连续的字母和数字作为一个词，统一转为小写
+ * - 其余字符（空白、标点、符号）作为分隔符
+ * 
+ * 中文短语查询会被切分为相互重叠的二元组。建立索引时另外为连续CJK字符中的每个字输出一元词，
+ * 单字查询（如“猫”）因此也能命中较长文本中的该字；查询时不输出，避免多字查询退化为逐字匹配。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public final class BigramTokenizer {
+    
+    /** 单个词的最大长度，超长的字母数字串截断处理 */
+    private static final int MAX_TOKEN_LENGTH = 64;
+    
+    /**
+     * 私有构造函数，工具类不允许实例化
+     */
+    private BigramTokenizer() {
+    }
+    
+    /**
+     * 对文本进行分词，用于查询和嵌入
+     * 
+     * @param text 待分词文本
+     * @return 按出现顺序排列的词列表（可能包含重复词）
+     */
+    public static List<String> tokenize(String text) {
+        return tokenize(text, false);
+    }
+    
+    /**
+     * 对文本进行分词
+     * 
+     * @param text 待分词文本
+     * @param unigrams 是否为连续CJK字符中的每个字额外输出一元词，建立索引时为true
+     * @return 按出现顺序排列的词列表（可能包含重复词）
+     */
+    public static List<String> tokenize(String text, boolean unigrams) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            int codePoint = text.codePointAt(i);
+            if (isCjk(codePoint)) {
+                // 收集一段连续的CJK字符并输出二元组
+                int start = i;
+                int previous = -1;
+                int count = 0;
+                while (i < length && isCjk(text.codePointAt(i))) {
+                    int current = text.codePointAt(i);
+                    if (previous >= 0) {
+                        tokens.add(new StringBuilder(4).appendCodePoint(previous).appendCodePoint(current).toString());
+                    }
+                    if (unigrams) {
+                        tokens.add(new String(Character.toChars(current)));
+                    }
+                    previous = current;
+                    count++;
+                    i += Character.charCount(current);
+                }
+                if (count == 1 && !unigrams) {
+                    tokens.add(text.substring(start, i));
+                }
+            } else if (Character.isLetterOrDigit(codePoint)) {
+                int start = i;
+                while (i < length) {
+                    int current = text.codePointAt(i);
+                    if (!Character.isLetterOrDigit(current) || isCjk(current)) {
+                        break;
+                    }
+                    i += Character.charCount(current);
+                }
+                String word = text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH));
+                tokens.add(word.toLowerCase(Locale.ROOT));
+            } else {
+                i += Character.charCount(codePoint);
+            }
+        }
+        return tokens;
+    }
+    
+    /**
+     * 判断字符是否属于中日韩文字
+     * 
+     * @param codePoint 字符码点
+     * @return 属于中日韩文字返回true，否则返回false
+     */
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+}
\ No newline at end of file
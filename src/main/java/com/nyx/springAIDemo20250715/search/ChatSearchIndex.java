@@ -0,0 +1,646 @@
+package com.nyx.springAIDemo20250715.search;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.ChatSearchHit;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 会话全文检索索引
+ * 
+ * 基于内存倒排索引的历史消息检索，提供以下功能：
+ * - 使用BigramTokenizer对消息内容进行CJK二元分词，并为每个汉字建立一元词索引以支持单字查询
+ * - 倒排表以“文档号差值 + 词频”的变长整数（varint）压缩存储
+ * - 监听ConversationLog，在消息持久化后由单独的索引线程增量建立索引
+ * - 启动时从会话历史全量重建索引
+ * - 会话删除持久化后按会话的文档号列表把其文档标记为删除，开销只与该会话的文档数有关；
+ *   已删除文档占比超过compactionDeletedRatio时，索引线程在锁外重写倒排表，只在替换时短暂持有写锁
+ * - 多词查询按文档频率从低到高求交集，并按BM25得分排序取前K条
+ * 
+ * 索引只保存文档号到（sessionId, 序号）的映射，命中内容从ConversationLog读取。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class ChatSearchIndex {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ChatSearchIndex.class);
+    
+    /** BM25词频饱和参数 */
+    private static final double K1 = 1.2;
+    
+    /** BM25文档长度归一化参数 */
+    private static final double B = 0.75;
+    
+    /** 摘要中命中位置之前保留的字符数 */
+    private static final int SNIPPET_BEFORE = 30;
+    
+    /** 摘要最大字符数 */
+    private static final int SNIPPET_LENGTH = 120;
+    
+    /** 会话历史日志 */
+    private final ConversationLog conversationLog;
+    
+    /** 全文检索配置 */
+    private final StorageConfig.Search config;
+    
+    /** 索引读写锁，索引线程写入时持有写锁，查询时持有读锁 */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /** 倒排表，key为词；回收时整体替换 */
+    private Map<String, PostingList> postings = new HashMap<>();
+    
+    /** 文档所属会话ID，下标为文档号 */
+    private String[] docSessions = new String[1024];
+    
+    /** 文档在会话内的序号，下标为文档号 */
+    private long[] docSeqs = new long[1024];
+    
+    /** 文档词数，下标为文档号 */
+    private int[] docLengths = new int[1024];
+    
+    /** 已分配的文档号数量，包含已标记删除、尚未回收的文档 */
+    private int docCount;
+    
+    /** 已标记删除、尚未回收的文档号 */
+    private final BitSet deletedDocs = new BitSet();
+    
+    /** 已标记删除、尚未回收的文档数 */
+    private int deletedCount;
+    
+    /** 全部未删除文档的词数之和 */
+    private long totalLength;
+    
+    /** 是否已提交回收任务，仅索引线程访问 */
+    private boolean compactionPending;
+    
+    /** 每个会话已建立索引的序号集合，仅索引线程访问 */
+    private final Map<String, BitSet> indexedSeqs = new HashMap<>();
+    
+    /** 每个会话未删除的文档号，按文档号递增，仅索引线程访问 */
+    private Map<String, DocIds> sessionDocs = new HashMap<>();
+    
+    /** 索引线程 */
+    private final ExecutorService indexer;
+    
+    /**
+     * 构造函数，注册会话历史监听器并在后台全量重建索引
+     * 
+     * @param conversationLog 会话历史日志实例
+     * @param storageConfig 本地存储配置对象
+     */
+    @Autowired
+    public ChatSearchIndex(ConversationLog conversationLog, StorageConfig storageConfig) {
+        this.conversationLog = conversationLog;
+        this.config = storageConfig.getSearch();
+        this.indexer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-search-indexer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!config.getEnabled()) {
+            return;
+        }
+        
+        // 重建任务等监听器注册完成后再扫描，保证扫描与增量事件之间不遗漏消息；
+        // 两者在同一索引线程上执行，重复的消息按序号跳过
+        CountDownLatch registered = new CountDownLatch(1);
+        indexer.execute(() -> {
+            try {
+                registered.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long start = System.currentTimeMillis();
+            conversationLog.forEachMessage(this::index);
+            logger.info("会话检索索引重建完成 - 文档数: {}, 词数: {}, 耗时: {}ms",
+                    docCount, postings.size(), System.currentTimeMillis() - start);
+        });
+        conversationLog.addListener(new ConversationLog.Listener() {
+            @Override
+            public void onAppend(String sessionId, long seq, ChatMessage message) {
+                indexer.execute(() -> index(sessionId, seq, message));
+            }
+            
+            @Override
+            public void onDelete(String sessionId, long tombstoneSeq) {
+                indexer.execute(() -> delete(sessionId, tombstoneSeq));
+            }
+        });
+        registered.countDown();
+    }
+    
+    /**
+     * 检索历史消息
+     * 
+     * @param query 查询文本
+     * @param sessionId 限定的会话ID，为null时检索全部会话
+     * @param limit 返回结果数量
+     * @return 检索结果，包含命中总数和按得分降序排列的结果
+     */
+    public Result search(String query, String sessionId, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(BigramTokenizer.tokenize(query)));
+        if (terms.isEmpty() || !config.getEnabled()) {
+            return new Result(0, List.of());
+        }
+        limit = Math.max(1, Math.min(limit, config.getMaxLimit()));
+        
+        String[] topSessions;
+        long[] topSeqs;
+        double[] topScores;
+        int total;
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) {
+                    return new Result(0, List.of());
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(list -> list.docFrequency));
+            
+            // 以文档频率最低的词为候选集，依次与其余倒排表求交集并累加得分
+            double averageLength = (double) totalLength / (docCount - deletedCount);
+            PostingList first = lists.get(0);
+            int[] candidates = new int[first.docFrequency];
+            double[] scores = new double[first.docFrequency];
+            int count = 0;
+            double firstIdf = idf(first);
+            PostingList.Cursor cursor = first.cursor();
+            while (cursor.next()) {
+                if (deletedDocs.get(cursor.doc) || sessionId != null && !sessionId.equals(docSessions[cursor.doc])) {
+                    continue;
+                }
+                candidates[count] = cursor.doc;
+                scores[count] = score(firstIdf, cursor.frequency, cursor.doc, averageLength);
+                count++;
+            }
+            for (int t = 1; t < lists.size() && count > 0; t++) {
+                PostingList list = lists.get(t);
+                double idf = idf(list);
+                cursor = list.cursor();
+                int kept = 0;
+                boolean more = cursor.next();
+                for (int i = 0; i < count && more; i++) {
+                    while (more && cursor.doc < candidates[i]) {
+                        more = cursor.next();
+                    }
+                    if (more && cursor.doc == candidates[i]) {
+                        candidates[kept] = candidates[i];
+                        scores[kept] = scores[i] + score(idf, cursor.frequency, cursor.doc, averageLength);
+                        kept++;
+                    }
+                }
+                count = kept;
+            }
+            total = count;
+            
+            // 多取一些候选，抵消删除事件到达索引之前已删除会话被过滤掉的结果
+            int keep = Math.min(count, limit * 2);
+            PriorityQueue<Integer> heap = new PriorityQueue<>(keep + 1, Comparator.comparingDouble(i -> scores[i]));
+            for (int i = 0; i < count; i++) {
+                heap.offer(i);
+                if (heap.size() > keep) {
+                    heap.poll();
+                }
+            }
+            topSessions = new String[heap.size()];
+            topSeqs = new long[heap.size()];
+            topScores = new double[heap.size()];
+            for (int i = heap.size() - 1; i >= 0; i--) {
+                int slot = heap.poll();
+                topSessions[i] = docSessions[candidates[slot]];
+                topSeqs[i] = docSeqs[candidates[slot]];
+                topScores[i] = scores[slot];
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        
+        List<ChatSearchHit> hits = new ArrayList<>(limit);
+        for (int i = 0; i < topSessions.length && hits.size() < limit; i++) {
+            ChatMessage message = conversationLog.readMessage(topSessions[i], topSeqs[i]);
+            if (message != null) {
+                hits.add(new ChatSearchHit(topSessions[i], message.getRole(), message.getTimestamp(),
+                        topScores[i], snippet(message.getContent(), terms)));
+            }
+        }
+        return new Result(total, hits);
+    }
+    
+    /**
+     * 获取已建立索引且未删除的文档数
+     * 
+     * @return 文档数
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docCount - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 停止索引线程
+     */
+    @PreDestroy
+    public void shutdown() {
+        indexer.shutdownNow();
+    }
+    
+    /**
+     * 为一条消息建立索引（仅在索引线程中调用）
+     * 
+     * @param sessionId 会话ID
+     * @param seq 会话内序号
+     * @param message 聊天消息
+     */
+    private void index(String sessionId, long seq, ChatMessage message) {
+        // 序号在入队前分配，批量写入时可能乱序到达，只跳过已索引过的同一序号
+        BitSet indexed = indexedSeqs.computeIfAbsent(sessionId, id -> new BitSet());
+        if (indexed.get((int) seq)) {
+            return;
+        }
+        indexed.set((int) seq);
+        
+        List<String> tokens = BigramTokenizer.tokenize(message.getContent(), true);
+        if (tokens.isEmpty()) {
+            return;
+        }
+        Map<String, int[]> frequencies = new HashMap<>();
+        for (String token : tokens) {
+            frequencies.computeIfAbsent(token, t -> new int[1])[0]++;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            if (docCount == docSessions.length) {
+                int capacity = docCount * 2;
+                docSessions = Arrays.copyOf(docSessions, capacity);
+                docSeqs = Arrays.copyOf(docSeqs, capacity);
+                docLengths = Arrays.copyOf(docLengths, capacity);
+            }
+            int doc = docCount++;
+            docSessions[doc] = sessionId;
+            docSeqs[doc] = seq;
+            docLengths[doc] = tokens.size();
+            totalLength += tokens.size();
+            for (Map.Entry<String, int[]> entry : frequencies.entrySet()) {
+                postings.computeIfAbsent(entry.getKey(), term -> new PostingList()).add(doc, entry.getValue()[0]);
+            }
+            sessionDocs.computeIfAbsent(sessionId, id -> new DocIds()).add(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 把会话中序号小于墓碑序号的文档标记为删除（仅在索引线程中调用）
+     * 
+     * 标记后查询立即不再命中这些文档；已删除文档占比超过阈值时提交回收任务，
+     * 连续删除多个会话时合并为一次回收
+     * 
+     * @param sessionId 会话ID
+     * @param tombstoneSeq 墓碑序号
+     */
+    private void delete(String sessionId, long tombstoneSeq) {
+        BitSet indexed = indexedSeqs.get(sessionId);
+        if (indexed != null) {
+            indexed.clear(0, (int) Math.min(tombstoneSeq, Integer.MAX_VALUE));
+            if (indexed.isEmpty()) {
+                indexedSeqs.remove(sessionId);
+            }
+        }
+        DocIds docs = sessionDocs.get(sessionId);
+        if (docs == null) {
+            return;
+        }
+        
+        lock.writeLock().lock();
+        try {
+            // 删除后同一会话新写入的消息序号不小于墓碑序号，保留在列表中
+            int kept = 0;
+            for (int i = 0; i < docs.size; i++) {
+                int doc = docs.ids[i];
+                if (docSeqs[doc] < tombstoneSeq) {
+                    deletedDocs.set(doc);
+                    deletedCount++;
+                    totalLength -= docLengths[doc];
+                } else {
+                    docs.ids[kept++] = doc;
+                }
+            }
+            docs.size = kept;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (docs.size == 0) {
+            sessionDocs.remove(sessionId);
+        }
+        if (!compactionPending && deletedCount > docCount * config.getCompactionDeletedRatio()) {
+            compactionPending = true;
+            indexer.execute(this::compact);
+        }
+    }
+    
+    /**
+     * 回收已删除文档（仅在索引线程中调用）
+     * 
+     * 重写倒排表并重新分配文档号，使文档频率和文档总数只统计未删除的文档。
+     * 只有索引线程修改索引，因此新的倒排表在锁外构建，查询期间照常读取旧索引，
+     * 构建完成后在写锁内替换引用
+     */
+    private void compact() {
+        compactionPending = false;
+        if (deletedCount == 0) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int[] renumbered = new int[docCount];
+        int live = docCount - deletedCount;
+        int capacity = Math.max(1024, Integer.highestOneBit(Math.max(live, 1)) * 2);
+        String[] newSessions = new String[capacity];
+        long[] newSeqs = new long[capacity];
+        int[] newLengths = new int[capacity];
+        Map<String, DocIds> newSessionDocs = new HashMap<>();
+        int next = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (deletedDocs.get(doc)) {
+                renumbered[doc] = -1;
+                continue;
+            }
+            renumbered[doc] = next;
+            newSessions[next] = docSessions[doc];
+            newSeqs[next] = docSeqs[doc];
+            newLengths[next] = docLengths[doc];
+            newSessionDocs.computeIfAbsent(docSessions[doc], id -> new DocIds()).add(next);
+            next++;
+        }
+        
+        Map<String, PostingList> newPostings = new HashMap<>();
+        for (Map.Entry<String, PostingList> entry : postings.entrySet()) {
+            PostingList rewritten = new PostingList();
+            PostingList.Cursor cursor = entry.getValue().cursor();
+            while (cursor.next()) {
+                if (renumbered[cursor.doc] >= 0) {
+                    rewritten.add(renumbered[cursor.doc], cursor.frequency);
+                }
+            }
+            if (rewritten.docFrequency > 0) {
+                newPostings.put(entry.getKey(), rewritten);
+            }
+        }
+        
+        int reclaimed = deletedCount;
+        lock.writeLock().lock();
+        try {
+            postings = newPostings;
+            docSessions = newSessions;
+            docSeqs = newSeqs;
+            docLengths = newLengths;
+            docCount = live;
+            deletedDocs.clear();
+            deletedCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        sessionDocs = newSessionDocs;
+        logger.debug("会话检索索引回收完成 - 回收文档数: {}, 剩余文档数: {}, 耗时: {}ms",
+                reclaimed, live, System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * 计算词的逆文档频率
+     * 
+     * @param list 词的倒排表
+     * @return BM25逆文档频率
+     */
+    private double idf(PostingList list) {
+        // 回收之前文档频率仍包含已标记删除的文档，文档数取同一口径
+        return Math.log(1 + (docCount - list.docFrequency + 0.5) / (list.docFrequency + 0.5));
+    }
+    
+    /**
+     * 计算单个词在单个文档上的BM25得分
+     * 
+     * @param idf 词的逆文档频率
+     * @param frequency 词频
+     * @param doc 文档号
+     * @param averageLength 平均文档词数
+     * @return BM25得分
+     */
+    private double score(double idf, int frequency, int doc, double averageLength) {
+        double norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+        return idf * frequency * (K1 + 1) / (frequency + norm);
+    }
+    
+    /**
+     * 截取第一个命中词附近的内容作为摘要
+     * 
+     * @param content 消息内容
+     * @param terms 查询词
+     * @return 内容摘要
+     */
+    private static String snippet(String content, List<String> terms) {
+        int hit = -1;
+        for (String term : terms) {
+            int index = indexOfIgnoreCase(content, term);
+            if (index >= 0 && (hit < 0 || index < hit)) {
+                hit = index;
+            }
+        }
+        int start = Math.max(0, hit - SNIPPET_BEFORE);
+        int end = Math.min(content.length(), start + SNIPPET_LENGTH);
+        return (start > 0 ? "…" : "") + content.substring(start, end) + (end < content.length() ? "…" : "");
+    }
+    
+    /**
+     * 在原文中不区分大小写地查找词的位置
+     * 
+     * 不先整体转小写再查找，因为个别字符（如“İ”）转小写后长度会变，位置无法对应回原文
+     * 
+     * @param content 原文
+     * @param term 查询词
+     * @return 原文中的起始位置，未找到时返回-1
+     */
+    private static int indexOfIgnoreCase(String content, String term) {
+        for (int i = 0; i + term.length() <= content.length(); i++) {
+            if (content.regionMatches(true, i, term, 0, term.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 检索结果
+     * 
+     * @param total 命中的文档总数
+     * @param hits 按得分降序排列的结果
+     */
+    public record Result(int total, List<ChatSearchHit> hits) {
+    }
+    
+    /**
+     * 按递增顺序追加的文档号列表
+     */
+    private static class DocIds {
+        /** 文档号 */
+        int[] ids = new int[4];
+        
+        /** 有效元素数 */
+        int size;
+        
+        /**
+         * 追加一个文档号
+         * 
+         * @param doc 文档号
+         */
+        void add(int doc) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = doc;
+        }
+    }
+    
+    /**
+     * 压缩倒排表
+     * 
+     * 每个条目编码为 varint(文档号差值) + varint(词频)，文档号单调递增追加
+     */
+    private static class PostingList {
+        /** 编码后的倒排数据 */
+        byte[] data = new byte[8];
+        
+        /** 已使用的字节数 */
+        int length;
+        
+        /** 最后追加的文档号 */
+        int lastDoc = -1;
+        
+        /** 包含该词的文档数 */
+        int docFrequency;
+        
+        /**
+         * 追加一个文档条目
+         * 
+         * @param doc 文档号
+         * @param frequency 词频
+         */
+        void add(int doc, int frequency) {
+            writeVarInt(doc - lastDoc);
+            writeVarInt(frequency);
+            lastDoc = doc;
+            docFrequency++;
+        }
+        
+        /**
+         * 创建顺序读取游标
+         * 
+         * @return 游标
+         */
+        Cursor cursor() {
+            return new Cursor(data, length);
+        }
+        
+        /**
+         * 写入一个变长整数
+         * 
+         * @param value 非负整数
+         */
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+        
+        /**
+         * 倒排表顺序读取游标
+         */
+        static class Cursor {
+            /** 编码后的倒排数据 */
+            private final byte[] data;
+            
+            /** 有效字节数 */
+            private final int length;
+            
+            /** 当前读取位置 */
+            private int position;
+            
+            /** 当前文档号 */
+            int doc = -1;
+            
+            /** 当前词频 */
+            int frequency;
+            
+            Cursor(byte[] data, int length) {
+                this.data = data;
+                this.length = length;
+            }
+            
+            /**
+             * 移动到下一个条目
+             * 
+             * @return 存在下一个条目返回true，否则返回false
+             */
+            boolean next() {
+                if (position >= length) {
+                    return false;
+                }
+                doc += readVarInt();
+                frequency = readVarInt();
+                return true;
+            }
+            
+            /**
+             * 读取一个变长整数
+             * 
+             * @return 解码后的整数
+             */
+            private int readVarInt() {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                return value;
+            }
+        }
+    }
+}
\ No newline at end of file
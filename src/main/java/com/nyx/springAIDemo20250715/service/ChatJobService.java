@@ -0,0 +1,254 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import com.nyx.springAIDemo20250715.model.ChatJob;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import com.nyx.springAIDemo20250715.store.JobExpiredException;
+import com.nyx.springAIDemo20250715.store.JobResultStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步聊天任务服务类
+ * 
+ * 负责长文本生成任务的提交与执行，提供以下功能：
+ * - 提交任务后立即返回任务ID，不占用HTTP连接
+ * - 固定大小的工作线程池通过QwenAIService执行生成
+ * - 生成的增量内容写入JobResultStore，供查询和尾随读取
+ * - 任务取消
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Service
+public class ChatJobService {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ChatJobService.class);
+    
+    /** 任务会话ID前缀，用于与交互式会话区分 */
+    private static final String SESSION_PREFIX = "job-";
+    
+    /** 通义千问AI服务 */
+    private final QwenAIService qwenAIService;
+    
+    /** 任务结果存储 */
+    private final JobResultStore jobResultStore;
+    
+    /** 本地存储配置信息 */
+    private final StorageConfig storageConfig;
+    
+    /** 任务工作线程池 */
+    private final ThreadPoolExecutor executor;
+    
+    /**
+     * 构造函数，初始化工作线程池
+     * 
+     * @param qwenAIService 通义千问AI服务实例
+     * @param jobResultStore 任务结果存储实例
+     * @param storageConfig 本地存储配置对象
+     */
+    @Autowired
+    public ChatJobService(QwenAIService qwenAIService, JobResultStore jobResultStore, StorageConfig storageConfig) {
+        this.qwenAIService = qwenAIService;
+        this.jobResultStore = jobResultStore;
+        this.storageConfig = storageConfig;
+        
+        StorageConfig.Jobs jobs = storageConfig.getJobs();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(jobs.getWorkers(), jobs.getWorkers(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(jobs.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "chat-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+    
+    /**
+     * 提交异步生成任务，上游请求按批量优先级调度
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @return 新建的任务对象
+     * @throws RejectedExecutionException 等待队列已满时抛出
+     */
+    public ChatJob submit(String message, List<ChatMessage> history) {
+        return submit(message, history, ChatPriority.BULK);
+    }
+    
+    /**
+     * 按指定优先级提交异步生成任务
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param priority 上游请求优先级
+     * @return 新建的任务对象
+     * @throws IllegalArgumentException 消息内容为空时抛出
+     * @throws RejectedExecutionException 等待队列已满时抛出
+     */
+    public ChatJob submit(String message, List<ChatMessage> history, ChatPriority priority) {
+        if (message == null || message.isBlank()) {
+            throw new IllegalArgumentException("消息内容不能为空");
+        }
+        // 先检查队列容量，避免为被拒绝的任务写入记录
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new RejectedExecutionException("任务队列已满");
+        }
+        
+        ChatJob job = jobResultStore.create(UUID.randomUUID().toString());
+        try {
+            executor.execute(() -> run(job, message, history, priority));
+        } catch (RejectedExecutionException e) {
+            jobResultStore.updateStatus(job, ChatJob.Status.FAILED, "任务队列已满");
+            throw e;
+        }
+        logger.info("异步任务已提交 - jobId: {}, queued: {}", job.getId(), executor.getQueue().size());
+        return job;
+    }
+    
+    /**
+     * 查询任务
+     * 
+     * @param jobId 任务ID
+     * @return 任务对象，不存在时返回null
+     */
+    public ChatJob getJob(String jobId) {
+        return jobResultStore.get(jobId);
+    }
+    
+    /**
+     * 读取任务当前已生成的内容
+     * 
+     * @param job 任务对象
+     * @return 已生成的完整文本
+     */
+    public String getContent(ChatJob job) {
+        return jobResultStore.readContent(job);
+    }
+    
+    /**
+     * 取消任务
+     * 
+     * 排队中的任务直接标记为取消，运行中的任务通过停止对应的流来中断
+     * 
+     * @param job 任务对象
+     */
+    public void cancel(ChatJob job) {
+        synchronized (job) {
+            if (job.getStatus().isTerminal()) {
+                return;
+            }
+            jobResultStore.updateStatus(job, ChatJob.Status.CANCELLED, null);
+        }
+        qwenAIService.stopStream(SESSION_PREFIX + job.getId());
+        logger.info("异步任务已取消 - jobId: {}", job.getId());
+    }
+    
+    /**
+     * 尾随读取任务的增量内容
+     * 
+     * 先返回已写入的全部增量，再按配置的间隔轮询新增内容，直到任务结束；
+     * 读取期间任务结果过期时以一条错误响应结束。读取段文件是阻塞I/O，轮询在boundedElastic线程上执行，
+     * 不占用parallel调度器的计算线程
+     * 
+     * @param job 任务对象
+     * @return 增量响应流，最后一条标记为已完成
+     */
+    public Flux<ChatResponse> tail(ChatJob job) {
+        AtomicInteger cursor = new AtomicInteger();
+        Duration interval = Duration.ofMillis(storageConfig.getJobs().getTailPollMillis());
+        return Flux.interval(Duration.ZERO, interval, Schedulers.boundedElastic())
+                .concatMap(tick -> {
+                    // 先读取状态再读取增量，保证结束前写入的增量不会丢失
+                    ChatJob.Status status = job.getStatus();
+                    List<String> deltas = jobResultStore.readDeltas(job, cursor.get());
+                    cursor.addAndGet(deltas.size());
+                    Flux<ChatResponse> chunk = Flux.fromIterable(deltas).map(ChatResponse::of);
+                    if (status.isTerminal()) {
+                        ChatResponse last = job.getError() != null
+                                ? ChatResponse.error(job.getError())
+                                : ChatResponse.finished("");
+                        return chunk.concatWith(Flux.just(last));
+                    }
+                    return chunk;
+                })
+                .onErrorResume(JobExpiredException.class, e -> Flux.just(ChatResponse.error(e.getMessage())))
+                .takeUntil(response -> Boolean.TRUE.equals(response.getFinished()));
+    }
+    
+    /**
+     * 关闭工作线程池，运行中的任务会在重启后被标记为中断
+     */
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+    
+    /**
+     * 在工作线程中执行生成任务
+     * 
+     * @param job 任务对象
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param priority 上游请求优先级
+     */
+    private void run(ChatJob job, String message, List<ChatMessage> history, ChatPriority priority) {
+        synchronized (job) {
+            if (job.getStatus().isTerminal()) {
+                return;
+            }
+            jobResultStore.updateStatus(job, ChatJob.Status.RUNNING, null);
+        }
+        logger.info("异步任务开始执行 - jobId: {}", job.getId());
+        
+        String error = null;
+        try {
+            // 取消可能发生在流注册之前，此时stopStream找不到流，由这里检查状态并取消上游
+            ChatResponse last = qwenAIService.streamChat(message, history, SESSION_PREFIX + job.getId(), priority)
+                    .takeWhile(response -> !job.getStatus().isTerminal())
+                    .doOnNext(response -> {
+                        if (response.getContent() != null && !response.getContent().isEmpty()) {
+                            synchronized (job) {
+                                if (!job.getStatus().isTerminal()) {
+                                    jobResultStore.appendDelta(job, response.getContent());
+                                }
+                            }
+                        }
+                    })
+                    .blockLast();
+            if (last != null && last.getError() != null) {
+                error = last.getError();
+            }
+        } catch (Exception e) {
+            logger.error("异步任务执行失败 - jobId: {}", job.getId(), e);
+            error = "任务执行失败: " + e.getMessage();
+        }
+        
+        synchronized (job) {
+            if (job.getStatus().isTerminal()) {
+                return;
+            }
+            jobResultStore.updateStatus(job, error == null ? ChatJob.Status.SUCCEEDED : ChatJob.Status.FAILED, error);
+        }
+        logger.info("异步任务结束 - jobId: {}, status: {}", job.getId(), job.getStatus());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.nyx.springAIDemo20250715.service;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Operators;
+import reactor.core.publisher.Sinks;
+
+import java.util.function.Function;
+
+/**
+ * 按下游请求计时的分阶段超时
+ * 
+ * 与Flux.timeout相同，首个元素和之后每个元素各有一个超时信号，区别是只在下游有未满足的请求时计时：
+ * 下游（如SlowClientBuffer）因客户端读取缓慢暂停请求期间，等待的是客户端而不是上游，
+ * 此时改用pausedTimeout计时（通常为生成总时长上限），下游恢复请求后再开始阶段超时。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class DemandTimeout {
+    
+    private DemandTimeout() {
+    }
+    
+    /**
+     * 为流加上按下游请求计时的超时
+     * 
+     * @param source 源数据流
+     * @param firstTimeout 首个元素的超时信号
+     * @param nextTimeout 根据上一个元素生成下一个元素的超时信号
+     * @param pausedTimeout 下游暂停请求期间的超时信号
+     * @param <T> 元素类型
+     * @return 加上超时的数据流
+     */
+    static <T> Flux<T> apply(Flux<T> source, Mono<?> firstTimeout, Function<T, ? extends Mono<?>> nextTimeout,
+                             Mono<?> pausedTimeout) {
+        return Flux.defer(() -> {
+            Demand demand = new Demand();
+            return source
+                    .timeout(demand.whenRequested(firstTimeout, pausedTimeout),
+                            item -> demand.whenRequested(nextTimeout.apply(item), pausedTimeout))
+                    // timeout在向下游发送元素之后才订阅下一个超时信号，此时计数已更新
+                    .doOnNext(item -> demand.delivered())
+                    .doOnRequest(demand::request);
+        });
+    }
+    
+    /**
+     * 单个流的下游请求计数
+     */
+    private static final class Demand {
+        
+        /** 已请求但尚未送达的元素数 */
+        private long outstanding;
+        
+        /** 等待下游请求的信号，没有等待者时为null */
+        private Sinks.Empty<Void> waiter;
+        
+        /**
+         * 记录下游请求，唤醒等待中的超时信号
+         * 
+         * @param n 请求的元素数
+         */
+        private void request(long n) {
+            Sinks.Empty<Void> notify;
+            synchronized (this) {
+                outstanding = Operators.addCap(outstanding, n);
+                notify = waiter;
+                waiter = null;
+            }
+            if (notify != null) {
+                notify.tryEmitEmpty();
+            }
+        }
+        
+        /**
+         * 记录一个元素已送达
+         */
+        private synchronized void delivered() {
+            if (outstanding != Long.MAX_VALUE && outstanding > 0) {
+                outstanding--;
+            }
+        }
+        
+        /**
+         * 有未满足的请求时直接使用超时信号，否则先按pausedTimeout计时，等下游请求后再使用超时信号
+         * 
+         * @param timeout 阶段超时信号
+         * @param pausedTimeout 暂停期间的超时信号
+         * @return 超时信号
+         */
+        private Mono<?> whenRequested(Mono<?> timeout, Mono<?> pausedTimeout) {
+            return Mono.defer(() -> {
+                Mono<Void> requested;
+                synchronized (this) {
+                    if (outstanding > 0) {
+                        return timeout;
+                    }
+                    if (waiter == null) {
+                        waiter = Sinks.empty();
+                    }
+                    requested = waiter.asMono();
+                }
+                return Mono.firstWithSignal(requested.then(timeout), pausedTimeout);
+            });
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.dto.CompareEvent;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多模型对比服务
+ * 
+ * 把同一个问题同时发给多个模型，各模型的增量按到达顺序合并为一个流：
+ * - 每个模型的请求都经过QwenAIService，与普通对话共用WebClient连接池，
+ *   并各自在UpstreamScheduler中排队获取并发名额，不会绕过上游并发上限
+ * - 每个模型使用独立的会话ID（{sessionId}:{model}），可以单独停止；
+ *   客户端断开时所有模型的上游请求一起取消
+ * - 每个模型结束时发出done事件，所有模型结束后发出summary事件，
+ *   包含各模型的首个增量耗时（从对比开始计时，含排队时间）和总耗时
+ * 
+ * 指标（见StreamMetrics）：
+ * - compare.requests：对比次数
+ * - compare.models：对比涉及的模型请求数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Service
+public class ModelCompareService {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ModelCompareService.class);
+    
+    /** 通义千问配置信息 */
+    private final QwenConfig qwenConfig;
+    
+    /** 通义千问AI服务 */
+    private final QwenAIService qwenAIService;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /**
+     * 构造函数，注入QwenConfig、QwenAIService和StreamMetrics依赖
+     * 
+     * @param qwenConfig 通义千问配置对象
+     * @param qwenAIService 通义千问AI服务
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public ModelCompareService(QwenConfig qwenConfig, QwenAIService qwenAIService, StreamMetrics streamMetrics) {
+        this.qwenConfig = qwenConfig;
+        this.qwenAIService = qwenAIService;
+        this.streamMetrics = streamMetrics;
+    }
+    
+    /**
+     * 校验对比的模型列表
+     * 
+     * @param models 请求中的模型列表
+     * @return 去重后按请求顺序排列的模型列表
+     * @throws IllegalArgumentException 列表为空、超过最大模型数或包含不允许的模型时抛出
+     */
+    public List<String> validateModels(List<String> models) {
+        if (models == null || models.isEmpty()) {
+            throw new IllegalArgumentException("对比的模型列表不能为空");
+        }
+        QwenConfig.Compare config = qwenConfig.getCompare();
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String model : models) {
+            if (model == null || model.isBlank()) {
+                continue;
+            }
+            String name = model.strip();
+            if (!config.getAllowedModels().contains(name)) {
+                throw new IllegalArgumentException("不允许对比的模型: " + name + "，可选: " + config.getAllowedModels());
+            }
+            distinct.add(name);
+        }
+        if (distinct.isEmpty()) {
+            throw new IllegalArgumentException("对比的模型列表不能为空");
+        }
+        if (distinct.size() > config.getMaxModels()) {
+            throw new IllegalArgumentException("单次最多对比" + config.getMaxModels() + "个模型");
+        }
+        return List.copyOf(distinct);
+    }
+    
+    /**
+     * 同时向多个模型发送同一个问题，合并各模型的增量
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param models 已校验的模型列表（见validateModels）
+     * @param sessionId 对比会话ID，各模型的会话ID为{sessionId}:{model}
+     * @param priority 请求优先级
+     * @param client 客户端标识，用于统计token用量
+     * @return 依次包含各模型增量、各模型done事件，最后一条为summary事件的流
+     */
+    public Flux<CompareEvent> compare(String message, List<ChatMessage> history, List<String> models,
+                                      String sessionId, ChatPriority priority, String client) {
+        return Flux.defer(() -> {
+            long startNanos = System.nanoTime();
+            streamMetrics.increment("compare.requests");
+            streamMetrics.add("compare.models", models.size());
+            logger.info("开始多模型对比 - sessionId: {}, models: {}", sessionId, models);
+            
+            List<Run> runs = new ArrayList<>(models.size());
+            List<Flux<CompareEvent>> streams = new ArrayList<>(models.size());
+            for (String model : models) {
+                Run run = new Run(model, startNanos);
+                runs.add(run);
+                streams.add(qwenAIService.streamChat(message, history, sessionId + ":" + model, priority, client, model)
+                        .<CompareEvent>handle((response, sink) -> {
+                            if (response.getError() != null) {
+                                run.error = response.getError();
+                                return;
+                            }
+                            String content = response.getContent();
+                            if (content != null && !content.isEmpty()) {
+                                run.onDelta(content);
+                                sink.next(CompareEvent.delta(model, content));
+                            }
+                        })
+                        .concatWith(Mono.fromSupplier(run::finish)));
+            }
+            return Flux.merge(streams)
+                    .concatWith(Mono.fromSupplier(() -> {
+                        List<CompareEvent> results = runs.stream().map(run -> run.result).toList();
+                        long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+                        logger.info("多模型对比完成 - sessionId: {}, totalMs: {}", sessionId, totalMillis);
+                        return CompareEvent.summary(results, totalMillis);
+                    }));
+        });
+    }
+    
+    /**
+     * 单个模型的计时状态
+     * 
+     * 同一个模型的增量按顺序到达，summary在所有模型结束后读取，因此不需要同步
+     */
+    private static final class Run {
+        
+        /** 模型名称 */
+        private final String model;
+        
+        /** 对比开始时间 */
+        private final long startNanos;
+        
+        /** 首个增量耗时（纳秒），尚未收到增量时为-1 */
+        private long ttftNanos = -1;
+        
+        /** 输出字符数 */
+        private long chars;
+        
+        /** 错误信息 */
+        private String error;
+        
+        /** 结束事件，模型结束前为null */
+        private CompareEvent result;
+        
+        /**
+         * 构造函数
+         * 
+         * @param model 模型名称
+         * @param startNanos 对比开始时间
+         */
+        private Run(String model, long startNanos) {
+            this.model = model;
+            this.startNanos = startNanos;
+        }
+        
+        /**
+         * 记录一段增量
+         * 
+         * @param content 增量内容
+         */
+        private void onDelta(String content) {
+            if (ttftNanos < 0) {
+                ttftNanos = System.nanoTime() - startNanos;
+            }
+            chars += content.length();
+        }
+        
+        /**
+         * 模型结束，生成结束事件
+         * 
+         * @return 结束事件
+         */
+        private CompareEvent finish() {
+            long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Long ttftMillis = ttftNanos < 0 ? null : TimeUnit.NANOSECONDS.toMillis(ttftNanos);
+            result = CompareEvent.done(model, ttftMillis, totalMillis, chars, error);
+            return result;
+        }
+    }
+}
\ No newline at end of file
@@ -5,20 +5,30 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nyx.springAIDemo20250715.config.QwenConfig;
 import com.nyx.springAIDemo20250715.dto.ChatResponse;
 import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import com.nyx.springAIDemo20250715.retrieval.RetrievalService;
+import com.nyx.springAIDemo20250715.session.SessionStore;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ConnectTimeoutException;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.time.Duration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -26,9 +36,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * 
  * 负责与阿里云通义千问API进行交互，提供以下功能：
  * - 流式聊天对话
- * - 会话管理和控制
+ * - 会话管理和控制（会话状态和停止请求可通过SessionStore在多个节点间共享）
  * - 请求构建和响应解析
- * - 错误处理和超时控制
+ * - 错误处理和分阶段超时控制（连接、首个增量、增量间隔、总时长）
+ * - 按优先级排队获取上游并发名额
+ * - 从本地资料库检索参考资料并注入当前用户消息
+ * - 从响应的usage字段按模型、API密钥、客户端累计token用量
+ * - 向ReadinessMonitor报告首个增量耗时和请求成败，连接池状态由UpstreamPoolMetrics记录
  * 
  * 使用WebClient进行异步HTTP请求，支持Server-Sent Events流式响应
  * 
@@ -45,6 +59,30 @@ public class QwenAIService {
     /** 通义千问配置信息 */
     private final QwenConfig qwenConfig;
     
+    /** 请求体写入器 */
+    private final QwenRequestWriter qwenRequestWriter;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 上游请求优先级调度器 */
+    private final UpstreamScheduler upstreamScheduler;
+    
+    /** 会话状态存储，多节点部署时共享会话状态并广播停止请求 */
+    private final SessionStore sessionStore;
+    
+    /** 检索增强服务，为当前消息检索参考资料 */
+    private final RetrievalService retrievalService;
+    
+    /** Token用量统计 */
+    private final UsageMeter usageMeter;
+    
+    /** 就绪状态监控 */
+    private final ReadinessMonitor readinessMonitor;
+    
+    /** 上游连接池 */
+    private final ConnectionProvider connectionProvider;
+    
     /** WebClient实例，用于HTTP请求 */
     private final WebClient webClient;
     
@@ -58,12 +96,40 @@ public class QwenAIService {
      * 构造函数，初始化QwenAIService
      * 
      * @param qwenConfig 通义千问配置对象
+     * @param qwenRequestWriter 请求体写入器
+     * @param streamMetrics 流式传输指标
+     * @param upstreamScheduler 上游请求优先级调度器
+     * @param sessionStore 会话状态存储
+     * @param retrievalService 检索增强服务
+     * @param usageMeter Token用量统计
+     * @param readinessMonitor 就绪状态监控
+     * @param upstreamPoolMetrics 上游连接池指标
      */
     @Autowired
-    public QwenAIService(QwenConfig qwenConfig) {
+    public QwenAIService(QwenConfig qwenConfig, QwenRequestWriter qwenRequestWriter, StreamMetrics streamMetrics,
+                         UpstreamScheduler upstreamScheduler, SessionStore sessionStore,
+                         RetrievalService retrievalService, UsageMeter usageMeter,
+                         ReadinessMonitor readinessMonitor, UpstreamPoolMetrics upstreamPoolMetrics) {
         this.qwenConfig = qwenConfig;
+        this.qwenRequestWriter = qwenRequestWriter;
+        this.streamMetrics = streamMetrics;
+        this.upstreamScheduler = upstreamScheduler;
+        this.sessionStore = sessionStore;
+        this.retrievalService = retrievalService;
+        this.usageMeter = usageMeter;
+        this.readinessMonitor = readinessMonitor;
+        // 其他节点收到的停止请求，由流所在的本节点执行
+        sessionStore.subscribeStop(this::stopLocal);
+        // 专用连接池，便于就绪检查读取等待获取连接的请求数
+        this.connectionProvider = ConnectionProvider.builder("qwen-upstream")
+                .metrics(true, () -> upstreamPoolMetrics)
+                .build();
+        // 配置连接超时，连接建立后的各阶段超时在streamChat中按增量控制
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, qwenConfig.getTimeout().getConnectMillis());
         // 配置WebClient，设置最大内存缓冲区为10MB
         this.webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize(10 * 1024 * 1024))
                 .build();
         this.objectMapper = new ObjectMapper();
@@ -72,7 +138,7 @@ public class QwenAIService {
     /**
      * 流式聊天方法
      * 
-     * 与通义千问API进行流式对话，支持历史记录和会话管理
+     * 与通义千问API进行流式对话，支持历史记录和会话管理，按交互式优先级调度
      * 
      * @param message 用户输入的消息内容
      * @param history 聊天历史记录列表
@@ -80,23 +146,88 @@ public class QwenAIService {
      * @return 返回包含AI响应的响应式流
      */
     public Flux<ChatResponse> streamChat(String message, List<ChatMessage> history, String sessionId) {
-        logger.info("开始流式聊天 - sessionId: {}, message: {}", sessionId, message);
+        return streamChat(message, history, sessionId, ChatPriority.INTERACTIVE);
+    }
+    
+    /**
+     * 按指定优先级进行流式聊天
+     * 
+     * 上游请求先在UpstreamScheduler中排队获取并发名额；排队期间被停止的会话不会发出请求
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param sessionId 会话ID，用于会话管理和控制
+     * @param priority 请求优先级
+     * @return 返回包含AI响应的响应式流
+     */
+    public Flux<ChatResponse> streamChat(String message, List<ChatMessage> history, String sessionId,
+                                         ChatPriority priority) {
+        return streamChat(message, history, sessionId, priority, null);
+    }
+    
+    /**
+     * 按指定优先级进行流式聊天，token用量计入指定客户端
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param sessionId 会话ID，用于会话管理和控制
+     * @param priority 请求优先级
+     * @param client 客户端标识，用于按客户端统计token用量，为空时计入anonymous
+     * @return 返回包含AI响应的响应式流
+     */
+    public Flux<ChatResponse> streamChat(String message, List<ChatMessage> history, String sessionId,
+                                         ChatPriority priority, String client) {
+        return streamChat(message, history, sessionId, priority, client, null);
+    }
+    
+    /**
+     * 使用指定模型进行流式聊天
+     * 
+     * 与其他请求共用同一个WebClient连接池，并同样在UpstreamScheduler中排队获取并发名额
+     * 
+     * @param message 用户输入的消息内容
+     * @param history 聊天历史记录列表
+     * @param sessionId 会话ID，用于会话管理和控制
+     * @param priority 请求优先级
+     * @param client 客户端标识，为空时计入anonymous
+     * @param model 模型名称，为null时使用配置的模型
+     * @return 返回包含AI响应的响应式流
+     */
+    public Flux<ChatResponse> streamChat(String message, List<ChatMessage> history, String sessionId,
+                                         ChatPriority priority, String client, String model) {
+        String resolvedModel = model == null ? qwenConfig.getApi().getModel() : model;
+        logger.info("开始流式聊天 - sessionId: {}, model: {}, priority: {}, message: {}",
+                sessionId, resolvedModel, priority, message);
         
         // 创建会话控制标志
         AtomicBoolean isActive = new AtomicBoolean(true);
         activeStreams.put(sessionId, isActive);
+        String streamToken = UUID.randomUUID().toString();
+        sessionStore.markActive(sessionId, streamToken);
+        
+        // 记录首个增量耗时（TTFT），用于对比不同输入格式
+        long startNanos = System.nanoTime();
+        AtomicBoolean firstDelta = new AtomicBoolean(true);
         
-        return createQwenRequest(message, history)
-                .doOnNext(requestBody -> logger.info("发送请求到Qwen API - sessionId: {}, requestBody: {}", sessionId, requestBody))
-                .flatMapMany(requestBody -> {
-                    logger.info("开始WebClient请求 - sessionId: {}, URL: {}", sessionId, qwenConfig.getApi().getUrl());
+        QwenConfig.Timeout timeout = qwenConfig.getTimeout();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeout.getTotalMillis());
+        
+        return upstreamScheduler.schedule(priority, Flux.defer(() -> {
+                    if (!isActive.get()) {
+                        logger.info("会话在排队期间已停止 - sessionId: {}", sessionId);
+                        return Flux.<ChatResponse>empty();
+                    }
+                    String context = retrievalService.buildContext(message);
+                    UsageMeter.Tracker usage = usageMeter.open(resolvedModel, qwenConfig.getApi().getKey(), client);
+                    logger.info("开始WebClient请求 - sessionId: {}, URL: {}, historySize: {}, withContext: {}", 
+                            sessionId, qwenConfig.getApi().getUrl(), history == null ? 0 : history.size(), context != null);
                     
-                    return webClient.post()
+                    Flux<ChatResponse> responses = webClient.post()
                             .uri(qwenConfig.getApi().getUrl())
                             .header("Authorization", "Bearer " + qwenConfig.getApi().getKey())
                             .header("Content-Type", "application/json")
                             .header("Accept", "text/event-stream")
-                            .bodyValue(requestBody)
+                            .body(qwenRequestWriter.body(message, history, context, resolvedModel))
                             .retrieve()
                             .bodyToFlux(String.class)
                             .doOnNext(rawData -> logger.debug("收到原始数据 - sessionId: {}, data: {}", sessionId, rawData))
@@ -115,7 +246,7 @@ public class QwenAIService {
                                 return isValid;
                             })
                             .map(data -> {
-                                ChatResponse response = parseStreamData(data);
+                                ChatResponse response = parseStreamData(data, usage);
                                 if (response != null) {
                                     logger.debug("解析成功 - sessionId: {}, content: {}, finished: {}", 
                                             sessionId, response.getContent(), response.getFinished());
@@ -125,96 +256,142 @@ public class QwenAIService {
                                 return response;
                             })
                             .filter(response -> response != null)
+                            .doOnNext(response -> {
+                                if (firstDelta.compareAndSet(true, false)) {
+                                    long ttftMillis = Duration.ofNanos(System.nanoTime() - startNanos).toMillis();
+                                    readinessMonitor.recordTtft(ttftMillis);
+                                    logger.info("首个增量耗时 - sessionId: {}, inputFormat: {}, ttftMs: {}",
+                                            sessionId, qwenConfig.getApi().getInputFormat(), ttftMillis);
+                                }
+                            });
+                    // 首个增量和增量间隔只在下游有请求时计时，客户端读取缓慢导致暂停期间只受总时长上限约束
+                    return DemandTimeout.apply(responses,
+                                    timeoutSignal(StreamTimeoutException.Phase.FIRST_DELTA, timeout.getFirstDeltaMillis(), deadlineNanos),
+                                    response -> timeoutSignal(StreamTimeoutException.Phase.IDLE, timeout.getIdleMillis(), deadlineNanos),
+                                    timeoutSignal(StreamTimeoutException.Phase.TOTAL, Long.MAX_VALUE, deadlineNanos))
                             .doOnComplete(() -> {
-                                activeStreams.remove(sessionId);
+                                readinessMonitor.recordOutcome(false);
                                 logger.info("Stream completed for session: {}", sessionId);
                             })
                             .doOnError(error -> {
-                                activeStreams.remove(sessionId);
+                                // 只统计上游请求本身的失败（含超时），排队被拒绝和本地错误不计入错误率
+                                readinessMonitor.recordOutcome(true);
                                 logger.error("Stream error for session: {}", sessionId, error);
-                            })
-                            .timeout(Duration.ofMinutes(5));
-                })
+                            });
+                }))
                 .onErrorResume(error -> {
+                    StreamTimeoutException timeoutError = asTimeout(error);
+                    if (timeoutError != null) {
+                        // 超时已取消上游订阅，连接随之释放
+                        streamMetrics.increment(timeoutError.getPhase().getMetric());
+                        logger.warn("Stream timeout - sessionId: {}, phase: {}, timeoutMs: {}",
+                                sessionId, timeoutError.getPhase(), timeoutError.getTimeoutMillis());
+                        return Flux.just(ChatResponse.error(timeoutError.getMessage()));
+                    }
                     logger.error("Error in stream chat - sessionId: {}", sessionId, error);
                     return Flux.just(ChatResponse.error("AI服务暂时不可用: " + error.getMessage()));
+                })
+                .doFinally(signal -> {
+                    // 只移除本次请求的标志，同一会话的新请求可能已经注册了自己的标志
+                    activeStreams.remove(sessionId, isActive);
+                    sessionStore.markInactive(sessionId, streamToken);
                 });
     }
     
+    /**
+     * 释放上游连接池
+     */
+    @PreDestroy
+    public void close() {
+        connectionProvider.dispose();
+    }
+    
     /**
      * 停止指定会话的流式传输
      * 
+     * 会话不在本节点时，通过会话状态存储广播给其他节点
+     * 
      * @param sessionId 要停止的会话ID
      */
     public void stopStream(String sessionId) {
-        AtomicBoolean isActive = activeStreams.get(sessionId);
-        if (isActive != null) {
-            isActive.set(false);
-            activeStreams.remove(sessionId);
-            logger.info("Stream stopped for session: {}", sessionId);
+        if (!stopLocal(sessionId)) {
+            sessionStore.publishStop(sessionId);
         }
     }
     
     /**
-     * 创建通义千问API请求体
+     * 停止本节点上指定会话的流式传输，不广播给其他节点
      * 
-     * 根据用户消息和历史记录构建符合通义千问API格式的请求数据
+     * 流一定在本节点上的调用方（如WebSocket连接上的会话）直接调用，流已结束时不会产生广播
      * 
-     * @param message 用户当前输入的消息
-     * @param history 聊天历史记录
-     * @return 返回包含请求数据的Mono对象
+     * @param sessionId 要停止的会话ID
+     * @return 会话在本节点上并已停止返回true
      */
-    private Mono<Map<String, Object>> createQwenRequest(String message, List<ChatMessage> history) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> request = new HashMap<>();
-            
-            // 设置模型参数
-            Map<String, Object> model = new HashMap<>();
-            model.put("model", qwenConfig.getApi().getModel());
-            request.put("model", qwenConfig.getApi().getModel());
-            
-            // 构建消息列表
-            Map<String, Object> input = new HashMap<>(); 
-            StringBuilder prompt = new StringBuilder();
-            
-            // 添加历史对话
-            if (history != null && !history.isEmpty()) {
-                for (ChatMessage msg : history) {
-                    if ("user".equals(msg.getRole())) {
-                        prompt.append("用户: ").append(msg.getContent()).append("\n");
-                    } else if ("assistant".equals(msg.getRole())) {
-                        prompt.append("助手: ").append(msg.getContent()).append("\n");
-                    }
-                }
+    public boolean stopLocal(String sessionId) {
+        AtomicBoolean isActive = activeStreams.remove(sessionId);
+        if (isActive == null) {
+            return false;
+        }
+        isActive.set(false);
+        logger.info("Stream stopped for session: {}", sessionId);
+        return true;
+    }
+    
+    /**
+     * 创建超时信号
+     * 
+     * 在指定时间后以StreamTimeoutException结束；如果生成总时长上限先到，
+     * 则改为在上限处以TOTAL阶段超时结束。每次订阅时重新计算剩余时间。
+     * 
+     * @param phase 超时阶段
+     * @param timeoutMillis 该阶段的超时时间（毫秒）
+     * @param deadlineNanos 生成总时长上限对应的时间点
+     * @return 超时信号
+     */
+    private Mono<Long> timeoutSignal(StreamTimeoutException.Phase phase, long timeoutMillis, long deadlineNanos) {
+        return Mono.defer(() -> {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+            if (remainingMillis < timeoutMillis) {
+                return Mono.delay(Duration.ofMillis(Math.max(remainingMillis, 0)))
+                        .then(Mono.error(new StreamTimeoutException(StreamTimeoutException.Phase.TOTAL,
+                                qwenConfig.getTimeout().getTotalMillis())));
             }
-            
-            // 添加当前消息
-            prompt.append("用户: ").append(message).append("\n助手: ");
-            
-            input.put("prompt", prompt.toString());
-            request.put("input", input);
-            
-            // 设置参数
-            Map<String, Object> parameters = new HashMap<>();
-            parameters.put("max_tokens", qwenConfig.getApi().getMaxTokens());
-            parameters.put("temperature", qwenConfig.getApi().getTemperature());
-            parameters.put("incremental_output", true);
-            request.put("parameters", parameters);
-            
-            logger.debug("Qwen request: {}", request);
-            return request;
+            return Mono.delay(Duration.ofMillis(timeoutMillis))
+                    .then(Mono.error(new StreamTimeoutException(phase, timeoutMillis)));
         });
     }
     
+    /**
+     * 将异常识别为超时异常
+     * 
+     * 连接超时由Netty抛出，被WebClient包装，需要沿异常链查找
+     * 
+     * @param error 异常
+     * @return 超时异常，非超时时返回null
+     */
+    private StreamTimeoutException asTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StreamTimeoutException timeoutError) {
+                return timeoutError;
+            }
+            if (cause instanceof ConnectTimeoutException) {
+                return new StreamTimeoutException(StreamTimeoutException.Phase.CONNECT,
+                        qwenConfig.getTimeout().getConnectMillis());
+            }
+        }
+        return null;
+    }
+    
     /**
      * 解析流式数据
      * 
-     * 将从通义千问API接收到的原始数据解析为ChatResponse对象
+     * 将从通义千问API接收到的原始数据解析为ChatResponse对象，并把usage字段中的累计用量计入用量统计
      * 
      * @param data 从API接收到的原始JSON字符串数据
+     * @param usage 当前请求的用量跟踪器
      * @return 解析后的ChatResponse对象，解析失败时返回null
      */
-    private ChatResponse parseStreamData(String data) {
+    private ChatResponse parseStreamData(String data, UsageMeter.Tracker usage) {
         try {
             String jsonData = data.trim();
             
@@ -226,6 +403,25 @@ public class QwenAIService {
             JsonNode jsonNode = objectMapper.readTree(jsonData);
             JsonNode output = jsonNode.path("output");
             
+            // 累计token用量；同时记录输入token数，用于对比不同输入格式的提示词开销
+            JsonNode usageNode = jsonNode.path("usage");
+            if (usageNode.has("input_tokens") || usageNode.has("output_tokens")) {
+                long inputTokens = usageNode.path("input_tokens").asLong();
+                long outputTokens = usageNode.path("output_tokens").asLong();
+                usage.record(inputTokens, outputTokens);
+                logger.debug("Token用量 - inputFormat: {}, input_tokens: {}, output_tokens: {}",
+                        qwenConfig.getApi().getInputFormat(), inputTokens, outputTokens);
+            }
+            
+            // messages格式：output.choices[0].message.content
+            JsonNode choice = output.path("choices").path(0);
+            if (choice.has("message")) {
+                String content = choice.path("message").path("content").asText();
+                boolean finished = choice.path("finish_reason").asText().equals("stop");
+                logger.debug("解析数据成功 - content: {}, finished: {}", content, finished);
+                return new ChatResponse(content, finished);
+            }
+            
             if (output.has("text")) {
                 String content = output.path("text").asText();
                 boolean finished = output.path("finish_reason").asText().equals("stop");
@@ -244,11 +440,16 @@ public class QwenAIService {
     /**
      * 检查指定会话的流是否处于活跃状态
      * 
+     * 先查本节点，不在本节点时查询会话状态存储
+     * 
      * @param sessionId 要检查的会话ID
      * @return 如果会话存在且处于活跃状态返回true，否则返回false
      */
     public boolean isStreamActive(String sessionId) {
         AtomicBoolean isActive = activeStreams.get(sessionId);
-        return isActive != null && isActive.get();
+        if (isActive != null) {
+            return isActive.get();
+        }
+        return sessionStore.isActive(sessionId);
     }
 }
\ No newline at end of file
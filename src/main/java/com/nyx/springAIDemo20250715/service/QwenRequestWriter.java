@@ -0,0 +1,384 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通义千问请求体写入器
+ * 
+ * 请求体中model、parameters等字段只取决于配置，这里把它们预先序列化为固定的
+ * 头部和尾部字节片段，只在配置变化时重新生成。每次请求只用JsonGenerator写出
+ * 可变的prompt或messages部分，并直接写入HTTP客户端分配的DataBuffer，
+ * 不再构建中间Map，也不经过Jackson的对象序列化；prompt格式下各轮对话按片段
+ * 边读边写，不先拼接成完整字符串。
+ * 模板按模型分别缓存，多模型对比时每个模型使用各自的头部。
+ * 
+ * 请求体结构：
+ * - prompt格式：{"model":..,"input":{"prompt":"..."},"parameters":{..}}
+ * - messages格式：{"model":..,"input":{"messages":[{"role":..,"content":..},..]},"parameters":{"result_format":"message",..}}
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class QwenRequestWriter {
+    
+    /** 通义千问配置信息 */
+    private final QwenConfig qwenConfig;
+    
+    /** JSON对象映射器，用于生成固定片段和创建JsonGenerator */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /** 各模型当前配置对应的请求模板，key为模型名称 */
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+    
+    /**
+     * 构造函数，注入QwenConfig依赖
+     * 
+     * @param qwenConfig 通义千问配置对象
+     */
+    @Autowired
+    public QwenRequestWriter(QwenConfig qwenConfig) {
+        this.qwenConfig = qwenConfig;
+    }
+    
+    /**
+     * 创建请求体写入器
+     * 
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @return 可直接传给WebClient的请求体
+     */
+    public BodyInserter<Void, ReactiveHttpOutputMessage> body(String message, List<ChatMessage> history) {
+        return body(message, history, null);
+    }
+    
+    /**
+     * 创建带参考资料的请求体写入器
+     * 
+     * 参考资料只拼接在当前用户消息之前，历史消息保持原文，
+     * 因此messages格式下请求前缀仍然稳定
+     * 
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @param context 参考资料前缀（见RetrievalService.buildContext），为null时不添加
+     * @return 可直接传给WebClient的请求体
+     */
+    public BodyInserter<Void, ReactiveHttpOutputMessage> body(String message, List<ChatMessage> history, String context) {
+        return body(message, history, context, null);
+    }
+    
+    /**
+     * 创建指定模型的请求体写入器
+     * 
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @param context 参考资料前缀，为null时不添加
+     * @param model 模型名称，为null时使用配置的模型
+     * @return 可直接传给WebClient的请求体
+     */
+    public BodyInserter<Void, ReactiveHttpOutputMessage> body(String message, List<ChatMessage> history, String context,
+                                                              String model) {
+        String text = message == null ? "" : message;
+        String userMessage = context == null ? text : context + text;
+        return (outputMessage, bodyContext) -> outputMessage.writeWith(
+                Mono.fromCallable(() -> write(outputMessage.bufferFactory(), userMessage, history, model)));
+    }
+    
+    /**
+     * 将完整请求体写入新分配的DataBuffer
+     * 
+     * @param bufferFactory 缓冲区工厂
+     * @param message 用户当前输入的消息（已包含参考资料）
+     * @param history 聊天历史记录
+     * @param model 模型名称，为null时使用配置的模型
+     * @return 写好的缓冲区
+     * @throws IOException 写入失败时抛出
+     */
+    private DataBuffer write(DataBufferFactory bufferFactory, String message, List<ChatMessage> history,
+                             String model) throws IOException {
+        Template current = currentTemplate(model);
+        DataBuffer buffer = bufferFactory.allocateBuffer(current.head.length + current.tail.length
+                + estimateVariableLength(message, history));
+        boolean written = false;
+        try {
+            buffer.write(current.head);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer.asOutputStream(), JsonEncoding.UTF8)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.setRootValueSeparator(null);
+                if (current.messagesFormat) {
+                    writeMessages(generator, current.hasSystemMessage, message, history);
+                } else {
+                    generator.writeString(new PromptReader(message, history), -1);
+                }
+            }
+            buffer.write(current.tail);
+            written = true;
+            return buffer;
+        } finally {
+            if (!written) {
+                DataBufferUtils.release(buffer);
+            }
+        }
+    }
+    
+    /**
+     * 写出messages数组中的可变部分
+     * 
+     * 每条消息只包含role和content两个字段，历史消息保持原文和原顺序，
+     * 因此第N轮请求的messages是第N+1轮请求的严格前缀。
+     * 模板头部已包含配置的system消息时跳过历史中的system消息，避免请求中出现两条system消息
+     * 
+     * @param generator JSON生成器
+     * @param hasSystemMessage 模板头部是否已包含system消息
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeMessages(JsonGenerator generator, boolean hasSystemMessage, String message,
+                               List<ChatMessage> history) throws IOException {
+        boolean first = !hasSystemMessage;
+        if (history != null) {
+            for (ChatMessage msg : history) {
+                String role = msg.getRole();
+                boolean allowed = "user".equals(role) || "assistant".equals(role)
+                        || ("system".equals(role) && !hasSystemMessage);
+                if (allowed && msg.getContent() != null) {
+                    writeMessage(generator, first, role, msg.getContent());
+                    first = false;
+                }
+            }
+        }
+        writeMessage(generator, first, "user", message);
+    }
+    
+    /**
+     * 写出单条角色消息
+     * 
+     * @param generator JSON生成器
+     * @param first 是否为数组中的第一个元素
+     * @param role 角色
+     * @param content 内容
+     * @throws IOException 写入失败时抛出
+     */
+    private void writeMessage(JsonGenerator generator, boolean first, String role, String content) throws IOException {
+        if (!first) {
+            generator.writeRaw(',');
+        }
+        generator.writeStartObject();
+        generator.writeStringField("role", role);
+        generator.writeStringField("content", content);
+        generator.writeEndObject();
+    }
+    
+    /**
+     * 估算可变部分的字节数，用于一次性分配足够的缓冲区
+     * 
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @return 估算字节数
+     */
+    private int estimateVariableLength(String message, List<ChatMessage> history) {
+        // 中文字符UTF-8编码为3字节，另加每条消息的字段名和标签开销
+        int length = message.length() * 3 + 64;
+        if (history != null) {
+            for (ChatMessage msg : history) {
+                if (msg.getContent() != null) {
+                    length += msg.getContent().length() * 3 + 48;
+                }
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * 获取模型在当前配置下的请求模板，配置变化时重新生成
+     * 
+     * @param model 模型名称，为null时使用配置的模型
+     * @return 请求模板
+     * @throws JsonProcessingException 序列化失败时抛出
+     */
+    private Template currentTemplate(String model) throws JsonProcessingException {
+        QwenConfig.Api api = qwenConfig.getApi();
+        String resolved = model == null ? api.getModel() : model;
+        Template current = templates.get(resolved);
+        if (current == null || !current.matches(api)) {
+            current = buildTemplate(api, resolved);
+            templates.put(resolved, current);
+        }
+        return current;
+    }
+    
+    /**
+     * 根据配置预先序列化请求体的头部和尾部
+     * 
+     * @param api API配置
+     * @param model 模型名称
+     * @return 请求模板
+     * @throws JsonProcessingException 序列化失败时抛出
+     */
+    private Template buildTemplate(QwenConfig.Api api, String model) throws JsonProcessingException {
+        boolean messagesFormat = "messages".equalsIgnoreCase(api.getInputFormat());
+        String systemPrompt = api.getSystemPrompt();
+        boolean hasSystemMessage = messagesFormat && systemPrompt != null && !systemPrompt.isBlank();
+        
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        appendAscii(head, "{\"model\":");
+        head.writeBytes(objectMapper.writeValueAsBytes(model));
+        if (messagesFormat) {
+            appendAscii(head, ",\"input\":{\"messages\":[");
+            if (hasSystemMessage) {
+                Map<String, String> systemMessage = new LinkedHashMap<>();
+                systemMessage.put("role", "system");
+                systemMessage.put("content", systemPrompt);
+                head.writeBytes(objectMapper.writeValueAsBytes(systemMessage));
+            }
+        } else {
+            appendAscii(head, ",\"input\":{\"prompt\":");
+        }
+        
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        if (messagesFormat) {
+            // messages格式下按choices[].message返回结果
+            parameters.put("result_format", "message");
+        }
+        parameters.put("max_tokens", api.getMaxTokens());
+        parameters.put("temperature", api.getTemperature());
+        parameters.put("incremental_output", true);
+        
+        ByteArrayOutputStream tail = new ByteArrayOutputStream();
+        appendAscii(tail, messagesFormat ? "]}" : "}");
+        appendAscii(tail, ",\"parameters\":");
+        tail.writeBytes(objectMapper.writeValueAsBytes(parameters));
+        appendAscii(tail, "}");
+        
+        return new Template(model, api.getMaxTokens(), api.getTemperature(), api.getInputFormat(),
+                systemPrompt, messagesFormat, hasSystemMessage, head.toByteArray(), tail.toByteArray());
+    }
+    
+    /**
+     * 追加ASCII文本
+     * 
+     * @param out 输出流
+     * @param text 文本
+     */
+    private static void appendAscii(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * 拼接格式prompt的字符流
+     * 
+     * 将历史对话以“用户:”/“助手:”标签依次输出，最后是当前消息和“助手:”标签。
+     * 按片段顺序读取原字符串，由JsonGenerator边读边转义写出，不拼接完整的prompt
+     */
+    private static final class PromptReader extends Reader {
+        
+        /** 待输出的片段：标签、内容和换行交替排列 */
+        private final List<String> parts;
+        
+        /** 当前片段下标 */
+        private int part;
+        
+        /** 当前片段内的读取位置 */
+        private int offset;
+        
+        /**
+         * 构造函数，只收集片段引用
+         * 
+         * @param message 用户当前输入的消息
+         * @param history 聊天历史记录
+         */
+        private PromptReader(String message, List<ChatMessage> history) {
+            this.parts = new ArrayList<>(history == null ? 4 : history.size() * 3 + 4);
+            if (history != null) {
+                for (ChatMessage msg : history) {
+                    if (msg.getContent() == null) {
+                        continue;
+                    }
+                    if ("user".equals(msg.getRole())) {
+                        parts.add("用户: ");
+                    } else if ("assistant".equals(msg.getRole())) {
+                        parts.add("助手: ");
+                    } else {
+                        continue;
+                    }
+                    parts.add(msg.getContent());
+                    parts.add("\n");
+                }
+            }
+            parts.add("用户: ");
+            parts.add(message);
+            parts.add("\n助手: ");
+        }
+        
+        @Override
+        public int read(char[] buffer, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && part < parts.size()) {
+                String current = parts.get(part);
+                int count = Math.min(len - read, current.length() - offset);
+                current.getChars(offset, offset + count, buffer, off + read);
+                read += count;
+                offset += count;
+                if (offset == current.length()) {
+                    part++;
+                    offset = 0;
+                }
+            }
+            return read == 0 ? -1 : read;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+    
+    /**
+     * 请求模板：生成时的配置快照及预先序列化的头部、尾部字节
+     */
+    private record Template(String model, Integer maxTokens, Double temperature, String inputFormat,
+                            String systemPrompt, boolean messagesFormat, boolean hasSystemMessage,
+                            byte[] head, byte[] tail) {
+        
+        /**
+         * 判断模板是否仍与当前配置一致（模型由缓存的key保证一致）
+         * 
+         * @param api API配置
+         * @return 一致返回true
+         */
+        boolean matches(QwenConfig.Api api) {
+            return Objects.equals(maxTokens, api.getMaxTokens())
+                    && Objects.equals(temperature, api.getTemperature())
+                    && Objects.equals(inputFormat, api.getInputFormat())
+                    && Objects.equals(systemPrompt, api.getSystemPrompt());
+        }
+    }
+}
\ No newline at end of file
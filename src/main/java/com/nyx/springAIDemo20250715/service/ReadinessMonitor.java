@@ -0,0 +1,236 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 就绪状态监控
+ * 
+ * 汇总节点的负载情况，供负载均衡判断是否继续向本节点转发请求：
+ * - 并发占用：UpstreamScheduler中执行中和排队的请求数占并发上限的比例
+ * - 连接池等待：上游连接池中等待获取连接的请求数（见UpstreamPoolMetrics）
+ * - 首个增量耗时：最近窗口内的分位数
+ * - 错误率：最近窗口内上游请求失败（含超时）的比例；排队被拒绝或等待超时的请求没有发往上游，不计入
+ * 
+ * 任一指标超过上限时报告未就绪；未就绪后各指标需降到上限乘以恢复比例以下才恢复，
+ * 避免在阈值附近反复切换。首个增量耗时和错误率在窗口内样本不足时不参与判断。
+ * 
+ * 样本写入固定大小的环形数组，记录时不加锁、不分配对象；只在查询就绪状态时按窗口计算，
+ * 因此状态在每次轮询时更新。
+ * 
+ * 指标（见StreamMetrics）：
+ * - readiness.ready：最近一次检查是否就绪（1为就绪）
+ * - readiness.flips：就绪状态切换次数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class ReadinessMonitor {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ReadinessMonitor.class);
+    
+    /** 每个窗口保留的样本数，必须是2的幂 */
+    private static final int WINDOW_SLOTS = 1024;
+    
+    /** 通义千问配置信息 */
+    private final QwenConfig qwenConfig;
+    
+    /** 上游并发调度器 */
+    private final UpstreamScheduler upstreamScheduler;
+    
+    /** 上游连接池指标 */
+    private final UpstreamPoolMetrics upstreamPoolMetrics;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 首个增量耗时样本（毫秒） */
+    private final Window ttft = new Window();
+    
+    /** 请求结果样本，1为失败，0为成功 */
+    private final Window outcomes = new Window();
+    
+    /** 计算分位数用的缓冲区，只在status()中使用 */
+    private final long[] scratch = new long[WINDOW_SLOTS];
+    
+    /** 最近一次检查是否就绪 */
+    private volatile boolean ready = true;
+    
+    /**
+     * 构造函数，注入依赖并注册就绪状态指标
+     * 
+     * @param qwenConfig 通义千问配置对象
+     * @param upstreamScheduler 上游并发调度器
+     * @param upstreamPoolMetrics 上游连接池指标
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public ReadinessMonitor(QwenConfig qwenConfig, UpstreamScheduler upstreamScheduler,
+                            UpstreamPoolMetrics upstreamPoolMetrics, StreamMetrics streamMetrics) {
+        this.qwenConfig = qwenConfig;
+        this.upstreamScheduler = upstreamScheduler;
+        this.upstreamPoolMetrics = upstreamPoolMetrics;
+        this.streamMetrics = streamMetrics;
+        streamMetrics.registerGauge("readiness.ready", () -> ready ? 1 : 0);
+    }
+    
+    /**
+     * 记录一个请求的首个增量耗时
+     * 
+     * @param millis 首个增量耗时（毫秒）
+     */
+    public void recordTtft(long millis) {
+        ttft.record(millis);
+    }
+    
+    /**
+     * 记录一个上游请求的结果
+     * 
+     * @param failed 是否失败（含超时）
+     */
+    public void recordOutcome(boolean failed) {
+        outcomes.record(failed ? 1 : 0);
+    }
+    
+    /**
+     * 按当前负载和最近窗口内的样本计算就绪状态
+     * 
+     * @return 就绪状态和各项指标
+     */
+    public synchronized Status status() {
+        QwenConfig.Readiness config = qwenConfig.getReadiness();
+        double factor = ready ? 1.0 : config.getRecoverRatio();
+        long since = System.nanoTime() - TimeUnit.SECONDS.toNanos(config.getWindowSeconds());
+        List<String> reasons = new ArrayList<>();
+        
+        int inFlight = upstreamScheduler.inFlight();
+        int queued = upstreamScheduler.queued();
+        int capacity = upstreamScheduler.capacity();
+        double utilization = capacity > 0 ? (double) (inFlight + queued) / capacity : 0;
+        if (utilization > config.getMaxUtilization() * factor) {
+            reasons.add("utilization");
+        }
+        
+        long pendingAcquires = upstreamPoolMetrics.pendingAcquires();
+        if (pendingAcquires > config.getMaxPendingAcquires() * factor) {
+            reasons.add("pendingAcquires");
+        }
+        
+        int ttftSamples = ttft.collect(since, scratch);
+        long ttftMillis = -1;
+        if (ttftSamples > 0) {
+            Arrays.sort(scratch, 0, ttftSamples);
+            int rank = (int) Math.ceil(config.getTtftPercentile() * ttftSamples) - 1;
+            ttftMillis = scratch[Math.max(0, Math.min(rank, ttftSamples - 1))];
+            if (ttftSamples >= config.getMinSamples() && ttftMillis > config.getMaxTtftMillis() * factor) {
+                reasons.add("ttft");
+            }
+        }
+        
+        int outcomeSamples = outcomes.collect(since, scratch);
+        long errors = 0;
+        for (int i = 0; i < outcomeSamples; i++) {
+            errors += scratch[i];
+        }
+        double errorRate = outcomeSamples > 0 ? (double) errors / outcomeSamples : 0;
+        if (outcomeSamples >= config.getMinSamples() && errorRate > config.getMaxErrorRate() * factor) {
+            reasons.add("errorRate");
+        }
+        
+        boolean nowReady = reasons.isEmpty();
+        if (nowReady != ready) {
+            ready = nowReady;
+            streamMetrics.increment("readiness.flips");
+            if (nowReady) {
+                logger.info("节点恢复就绪 - utilization: {}, pendingAcquires: {}, ttftMs: {}, errorRate: {}",
+                        utilization, pendingAcquires, ttftMillis, errorRate);
+            } else {
+                logger.warn("节点未就绪 - reasons: {}, utilization: {}, pendingAcquires: {}, ttftMs: {}, errorRate: {}",
+                        reasons, utilization, pendingAcquires, ttftMillis, errorRate);
+            }
+        }
+        return new Status(nowReady, List.copyOf(reasons), inFlight, queued, capacity, utilization,
+                pendingAcquires, ttftMillis, errorRate);
+    }
+    
+    /**
+     * 就绪状态
+     * 
+     * @param ready 是否就绪
+     * @param reasons 超过上限的指标名称，就绪时为空
+     * @param inFlight 执行中的上游请求数
+     * @param queued 排队的上游请求数
+     * @param capacity 上游并发上限
+     * @param utilization 并发占用比例
+     * @param pendingAcquires 等待获取连接的请求数
+     * @param ttftMillis 窗口内首个增量耗时的分位数（毫秒），没有样本时为-1
+     * @param errorRate 窗口内的错误率
+     */
+    public record Status(boolean ready, List<String> reasons, int inFlight, int queued, int capacity,
+                         double utilization, long pendingAcquires, long ttftMillis, double errorRate) {
+    }
+    
+    /**
+     * 固定大小的样本环
+     * 
+     * 写满后覆盖最旧的样本；并发写入时读到的个别样本可能属于相邻的两次记录，
+     * 对就绪判断没有影响。
+     */
+    private static final class Window {
+        
+        /** 下标掩码 */
+        private static final int MASK = WINDOW_SLOTS - 1;
+        
+        /** 样本时间（System.nanoTime），0表示空槽 */
+        private final AtomicLongArray times = new AtomicLongArray(WINDOW_SLOTS);
+        
+        /** 样本值 */
+        private final AtomicLongArray values = new AtomicLongArray(WINDOW_SLOTS);
+        
+        /** 下一个写入位置 */
+        private final AtomicLong cursor = new AtomicLong();
+        
+        /**
+         * 记录一个样本
+         * 
+         * @param value 样本值
+         */
+        private void record(long value) {
+            int slot = (int) (cursor.getAndIncrement() & MASK);
+            long now = System.nanoTime();
+            values.set(slot, value);
+            times.set(slot, now == 0 ? 1 : now);
+        }
+        
+        /**
+         * 复制指定时间之后的样本
+         * 
+         * @param since 起始时间（System.nanoTime）
+         * @param target 目标数组，长度不小于WINDOW_SLOTS
+         * @return 复制的样本数
+         */
+        private int collect(long since, long[] target) {
+            int count = 0;
+            for (int slot = 0; slot < WINDOW_SLOTS; slot++) {
+                long time = times.get(slot);
+                if (time != 0 && time - since >= 0) {
+                    target[count++] = values.get(slot);
+                }
+            }
+            return count;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,369 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 慢客户端有界缓冲
+ * 
+ * 位于AI响应流和客户端输出之间，按客户端实际请求量向下游发送增量，
+ * 并保证每个流在服务端缓冲的未发送内容不超过配置的字节上限：
+ * - 缓冲未满时按prefetch条数持续向上游请求
+ * - 缓冲达到上限后停止向上游请求，上游读取随之暂停（TCP背压）
+ * - coalesce策略下，客户端未就绪期间到达的增量合并为一条，减少客户端就绪后的发送次数
+ * - drop策略下，缓冲持续满载超过dropAfterMillis时取消上游并以错误结束该流
+ * 
+ * 指标（见StreamMetrics）：
+ * - stream.buffered-bytes.total：所有流当前缓冲的字节数之和
+ * - stream.buffered-bytes.max：单个流出现过的最大缓冲字节数
+ * - stream.backpressure.coalesced / paused / dropped：合并、暂停、断开的次数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class SlowClientBuffer {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(SlowClientBuffer.class);
+    
+    /**
+     * 超出缓冲上限时的处理策略
+     */
+    public enum Policy {
+        /** 合并待发送增量，满载后暂停上游 */
+        COALESCE,
+        /** 逐条缓冲，满载后暂停上游 */
+        PAUSE,
+        /** 满载后暂停上游，超时仍未恢复则断开客户端 */
+        DROP
+    }
+    
+    /** 通义千问配置信息 */
+    private final QwenConfig qwenConfig;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 所有流当前缓冲的字节数之和 */
+    private final AtomicLong totalBufferedBytes = new AtomicLong();
+    
+    /**
+     * 构造函数，注入QwenConfig和StreamMetrics依赖
+     * 
+     * 指标只提供汇总值，不按流注册：流标识通常是会话ID，出现在公开的指标接口中会泄露会话
+     * 
+     * @param qwenConfig 通义千问配置对象
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public SlowClientBuffer(QwenConfig qwenConfig, StreamMetrics streamMetrics) {
+        this.qwenConfig = qwenConfig;
+        this.streamMetrics = streamMetrics;
+        streamMetrics.registerGauge("stream.buffered-bytes.total", totalBufferedBytes::get);
+    }
+    
+    /**
+     * 为响应流加上有界缓冲
+     * 
+     * @param source AI响应流
+     * @param streamId 流标识，用于日志
+     * @return 按客户端读取速度发送的响应流
+     */
+    public Flux<ChatResponse> apply(Flux<ChatResponse> source, String streamId) {
+        QwenConfig.Backpressure config = qwenConfig.getBackpressure();
+        Policy policy = Policy.valueOf(config.getPolicy().toUpperCase(Locale.ROOT));
+        return Flux.create(sink -> {
+            BufferSubscriber subscriber = new BufferSubscriber(sink, streamId, policy, config);
+            sink.onRequest(n -> subscriber.drain());
+            sink.onDispose(subscriber::release);
+            source.subscribe(subscriber);
+        });
+    }
+    
+    /**
+     * 估算响应内容占用的堆内存字节数（UTF-16，每字符2字节）
+     * 
+     * @param response AI响应
+     * @return 字节数
+     */
+    private static long sizeOf(ChatResponse response) {
+        String content = response.getContent();
+        return content == null ? 0 : content.length() * 2L;
+    }
+    
+    /**
+     * 单个流的缓冲订阅者
+     * 
+     * 上游回调和下游请求可能发生在不同线程，状态修改统一在对象锁内完成
+     */
+    private final class BufferSubscriber extends BaseSubscriber<ChatResponse> {
+        
+        /** 下游输出 */
+        private final FluxSink<ChatResponse> sink;
+        
+        /** 流标识 */
+        private final String streamId;
+        
+        /** 处理策略 */
+        private final Policy policy;
+        
+        /** 最大缓冲字节数 */
+        private final long maxBufferedBytes;
+        
+        /** 每次向上游请求的条数 */
+        private final int prefetch;
+        
+        /** drop策略下的等待时间（毫秒） */
+        private final long dropAfterMillis;
+        
+        /** 待发送的增量 */
+        private final Deque<ChatResponse> queue = new ArrayDeque<>();
+        
+        /** 待发送增量的字节数 */
+        private long bufferedBytes;
+        
+        /** 已向上游请求但尚未到达的条数 */
+        private long outstanding;
+        
+        /** 上游是否已结束 */
+        private boolean upstreamDone;
+        
+        /** 上游错误 */
+        private Throwable upstreamError;
+        
+        /** 是否处于暂停读取上游状态 */
+        private boolean paused;
+        
+        /** 是否正在向下游发送，防止下游在onNext中再次请求时重入 */
+        private boolean draining;
+        
+        /** 发送过程中是否有新的状态变化需要再处理一轮 */
+        private boolean missed;
+        
+        /** 流是否已结束 */
+        private boolean terminated;
+        
+        /** drop策略的断开定时器 */
+        private Disposable dropTimer;
+        
+        private BufferSubscriber(FluxSink<ChatResponse> sink, String streamId, Policy policy,
+                                 QwenConfig.Backpressure config) {
+            this.sink = sink;
+            this.streamId = streamId;
+            this.policy = policy;
+            this.maxBufferedBytes = config.getMaxBufferedBytes();
+            this.prefetch = config.getPrefetch();
+            this.dropAfterMillis = config.getDropAfterMillis();
+        }
+        
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            synchronized (this) {
+                outstanding = prefetch;
+            }
+            subscription.request(prefetch);
+        }
+        
+        @Override
+        protected void hookOnNext(ChatResponse response) {
+            synchronized (this) {
+                outstanding--;
+                ChatResponse last = queue.peekLast();
+                if (policy == Policy.COALESCE && last != null && canMerge(last) && canMerge(response)) {
+                    // 客户端尚未取走上一条，合并为一条发送
+                    ChatResponse merged = new ChatResponse(last.getContent() + response.getContent(), response.getFinished());
+                    queue.pollLast();
+                    queue.addLast(merged);
+                    streamMetrics.increment("stream.backpressure.coalesced");
+                } else {
+                    queue.addLast(response);
+                }
+                addBufferedBytes(sizeOf(response));
+                streamMetrics.recordMax("stream.buffered-bytes.max", bufferedBytes);
+            }
+            drain();
+        }
+        
+        @Override
+        protected void hookOnComplete() {
+            synchronized (this) {
+                upstreamDone = true;
+            }
+            drain();
+        }
+        
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            synchronized (this) {
+                upstreamDone = true;
+                upstreamError = throwable;
+            }
+            drain();
+        }
+        
+        /**
+         * 判断增量是否可以参与合并（错误响应单独发送）
+         * 
+         * @param response AI响应
+         * @return 可以合并返回true
+         */
+        private boolean canMerge(ChatResponse response) {
+            return response.getError() == null && response.getContent() != null;
+        }
+        
+        /**
+         * 按下游请求量发送缓冲的增量，并根据缓冲水位决定继续请求上游或暂停
+         */
+        private void drain() {
+            long toRequest = 0;
+            synchronized (this) {
+                if (draining) {
+                    missed = true;
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                ChatResponse next = null;
+                boolean complete = false;
+                Throwable error = null;
+                synchronized (this) {
+                    if (terminated) {
+                        draining = false;
+                        return;
+                    }
+                    if (!queue.isEmpty() && sink.requestedFromDownstream() > 0) {
+                        next = queue.pollFirst();
+                        addBufferedBytes(-sizeOf(next));
+                    } else if (queue.isEmpty() && upstreamDone) {
+                        terminated = true;
+                        complete = upstreamError == null;
+                        error = upstreamError;
+                    } else {
+                        toRequest += updateUpstreamDemand();
+                        if (!missed) {
+                            draining = false;
+                            break;
+                        }
+                        missed = false;
+                        continue;
+                    }
+                }
+                if (next != null) {
+                    sink.next(next);
+                } else if (complete) {
+                    sink.complete();
+                    return;
+                } else if (error != null) {
+                    sink.error(error);
+                    return;
+                }
+            }
+            if (toRequest > 0) {
+                request(toRequest);
+            }
+        }
+        
+        /**
+         * 根据缓冲水位计算需要向上游补充请求的条数，并维护暂停状态
+         * 
+         * 调用时必须持有对象锁
+         * 
+         * @return 需要请求的条数，暂停或无需补充时为0
+         */
+        private long updateUpstreamDemand() {
+            if (upstreamDone) {
+                return 0;
+            }
+            if (bufferedBytes >= maxBufferedBytes) {
+                if (!paused) {
+                    paused = true;
+                    streamMetrics.increment("stream.backpressure.paused");
+                    logger.debug("客户端读取缓慢，暂停读取上游 - streamId: {}, bufferedBytes: {}", streamId, bufferedBytes);
+                    if (policy == Policy.DROP) {
+                        dropTimer = Schedulers.parallel().schedule(this::dropIfStillFull, dropAfterMillis, TimeUnit.MILLISECONDS);
+                    }
+                }
+                return 0;
+            }
+            if (paused) {
+                paused = false;
+                if (dropTimer != null) {
+                    dropTimer.dispose();
+                    dropTimer = null;
+                }
+            }
+            // 上次请求的增量消耗过半后再补充，避免逐条请求
+            if (outstanding <= prefetch / 2) {
+                long toRequest = prefetch - outstanding;
+                outstanding = prefetch;
+                return toRequest;
+            }
+            return 0;
+        }
+        
+        /**
+         * drop策略的定时检查：缓冲仍处于满载则断开该客户端
+         */
+        private void dropIfStillFull() {
+            synchronized (this) {
+                if (terminated || !paused) {
+                    return;
+                }
+                terminated = true;
+                queue.clear();
+                addBufferedBytes(-bufferedBytes);
+            }
+            streamMetrics.increment("stream.backpressure.dropped");
+            logger.warn("客户端读取过慢，断开流 - streamId: {}", streamId);
+            cancel();
+            sink.error(new IllegalStateException("客户端读取过慢，已断开"));
+        }
+        
+        /**
+         * 流结束或被取消时释放资源
+         */
+        private void release() {
+            synchronized (this) {
+                terminated = true;
+                queue.clear();
+                addBufferedBytes(-bufferedBytes);
+                if (dropTimer != null) {
+                    dropTimer.dispose();
+                    dropTimer = null;
+                }
+            }
+            cancel();
+        }
+        
+        /**
+         * 调整本流的缓冲字节数，并同步到所有流的汇总值
+         * 
+         * 调用时必须持有对象锁
+         * 
+         * @param delta 变化的字节数
+         */
+        private void addBufferedBytes(long delta) {
+            bufferedBytes += delta;
+            totalBufferedBytes.addAndGet(delta);
+        }
+    }
+}
\ No newline at end of file
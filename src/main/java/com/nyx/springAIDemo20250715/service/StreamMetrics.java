@@ -0,0 +1,97 @@
+package com.nyx.springAIDemo20250715.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 流式传输指标
+ * 
+ * 以名称区分的指标，用于统计超时、慢客户端等流式传输事件，
+ * 通过/api/chat/metrics接口对外提供快照。支持三类指标：
+ * - 计数器：累计次数
+ * - 最大值：记录过的最大值
+ * - 瞬时值：读取快照时由注册的函数计算，如单个流当前的缓冲字节数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class StreamMetrics {
+    
+    /** 计数器，key为指标名称 */
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    
+    /** 最大值，key为指标名称 */
+    private final Map<String, LongAccumulator> maximums = new ConcurrentHashMap<>();
+    
+    /** 瞬时值，key为指标名称 */
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    
+    /**
+     * 指标计数加一
+     * 
+     * @param name 指标名称
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+    
+    /**
+     * 指标计数增加指定值
+     * 
+     * @param name 指标名称
+     * @param delta 增加值
+     */
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+    
+    /**
+     * 记录指标的最大值
+     * 
+     * @param name 指标名称
+     * @param value 当前值，大于已记录的最大值时更新
+     */
+    public void recordMax(String name, long value) {
+        maximums.computeIfAbsent(name, key -> new LongAccumulator(Math::max, 0)).accumulate(value);
+    }
+    
+    /**
+     * 注册瞬时值指标
+     * 
+     * @param name 指标名称
+     * @param supplier 读取当前值的函数
+     */
+    public void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+    
+    /**
+     * 移除瞬时值指标
+     * 
+     * @param name 指标名称
+     */
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+    
+    /**
+     * 获取所有指标的当前值
+     * 
+     * @return 按名称排序的指标快照
+     */
+    public Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+        maximums.forEach((name, maximum) -> snapshot.put(name, maximum.get()));
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsLong()));
+        return snapshot;
+    }
+}
\ No newline at end of file
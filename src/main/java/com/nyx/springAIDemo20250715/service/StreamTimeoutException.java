@@ -0,0 +1,92 @@
+package com.nyx.springAIDemo20250715.service;
+
+/**
+ * 流式请求超时异常
+ * 
+ * 区分超时发生的阶段，每个阶段对应独立的错误提示和指标名称
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class StreamTimeoutException extends RuntimeException {
+    
+    /**
+     * 超时阶段
+     */
+    public enum Phase {
+        /** 建立上游连接超时 */
+        CONNECT("stream.timeout.connect", "连接AI服务超时"),
+        /** 等待首个增量超时 */
+        FIRST_DELTA("stream.timeout.first-delta", "等待AI服务响应超时"),
+        /** 相邻增量间隔超时 */
+        IDLE("stream.timeout.idle", "AI服务响应中断超时"),
+        /** 生成总时长超时 */
+        TOTAL("stream.timeout.total", "生成时间超过上限");
+        
+        /** 指标名称 */
+        private final String metric;
+        
+        /** 返回给客户端的错误提示 */
+        private final String description;
+        
+        Phase(String metric, String description) {
+            this.metric = metric;
+            this.description = description;
+        }
+        
+        /**
+         * 获取指标名称
+         * 
+         * @return 指标名称
+         */
+        public String getMetric() {
+            return metric;
+        }
+        
+        /**
+         * 获取错误提示
+         * 
+         * @return 错误提示
+         */
+        public String getDescription() {
+            return description;
+        }
+    }
+    
+    /** 超时阶段 */
+    private final Phase phase;
+    
+    /** 该阶段的超时时间（毫秒） */
+    private final long timeoutMillis;
+    
+    /**
+     * 构造函数
+     * 
+     * @param phase 超时阶段
+     * @param timeoutMillis 该阶段的超时时间（毫秒）
+     */
+    public StreamTimeoutException(Phase phase, long timeoutMillis) {
+        super(phase.getDescription() + "（" + timeoutMillis + "ms）");
+        this.phase = phase;
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    /**
+     * 获取超时阶段
+     * 
+     * @return 超时阶段
+     */
+    public Phase getPhase() {
+        return phase;
+    }
+    
+    /**
+     * 获取超时时间
+     * 
+     * @return 超时时间（毫秒）
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,78 @@
+package com.nyx.springAIDemo20250715.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上游连接池指标
+ * 
+ * 作为Reactor Netty连接池的指标注册器，记录上游连接池（每个远端地址一个子池）的实时状态，
+ * 不依赖Micrometer。QwenAIService创建连接池时传入本对象。
+ * 
+ * 指标（见StreamMetrics）：
+ * - upstream.pool.acquired：已借出的连接数
+ * - upstream.pool.pending-acquires：等待获取连接的请求数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class UpstreamPoolMetrics implements ConnectionProvider.MeterRegistrar {
+    
+    /** 各子池的实时指标，key为子池ID */
+    private final Map<String, ConnectionPoolMetrics> pools = new ConcurrentHashMap<>();
+    
+    /**
+     * 构造函数，注册连接池指标
+     * 
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public UpstreamPoolMetrics(StreamMetrics streamMetrics) {
+        streamMetrics.registerGauge("upstream.pool.acquired", this::acquired);
+        streamMetrics.registerGauge("upstream.pool.pending-acquires", this::pendingAcquires);
+    }
+    
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress, ConnectionPoolMetrics metrics) {
+        pools.put(id, metrics);
+    }
+    
+    @Override
+    public void deRegisterMetrics(String poolName, String id, SocketAddress remoteAddress) {
+        pools.remove(id);
+    }
+    
+    /**
+     * 获取所有子池已借出的连接数
+     * 
+     * @return 已借出的连接数
+     */
+    public long acquired() {
+        long total = 0;
+        for (ConnectionPoolMetrics metrics : pools.values()) {
+            total += metrics.acquiredSize();
+        }
+        return total;
+    }
+    
+    /**
+     * 获取所有子池中等待获取连接的请求数
+     * 
+     * @return 等待获取连接的请求数
+     */
+    public long pendingAcquires() {
+        long total = 0;
+        for (ConnectionPoolMetrics metrics : pools.values()) {
+            total += metrics.pendingAcquireSize();
+        }
+        return total;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,380 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 上游请求优先级调度器
+ * 
+ * 所有上游流式请求在发出前先在这里排队获取并发名额，调度规则：
+ * - 同时进行的上游请求不超过maxConcurrency
+ * - 批量请求最多占用 maxConcurrency - interactiveReserved 个名额，为交互式请求保留余量
+ * - 两个通道都有排队时按权重平滑轮询分配空闲名额；此时批量请求最多使用按权重分得的份额，
+ *   超出份额的排队批量请求让位于交互式请求
+ * - 排队中的请求被取消（客户端断开、停止）时直接移出队列，不占用名额
+ * - 排队超过maxQueueWaitMillis仍未获得名额的请求出队并以错误结束
+ * 
+ * 名额通常由结束的上游流在Netty I/O线程上归还，获得名额的请求在boundedElastic线程上订阅，
+ * 检索、计量等准备工作不会占用I/O线程。名额在上游流结束、出错或被取消时归还；
+ * 凭据状态（排队、已分配、执行中、已结束）只通过CAS转换，取消、超时与分配同时发生时名额也不会丢失。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class UpstreamScheduler {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamScheduler.class);
+    
+    /** 排队中 */
+    private static final int WAITING = 0;
+    
+    /** 已分配名额，尚未开始执行 */
+    private static final int GRANTED = 1;
+    
+    /** 执行中 */
+    private static final int RUNNING = 2;
+    
+    /** 已结束（完成或取消） */
+    private static final int DONE = 3;
+    
+    /** 通义千问配置信息 */
+    private final QwenConfig qwenConfig;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 各通道的排队请求 */
+    private final Map<ChatPriority, Deque<Ticket>> queues = new EnumMap<>(ChatPriority.class);
+    
+    /** 各通道执行中的请求数 */
+    private final Map<ChatPriority, Integer> inFlight = new EnumMap<>(ChatPriority.class);
+    
+    /** 平滑加权轮询的当前权重：交互式通道 */
+    private long interactiveCredit;
+    
+    /** 平滑加权轮询的当前权重：批量通道 */
+    private long bulkCredit;
+    
+    /**
+     * 构造函数，注入QwenConfig和StreamMetrics依赖
+     * 
+     * @param qwenConfig 通义千问配置对象
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public UpstreamScheduler(QwenConfig qwenConfig, StreamMetrics streamMetrics) {
+        this.qwenConfig = qwenConfig;
+        this.streamMetrics = streamMetrics;
+        for (ChatPriority priority : ChatPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            inFlight.put(priority, 0);
+            String lane = laneName(priority);
+            streamMetrics.registerGauge("scheduler.queued." + lane, () -> queued(priority));
+            streamMetrics.registerGauge("scheduler.in-flight." + lane, () -> running(priority));
+        }
+    }
+    
+    /**
+     * 在获得并发名额后执行上游请求
+     * 
+     * @param priority 请求优先级
+     * @param work 上游请求（冷流，获得名额后才订阅）
+     * @param <T> 元素类型
+     * @return 排队后执行的流；排队已满或排队超时时以错误结束
+     */
+    public <T> Flux<T> schedule(ChatPriority priority, Flux<T> work) {
+        long maxQueueWaitMillis = qwenConfig.getScheduler().getMaxQueueWaitMillis();
+        return Mono.<Ticket>create(sink -> {
+                    Ticket ticket = new Ticket(priority, sink);
+                    sink.onCancel(() -> cancel(ticket));
+                    if (!enqueue(ticket)) {
+                        sink.error(new IllegalStateException("当前排队请求过多，请稍后重试"));
+                        return;
+                    }
+                    if (maxQueueWaitMillis > 0) {
+                        // 超时与分配名额都以凭据状态的CAS为准，两者只有一个生效
+                        sink.onDispose(Schedulers.parallel().schedule(() -> expire(ticket, maxQueueWaitMillis),
+                                maxQueueWaitMillis, TimeUnit.MILLISECONDS));
+                    }
+                })
+                // 名额已分配但凭据未送达flatMapMany就被丢弃时归还名额
+                .doOnDiscard(Ticket.class, this::cancel)
+                .flatMapMany(ticket -> {
+                    if (!ticket.state.compareAndSet(GRANTED, RUNNING)) {
+                        return Flux.<T>empty();
+                    }
+                    // 通知方可能是归还名额的I/O线程，上游请求切换到boundedElastic线程后再订阅
+                    return work.subscribeOn(Schedulers.boundedElastic())
+                            .doFinally(signal -> release(ticket));
+                });
+    }
+    
+    /**
+     * 排队超时：仍在排队的请求出队并以错误结束
+     * 
+     * @param ticket 排队凭据
+     * @param maxQueueWaitMillis 最长等待时间（毫秒）
+     */
+    private void expire(Ticket ticket, long maxQueueWaitMillis) {
+        if (!ticket.state.compareAndSet(WAITING, DONE)) {
+            return;
+        }
+        synchronized (this) {
+            queues.get(ticket.priority).remove(ticket);
+        }
+        streamMetrics.increment("scheduler.timed-out." + laneName(ticket.priority));
+        logger.warn("上游排队超时 - priority: {}, waitMs: {}", ticket.priority, maxQueueWaitMillis);
+        ticket.sink.error(new IllegalStateException("排队等待超时，请稍后重试"));
+    }
+    
+    /**
+     * 请求入队并尝试分配名额
+     * 
+     * @param ticket 排队凭据
+     * @return 入队成功返回true，排队已满返回false
+     */
+    private boolean enqueue(Ticket ticket) {
+        List<Ticket> granted;
+        synchronized (this) {
+            Deque<Ticket> queue = queues.get(ticket.priority);
+            if (queue.size() >= qwenConfig.getScheduler().getMaxQueued()) {
+                streamMetrics.increment("scheduler.rejected." + laneName(ticket.priority));
+                logger.warn("上游排队已满 - priority: {}, queued: {}", ticket.priority, queue.size());
+                return false;
+            }
+            queue.addLast(ticket);
+            granted = dispatch();
+        }
+        notifyGranted(granted);
+        return true;
+    }
+    
+    /**
+     * 取消请求：排队中的移出队列，已分配名额但未开始执行的归还名额
+     * 
+     * @param ticket 排队凭据
+     */
+    private void cancel(Ticket ticket) {
+        if (ticket.state.compareAndSet(WAITING, DONE)) {
+            synchronized (this) {
+                queues.get(ticket.priority).remove(ticket);
+            }
+        } else if (ticket.state.compareAndSet(GRANTED, DONE)) {
+            returnSlot(ticket);
+        }
+    }
+    
+    /**
+     * 执行结束后归还名额
+     * 
+     * @param ticket 排队凭据
+     */
+    private void release(Ticket ticket) {
+        if (ticket.state.compareAndSet(RUNNING, DONE)) {
+            returnSlot(ticket);
+        }
+    }
+    
+    /**
+     * 归还名额并把空出的名额分配给排队请求
+     * 
+     * @param ticket 排队凭据
+     */
+    private void returnSlot(Ticket ticket) {
+        List<Ticket> granted;
+        synchronized (this) {
+            inFlight.merge(ticket.priority, -1, Integer::sum);
+            granted = dispatch();
+        }
+        notifyGranted(granted);
+    }
+    
+    /**
+     * 在持有锁的情况下分配空闲名额
+     * 
+     * @return 本次获得名额的请求，需在锁外通知
+     */
+    private List<Ticket> dispatch() {
+        List<Ticket> granted = new ArrayList<>();
+        QwenConfig.Scheduler config = qwenConfig.getScheduler();
+        int maxConcurrency = Math.max(1, config.getMaxConcurrency());
+        while (running(ChatPriority.INTERACTIVE) + running(ChatPriority.BULK) < maxConcurrency) {
+            ChatPriority lane = selectLane(config, maxConcurrency);
+            if (lane == null) {
+                break;
+            }
+            Ticket ticket = queues.get(lane).pollFirst();
+            if (ticket.state.compareAndSet(WAITING, GRANTED)) {
+                inFlight.merge(lane, 1, Integer::sum);
+                granted.add(ticket);
+            }
+        }
+        return granted;
+    }
+    
+    /**
+     * 选择下一个获得名额的通道
+     * 
+     * @param config 调度配置
+     * @param maxConcurrency 并发上限
+     * @return 通道，没有可调度的请求时返回null
+     */
+    private ChatPriority selectLane(QwenConfig.Scheduler config, int maxConcurrency) {
+        int interactiveWeight = Math.max(1, config.getInteractiveWeight());
+        int bulkWeight = Math.max(1, config.getBulkWeight());
+        int reserved = Math.min(Math.max(0, config.getInteractiveReserved()), maxConcurrency - 1);
+        int bulkRunning = running(ChatPriority.BULK);
+        
+        boolean interactiveWaiting = !queues.get(ChatPriority.INTERACTIVE).isEmpty();
+        boolean bulkWaiting = !queues.get(ChatPriority.BULK).isEmpty() && bulkRunning < maxConcurrency - reserved;
+        
+        if (interactiveWaiting && bulkWaiting) {
+            // 交互式请求排队时，批量请求只能使用按权重分得的份额
+            int bulkShare = Math.max(1, maxConcurrency * bulkWeight / (interactiveWeight + bulkWeight));
+            if (bulkRunning >= bulkShare) {
+                return ChatPriority.INTERACTIVE;
+            }
+            interactiveCredit += interactiveWeight;
+            bulkCredit += bulkWeight;
+            if (interactiveCredit >= bulkCredit) {
+                interactiveCredit -= interactiveWeight + bulkWeight;
+                return ChatPriority.INTERACTIVE;
+            }
+            bulkCredit -= interactiveWeight + bulkWeight;
+            return ChatPriority.BULK;
+        }
+        if (interactiveWaiting) {
+            return ChatPriority.INTERACTIVE;
+        }
+        if (bulkWaiting) {
+            return ChatPriority.BULK;
+        }
+        return null;
+    }
+    
+    /**
+     * 在锁外通知获得名额的请求开始执行
+     * 
+     * 调用方可能是归还名额的I/O线程，这里只发出通知，请求在schedule()中切换线程后执行。
+     * 
+     * @param granted 获得名额的请求
+     */
+    private void notifyGranted(List<Ticket> granted) {
+        for (Ticket ticket : granted) {
+            String lane = laneName(ticket.priority);
+            streamMetrics.increment("scheduler.granted." + lane);
+            streamMetrics.recordMax("scheduler.wait-millis.max." + lane,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.enqueuedNanos));
+            ticket.sink.success(ticket);
+        }
+    }
+    
+    /**
+     * 获取并发上限
+     * 
+     * @return 同时进行的上游请求上限
+     */
+    public int capacity() {
+        return qwenConfig.getScheduler().getMaxConcurrency();
+    }
+    
+    /**
+     * 获取所有通道执行中的请求数
+     * 
+     * @return 执行中的请求数
+     */
+    public synchronized int inFlight() {
+        int total = 0;
+        for (int running : inFlight.values()) {
+            total += running;
+        }
+        return total;
+    }
+    
+    /**
+     * 获取所有通道的排队数
+     * 
+     * @return 排队数
+     */
+    public synchronized int queued() {
+        int total = 0;
+        for (Deque<Ticket> queue : queues.values()) {
+            total += queue.size();
+        }
+        return total;
+    }
+    
+    /**
+     * 获取通道排队数
+     * 
+     * @param priority 通道
+     * @return 排队数
+     */
+    private synchronized long queued(ChatPriority priority) {
+        return queues.get(priority).size();
+    }
+    
+    /**
+     * 获取通道执行中的请求数
+     * 
+     * @param priority 通道
+     * @return 执行中的请求数
+     */
+    private synchronized int running(ChatPriority priority) {
+        return inFlight.get(priority);
+    }
+    
+    /**
+     * 通道在指标名称中的写法
+     * 
+     * @param priority 通道
+     * @return 小写通道名
+     */
+    private static String laneName(ChatPriority priority) {
+        return priority.name().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 排队凭据
+     */
+    private static final class Ticket {
+        
+        /** 请求优先级 */
+        private final ChatPriority priority;
+        
+        /** 获得名额时通知的订阅方 */
+        private final MonoSink<Ticket> sink;
+        
+        /** 入队时间 */
+        private final long enqueuedNanos = System.nanoTime();
+        
+        /** 凭据状态 */
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        
+        private Ticket(ChatPriority priority, MonoSink<Ticket> sink) {
+            this.priority = priority;
+            this.sink = sink;
+        }
+    }
+}
\ No newline at end of file
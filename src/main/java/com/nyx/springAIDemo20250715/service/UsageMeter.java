@@ -0,0 +1,301 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.UsageStat;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token用量统计
+ * 
+ * 从上游流式响应的usage字段累计token用量，按模型、API密钥、客户端三个维度分别计数：
+ * - 每个上游请求开始时通过open()取得该维度的计数器（只在这里查表），之后每个增量
+ *   只做整数比较和LongAdder累加，不加锁、不分配对象
+ * - 上游每个增量携带的是截至当前的累计用量，Tracker记住上次的值，只累加差值，
+ *   中途停止或超时的请求也按已生成的部分计入
+ * - 用量定期写入本地文件（spring.ai.storage.data-dir下的usage.json），启动时读回继续累计
+ * 
+ * API密钥只保留首尾几位；客户端标识来自X-Client-Id请求头，
+ * 组合数超过上限后新的客户端统一计入other，避免请求头取值过多撑大内存。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class UsageMeter {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(UsageMeter.class);
+    
+    /** 未提供客户端标识时使用的名称 */
+    private static final String ANONYMOUS = "anonymous";
+    
+    /** 组合数超过上限后新客户端使用的名称 */
+    private static final String OTHER = "other";
+    
+    /** 客户端标识的最大长度 */
+    private static final int MAX_CLIENT_LENGTH = 64;
+    
+    /** 各维度组合的计数器 */
+    private final Map<UsageKey, Counters> counters = new ConcurrentHashMap<>();
+    
+    /** 统计维度的数量上限 */
+    private final int maxKeys;
+    
+    /** 用量快照文件 */
+    private final Path file;
+    
+    /** JSON对象映射器 */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /** 定期写入快照的线程，未配置间隔时为null */
+    private final ScheduledExecutorService snapshotter;
+    
+    /**
+     * 构造函数，读回上次保存的用量并按配置间隔定期写入快照
+     * 
+     * @param qwenConfig 通义千问配置对象
+     * @param storageConfig 本地存储配置对象
+     */
+    @Autowired
+    public UsageMeter(QwenConfig qwenConfig, StorageConfig storageConfig) {
+        QwenConfig.Usage config = qwenConfig.getUsage();
+        this.maxKeys = config.getMaxKeys();
+        this.file = Paths.get(storageConfig.getDataDir(), "usage.json");
+        load();
+        long interval = config.getSnapshotIntervalSeconds();
+        if (interval > 0) {
+            this.snapshotter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "usage-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotter.scheduleWithFixedDelay(this::save, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.snapshotter = null;
+        }
+    }
+    
+    /**
+     * 开始统计一个上游请求的用量，请求数加一
+     * 
+     * @param model 模型名称
+     * @param apiKey API密钥（不会被保存）
+     * @param client 客户端标识，为空时计入anonymous
+     * @return 该请求的用量跟踪器，只能在同一个流中顺序使用
+     */
+    public Tracker open(String model, String apiKey, String client) {
+        Counters target = counters(model, maskKey(apiKey), normalizeClient(client));
+        target.requests.increment();
+        return new Tracker(target);
+    }
+    
+    /**
+     * 获取当前用量
+     * 
+     * @return 按模型、API密钥、客户端排序的用量列表
+     */
+    public List<UsageStat> snapshot() {
+        List<UsageStat> stats = new ArrayList<>(counters.size());
+        counters.forEach((key, value) -> stats.add(new UsageStat(key.model(), key.apiKey(), key.client(),
+                value.requests.sum(), value.inputTokens.sum(), value.outputTokens.sum())));
+        stats.sort(Comparator.comparing(UsageStat::getModel)
+                .thenComparing(UsageStat::getApiKey)
+                .thenComparing(UsageStat::getClient));
+        return stats;
+    }
+    
+    /**
+     * 把当前用量写入快照文件，先写临时文件再替换，写入失败只记录日志
+     */
+    public synchronized void save() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temp.toFile(), Map.of(
+                    "savedAt", System.currentTimeMillis(),
+                    "usage", snapshot()
+            ));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("写入用量快照失败 - file: {}", file, e);
+        }
+    }
+    
+    /**
+     * 停止定期写入并保存最终用量
+     */
+    @PreDestroy
+    public void close() {
+        if (snapshotter != null) {
+            snapshotter.shutdownNow();
+        }
+        save();
+    }
+    
+    /**
+     * 读回上次保存的用量，文件不存在或损坏时从零开始
+     */
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            JsonNode root = objectMapper.readTree(file.toFile());
+            for (JsonNode node : root.path("usage")) {
+                UsageStat stat = objectMapper.treeToValue(node, UsageStat.class);
+                Counters target = counters.computeIfAbsent(
+                        new UsageKey(stat.getModel(), stat.getApiKey(), stat.getClient()), key -> new Counters());
+                target.requests.add(stat.getRequests());
+                target.inputTokens.add(stat.getInputTokens());
+                target.outputTokens.add(stat.getOutputTokens());
+            }
+            logger.info("用量快照已加载 - file: {}, 统计项: {}", file, counters.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("读取用量快照失败，用量从零开始统计 - file: {}", file, e);
+            counters.clear();
+        }
+    }
+    
+    /**
+     * 查找或创建计数器，组合数达到上限后新客户端计入other
+     * 
+     * @param model 模型名称
+     * @param apiKey 脱敏后的API密钥
+     * @param client 客户端标识
+     * @return 计数器
+     */
+    private Counters counters(String model, String apiKey, String client) {
+        UsageKey key = new UsageKey(model, apiKey, client);
+        Counters existing = counters.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (counters.size() >= maxKeys) {
+            key = new UsageKey(model, apiKey, OTHER);
+        }
+        return counters.computeIfAbsent(key, k -> new Counters());
+    }
+    
+    /**
+     * 脱敏API密钥，只保留前3位和后4位
+     * 
+     * @param apiKey API密钥
+     * @return 脱敏后的密钥
+     */
+    private static String maskKey(String apiKey) {
+        if (apiKey == null || apiKey.isBlank()) {
+            return "none";
+        }
+        String key = apiKey.strip();
+        if (key.length() <= 8) {
+            return "****";
+        }
+        return key.substring(0, 3) + "****" + key.substring(key.length() - 4);
+    }
+    
+    /**
+     * 规范化客户端标识
+     * 
+     * @param client 原始客户端标识
+     * @return 去掉首尾空白、不超过最大长度的标识，为空时返回anonymous
+     */
+    private static String normalizeClient(String client) {
+        if (client == null || client.isBlank()) {
+            return ANONYMOUS;
+        }
+        String normalized = client.strip();
+        return normalized.length() > MAX_CLIENT_LENGTH ? normalized.substring(0, MAX_CLIENT_LENGTH) : normalized;
+    }
+    
+    /**
+     * 单个上游请求的用量跟踪器
+     * 
+     * 上游按增量返回截至当前的累计用量，这里只累加与上次相比增加的部分。
+     * 同一个流的增量按顺序到达，因此不需要同步。
+     */
+    public static final class Tracker {
+        
+        /** 所属维度的计数器 */
+        private final Counters counters;
+        
+        /** 已计入的输入token数 */
+        private long inputTokens;
+        
+        /** 已计入的输出token数 */
+        private long outputTokens;
+        
+        /**
+         * 构造函数
+         * 
+         * @param counters 所属维度的计数器
+         */
+        private Tracker(Counters counters) {
+            this.counters = counters;
+        }
+        
+        /**
+         * 记录上游报告的累计用量
+         * 
+         * @param inputTokens 截至当前的输入token数
+         * @param outputTokens 截至当前的输出token数
+         */
+        public void record(long inputTokens, long outputTokens) {
+            if (inputTokens > this.inputTokens) {
+                counters.inputTokens.add(inputTokens - this.inputTokens);
+                this.inputTokens = inputTokens;
+            }
+            if (outputTokens > this.outputTokens) {
+                counters.outputTokens.add(outputTokens - this.outputTokens);
+                this.outputTokens = outputTokens;
+            }
+        }
+    }
+    
+    /**
+     * 单个维度组合的计数器
+     */
+    private static final class Counters {
+        
+        /** 上游请求数 */
+        private final LongAdder requests = new LongAdder();
+        
+        /** 输入token数 */
+        private final LongAdder inputTokens = new LongAdder();
+        
+        /** 输出token数 */
+        private final LongAdder outputTokens = new LongAdder();
+    }
+    
+    /**
+     * 统计维度组合
+     * 
+     * @param model 模型名称
+     * @param apiKey 脱敏后的API密钥
+     * @param client 客户端标识
+     */
+    private record UsageKey(String model, String apiKey, String client) {
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+package com.nyx.springAIDemo20250715.session;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 内存会话状态存储
+ * 
+ * 单节点部署的默认实现：会话状态只保存在本节点，停止请求由调用方在本节点直接执行，
+ * 因此不需要广播。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+@ConditionalOnProperty(prefix = "spring.ai.session", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+    
+    /** 活跃会话，key为sessionId，value为流标识 */
+    private final Map<String, String> sessions = new ConcurrentHashMap<>();
+    
+    @Override
+    public void markActive(String sessionId, String token) {
+        sessions.put(sessionId, token);
+    }
+    
+    @Override
+    public void markInactive(String sessionId, String token) {
+        sessions.remove(sessionId, token);
+    }
+    
+    @Override
+    public boolean isActive(String sessionId) {
+        return sessions.containsKey(sessionId);
+    }
+    
+    @Override
+    public void publishStop(String sessionId) {
+        // 只有一个节点，调用方已在本节点停止
+    }
+    
+    @Override
+    public void subscribeStop(Consumer<String> listener) {
+        // 不会收到其他节点的停止请求
+    }
+}
\ No newline at end of file
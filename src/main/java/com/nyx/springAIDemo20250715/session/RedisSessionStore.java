@@ -0,0 +1,174 @@
+package com.nyx.springAIDemo20250715.session;
+
+import com.nyx.springAIDemo20250715.config.SessionConfig;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.ReactiveRedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Redis会话状态存储
+ * 
+ * 多节点部署时使用，只依赖Redis协议中的基础命令，可以连接Redis或任何兼容的服务：
+ * - 活跃会话保存为键 {keyPrefix}session:{sessionId}，值为流标识，带过期时间，
+ *   节点宕机后标记自动失效
+ * - 结束时用脚本比较流标识后再删除，避免旧流结束时误删同一会话新开始的流
+ * - 停止请求发布到频道 {keyPrefix}stop，消息格式为 {nodeId}|{sessionId}，
+ *   各节点忽略自己发出的消息
+ * 
+ * 写操作异步执行，不阻塞调用线程；只有isActive会等待查询结果，超时视为不活跃。
+ * 订阅连接断开后按指数退避自动重连。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+@ConditionalOnProperty(prefix = "spring.ai.session", name = "store", havingValue = "redis")
+public class RedisSessionStore implements SessionStore {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(RedisSessionStore.class);
+    
+    /** 仅当值与流标识一致时删除键 */
+    static final RedisScript<Long> DELETE_IF_OWNER = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('del', KEYS[1]) else return 0 end",
+            Long.class);
+    
+    /** 停止消息中节点标识和会话ID的分隔符 */
+    private static final char SEPARATOR = '|';
+    
+    /** 会话状态存储配置 */
+    private final SessionConfig sessionConfig;
+    
+    /** Redis操作模板 */
+    private final ReactiveStringRedisTemplate redisTemplate;
+    
+    /** 停止频道的订阅容器 */
+    private final ReactiveRedisMessageListenerContainer listenerContainer;
+    
+    /** 本节点标识，用于忽略自己发出的停止消息 */
+    private final String nodeId = UUID.randomUUID().toString();
+    
+    /** 停止请求监听器 */
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    
+    /** 停止频道的订阅 */
+    private final Disposable subscription;
+    
+    /**
+     * 构造函数，注入Redis连接工厂和SessionConfig依赖，并订阅停止频道
+     * 
+     * @param connectionFactory Redis响应式连接工厂
+     * @param sessionConfig 会话状态存储配置
+     */
+    @Autowired
+    public RedisSessionStore(ReactiveRedisConnectionFactory connectionFactory, SessionConfig sessionConfig) {
+        this.sessionConfig = sessionConfig;
+        this.redisTemplate = new ReactiveStringRedisTemplate(connectionFactory);
+        this.listenerContainer = new ReactiveRedisMessageListenerContainer(connectionFactory);
+        this.subscription = listenerContainer.receive(ChannelTopic.of(stopChannel()))
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnError(error -> logger.warn("停止频道订阅中断，准备重连: {}", error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onStopMessage);
+        logger.info("Redis会话存储已启动 - nodeId: {}, channel: {}", nodeId, stopChannel());
+    }
+    
+    @Override
+    public void markActive(String sessionId, String token) {
+        redisTemplate.opsForValue()
+                .set(sessionKey(sessionId), token, Duration.ofMillis(sessionConfig.getTtlMillis()))
+                .subscribe(null, error -> logger.warn("写入会话状态失败 - sessionId: {}", sessionId, error));
+    }
+    
+    @Override
+    public void markInactive(String sessionId, String token) {
+        redisTemplate.execute(DELETE_IF_OWNER, List.of(sessionKey(sessionId)), List.of(token))
+                .subscribe(null, error -> logger.warn("清除会话状态失败 - sessionId: {}", sessionId, error));
+    }
+    
+    @Override
+    public boolean isActive(String sessionId) {
+        try {
+            return Boolean.TRUE.equals(redisTemplate.hasKey(sessionKey(sessionId))
+                    .block(Duration.ofMillis(sessionConfig.getQueryTimeoutMillis())));
+        } catch (RuntimeException e) {
+            logger.warn("查询会话状态失败 - sessionId: {}", sessionId, e);
+            return false;
+        }
+    }
+    
+    @Override
+    public void publishStop(String sessionId) {
+        redisTemplate.convertAndSend(stopChannel(), nodeId + SEPARATOR + sessionId)
+                .subscribe(receivers -> logger.debug("停止请求已广播 - sessionId: {}, receivers: {}", sessionId, receivers),
+                        error -> logger.warn("广播停止请求失败 - sessionId: {}", sessionId, error));
+    }
+    
+    @Override
+    public void subscribeStop(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * 关闭订阅和订阅连接
+     */
+    @PreDestroy
+    public void close() {
+        subscription.dispose();
+        listenerContainer.destroy();
+    }
+    
+    /**
+     * 处理停止频道消息
+     * 
+     * @param message {nodeId}|{sessionId}
+     */
+    private void onStopMessage(String message) {
+        int separator = message.indexOf(SEPARATOR);
+        if (separator < 0 || message.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        String sessionId = message.substring(separator + 1);
+        logger.info("收到其他节点的停止请求 - sessionId: {}", sessionId);
+        for (Consumer<String> listener : listeners) {
+            listener.accept(sessionId);
+        }
+    }
+    
+    /**
+     * 会话状态键
+     * 
+     * @param sessionId 会话ID
+     * @return 键名
+     */
+    private String sessionKey(String sessionId) {
+        return sessionConfig.getKeyPrefix() + "session:" + sessionId;
+    }
+    
+    /**
+     * 停止请求频道
+     * 
+     * @return 频道名
+     */
+    private String stopChannel() {
+        return sessionConfig.getKeyPrefix() + "stop";
+    }
+}
\ No newline at end of file
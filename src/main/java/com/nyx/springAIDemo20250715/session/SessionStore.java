@@ -0,0 +1,59 @@
+package com.nyx.springAIDemo20250715.session;
+
+import java.util.function.Consumer;
+
+/**
+ * 会话状态存储
+ * 
+ * 记录哪些会话正在生成，并在节点之间传递停止请求。流本身始终运行在发起它的节点上，
+ * 存储只负责让任意节点都能查询会话状态、停止其他节点上的会话：
+ * - markActive / markInactive：流开始和结束时由所在节点调用
+ * - isActive：查询会话是否在任一节点上生成
+ * - publishStop / subscribeStop：停止请求广播到所有节点，由流所在节点执行停止
+ * 
+ * markActive和markInactive可能在Reactor的I/O线程上调用，实现不能阻塞调用线程。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public interface SessionStore {
+    
+    /**
+     * 标记会话开始生成
+     * 
+     * @param sessionId 会话ID
+     * @param token 本次流的唯一标识，同一会话重新开始时用于区分新旧两次流
+     */
+    void markActive(String sessionId, String token);
+    
+    /**
+     * 标记会话结束生成，仅当会话仍属于token对应的流时生效
+     * 
+     * @param sessionId 会话ID
+     * @param token markActive时传入的标识
+     */
+    void markInactive(String sessionId, String token);
+    
+    /**
+     * 查询会话是否在任一节点上生成
+     * 
+     * @param sessionId 会话ID
+     * @return 正在生成返回true
+     */
+    boolean isActive(String sessionId);
+    
+    /**
+     * 向其他节点广播停止请求
+     * 
+     * @param sessionId 会话ID
+     */
+    void publishStop(String sessionId);
+    
+    /**
+     * 订阅其他节点发出的停止请求
+     * 
+     * @param listener 收到停止请求时调用，参数为会话ID
+     */
+    void subscribeStop(Consumer<String> listener);
+}
\ No newline at end of file
@@ -0,0 +1,952 @@
+package com.nyx.springAIDemo20250715.store;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 会话历史日志
+ * 
+ * 基于内存映射段文件的只追加会话日志，提供以下功能：
+ * - 调用方只把记录放入有界队列，由后台写线程批量写入并组提交刷盘；追加消息从不等待，队列满时直接丢弃，
+ *   只有删除会话的墓碑在队列满时最多等待配置的时间
+ * - 按sessionId维护内存偏移索引，读取单个会话时按偏移顺序读取
+ * - 会话删除通过墓碑记录实现，有效数据占比过低的旧段由写线程压缩回收
+ * - 启动时扫描段文件重建索引，并清理崩溃留下的不完整尾部
+ * 
+ * 记录格式：[int 长度][int CRC32][byte 类型][long 序号][long 时间戳][byte 角色长度][角色][short 会话ID长度][会话ID][内容]，
+ * 记录位置编码为 (段号 &lt;&lt; 40) | 段内偏移。
+ * 
+ * 指标（见StreamMetrics）：
+ * - history.dropped：写入队列已满而丢弃的消息数
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class ConversationLog {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ConversationLog.class);
+    
+    /** 记录类型：消息 */
+    private static final byte TYPE_MESSAGE = 1;
+    
+    /** 记录类型：会话删除墓碑 */
+    private static final byte TYPE_TOMBSTONE = 2;
+    
+    /** 记录头长度（长度字段 + CRC字段） */
+    private static final int HEADER_BYTES = 8;
+    
+    /** 段内偏移占用的位数 */
+    private static final int OFFSET_BITS = 40;
+    
+    /** 写线程等待新记录的超时时间（毫秒） */
+    private static final long POLL_MILLIS = 50;
+    
+    /** 段文件名前缀 */
+    private static final String SEGMENT_PREFIX = "conversation-";
+    
+    /** 段文件名后缀 */
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    /** 会话历史日志配置 */
+    private final StorageConfig.History config;
+    
+    /** 流式传输指标 */
+    private final StreamMetrics streamMetrics;
+    
+    /** 段文件所在目录 */
+    private final Path directory;
+    
+    /** 已映射的段文件，key为段号；仅写线程修改，修改时持有写锁 */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    
+    /** 段文件读写锁，读取会话时持有读锁，压缩删除段时持有写锁 */
+    private final ReentrantReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    
+    /** 会话索引，key为sessionId */
+    private final Map<String, SessionIndex> sessions = new ConcurrentHashMap<>();
+    
+    /** 待写入记录队列 */
+    private final BlockingQueue<PendingRecord> queue;
+    
+    /** 后台写线程 */
+    private final Thread writer;
+    
+    /** 消息持久化监听器 */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    
+    /** 是否继续运行 */
+    private volatile boolean running = true;
+    
+    /** 当前写入段，仅写线程访问 */
+    private Segment active;
+    
+    /** 下次压缩检查的时间戳，仅写线程访问 */
+    private long nextCompactionAt;
+    
+    /**
+     * 构造函数，映射段文件、重建索引并启动后台写线程
+     * 
+     * @param storageConfig 本地存储配置对象
+     * @param streamMetrics 流式传输指标
+     */
+    @Autowired
+    public ConversationLog(StorageConfig storageConfig, StreamMetrics streamMetrics) {
+        this.config = storageConfig.getHistory();
+        this.streamMetrics = streamMetrics;
+        this.directory = Paths.get(storageConfig.getDataDir(), "history");
+        this.queue = new ArrayBlockingQueue<>(config.getQueueCapacity());
+        this.writer = new Thread(this::writeLoop, "conversation-log-writer");
+        this.writer.setDaemon(true);
+        if (!config.getEnabled()) {
+            running = false;
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开会话历史目录: " + directory, e);
+        }
+        this.nextCompactionAt = System.currentTimeMillis() + config.getCompactionIntervalSeconds() * 1000;
+        this.writer.start();
+    }
+    
+    /**
+     * 追加一条会话消息
+     * 
+     * 只分配序号并放入写入队列，不等待：调用方可能是请求线程或Netty事件循环线程，
+     * 队列已满时直接丢弃并计入history.dropped
+     * 
+     * @param sessionId 会话ID
+     * @param message 聊天消息
+     * @return 记录已排入写入队列返回true，日志未启用、内容为空或队列已满时返回false
+     */
+    public boolean append(String sessionId, ChatMessage message) {
+        if (!running || message.getContent() == null) {
+            return false;
+        }
+        SessionIndex index = sessions.computeIfAbsent(sessionId, id -> new SessionIndex());
+        long timestamp = message.getTimestamp() != null ? message.getTimestamp() : System.currentTimeMillis();
+        String role = message.getRole() != null ? message.getRole() : "";
+        boolean queued;
+        // 分配序号与入队在同一把锁内完成，保证同一会话的记录按序号顺序写入，墓碑不会先于更早的消息落盘
+        synchronized (index) {
+            long seq = index.nextSeq;
+            queued = queue.offer(new PendingRecord(TYPE_MESSAGE, sessionId, seq, timestamp, role, message.getContent()));
+            if (queued) {
+                index.nextSeq++;
+            }
+        }
+        if (!queued) {
+            streamMetrics.increment("history.dropped");
+            logger.warn("会话历史写入队列已满，丢弃记录 - sessionId: {}", sessionId);
+        }
+        return queued;
+    }
+    
+    /**
+     * 读取指定会话的全部历史消息
+     * 
+     * @param sessionId 会话ID
+     * @return 按写入顺序排列的消息列表，会话不存在时返回空列表
+     */
+    public List<ChatMessage> readSession(String sessionId) {
+        SessionIndex index = sessions.get(sessionId);
+        if (index == null) {
+            return List.of();
+        }
+        segmentLock.readLock().lock();
+        try {
+            long[] positions;
+            synchronized (index) {
+                positions = index.livePositions();
+            }
+            List<ChatMessage> messages = new ArrayList<>(positions.length);
+            for (long position : positions) {
+                messages.add(readMessage(position));
+            }
+            return messages;
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 读取指定会话中指定序号的消息
+     * 
+     * @param sessionId 会话ID
+     * @param seq 会话内序号
+     * @return 聊天消息，不存在或已删除时返回null
+     */
+    public ChatMessage readMessage(String sessionId, long seq) {
+        SessionIndex index = sessions.get(sessionId);
+        if (index == null) {
+            return null;
+        }
+        segmentLock.readLock().lock();
+        try {
+            long position;
+            synchronized (index) {
+                position = index.positionOf(seq);
+            }
+            return position < 0 ? null : readMessage(position);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 注册消息持久化监听器
+     * 
+     * 监听器在后台写线程中、消息或墓碑刷盘并发布到索引之后被调用，实现方应尽快返回
+     * 
+     * @param listener 监听器
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * 按会话遍历当前全部有效消息，用于下游索引的全量重建
+     * 
+     * @param listener 接收每条消息的监听器
+     */
+    public void forEachMessage(Listener listener) {
+        for (Map.Entry<String, SessionIndex> entry : sessions.entrySet()) {
+            SessionIndex index = entry.getValue();
+            segmentLock.readLock().lock();
+            try {
+                long[] seqs;
+                long[] positions;
+                synchronized (index) {
+                    positions = index.livePositions();
+                    seqs = Arrays.copyOfRange(index.seqs, index.size - positions.length, index.size);
+                }
+                for (int i = 0; i < positions.length; i++) {
+                    listener.onAppend(entry.getKey(), seqs[i], readMessage(positions[i]));
+                }
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+        }
+    }
+    
+    /**
+     * 删除指定会话的历史
+     * 
+     * 墓碑排入写入队列后立即对读取不可见，磁盘空间在段压缩时回收。队列已满时最多等待配置的时间，
+     * 等待期间不持有会话锁，同一会话的追加不会被阻塞
+     * 
+     * @param sessionId 会话ID
+     * @return 会话存在返回true，否则返回false
+     * @throws HistoryUnavailableException 写入队列繁忙、墓碑未能排队时抛出，此时会话保持不变
+     */
+    public boolean deleteSession(String sessionId) {
+        SessionIndex index = sessions.get(sessionId);
+        if (index == null || !running) {
+            return false;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getOfferTimeoutMillis());
+        while (true) {
+            // 分配序号与入队必须在同一把锁内完成，因此每次只尝试一次不等待的入队，等待空位时释放锁
+            synchronized (index) {
+                long seq = index.nextSeq;
+                if (queue.offer(new PendingRecord(TYPE_TOMBSTONE, sessionId, seq, System.currentTimeMillis(), "", ""))) {
+                    index.nextSeq++;
+                    index.tombstoneSeq = seq;
+                    return true;
+                }
+            }
+            if (System.nanoTime() - deadline >= 0 || !pauseForQueue()) {
+                logger.warn("会话历史写入队列已满，删除未执行 - sessionId: {}", sessionId);
+                throw new HistoryUnavailableException();
+            }
+        }
+    }
+    
+    /**
+     * 等待写线程腾出队列空位
+     * 
+     * @return 线程被中断时返回false
+     */
+    private static boolean pauseForQueue() {
+        try {
+            Thread.sleep(1);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+    
+    /**
+     * 停止写线程，写完队列中剩余记录后关闭段文件
+     */
+    @PreDestroy
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+            try {
+                segment.channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭会话历史段文件失败 - segment: {}", segment.id, e);
+            }
+        }
+    }
+    
+    /**
+     * 后台写线程主循环：批量取出记录、写入映射段、组提交刷盘后发布到索引
+     */
+    private void writeLoop() {
+        List<PendingRecord> batch = new ArrayList<>(config.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingRecord first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, config.getBatchSize() - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() >= nextCompactionAt) {
+                    compact();
+                    nextCompactionAt = System.currentTimeMillis() + config.getCompactionIntervalSeconds() * 1000;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("会话历史写入失败，丢弃本批记录 - size: {}", batch.size(), e);
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * 写入一批记录，整批只刷盘一次
+     * 
+     * @param batch 待写入记录
+     * @throws IOException 段文件滚动失败时抛出
+     */
+    private void writeBatch(List<PendingRecord> batch) throws IOException {
+        long[] positions = new long[batch.size()];
+        int flushFrom = active.writePosition;
+        for (int i = 0; i < batch.size(); i++) {
+            byte[] record = encode(batch.get(i));
+            if (record.length > config.getSegmentBytes()) {
+                logger.warn("会话消息过大，超过段文件容量 - sessionId: {}, bytes: {}", batch.get(i).sessionId, record.length);
+                positions[i] = -1;
+                continue;
+            }
+            // 滚动时旧段已整体刷盘，新段从头开始刷
+            Segment before = active;
+            positions[i] = writeRaw(record);
+            if (active != before) {
+                flushFrom = 0;
+            }
+        }
+        active.buffer.force(flushFrom, active.writePosition - flushFrom);
+        
+        for (int i = 0; i < batch.size(); i++) {
+            PendingRecord record = batch.get(i);
+            if (positions[i] < 0) {
+                continue;
+            }
+            SessionIndex index = sessions.computeIfAbsent(record.sessionId, id -> new SessionIndex());
+            if (record.type == TYPE_TOMBSTONE) {
+                releaseBefore(index, record.seq);
+                notifyDeleted(record);
+            } else {
+                synchronized (index) {
+                    index.add(record.seq, positions[i]);
+                }
+                notifyListeners(record);
+            }
+        }
+    }
+    
+    /**
+     * 通知监听器一条消息已持久化
+     * 
+     * @param record 已写入的记录
+     */
+    private void notifyListeners(PendingRecord record) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        ChatMessage message = new ChatMessage(record.role, record.content);
+        message.setTimestamp(record.timestamp);
+        for (Listener listener : listeners) {
+            try {
+                listener.onAppend(record.sessionId, record.seq, message);
+            } catch (Exception e) {
+                logger.warn("会话历史监听器处理失败 - sessionId: {}", record.sessionId, e);
+            }
+        }
+    }
+    
+    /**
+     * 通知监听器一个会话的删除已持久化
+     * 
+     * @param record 已写入的墓碑记录
+     */
+    private void notifyDeleted(PendingRecord record) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onDelete(record.sessionId, record.seq);
+            } catch (Exception e) {
+                logger.warn("会话历史监听器处理失败 - sessionId: {}", record.sessionId, e);
+            }
+        }
+    }
+    
+    /**
+     * 将已编码记录写入当前段，空间不足时滚动到新段
+     * 
+     * 只有消息记录计入有效字节数：墓碑不会被任何删除扣减，计入后会让只剩墓碑的段永远达不到压缩阈值，
+     * 是否保留墓碑由压缩时是否还有更早的段决定
+     * 
+     * @param record 已编码记录
+     * @return 编码后的记录位置
+     * @throws IOException 创建新段失败时抛出
+     */
+    private long writeRaw(byte[] record) throws IOException {
+        if (active.writePosition + record.length > active.buffer.capacity()) {
+            active.buffer.force();
+            active = openSegment(active.id + 1, config.getSegmentBytes());
+        }
+        int offset = active.writePosition;
+        active.buffer.put(offset, record);
+        active.writePosition += record.length;
+        if (record[HEADER_BYTES] == TYPE_MESSAGE) {
+            active.liveBytes += record.length;
+        }
+        return ((long) active.id << OFFSET_BITS) | offset;
+    }
+    
+    /**
+     * 应用墓碑：移除会话中序号小于墓碑序号的记录，并扣减所在段的有效字节数
+     * 
+     * @param index 会话索引
+     * @param tombstoneSeq 墓碑序号
+     */
+    private void releaseBefore(SessionIndex index, long tombstoneSeq) {
+        synchronized (index) {
+            int kept = 0;
+            for (int i = 0; i < index.size; i++) {
+                if (index.seqs[i] < tombstoneSeq) {
+                    Segment segment = segments.get((int) (index.positions[i] >>> OFFSET_BITS));
+                    if (segment != null) {
+                        segment.liveBytes -= recordLength(segment, offsetOf(index.positions[i]));
+                    }
+                } else {
+                    index.seqs[kept] = index.seqs[i];
+                    index.positions[kept] = index.positions[i];
+                    kept++;
+                }
+            }
+            index.size = kept;
+        }
+    }
+    
+    /**
+     * 压缩有效数据占比低于阈值的已封存段：把仍有效的记录搬到当前段后删除旧段
+     * 
+     * @throws IOException 写入或删除段文件失败时抛出
+     */
+    private void compact() throws IOException {
+        List<Segment> candidates = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment != active && segment.liveBytes < segment.writePosition * config.getCompactionThreshold()) {
+                candidates.add(segment);
+            }
+        }
+        for (Segment segment : candidates) {
+            compactSegment(segment);
+        }
+    }
+    
+    /**
+     * 压缩单个已封存段
+     * 
+     * @param segment 待压缩的段
+     * @throws IOException 写入或删除段文件失败时抛出
+     */
+    private void compactSegment(Segment segment) throws IOException {
+        boolean olderSegmentExists = segments.firstKey() < segment.id;
+        Map<String, Map<Long, Long>> moved = new HashMap<>();
+        int offset = 0;
+        while (offset < segment.writePosition) {
+            int length = recordLength(segment, offset);
+            ByteBuffer body = segment.buffer.slice(offset + HEADER_BYTES, length - HEADER_BYTES);
+            byte type = body.get(0);
+            long seq = body.getLong(1);
+            int roleLength = body.get(17);
+            int sessionLength = body.getShort(18 + roleLength);
+            byte[] sessionBytes = new byte[sessionLength];
+            body.get(20 + roleLength, sessionBytes);
+            String sessionId = new String(sessionBytes, StandardCharsets.UTF_8);
+            long position = ((long) segment.id << OFFSET_BITS) | offset;
+            
+            // 墓碑只需在更早的段仍存在时保留，否则没有需要它屏蔽的记录
+            boolean live;
+            if (type == TYPE_TOMBSTONE) {
+                live = olderSegmentExists;
+            } else {
+                SessionIndex index = sessions.get(sessionId);
+                if (index == null) {
+                    live = false;
+                } else {
+                    synchronized (index) {
+                        live = index.contains(seq, position);
+                    }
+                }
+            }
+            if (live) {
+                byte[] record = new byte[length];
+                segment.buffer.get(offset, record);
+                long newPosition = writeRaw(record);
+                if (type == TYPE_MESSAGE) {
+                    moved.computeIfAbsent(sessionId, id -> new HashMap<>()).put(seq, newPosition);
+                }
+            }
+            offset += length;
+        }
+        active.buffer.force();
+        
+        segmentLock.writeLock().lock();
+        try {
+            for (Map.Entry<String, Map<Long, Long>> entry : moved.entrySet()) {
+                SessionIndex index = sessions.get(entry.getKey());
+                synchronized (index) {
+                    for (Map.Entry<Long, Long> relocation : entry.getValue().entrySet()) {
+                        index.relocate(relocation.getKey(), relocation.getValue());
+                    }
+                }
+            }
+            segments.remove(segment.id);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        segment.channel.close();
+        Files.deleteIfExists(segment.file);
+        logger.info("会话历史段已压缩 - segment: {}, 搬迁会话数: {}", segment.id, moved.size());
+    }
+    
+    /**
+     * 读取指定位置的消息记录
+     * 
+     * @param position 编码后的记录位置
+     * @return 聊天消息
+     */
+    private ChatMessage readMessage(long position) {
+        Segment segment = segments.get((int) (position >>> OFFSET_BITS));
+        int offset = offsetOf(position);
+        int length = recordLength(segment, offset);
+        ByteBuffer body = segment.buffer.slice(offset + HEADER_BYTES, length - HEADER_BYTES);
+        long timestamp = body.getLong(9);
+        int roleLength = body.get(17);
+        byte[] role = new byte[roleLength];
+        body.get(18, role);
+        int sessionLength = body.getShort(18 + roleLength);
+        int contentOffset = 20 + roleLength + sessionLength;
+        byte[] content = new byte[body.limit() - contentOffset];
+        body.get(contentOffset, content);
+        
+        ChatMessage message = new ChatMessage(new String(role, StandardCharsets.UTF_8), new String(content, StandardCharsets.UTF_8));
+        message.setTimestamp(timestamp);
+        return message;
+    }
+    
+    /**
+     * 编码一条待写入记录
+     * 
+     * @param record 待写入记录
+     * @return 包含记录头的完整字节数组
+     */
+    private static byte[] encode(PendingRecord record) {
+        byte[] role = record.role.getBytes(StandardCharsets.UTF_8);
+        byte[] session = record.sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] content = record.content.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 8 + 8 + 1 + role.length + 2 + session.length + content.length;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        buffer.putInt(bodyLength).putInt(0)
+                .put(record.type).putLong(record.seq).putLong(record.timestamp)
+                .put((byte) role.length).put(role)
+                .putShort((short) session.length).put(session)
+                .put(content);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, bodyLength);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+    
+    /**
+     * 启动时扫描所有段文件，重建会话索引与段有效字节数
+     * 
+     * @throws IOException 读取段文件失败时抛出
+     */
+    private void recover() throws IOException {
+        Map<String, List<long[]>> entries = new HashMap<>();
+        Map<String, Long> tombstones = new HashMap<>();
+        Map<String, Long> maxSeqs = new HashMap<>();
+        
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(this::isSegmentFile).sorted().toList()) {
+                String name = file.getFileName().toString();
+                int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                Segment segment = openSegment(id, (int) Math.max(Files.size(file), config.getSegmentBytes()));
+                replay(segment, entries, tombstones, maxSeqs);
+            }
+        }
+        if (segments.isEmpty()) {
+            openSegment(0, config.getSegmentBytes());
+        }
+        active = segments.lastEntry().getValue();
+        
+        for (Map.Entry<String, List<long[]>> entry : entries.entrySet()) {
+            String sessionId = entry.getKey();
+            long tombstoneSeq = tombstones.getOrDefault(sessionId, -1L);
+            List<long[]> records = entry.getValue();
+            records.sort((a, b) -> Long.compare(a[0], b[0]));
+            SessionIndex index = new SessionIndex();
+            index.nextSeq = maxSeqs.get(sessionId) + 1;
+            index.tombstoneSeq = tombstoneSeq;
+            for (int i = 0; i < records.size(); i++) {
+                long[] record = records.get(i);
+                Segment segment = segments.get((int) (record[1] >>> OFFSET_BITS));
+                // 压缩把记录复制到当前段并刷盘后才删除旧段，两步之间崩溃会留下同序号的两份记录；
+                // 排序是稳定的，同序号中后回放的是新副本，只保留它，旧副本计为无效字节由下次压缩回收
+                boolean superseded = i + 1 < records.size() && records.get(i + 1)[0] == record[0];
+                if (record[0] > tombstoneSeq && !superseded) {
+                    index.add(record[0], record[1]);
+                } else {
+                    segment.liveBytes -= recordLength(segment, offsetOf(record[1]));
+                }
+            }
+            sessions.put(sessionId, index);
+        }
+        for (Map.Entry<String, Long> entry : tombstones.entrySet()) {
+            sessions.computeIfAbsent(entry.getKey(), id -> {
+                SessionIndex index = new SessionIndex();
+                index.nextSeq = maxSeqs.get(id) + 1;
+                index.tombstoneSeq = entry.getValue();
+                return index;
+            });
+        }
+        logger.info("会话历史已加载 - 目录: {}, 段数: {}, 会话数: {}", directory, segments.size(), sessions.size());
+    }
+    
+    /**
+     * 回放单个段文件，收集消息记录与墓碑，并清零不完整的尾部
+     * 
+     * @param segment 段文件
+     * @param entries 收集的消息记录，key为sessionId，value为[序号, 位置]列表
+     * @param tombstones 收集的墓碑最大序号
+     * @param maxSeqs 收集的会话最大序号
+     */
+    private void replay(Segment segment, Map<String, List<long[]>> entries,
+                        Map<String, Long> tombstones, Map<String, Long> maxSeqs) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int bodyLength = buffer.getInt(offset);
+            if (bodyLength <= 0 || offset + HEADER_BYTES + bodyLength > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer body = buffer.slice(offset + HEADER_BYTES, bodyLength);
+            CRC32 crc = new CRC32();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+            byte type = body.get(0);
+            long seq = body.getLong(1);
+            int roleLength = body.get(17);
+            int sessionLength = body.getShort(18 + roleLength);
+            byte[] sessionBytes = new byte[sessionLength];
+            body.get(20 + roleLength, sessionBytes);
+            String sessionId = new String(sessionBytes, StandardCharsets.UTF_8);
+            long position = ((long) segment.id << OFFSET_BITS) | offset;
+            
+            maxSeqs.merge(sessionId, seq, Math::max);
+            if (type == TYPE_TOMBSTONE) {
+                tombstones.merge(sessionId, seq, Math::max);
+            } else {
+                entries.computeIfAbsent(sessionId, id -> new ArrayList<>()).add(new long[]{seq, position});
+                segment.liveBytes += HEADER_BYTES + bodyLength;
+            }
+            offset += HEADER_BYTES + bodyLength;
+        }
+        segment.writePosition = offset;
+        
+        // 崩溃时映射页可能乱序落盘，清零尾部避免残留记录在后续追加后被误认
+        if (offset < buffer.capacity() && buffer.getInt(offset) != 0) {
+            logger.warn("会话历史段尾部存在不完整记录，已清理 - segment: {}, offset: {}", segment.id, offset);
+            byte[] zeros = new byte[64 * 1024];
+            for (int position = offset; position < buffer.capacity(); position += zeros.length) {
+                buffer.put(position, zeros, 0, Math.min(zeros.length, buffer.capacity() - position));
+            }
+            buffer.force();
+        }
+    }
+    
+    /**
+     * 打开并映射指定段号的段文件
+     * 
+     * @param id 段号
+     * @param capacity 映射容量
+     * @return 段对象
+     * @throws IOException 打开或映射文件失败时抛出
+     */
+    private Segment openSegment(int id, int capacity) throws IOException {
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        Segment segment = new Segment(id, file, channel, buffer);
+        segmentLock.writeLock().lock();
+        try {
+            segments.put(id, segment);
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+        return segment;
+    }
+    
+    /**
+     * 判断是否为段文件
+     * 
+     * @param file 文件路径
+     * @return 是段文件返回true，否则返回false
+     */
+    private boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+    
+    /**
+     * 获取记录总长度（含记录头）
+     * 
+     * @param segment 段文件
+     * @param offset 段内偏移
+     * @return 记录总长度
+     */
+    private static int recordLength(Segment segment, int offset) {
+        return HEADER_BYTES + segment.buffer.getInt(offset);
+    }
+    
+    /**
+     * 从编码位置中取出段内偏移
+     * 
+     * @param position 编码后的记录位置
+     * @return 段内偏移
+     */
+    private static int offsetOf(long position) {
+        return (int) (position & ((1L << OFFSET_BITS) - 1));
+    }
+    
+    /**
+     * 已映射的段文件
+     */
+    private static class Segment {
+        /** 段号 */
+        final int id;
+        
+        /** 段文件路径 */
+        final Path file;
+        
+        /** 文件通道 */
+        final FileChannel channel;
+        
+        /** 整段映射缓冲区 */
+        final MappedByteBuffer buffer;
+        
+        /** 写入位置，仅写线程修改 */
+        volatile int writePosition;
+        
+        /** 有效消息记录字节数（不含墓碑），仅写线程修改 */
+        long liveBytes;
+        
+        Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+    
+    /**
+     * 单个会话的偏移索引，按序号升序保存记录位置
+     */
+    private static class SessionIndex {
+        /** 记录序号 */
+        long[] seqs = new long[8];
+        
+        /** 记录位置 */
+        long[] positions = new long[8];
+        
+        /** 已发布的记录数 */
+        int size;
+        
+        /** 下一个可分配的序号 */
+        long nextSeq;
+        
+        /** 最近一次删除的墓碑序号，小于等于该序号的记录不可见 */
+        long tombstoneSeq = -1;
+        
+        /**
+         * 按序号有序插入一条记录位置
+         * 
+         * @param seq 记录序号
+         * @param position 记录位置
+         */
+        void add(long seq, long position) {
+            if (size == seqs.length) {
+                seqs = Arrays.copyOf(seqs, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            int i = size;
+            while (i > 0 && seqs[i - 1] > seq) {
+                seqs[i] = seqs[i - 1];
+                positions[i] = positions[i - 1];
+                i--;
+            }
+            seqs[i] = seq;
+            positions[i] = position;
+            size++;
+        }
+        
+        /**
+         * 判断指定记录是否仍在索引中
+         * 
+         * @param seq 记录序号
+         * @param position 记录位置
+         * @return 仍有效返回true，否则返回false
+         */
+        boolean contains(long seq, long position) {
+            int i = Arrays.binarySearch(seqs, 0, size, seq);
+            return i >= 0 && positions[i] == position && seq > tombstoneSeq;
+        }
+        
+        /**
+         * 更新压缩后记录的新位置
+         * 
+         * @param seq 记录序号
+         * @param position 新位置
+         */
+        void relocate(long seq, long position) {
+            int i = Arrays.binarySearch(seqs, 0, size, seq);
+            if (i >= 0) {
+                positions[i] = position;
+            }
+        }
+        
+        /**
+         * 获取指定序号记录的位置
+         * 
+         * @param seq 记录序号
+         * @return 记录位置，不存在或已删除时返回-1
+         */
+        long positionOf(long seq) {
+            if (seq <= tombstoneSeq) {
+                return -1;
+            }
+            int i = Arrays.binarySearch(seqs, 0, size, seq);
+            return i >= 0 ? positions[i] : -1;
+        }
+        
+        /**
+         * 获取墓碑之后的全部记录位置
+         * 
+         * @return 记录位置数组副本
+         */
+        long[] livePositions() {
+            int from = 0;
+            while (from < size && seqs[from] <= tombstoneSeq) {
+                from++;
+            }
+            return Arrays.copyOfRange(positions, from, size);
+        }
+    }
+    
+    /**
+     * 消息持久化和会话删除监听器
+     */
+    public interface Listener {
+        
+        /**
+         * 一条消息已持久化
+         * 
+         * @param sessionId 会话ID
+         * @param seq 会话内序号
+         * @param message 聊天消息
+         */
+        void onAppend(String sessionId, long seq, ChatMessage message);
+        
+        /**
+         * 一个会话的删除已持久化，序号小于墓碑序号的消息均已删除
+         * 
+         * @param sessionId 会话ID
+         * @param tombstoneSeq 墓碑序号
+         */
+        default void onDelete(String sessionId, long tombstoneSeq) {
+        }
+    }
+    
+    /**
+     * 待写入记录
+     * 
+     * @param type 记录类型
+     * @param sessionId 会话ID
+     * @param seq 会话内序号
+     * @param timestamp 时间戳
+     * @param role 消息角色
+     * @param content 消息内容
+     */
+    private record PendingRecord(byte type, String sessionId, long seq, long timestamp, String role, String content) {
+    }
+}
\ No newline at end of file
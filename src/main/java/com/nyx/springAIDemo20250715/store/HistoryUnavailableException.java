@@ -0,0 +1,21 @@
+package com.nyx.springAIDemo20250715.store;
+
+/**
+ * 会话历史暂不可写异常
+ * 
+ * 写入队列在等待时间内一直没有空位，记录未能排入写入队列时抛出；
+ * 调用方不应把此次操作当作已经持久化
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class HistoryUnavailableException extends RuntimeException {
+    
+    /**
+     * 构造函数
+     */
+    public HistoryUnavailableException() {
+        super("会话历史写入繁忙");
+    }
+}
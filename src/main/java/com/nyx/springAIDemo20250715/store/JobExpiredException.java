@@ -0,0 +1,21 @@
+package com.nyx.springAIDemo20250715.store;
+
+/**
+ * 任务结果已过期异常
+ * 
+ * 任务超过保留时长后，其增量所在的段文件可能已被删除；
+ * 在任务被移出索引之前取得任务对象的调用方读取内容时抛出
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+public class JobExpiredException extends RuntimeException {
+    
+    /**
+     * 构造函数
+     */
+    public JobExpiredException() {
+        super("任务结果已过期");
+    }
+}
\ No newline at end of file
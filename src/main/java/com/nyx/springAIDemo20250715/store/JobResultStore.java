@@ -0,0 +1,572 @@
+package com.nyx.springAIDemo20250715.store;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.model.ChatJob;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 异步任务结果存储
+ * 
+ * 基于只追加（append-only）段文件的任务结果存储，提供以下功能：
+ * - 任务创建、状态变更和增量内容的顺序追加写入
+ * - 按任务ID建立的内存索引，记录每条增量在段文件中的位置
+ * - 段文件达到上限后自动滚动，启动时扫描段文件重建索引
+ * - 已结束的任务超过保留时长后从索引中移除，早于所有保留任务的段文件整段删除
+ * 
+ * 记录格式：[int 长度][int CRC32][byte 类型][short ID长度][ID][负载]，
+ * 记录位置编码为 (段号 &lt;&lt; 40) | 段内偏移。状态记录的负载为[byte 状态编码][long 时间戳][错误信息]，
+ * 状态编码固定分配、与枚举的声明顺序无关。回放时CRC正确但无法解析的记录（如较新版本写入的未知状态编码）
+ * 记录告警后跳过；只有最新段尾部写了一半或CRC错误的记录会被截断，较早的段不会被修改。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class JobResultStore {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(JobResultStore.class);
+    
+    /** 记录类型：任务创建 */
+    private static final byte TYPE_CREATED = 1;
+    
+    /** 记录类型：状态变更 */
+    private static final byte TYPE_STATUS = 2;
+    
+    /** 记录类型：增量内容 */
+    private static final byte TYPE_DELTA = 3;
+    
+    /** 状态记录负载的固定部分长度（状态编码 + 时间戳） */
+    private static final int STATUS_FIXED_BYTES = 1 + 8;
+    
+    /** 记录头长度（长度字段 + CRC字段） */
+    private static final int HEADER_BYTES = 8;
+    
+    /** 段内偏移占用的位数 */
+    private static final int OFFSET_BITS = 40;
+    
+    /** 段文件名前缀 */
+    private static final String SEGMENT_PREFIX = "segment-";
+    
+    /** 段文件名后缀 */
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    /** 段文件所在目录 */
+    private final Path directory;
+    
+    /** 单个段文件最大字节数 */
+    private final long segmentBytes;
+    
+    /** 已打开的段文件通道，key为段号 */
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    
+    /** 任务索引，key为任务ID */
+    private final Map<String, ChatJob> index = new ConcurrentHashMap<>();
+    
+    /** 任务创建记录所在的段号，任务的其余记录都不早于该段，key为任务ID */
+    private final Map<String, Integer> firstSegments = new ConcurrentHashMap<>();
+    
+    /** 已结束任务的保留时长（毫秒），0表示永久保留 */
+    private final long retentionMillis;
+    
+    /** 定期清理过期任务的线程，永久保留时为null */
+    private final ScheduledExecutorService cleaner;
+    
+    /** 当前写入段号 */
+    private int activeSegment;
+    
+    /** 当前写入段的写入位置 */
+    private long writePosition;
+    
+    /**
+     * 构造函数，打开段文件目录、重建索引并按配置间隔清理过期任务
+     * 
+     * @param storageConfig 本地存储配置对象
+     */
+    @Autowired
+    public JobResultStore(StorageConfig storageConfig) {
+        StorageConfig.Jobs jobs = storageConfig.getJobs();
+        this.directory = Paths.get(storageConfig.getDataDir(), "jobs");
+        this.segmentBytes = jobs.getSegmentBytes();
+        this.retentionMillis = TimeUnit.SECONDS.toMillis(jobs.getRetentionSeconds());
+        try {
+            Files.createDirectories(directory);
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法打开任务结果存储目录: " + directory, e);
+        }
+        if (retentionMillis > 0) {
+            purgeExpired();
+            long interval = jobs.getCleanupIntervalSeconds();
+            this.cleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "job-cleanup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            cleaner.scheduleWithFixedDelay(this::purgeExpired, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.cleaner = null;
+        }
+    }
+    
+    /**
+     * 创建新任务并写入创建记录
+     * 
+     * @param jobId 任务ID
+     * @return 新建的任务对象
+     */
+    public ChatJob create(String jobId) {
+        ChatJob job = new ChatJob(jobId, System.currentTimeMillis());
+        index.put(jobId, job);
+        long position = append(TYPE_CREATED, jobId, ByteBuffer.allocate(8).putLong(job.getCreatedAt()).array(), false);
+        firstSegments.put(jobId, (int) (position >>> OFFSET_BITS));
+        return job;
+    }
+    
+    /**
+     * 追加一条增量内容
+     * 
+     * @param job 任务对象
+     * @param content 增量文本
+     */
+    public void appendDelta(ChatJob job, String content) {
+        long position = append(TYPE_DELTA, job.getId(), content.getBytes(StandardCharsets.UTF_8), false);
+        job.addDeltaPosition(position);
+    }
+    
+    /**
+     * 更新任务状态并写入状态记录，终止状态会强制刷盘
+     * 
+     * @param job 任务对象
+     * @param status 新状态
+     * @param error 错误信息，可为null
+     */
+    public void updateStatus(ChatJob job, ChatJob.Status status, String error) {
+        long now = System.currentTimeMillis();
+        byte[] errorBytes = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer payload = ByteBuffer.allocate(STATUS_FIXED_BYTES + errorBytes.length);
+        payload.put(statusCode(status)).putLong(now).put(errorBytes);
+        append(TYPE_STATUS, job.getId(), payload.array(), status.isTerminal());
+        applyStatus(job, status, error, now);
+    }
+    
+    /**
+     * 根据任务ID查询任务
+     * 
+     * @param jobId 任务ID
+     * @return 任务对象，不存在时返回null
+     */
+    public ChatJob get(String jobId) {
+        return index.get(jobId);
+    }
+    
+    /**
+     * 读取任务从指定序号开始的增量内容
+     * 
+     * @param job 任务对象
+     * @param fromIndex 起始序号（包含）
+     * @return 增量文本列表
+     * @throws JobExpiredException 增量所在的段文件已随过期任务删除时抛出
+     */
+    public List<String> readDeltas(ChatJob job, int fromIndex) {
+        return job.getDeltaPositions(fromIndex).stream()
+                .map(this::readPayload)
+                .toList();
+    }
+    
+    /**
+     * 读取任务当前已生成的完整内容
+     * 
+     * @param job 任务对象
+     * @return 拼接后的完整文本
+     * @throws JobExpiredException 增量所在的段文件已随过期任务删除时抛出
+     */
+    public String readContent(ChatJob job) {
+        StringBuilder content = new StringBuilder();
+        for (String delta : readDeltas(job, 0)) {
+            content.append(delta);
+        }
+        return content.toString();
+    }
+    
+    /**
+     * 移除超过保留时长的已结束任务，并删除早于所有保留任务的段文件
+     * 
+     * 任务的记录都不早于它的创建记录，因此比所有保留任务的创建记录都早的段只含过期任务，
+     * 可以整段删除；过期任务在较新段中的记录随这些段过期后一起删除，启动回放时找不到创建记录会被忽略。
+     */
+    public synchronized void purgeExpired() {
+        long deadline = System.currentTimeMillis() - retentionMillis;
+        int expired = 0;
+        for (ChatJob job : index.values()) {
+            Long finishedAt = job.getFinishedAt();
+            if (job.getStatus().isTerminal() && finishedAt != null && finishedAt < deadline) {
+                index.remove(job.getId());
+                firstSegments.remove(job.getId());
+                expired++;
+            }
+        }
+        
+        int keepFrom = activeSegment;
+        for (int segment : firstSegments.values()) {
+            keepFrom = Math.min(keepFrom, segment);
+        }
+        int deleted = 0;
+        while (!segments.isEmpty() && segments.firstKey() < keepFrom) {
+            int segment = segments.firstKey();
+            FileChannel channel = segments.remove(segment);
+            try {
+                channel.close();
+                Files.deleteIfExists(segmentPath(segment));
+                deleted++;
+            } catch (IOException e) {
+                logger.warn("删除过期段文件失败 - segment: {}", segment, e);
+            }
+        }
+        if (expired > 0 || deleted > 0) {
+            logger.info("过期任务已清理 - 任务数: {}, 删除段数: {}, 剩余任务数: {}", expired, deleted, index.size());
+        }
+    }
+    
+    /**
+     * 停止定期清理并关闭所有段文件通道
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+        }
+        for (FileChannel channel : segments.values()) {
+            try {
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("关闭段文件失败", e);
+            }
+        }
+        segments.clear();
+    }
+    
+    /**
+     * 追加一条记录到当前段文件，必要时滚动到新段
+     * 
+     * @param type 记录类型
+     * @param jobId 任务ID
+     * @param payload 记录负载
+     * @param sync 是否在写入后刷盘
+     * @return 编码后的记录位置
+     */
+    private synchronized long append(byte type, String jobId, byte[] payload, boolean sync) {
+        byte[] id = jobId.getBytes(StandardCharsets.UTF_8);
+        int bodyLength = 1 + 2 + id.length + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + bodyLength);
+        record.putInt(bodyLength).putInt(0)
+                .put(type).putShort((short) id.length).put(id).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), HEADER_BYTES, bodyLength);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        
+        try {
+            if (writePosition > 0 && writePosition + record.remaining() > segmentBytes) {
+                segments.get(activeSegment).force(false);
+                openSegment(activeSegment + 1);
+            }
+            FileChannel channel = segments.get(activeSegment);
+            long offset = writePosition;
+            while (record.hasRemaining()) {
+                writePosition += channel.write(record, writePosition);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            return ((long) activeSegment << OFFSET_BITS) | offset;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入任务结果段文件失败", e);
+        }
+    }
+    
+    /**
+     * 读取指定位置记录的负载文本
+     * 
+     * @param position 编码后的记录位置
+     * @return 负载文本
+     * @throws JobExpiredException 段文件已被删除时抛出
+     */
+    private String readPayload(long position) {
+        int segment = (int) (position >>> OFFSET_BITS);
+        long offset = position & ((1L << OFFSET_BITS) - 1);
+        FileChannel channel;
+        synchronized (this) {
+            channel = segments.get(segment);
+        }
+        if (channel == null) {
+            throw new JobExpiredException();
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + 3);
+            readFully(channel, header, offset);
+            int bodyLength = header.getInt(0);
+            int idLength = header.getShort(HEADER_BYTES + 1);
+            int payloadLength = bodyLength - 3 - idLength;
+            ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+            readFully(channel, payload, offset + HEADER_BYTES + 3 + idLength);
+            return new String(payload.array(), StandardCharsets.UTF_8);
+        } catch (ClosedChannelException e) {
+            // 读取期间段文件被清理线程关闭并删除
+            throw new JobExpiredException();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取任务结果段文件失败", e);
+        }
+    }
+    
+    /**
+     * 启动时扫描所有段文件，重建内存索引并截断最新段中不完整的尾部记录
+     * 
+     * @throws IOException 读取段文件失败时抛出
+     */
+    private void recover() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segmentFiles = files.filter(this::isSegmentFile).sorted().toList();
+            for (int i = 0; i < segmentFiles.size(); i++) {
+                String name = segmentFiles.get(i).getFileName().toString();
+                int segment = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                openSegment(segment);
+                writePosition = replay(segment, segments.get(segment), i == segmentFiles.size() - 1);
+            }
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+        
+        // 重启前未结束的任务无法继续生成，标记为失败
+        for (ChatJob job : index.values()) {
+            if (!job.getStatus().isTerminal()) {
+                updateStatus(job, ChatJob.Status.FAILED, "服务重启，任务已中断");
+            }
+        }
+        logger.info("任务结果存储已加载 - 目录: {}, 段数: {}, 任务数: {}", directory, segments.size(), index.size());
+    }
+    
+    /**
+     * 回放单个段文件中的记录
+     * 
+     * 无法解析的记录跳过；遇到写了一半或CRC错误的记录时停止回放，只有最新段会截断到该位置，
+     * 较早的段只可能因磁盘损坏出现这种情况，保留原文件以便排查
+     * 
+     * @param segment 段号
+     * @param channel 段文件通道
+     * @param newest 是否为最新段（继续写入的段）
+     * @return 最后一条完整记录之后的位置
+     * @throws IOException 读取段文件失败时抛出
+     */
+    private long replay(int segment, FileChannel channel, boolean newest) throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (offset + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, offset);
+            int bodyLength = header.getInt(0);
+            if (bodyLength < 3 || offset + HEADER_BYTES + bodyLength > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength);
+            readFully(channel, body, offset + HEADER_BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            if (!applyRecord(body, ((long) segment << OFFSET_BITS) | offset)) {
+                logger.warn("段文件中的记录无法解析，已跳过 - segment: {}, offset: {}", segment, offset);
+            }
+            offset += HEADER_BYTES + bodyLength;
+        }
+        if (offset < size && newest) {
+            logger.warn("段文件尾部存在不完整记录，已截断 - segment: {}, offset: {}", segment, offset);
+            channel.truncate(offset);
+        } else if (offset < size) {
+            logger.warn("段文件中存在损坏记录，之后的内容已忽略 - segment: {}, offset: {}", segment, offset);
+        }
+        return offset;
+    }
+    
+    /**
+     * 将一条记录应用到内存索引
+     * 
+     * @param body 记录体
+     * @param position 编码后的记录位置
+     * @return 记录内容无法解析（字段越界或状态编码未知）时返回false，此时内存索引不变
+     */
+    private boolean applyRecord(ByteBuffer body, long position) {
+        byte type = body.get(0);
+        int idLength = body.getShort(1);
+        if (idLength < 0 || 3 + idLength > body.limit()) {
+            return false;
+        }
+        String jobId = new String(body.array(), 3, idLength, StandardCharsets.UTF_8);
+        int payloadOffset = 3 + idLength;
+        switch (type) {
+            case TYPE_CREATED -> {
+                if (body.limit() < payloadOffset + 8) {
+                    return false;
+                }
+                index.put(jobId, new ChatJob(jobId, body.getLong(payloadOffset)));
+                firstSegments.put(jobId, (int) (position >>> OFFSET_BITS));
+            }
+            case TYPE_DELTA -> {
+                ChatJob job = index.get(jobId);
+                if (job != null) {
+                    job.addDeltaPosition(position);
+                }
+            }
+            case TYPE_STATUS -> {
+                if (body.limit() < payloadOffset + STATUS_FIXED_BYTES) {
+                    return false;
+                }
+                ChatJob.Status status = statusOf(body.get(payloadOffset));
+                if (status == null) {
+                    return false;
+                }
+                ChatJob job = index.get(jobId);
+                if (job != null) {
+                    long timestamp = body.getLong(payloadOffset + 1);
+                    int errorLength = body.limit() - payloadOffset - STATUS_FIXED_BYTES;
+                    String error = errorLength > 0
+                            ? new String(body.array(), payloadOffset + STATUS_FIXED_BYTES, errorLength, StandardCharsets.UTF_8)
+                            : null;
+                    applyStatus(job, status, error, timestamp);
+                }
+            }
+            default -> logger.warn("未知的任务记录类型: {}", type);
+        }
+        return true;
+    }
+    
+    /**
+     * 获取状态的持久化编码，已分配的编码不能修改
+     * 
+     * @param status 任务状态
+     * @return 状态编码
+     */
+    private static byte statusCode(ChatJob.Status status) {
+        return switch (status) {
+            case QUEUED -> 0;
+            case RUNNING -> 1;
+            case SUCCEEDED -> 2;
+            case FAILED -> 3;
+            case CANCELLED -> 4;
+        };
+    }
+    
+    /**
+     * 根据持久化编码解析状态
+     * 
+     * @param code 状态编码
+     * @return 任务状态，未知编码返回null
+     */
+    private static ChatJob.Status statusOf(byte code) {
+        return switch (code) {
+            case 0 -> ChatJob.Status.QUEUED;
+            case 1 -> ChatJob.Status.RUNNING;
+            case 2 -> ChatJob.Status.SUCCEEDED;
+            case 3 -> ChatJob.Status.FAILED;
+            case 4 -> ChatJob.Status.CANCELLED;
+            default -> null;
+        };
+    }
+    
+    /**
+     * 更新内存中的任务状态
+     * 
+     * @param job 任务对象
+     * @param status 新状态
+     * @param error 错误信息
+     * @param timestamp 状态变更时间戳
+     */
+    private void applyStatus(ChatJob job, ChatJob.Status status, String error, long timestamp) {
+        job.setStatus(status);
+        job.setError(error);
+        if (status.isTerminal()) {
+            job.setFinishedAt(timestamp);
+        }
+    }
+    
+    /**
+     * 打开（或创建）指定段号的段文件并设为当前写入段
+     * 
+     * @param segment 段号
+     * @throws IOException 打开文件失败时抛出
+     */
+    private void openSegment(int segment) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(segment, channel);
+        activeSegment = segment;
+        writePosition = channel.size();
+    }
+    
+    /**
+     * 获取段文件路径
+     * 
+     * @param segment 段号
+     * @return 段文件路径
+     */
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+    
+    /**
+     * 判断是否为段文件
+     * 
+     * @param file 文件路径
+     * @return 是段文件返回true，否则返回false
+     */
+    private boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+    
+    /**
+     * 从指定位置读满缓冲区
+     * 
+     * @param channel 文件通道
+     * @param buffer 目标缓冲区
+     * @param position 起始位置
+     * @throws IOException 读取失败或遇到文件末尾时抛出
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("意外到达段文件末尾");
+            }
+        }
+    }
+}
\ No newline at end of file
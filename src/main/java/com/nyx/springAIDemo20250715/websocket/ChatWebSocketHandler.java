@@ -0,0 +1,492 @@
+package com.nyx.springAIDemo20250715.websocket;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import com.nyx.springAIDemo20250715.service.QwenAIService;
+import com.nyx.springAIDemo20250715.service.SlowClientBuffer;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
+import jakarta.annotation.PreDestroy;
+import jakarta.websocket.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Disposable;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 多路复用聊天WebSocket处理器
+ * 
+ * 在一条WebSocket连接上同时承载多个聊天会话，每个帧通过id字段区分所属会话。
+ * 帧均为紧凑JSON文本，字段t表示帧类型：
+ * - 客户端发送：start（开始对话，携带message、history和可选的priority）、stop（停止对话）
+ * - 服务端发送：started（对话已开始，sid为全局会话ID）、delta（增量内容c）、
+ *   finished（对话结束，stopped表示是否被停止）、error（错误信息e）
+ * 
+ * 帧中的id只在所在连接内有效：上游流、会话历史和停止操作使用“连接ID:id”作为会话ID，
+ * 不同连接使用相同的id互不影响，也不会与SSE或异步任务的会话冲突。
+ * 全局会话ID通过started帧返回给客户端，用于在连接关闭后读取或删除会话历史。
+ * 
+ * stop帧会立即取消对上游API的订阅，从而关闭上游HTTP连接。
+ * 每个会话的响应流在专用写入线程池上写入连接，不占用上游调度使用的boundedElastic线程；
+ * 客户端读取缓慢时由SlowClientBuffer按与SSE接口相同的策略缓冲、合并或暂停上游。
+ * 连接通过ConcurrentWebSocketSessionDecorator写入：同一时刻只有一个线程阻塞在发送上，
+ * 其余帧进入连接的发送缓冲；单次发送超过SEND_TIME_LIMIT_MILLIS或缓冲超过SEND_BUFFER_LIMIT_BYTES时关闭连接。
+ * 
+ * token用量按握手请求的X-Client-Id请求头（浏览器无法设置时使用clientId查询参数）归属客户端。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+@Component
+public class ChatWebSocketHandler extends TextWebSocketHandler {
+    
+    /** 日志记录器 */
+    private static final Logger logger = LoggerFactory.getLogger(ChatWebSocketHandler.class);
+    
+    /** 单条连接上允许同时进行的会话数 */
+    private static final int MAX_STREAMS_PER_CONNECTION = 16;
+    
+    /** 每个会话在写入线程上预取的响应数量，其余由SlowClientBuffer缓冲 */
+    private static final int PREFETCH = 1;
+    
+    /** 单次发送的时间上限（毫秒），超过后关闭连接 */
+    private static final int SEND_TIME_LIMIT_MILLIS = 10 * 1000;
+    
+    /** 单条连接未发出帧的字节数上限，超过后关闭连接 */
+    private static final int SEND_BUFFER_LIMIT_BYTES = 256 * 1024;
+    
+    /** Tomcat阻塞发送超时的会话属性名，默认20秒 */
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+    
+    /** 通义千问AI服务 */
+    private final QwenAIService qwenAIService;
+    
+    /** 会话历史日志 */
+    private final ConversationLog conversationLog;
+    
+    /** 慢客户端有界缓冲 */
+    private final SlowClientBuffer slowClientBuffer;
+    
+    /** JSON对象映射器，用于帧的解析和序列化 */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /** 当前打开的连接，key为WebSocket会话ID */
+    private final Map<String, Connection> connections = new ConcurrentHashMap<>();
+    
+    /** 写入线程池，与上游调度使用的boundedElastic隔离，慢客户端只占用这里的线程 */
+    private final Scheduler sendScheduler = Schedulers.newBoundedElastic(
+            Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE, Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "ws-send");
+    
+    /**
+     * 构造函数，注入QwenAIService、ConversationLog和SlowClientBuffer依赖
+     * 
+     * @param qwenAIService 通义千问AI服务实例
+     * @param conversationLog 会话历史日志实例
+     * @param slowClientBuffer 慢客户端有界缓冲实例
+     */
+    @Autowired
+    public ChatWebSocketHandler(QwenAIService qwenAIService, ConversationLog conversationLog,
+                                SlowClientBuffer slowClientBuffer) {
+        this.qwenAIService = qwenAIService;
+        this.conversationLog = conversationLog;
+        this.slowClientBuffer = slowClientBuffer;
+    }
+    
+    /**
+     * 连接建立
+     * 
+     * @param session WebSocket会话
+     */
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        // 只有一个帧在发送时不会触发装饰器的时间检查，由容器的阻塞发送超时兜底
+        if (session instanceof NativeWebSocketSession nativeWebSocketSession) {
+            Session nativeSession = nativeWebSocketSession.getNativeSession(Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, (long) SEND_TIME_LIMIT_MILLIS);
+            }
+        }
+        WebSocketSession concurrentSession = new ConcurrentWebSocketSessionDecorator(
+                session, SEND_TIME_LIMIT_MILLIS, SEND_BUFFER_LIMIT_BYTES);
+        connections.put(session.getId(), new Connection(concurrentSession, clientId(session)));
+        logger.info("WebSocket connected: {}", session.getId());
+    }
+    
+    /**
+     * 处理客户端发送的帧
+     * 
+     * 容器保证同一连接上的消息按顺序逐条回调
+     * 
+     * @param session WebSocket会话
+     * @param message 文本消息
+     */
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        Connection connection = connections.get(session.getId());
+        if (connection == null) {
+            return;
+        }
+        
+        JsonNode frame;
+        try {
+            frame = objectMapper.readTree(message.getPayload());
+        } catch (IOException e) {
+            sendError(connection, "", "帧格式错误");
+            return;
+        }
+        
+        String type = frame.path("t").asText();
+        String id = frame.path("id").asText();
+        if (id.isEmpty()) {
+            sendError(connection, "", "缺少会话id");
+            return;
+        }
+        
+        switch (type) {
+            case "start" -> start(connection, id, frame);
+            case "stop" -> stop(connection, id);
+            default -> sendError(connection, id, "未知帧类型: " + type);
+        }
+    }
+    
+    /**
+     * 连接关闭，取消该连接上所有进行中的会话
+     * 
+     * @param session WebSocket会话
+     * @param status 关闭状态
+     */
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        Connection connection = connections.remove(session.getId());
+        if (connection != null) {
+            for (String id : connection.streams.keySet()) {
+                cancel(connection, id);
+            }
+        }
+        logger.info("WebSocket closed: {}, status: {}", session.getId(), status);
+    }
+    
+    /**
+     * 传输错误
+     * 
+     * @param session WebSocket会话
+     * @param exception 异常
+     */
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        logger.warn("WebSocket transport error: {}", session.getId(), exception);
+    }
+    
+    /**
+     * 停止写入线程池
+     */
+    @PreDestroy
+    public void shutdown() {
+        sendScheduler.dispose();
+    }
+    
+    /**
+     * 开始一个会话的流式对话
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     * @param frame start帧
+     */
+    private void start(Connection connection, String id, JsonNode frame) {
+        String message = frame.path("message").asText();
+        if (message.isBlank()) {
+            sendError(connection, id, "消息内容不能为空");
+            return;
+        }
+        if (connection.streams.size() >= MAX_STREAMS_PER_CONNECTION) {
+            sendError(connection, id, "同时进行的会话过多");
+            return;
+        }
+        ActiveStream stream = new ActiveStream(sessionId(connection, id));
+        if (connection.streams.putIfAbsent(id, stream) != null) {
+            sendError(connection, id, "该会话已有进行中的对话");
+            return;
+        }
+        
+        List<ChatMessage> history = null;
+        if (frame.hasNonNull("history")) {
+            try {
+                history = objectMapper.convertValue(frame.get("history"), new TypeReference<List<ChatMessage>>() {});
+            } catch (IllegalArgumentException e) {
+                connection.streams.remove(id, stream);
+                sendError(connection, id, "历史记录格式错误");
+                return;
+            }
+        }
+        
+        String sessionId = stream.sessionId;
+        logger.info("Starting WebSocket stream - connection: {}, session: {}", connection.session.getId(), sessionId);
+        ObjectNode started = frame("started", id);
+        started.put("sid", sessionId);
+        send(connection, started);
+        
+        // 与SSE接口一致：先记录用户消息，AI回复在流结束（含停止和断开）时整体记录
+        conversationLog.append(sessionId, new ChatMessage("user", message));
+        StringBuffer reply = new StringBuffer();
+        
+        ChatPriority priority = ChatPriority.parse(frame.path("priority").asText(null), ChatPriority.INTERACTIVE);
+        stream.disposable = slowClientBuffer.apply(
+                        qwenAIService.streamChat(message, history, sessionId, priority, connection.clientId), sessionId)
+                .publishOn(sendScheduler, PREFETCH)
+                .doFinally(signal -> {
+                    connection.streams.remove(id, stream);
+                    if (reply.length() > 0) {
+                        conversationLog.append(sessionId, new ChatMessage("assistant", reply.toString()));
+                    }
+                })
+                .subscribe(
+                        response -> onResponse(connection, id, stream, response, reply),
+                        error -> {
+                            logger.error("WebSocket stream error - session: {}", sessionId, error);
+                            if (!stream.finished) {
+                                stream.finished = true;
+                                sendError(connection, id, "AI服务暂时不可用: " + error.getMessage());
+                            }
+                        },
+                        () -> {
+                            if (!stream.finished) {
+                                sendFinished(connection, id, false);
+                            }
+                        });
+    }
+    
+    /**
+     * 将一条响应写为delta/finished/error帧
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     * @param stream 会话状态
+     * @param response AI响应
+     * @param reply 累积的完整回复
+     */
+    private void onResponse(Connection connection, String id, ActiveStream stream, ChatResponse response, StringBuffer reply) {
+        // 已停止的会话不再发送：取消前已进入写入线程队列的增量不能出现在finished帧之后
+        if (stream.finished) {
+            return;
+        }
+        if (response.getError() != null) {
+            stream.finished = true;
+            sendError(connection, id, response.getError());
+            return;
+        }
+        String content = response.getContent();
+        if (content != null && !content.isEmpty()) {
+            reply.append(content);
+            ObjectNode frame = frame("delta", id);
+            frame.put("c", content);
+            send(connection, frame);
+        }
+        if (Boolean.TRUE.equals(response.getFinished())) {
+            stream.finished = true;
+            sendFinished(connection, id, false);
+        }
+    }
+    
+    /**
+     * 停止一个会话，立即取消上游订阅
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     */
+    private void stop(Connection connection, String id) {
+        logger.info("Stopping WebSocket stream - connection: {}, session: {}", connection.session.getId(), id);
+        if (cancel(connection, id)) {
+            sendFinished(connection, id, true);
+        }
+    }
+    
+    /**
+     * 取消会话的上游订阅
+     * 
+     * 会话的流一定在本节点上，只停止本地流：dispose会通过doFinally移除活动流记录，
+     * 先停止再取消订阅，且流已结束时也不向其他节点广播停止请求
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     * @return 会话存在并被取消返回true
+     */
+    private boolean cancel(Connection connection, String id) {
+        ActiveStream stream = connection.streams.remove(id);
+        if (stream == null) {
+            return false;
+        }
+        stream.finished = true;
+        qwenAIService.stopLocal(stream.sessionId);
+        Disposable disposable = stream.disposable;
+        if (disposable != null) {
+            disposable.dispose();
+        }
+        return true;
+    }
+    
+    /**
+     * 读取握手请求中的客户端标识
+     * 
+     * @param session WebSocket会话
+     * @return 客户端标识，未提供时返回null
+     */
+    private static String clientId(WebSocketSession session) {
+        String clientId = session.getHandshakeHeaders().getFirst("X-Client-Id");
+        if ((clientId == null || clientId.isBlank()) && session.getUri() != null) {
+            clientId = UriComponentsBuilder.fromUri(session.getUri()).build().getQueryParams().getFirst("clientId");
+        }
+        return clientId;
+    }
+    
+    /**
+     * 由连接ID和帧中的id生成全局会话ID
+     * 
+     * @param connection 所在连接
+     * @param id 帧中的会话ID
+     * @return 全局会话ID
+     */
+    private static String sessionId(Connection connection, String id) {
+        return connection.session.getId() + ":" + id;
+    }
+    
+    /**
+     * 发送finished帧
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     * @param stopped 是否由stop帧结束
+     */
+    private void sendFinished(Connection connection, String id, boolean stopped) {
+        ObjectNode frame = frame("finished", id);
+        if (stopped) {
+            frame.put("stopped", true);
+        }
+        send(connection, frame);
+    }
+    
+    /**
+     * 发送error帧
+     * 
+     * @param connection 所在连接
+     * @param id 会话ID
+     * @param error 错误信息
+     */
+    private void sendError(Connection connection, String id, String error) {
+        ObjectNode frame = frame("error", id);
+        frame.put("e", error);
+        send(connection, frame);
+    }
+    
+    /**
+     * 创建帧对象
+     * 
+     * @param type 帧类型
+     * @param id 会话ID
+     * @return 帧对象
+     */
+    private ObjectNode frame(String type, String id) {
+        ObjectNode frame = objectMapper.createObjectNode();
+        frame.put("t", type);
+        frame.put("id", id);
+        return frame;
+    }
+    
+    /**
+     * 向连接写入一帧
+     * 
+     * 由ConcurrentWebSocketSessionDecorator串行化同一连接上的并发写入；
+     * 超出发送时间或缓冲上限、或发送失败时关闭连接，由afterConnectionClosed取消连接上的会话
+     * 
+     * @param connection 目标连接
+     * @param frame 帧对象
+     */
+    private void send(Connection connection, ObjectNode frame) {
+        if (!connection.session.isOpen()) {
+            return;
+        }
+        try {
+            connection.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(frame)));
+        } catch (SessionLimitExceededException e) {
+            logger.warn("WebSocket client too slow, closing - connection: {}, reason: {}",
+                    connection.session.getId(), e.getMessage());
+            close(connection, e.getStatus());
+        } catch (IOException e) {
+            logger.warn("Failed to send WebSocket frame - connection: {}", connection.session.getId(), e);
+            close(connection, CloseStatus.SESSION_NOT_RELIABLE);
+        }
+    }
+    
+    /**
+     * 关闭连接
+     * 
+     * @param connection 目标连接
+     * @param status 关闭状态
+     */
+    private void close(Connection connection, CloseStatus status) {
+        try {
+            connection.session.close(status);
+        } catch (IOException e) {
+            logger.debug("Failed to close WebSocket - connection: {}", connection.session.getId(), e);
+        }
+    }
+    
+    /**
+     * 单条WebSocket连接的状态
+     */
+    private static final class Connection {
+        
+        /** WebSocket会话，写入经过ConcurrentWebSocketSessionDecorator */
+        private final WebSocketSession session;
+        
+        /** 进行中的会话，key为帧中的会话ID */
+        private final Map<String, ActiveStream> streams = new ConcurrentHashMap<>();
+        
+        /** 客户端标识，用于按客户端统计token用量 */
+        private final String clientId;
+        
+        private Connection(WebSocketSession session, String clientId) {
+            this.session = session;
+            this.clientId = clientId;
+        }
+    }
+    
+    /**
+     * 单个进行中会话的状态
+     */
+    private static final class ActiveStream {
+        
+        /** 全局会话ID，用于上游流、会话历史和停止操作 */
+        private final String sessionId;
+        
+        /** 上游订阅 */
+        private volatile Disposable disposable;
+        
+        /** 是否已发送结束帧 */
+        private volatile boolean finished;
+        
+        private ActiveStream(String sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+}
\ No newline at end of file
@@ -25,20 +25,26 @@ class ChatApp {
         this.sessionId = this.generateSessionId();
         // 聊天历史记录
         this.chatHistory = [];
-        // 当前事件源连接
-        this.currentEventSource = null;
+        // 多路复用聊天WebSocket连接
+        this.socket = null;
+        // 正在建立的连接
+        this.connecting = null;
+        // 已发送停止、等待服务端结束旧流期间忽略其剩余帧
+        this.stopping = false;
         // 流式传输状态标志
         this.isStreaming = false;
         // 当前AI助手消息元素
         this.currentAssistantMessage = null;
-        // 打字机效果定时器
-        this.currentTypewriterInterval = null;
-        // 当前完整内容
-        this.currentFullContent = '';
         // 内容缓冲区
         this.contentBuffer = '';
-        // 记录最后一次Markdown渲染的内容长度
-        this.lastRenderedLength = 0;
+        // 当前消息的增量Markdown渲染器
+        this.markdownRenderer = null;
+        // 已显示的内容长度（打字机效果进度）
+        this.displayedLength = 0;
+        // 待执行的动画帧ID
+        this.renderFrame = null;
+        // 流已结束、正在显示剩余内容
+        this.finishing = false;
         
         // 初始化各个组件
         this.initMarkdown();
@@ -115,8 +121,8 @@ class ChatApp {
         
         // 窗口关闭前清理资源
         window.addEventListener('beforeunload', () => {
-            if (this.currentEventSource) {
-                this.currentEventSource.close();
+            if (this.socket) {
+                this.socket.close();
             }
         });
     }
@@ -175,6 +181,11 @@ class ChatApp {
         // 检查消息是否为空或正在流式传输中
         if (!message || this.isStreaming) return;
         
+        // 上一条回复仍在显示剩余内容时，立即显示完整
+        if (this.finishing && this.currentAssistantMessage) {
+            this.completeMessage(this.currentAssistantMessage.querySelector('.message-text'));
+        }
+        
         // 添加用户消息到界面和历史记录
         this.addMessage('user', message);
         this.chatHistory.push({ role: 'user', content: message });
@@ -204,17 +215,60 @@ class ChatApp {
         }
     }
     
+    /**
+     * 获取已打开的WebSocket连接，尚未连接或已断开时重新连接
+     * @returns {Promise<WebSocket>} 已打开的连接
+     */
+    connect() {
+        if (this.socket && this.socket.readyState === WebSocket.OPEN) {
+            return Promise.resolve(this.socket);
+        }
+        if (this.connecting) {
+            return this.connecting;
+        }
+        
+        // 构建后端URL（后端运行在8999端口）
+        const protocol = window.location.protocol === 'https:' ? 'wss:' : 'ws:';
+        const socket = new WebSocket(protocol + '//' + window.location.hostname + ':8999/ws/chat');
+        this.connecting = new Promise((resolve, reject) => {
+            socket.onopen = () => {
+                this.connecting = null;
+                this.socket = socket;
+                resolve(socket);
+            };
+            socket.onerror = () => {
+                if (this.connecting) {
+                    this.connecting = null;
+                    reject(new Error('WebSocket连接失败'));
+                }
+            };
+        });
+        socket.onmessage = (event) => this.handleFrame(event.data);
+        socket.onclose = () => {
+            if (this.socket === socket) {
+                this.socket = null;
+            }
+            this.stopping = false;
+            if (this.isStreaming) {
+                this.handleError('连接已断开');
+            }
+        };
+        return this.connecting;
+    }
+    
     /**
      * 启动流式请求
-     * 向后端发送消息并处理流式响应
+     * 通过WebSocket发送start帧，响应以帧的形式异步到达
+     * 帧中的id使用本页面的会话ID，同一连接上的多轮对话记录在服务端的同一会话中
      * @param {string} message - 用户输入的消息
      */
     async startStream(message) {
-        // 构建请求数据
-        const requestData = {
+        // 构建start帧
+        const frame = {
+            t: 'start',
+            id: this.sessionId,
             message: message,
-            history: this.chatHistory.slice(-10), // 只保留最近10条对话历史
-            stream: true
+            history: this.chatHistory.slice(-10) // 只保留最近10条对话历史
         };
         
         console.log('开始流式请求:', {
@@ -223,73 +277,9 @@ class ChatApp {
             historyLength: this.chatHistory.length
         });
         
-        // 使用fetch API进行POST请求
         try {
-            // 构建后端URL（后端运行在8999端口）
-            const backendUrl = window.location.protocol + '//' + window.location.hostname + ':8999';
-            const response = await fetch(backendUrl + '/api/chat/stream?sessionIdParam=' + this.sessionId, {
-                method: 'POST',
-                headers: {
-                    'Content-Type': 'application/json',
-                    'Accept': 'text/event-stream'
-                },
-                body: JSON.stringify(requestData)
-            });
-            
-            console.log('响应状态:', response.status, response.statusText);
-            console.log('响应头:', Object.fromEntries(response.headers.entries()));
-            
-            // 检查响应状态
-            if (!response.ok) {
-                throw new Error(`HTTP ${response.status}: ${response.statusText}`);
-            }
-            
-            // 创建流读取器
-            const reader = response.body.getReader();
-            const decoder = new TextDecoder();
-            let buffer = '';           // 数据缓冲区
-            let messageCount = 0;      // 消息计数器
-            
-            console.log('开始读取流数据...');
-            
-            // 循环读取流数据
-            while (true) {
-                const { done, value } = await reader.read();
-                
-                if (done) {
-                    console.log('流读取完成，总共处理了', messageCount, '条消息');
-                    break;
-                }
-                
-                // 解码数据并处理行分割
-                buffer += decoder.decode(value, { stream: true });
-                const lines = buffer.split('\n');
-                buffer = lines.pop(); // 保留不完整的行
-                
-                // 处理每一行数据
-                for (const line of lines) {
-                    console.log('处理行:', line);
-                    if (line.startsWith('data:')) {
-                        // 处理Server-Sent Events格式的数据
-                        const data = line.startsWith('data: ') ? line.slice(6).trim() : line.slice(5).trim();
-                        if (data && data !== '[DONE]') {
-                            messageCount++;
-                            console.log('收到流数据 #' + messageCount + ':', data);
-                            this.handleStreamData(data);
-                        } else if (data === '[DONE]') {
-                            console.log('收到流结束标志');
-                            this.finishStream();
-                            break;
-                        }
-                    } else if (line.trim() === '') {
-                        // 忽略空行
-                        continue;
-                    } else if (line.trim()) {
-                        console.log('收到非data行:', line);
-                    }
-                }
-            }
-            
+            const socket = await this.connect();
+            socket.send(JSON.stringify(frame));
         } catch (error) {
             console.error('Stream error:', error);
             this.handleError('连接失败: ' + error.message);
@@ -297,211 +287,125 @@ class ChatApp {
     }
     
     /**
-     * 处理流式数据
-     * 接收并处理从后端流式传输的数据
-     * @param {string} data - 接收到的流数据
+     * 处理服务端发送的帧
+     * started（对话已开始）、delta（增量内容c）、finished（对话结束）、error（错误信息e）
+     * @param {string} data - 帧的JSON文本
      */
-    handleStreamData(data) {
-        console.log('处理流数据:', data);
-        
+    handleFrame(data) {
+        let frame;
         try {
-            const response = JSON.parse(data);
-            console.log('解析后的响应:', response);
-            
-            if (response.error) {
-                console.error('收到错误响应:', response.error);
-                this.handleError(response.error);
-                return;
-            }
-            
-            if (response.content) {
-                console.log('收到内容:', response.content);
-                this.appendToCurrentMessage(response.content);
+            frame = JSON.parse(data);
+        } catch (error) {
+            console.error('解析帧失败:', error, 'Data:', data);
+            return;
+        }
+        if (frame.id !== this.sessionId) {
+            return;
+        }
+        
+        // 停止后到达的旧流帧直接丢弃，直到旧流结束
+        if (this.stopping) {
+            if (frame.t === 'finished' || frame.t === 'error') {
+                this.stopping = false;
             }
-            
-            if (response.finished) {
-                console.log('流结束标志收到');
+            return;
+        }
+        
+        switch (frame.t) {
+            case 'started':
+                console.log('服务端会话ID:', frame.sid);
+                break;
+            case 'delta':
+                this.appendToCurrentMessage(frame.c);
+                break;
+            case 'finished':
                 this.finishStream();
-            }
-            
-        } catch (error) {
-            console.error('解析流数据失败:', error, 'Data:', data);
+                break;
+            case 'error':
+                console.error('收到错误响应:', frame.e);
+                this.handleError(frame.e);
+                break;
+            default:
+                console.warn('未知帧类型:', frame.t);
         }
     }
     
     /**
      * 向当前消息追加内容
-     * 将新接收的内容追加到当前AI助手消息中，并启动打字机效果
+     * 将新接收的内容追加到缓冲区，实际的DOM更新合并到下一个动画帧中进行
      * @param {string} content - 要追加的内容
      */
     appendToCurrentMessage(content) {
         if (this.currentAssistantMessage) {
-            const messageText = this.currentAssistantMessage.querySelector('.message-text');
-            
-            // 移除打字指示器
-            const typingIndicator = messageText.querySelector('.typing-indicator');
-            if (typingIndicator) {
-                typingIndicator.remove();
+            // 收到第一个增量时移除打字指示器，创建增量渲染器
+            if (!this.markdownRenderer) {
+                const messageText = this.currentAssistantMessage.querySelector('.message-text');
+                messageText.textContent = '';
+                this.markdownRenderer = new IncrementalMarkdownRenderer(messageText, (fragment) => this.addCopyButtons(fragment));
             }
             
             // 累积内容到缓冲区
-            if (!this.contentBuffer) {
-                this.contentBuffer = '';
-            }
             this.contentBuffer += content;
-            
-            console.log('累积内容长度:', this.contentBuffer.length, '新增内容:', content);
-            
-            // 如果当前没有打字机效果在运行，或者内容有显著增加，启动/更新打字机效果
-            const currentDisplayedLength = this.getTextWithoutCursor(messageText).length;
-            const shouldStartTypewriter = !this.currentTypewriterInterval || 
-                                        (this.contentBuffer.length - currentDisplayedLength > 10);
-            
-            if (shouldStartTypewriter) {
-                // 使用打字机效果显示累积的内容
-                this.typewriterEffect(messageText, this.contentBuffer);
-            } else {
-                // 更新目标内容，让现有的打字机效果继续
-                this.currentFullContent = this.contentBuffer;
-            }
+            this.scheduleRender();
         }
     }
     
     /**
-     * 打字机效果显示内容
-     * 逐字符显示内容，模拟打字机效果，提升用户体验
-     * @param {HTMLElement} element - 要显示内容的DOM元素
-     * @param {string} fullContent - 要显示的完整内容
+     * 请求在下一个动画帧渲染
+     * 同一帧内到达的多个增量只触发一次DOM更新
      */
-    typewriterEffect(element, fullContent) {
-        // 获取当前已显示的文本长度（不包括光标）
-        let currentText = this.getTextWithoutCursor(element);
-        const currentLength = currentText.length;
-        
-        console.log('打字机效果 - 当前长度:', currentLength, '目标长度:', fullContent.length);
-        
-        // 如果没有新内容需要显示，直接返回
-        if (currentLength >= fullContent.length) {
-            if (this.isStreaming) {
-                this.addCursor(element);
-            }
-            return;
+    scheduleRender() {
+        if (this.renderFrame === null) {
+            this.renderFrame = requestAnimationFrame(() => this.renderNextFrame());
         }
-        
-        // 停止当前的打字机效果（如果有的话）
-        if (this.currentTypewriterInterval) {
-            clearInterval(this.currentTypewriterInterval);
-            this.currentTypewriterInterval = null;
-        }
-        
-        // 存储当前要显示的完整内容
-        this.currentFullContent = fullContent;
-        
-        // 逐字添加新内容
-        let i = currentLength;
-        this.currentTypewriterInterval = setInterval(() => {
-            // 检查是否有更新的内容需要显示
-            if (this.currentFullContent !== fullContent) {
-                // 内容已更新，停止当前效果，让新的调用处理
-                clearInterval(this.currentTypewriterInterval);
-                this.currentTypewriterInterval = null;
-                return;
-            }
-            
-            if (i < fullContent.length && this.isStreaming) {
-                this.setTextWithCursor(element, fullContent.substring(0, i + 1));
-                i++;
-                this.scrollToBottom();
-            } else {
-                clearInterval(this.currentTypewriterInterval);
-                this.currentTypewriterInterval = null;
-                
-                // 添加光标闪烁效果
-                if (this.isStreaming) {
-                    this.addCursor(element);
-                }
-            }
-        }, 30); // 30ms间隔，可调整打字速度
     }
     
     /**
-     * 获取不包含光标的纯文本内容
-     * 用于计算实际显示的文本长度，排除光标元素的干扰
-     * @param {HTMLElement} element - 要获取文本的DOM元素
-     * @returns {string} 不包含光标的纯文本内容
+     * 取消尚未执行的渲染
      */
-    getTextWithoutCursor(element) {
-        // 克隆元素以避免影响原始DOM
-        const clone = element.cloneNode(true);
-        // 移除光标元素
-        const cursor = clone.querySelector('.typing-cursor');
-        if (cursor) {
-            cursor.remove();
+    cancelRender() {
+        if (this.renderFrame !== null) {
+            cancelAnimationFrame(this.renderFrame);
+            this.renderFrame = null;
         }
-        return clone.textContent || '';
+        this.finishing = false;
     }
     
     /**
-     * 设置文本内容并保持光标
-     * 智能处理Markdown渲染，优化性能，避免频繁重新渲染
-     * @param {HTMLElement} element - 要设置文本的DOM元素
-     * @param {string} text - 要设置的文本内容
+     * 渲染一帧（打字机效果）
+     * 每帧显示一部分尚未显示的内容，积压越多每帧显示越多，避免显示落后于接收；
+     * 流结束后加快显示剩余内容，显示完毕再完成消息
      */
-    setTextWithCursor(element, text) {
-        // 检查是否存在光标
-        const hasCursor = element.querySelector('.typing-cursor');
+    renderNextFrame() {
+        this.renderFrame = null;
+        if (!this.markdownRenderer) {
+            return;
+        }
         
-        // 优化策略：减少频繁的Markdown渲染
-        if (typeof marked !== 'undefined' && this.shouldRenderMarkdownNow(text)) {
-            try {
-                // 解析Markdown为HTML
-                const htmlContent = marked.parse(text);
-                element.innerHTML = htmlContent;
-                
-                // 初始化代码高亮
-                if (typeof hljs !== 'undefined') {
-                    element.querySelectorAll('pre code').forEach((block) => {
-                        hljs.highlightElement(block);
-                    });
-                }
-                
-                // 添加代码块复制功能
-                this.addCopyButtons(element);
-                
-                // 记录最后一次渲染的内容长度
-                this.lastRenderedLength = text.length;
-            } catch (error) {
-                // 如果渲染失败，回退到纯文本
-                element.textContent = text;
+        const backlog = this.contentBuffer.length - this.displayedLength;
+        if (backlog > 0) {
+            const step = this.finishing
+                ? Math.max(8, Math.ceil(backlog / 4))
+                : Math.max(2, Math.ceil(backlog / 12));
+            let length = Math.min(this.contentBuffer.length, this.displayedLength + step);
+            // 不在代理对中间截断，避免显示半个表情字符
+            const lastCode = this.contentBuffer.charCodeAt(length - 1);
+            if (lastCode >= 0xD800 && lastCode <= 0xDBFF && length < this.contentBuffer.length) {
+                length++;
             }
-        } else {
-            // 直接设置文本内容
-            element.textContent = text;
+            this.displayedLength = length;
+            this.markdownRenderer.update(this.contentBuffer.substring(0, length), this.isStreaming || this.finishing);
+            this.scrollToBottom();
         }
         
-        // 如果之前有光标且正在流式传输，重新添加光标
-        if (hasCursor && this.isStreaming) {
-            this.addCursor(element);
-        }
-    }
-    
-    /**
-     * 添加打字光标
-     * 在元素末尾添加闪烁的光标，提供视觉反馈
-     * @param {HTMLElement} element - 要添加光标的DOM元素
-     */
-    addCursor(element) {
-        // 移除现有光标，避免重复
-        const existingCursor = element.querySelector('.typing-cursor');
-        if (existingCursor) {
-            existingCursor.remove();
+        if (this.displayedLength < this.contentBuffer.length) {
+            this.scheduleRender();
+        } else if (this.finishing) {
+            this.finishing = false;
+            if (this.currentAssistantMessage) {
+                this.completeMessage(this.currentAssistantMessage.querySelector('.message-text'));
+            }
         }
-        
-        // 创建并添加新光标
-        const cursor = document.createElement('span');
-        cursor.className = 'typing-cursor';
-        cursor.textContent = '|';
-        element.appendChild(cursor);
     }
     
     /**
@@ -518,7 +422,7 @@ class ChatApp {
     
     /**
      * 完成流式处理
-     * 处理流结束，完成打字机效果并重置UI状态
+     * 处理流结束，显示完剩余内容并重置UI状态
      */
     finishStream() {
         this.isStreaming = false;
@@ -526,75 +430,39 @@ class ChatApp {
         this.stopBtn.disabled = true;
         this.updateStatus('ready', '就绪');
         
-        if (this.currentAssistantMessage) {
+        if (this.currentAssistantMessage && !this.finishing) {
             const messageText = this.currentAssistantMessage.querySelector('.message-text');
             
             // 检查是否还有未显示的内容
-            const currentDisplayedText = this.getTextWithoutCursor(messageText);
-            const hasRemainingContent = this.contentBuffer && currentDisplayedText.length < this.contentBuffer.length;
-            
-            if (hasRemainingContent) {
-                // 如果还有未显示的内容，继续打字机效果直到完成
-                console.log('流结束，但还有未显示内容，继续打字机效果');
-                this.finishTypewriterEffect(messageText, this.contentBuffer);
+            if (this.markdownRenderer && this.displayedLength < this.contentBuffer.length) {
+                // 加快打字机效果，显示完毕后由renderNextFrame完成消息
+                this.finishing = true;
+                this.scheduleRender();
             } else {
                 // 所有内容已显示完毕，直接完成
                 this.completeMessage(messageText);
             }
         }
-        
-        if (this.currentEventSource) {
-            this.currentEventSource.close();
-            this.currentEventSource = null;
-        }
-    }
-    
-    /**
-     * 加速完成打字机效果
-     * 以更快的速度显示剩余内容，确保所有内容都能完整显示
-     * @param {HTMLElement} element - 要显示内容的DOM元素
-     * @param {string} fullContent - 要显示的完整内容
-     */
-    finishTypewriterEffect(element, fullContent) {
-        // 停止当前的打字机效果
-        if (this.currentTypewriterInterval) {
-            clearInterval(this.currentTypewriterInterval);
-            this.currentTypewriterInterval = null;
-        }
-        
-        // 获取当前已显示的文本长度
-        let currentText = this.getTextWithoutCursor(element);
-        let currentLength = currentText.length;
-        
-        console.log('完成打字机效果 - 当前长度:', currentLength, '目标长度:', fullContent.length);
-        
-        // 继续逐字显示剩余内容，但速度稍快一些
-        this.currentTypewriterInterval = setInterval(() => {
-            if (currentLength < fullContent.length) {
-                this.setTextWithCursor(element, fullContent.substring(0, currentLength + 1));
-                currentLength++;
-                this.scrollToBottom();
-            } else {
-                // 所有内容显示完毕
-                clearInterval(this.currentTypewriterInterval);
-                this.currentTypewriterInterval = null;
-                this.completeMessage(element);
-            }
-        }, 15); // 更快的速度完成剩余内容
     }
     
     /**
      * 完成消息处理
-     * 最终处理消息显示，包括Markdown渲染、历史记录保存和状态清理
+     * 最终处理消息显示，包括提交剩余Markdown、历史记录保存和状态清理
      * @param {HTMLElement} messageText - 消息文本元素
      */
     completeMessage(messageText) {
+        this.cancelRender();
+        
         // 移除光标
         this.removeCursor(messageText);
         
-        // 确保显示完整内容并渲染Markdown
+        // 确保显示完整内容：已提交的块保持不变，只解析剩余部分（有引用式链接定义时整体重新渲染）
         if (this.contentBuffer && this.contentBuffer.trim()) {
-            this.renderMarkdown(messageText, this.contentBuffer);
+            if (this.markdownRenderer) {
+                this.markdownRenderer.finish(this.contentBuffer);
+            } else {
+                this.renderMarkdown(messageText, this.contentBuffer);
+            }
             
             // 添加到聊天历史
             this.chatHistory.push({ role: 'assistant', content: this.contentBuffer });
@@ -614,9 +482,18 @@ class ChatApp {
         timeElement.textContent = this.formatTime(new Date());
         
         // 清理内容缓冲区和状态
+        this.resetRenderState();
+    }
+    
+    /**
+     * 重置当前消息的渲染状态
+     */
+    resetRenderState() {
+        this.cancelRender();
         this.contentBuffer = '';
         this.currentAssistantMessage = null;
-        this.lastRenderedLength = 0; // 重置渲染长度记录
+        this.markdownRenderer = null;
+        this.displayedLength = 0;
     }
     
     /**
@@ -653,96 +530,6 @@ class ChatApp {
         }
     }
     
-    /**
-     * 检测文本是否包含Markdown语法
-     * 通过正则表达式匹配常见的Markdown语法元素
-     * @param {string} text - 要检测的文本内容
-     * @returns {boolean} 如果包含Markdown语法返回true，否则返回false
-     */
-    containsMarkdownSyntax(text) {
-        // 检测常见的Markdown语法
-        const markdownPatterns = [
-            /#{1,6}\s+/,           // 标题 # ## ###
-            /\*\*.*?\*\*/,         // 粗体 **text**
-            /\*.*?\*/,             // 斜体 *text*
-            /`.*?`/,               // 行内代码 `code`
-            /```[\s\S]*?```/,      // 代码块 ```code```
-            /^\s*[-*+]\s+/m,       // 无序列表 - * +
-            /^\s*\d+\.\s+/m,       // 有序列表 1. 2.
-            /^\s*>\s+/m,           // 引用 >
-            /\[.*?\]\(.*?\)/,      // 链接 [text](url)
-            /!\[.*?\]\(.*?\)/,     // 图片 ![alt](url)
-            /\|.*?\|/,             // 表格 |cell|
-            /^\s*---+\s*$/m,       // 分隔线 ---
-            /~~.*?~~/              // 删除线 ~~text~~
-        ];
-        
-        return markdownPatterns.some(pattern => pattern.test(text));
-    }
-    
-    /**
-     * 智能判断是否应该渲染Markdown
-     * 检查文本是否包含完整的Markdown结构，避免渲染不完整的语法
-     * @param {string} text - 要检查的文本内容
-     * @returns {boolean} 如果应该渲染Markdown返回true，否则返回false
-     */
-    shouldRenderMarkdown(text) {
-        // 智能判断是否应该渲染Markdown
-        if (!this.containsMarkdownSyntax(text)) {
-            return false;
-        }
-        
-        // 检查是否包含完整的Markdown结构
-        const completePatterns = [
-            /#{1,6}\s+.+/,                    // 完整标题行
-            /\*\*[^*]+\*\*/,                  // 完整粗体
-            /\*[^*]+\*/,                      // 完整斜体
-            /`[^`]+`/,                        // 完整行内代码
-            /```[\s\S]*?```/,                 // 完整代码块
-            /^\s*[-*+]\s+.+$/m,               // 完整列表项
-            /^\s*\d+\.\s+.+$/m,               // 完整有序列表项
-            /^\s*>\s+.+$/m,                   // 完整引用行
-            /\[[^\]]+\]\([^)]+\)/,            // 完整链接
-            /!\[[^\]]*\]\([^)]+\)/,           // 完整图片
-            /~~[^~]+~~/,                      // 完整删除线
-            /^\s*---+\s*$/m                   // 完整分隔线
-        ];
-        
-        // 如果包含完整的Markdown结构，或者文本较长（可能包含多个元素），则渲染
-        return completePatterns.some(pattern => pattern.test(text)) || text.length > 50;
-    }
-    
-    /**
-     * 优化的Markdown渲染时机判断
-     * 减少频繁渲染，提升性能，只在合适的时机进行渲染
-     * @param {string} text - 要检查的文本内容
-     * @returns {boolean} 如果现在应该渲染Markdown返回true，否则返回false
-     */
-    shouldRenderMarkdownNow(text) {
-        // 优化的渲染策略：减少频繁渲染
-        if (!this.containsMarkdownSyntax(text)) {
-            return false;
-        }
-        
-        // 初始化最后渲染长度
-        if (!this.lastRenderedLength) {
-            this.lastRenderedLength = 0;
-        }
-        
-        const currentLength = text.length;
-        const lengthDiff = currentLength - this.lastRenderedLength;
-        
-        // 渲染条件：
-        // 1. 内容长度增加超过100个字符
-        // 2. 检测到完整的Markdown结构
-        // 3. 包含代码块结束标记
-        const hasSignificantChange = lengthDiff > 100;
-        const hasCompleteStructure = this.shouldRenderMarkdown(text);
-        const hasCodeBlockEnd = /```\s*$/.test(text) || /```\w*\s*\n[\s\S]*?```/.test(text);
-        
-        return hasSignificantChange || hasCompleteStructure || hasCodeBlockEnd;
-    }
-    
     /**
      * 为代码块添加复制按钮
      * 在每个代码块右上角添加复制按钮，提供便捷的代码复制功能
@@ -819,70 +606,62 @@ class ChatApp {
         this.updateStatus('paused', '正在停止...');
         this.stopBtn.disabled = true;
         
-        // 停止打字机效果定时器
-        if (this.currentTypewriterInterval) {
-            clearInterval(this.currentTypewriterInterval);
-            this.currentTypewriterInterval = null;
-        }
+        // 停止打字机效果
+        this.cancelRender();
         
         try {
-            // 向后端发送停止请求
-            const backendUrl = window.location.protocol + '//' + window.location.hostname + ':8999';
-            const response = await fetch(`${backendUrl}/api/chat/stop/${this.sessionId}`, {
-                method: 'POST'
-            });
+            // 向后端发送stop帧，服务端立即取消上游请求
+            if (!this.socket || this.socket.readyState !== WebSocket.OPEN) {
+                throw new Error('连接已断开');
+            }
+            this.socket.send(JSON.stringify({ t: 'stop', id: this.sessionId }));
+            this.stopping = true;
             
-            if (response.ok) {
-                // 立即显示所有剩余内容并渲染Markdown
-                if (this.currentAssistantMessage && this.contentBuffer) {
-                    const messageText = this.currentAssistantMessage.querySelector('.message-text');
-                    
-                    // 移除打字光标
-                    this.removeCursor(messageText);
-                    
-                    // 立即渲染Markdown格式的完整内容
+            // 立即显示所有剩余内容并渲染Markdown
+            if (this.currentAssistantMessage && this.contentBuffer) {
+                const messageText = this.currentAssistantMessage.querySelector('.message-text');
+                
+                // 移除打字光标
+                this.removeCursor(messageText);
+                
+                // 立即显示剩余内容，已提交的块保持不变（有引用式链接定义时整体重新渲染）
+                if (this.markdownRenderer) {
+                    this.markdownRenderer.finish(this.contentBuffer);
+                } else {
                     this.renderMarkdown(messageText, this.contentBuffer);
-                    
-                    // 添加暂停指示器（橙色暂停图标）
-                    const pauseIndicator = document.createElement('span');
-                    pauseIndicator.className = 'pause-indicator';
-                    pauseIndicator.innerHTML = ' <i class="fas fa-pause-circle"></i>';
-                    pauseIndicator.title = '对话已暂停';
-                    messageText.appendChild(pauseIndicator);
-                    
-                    // 将内容保存到聊天历史
-                    this.chatHistory.push({ role: 'assistant', content: this.contentBuffer });
-                    
-                    // 更新消息时间戳
-                    const timeElement = this.currentAssistantMessage.querySelector('.message-time');
-                    timeElement.textContent = this.formatTime(new Date());
-                    
-                    // 清理状态变量
-                    this.contentBuffer = '';
-                    this.currentAssistantMessage = null;
-                    this.lastRenderedLength = 0; // 重置渲染长度记录
                 }
                 
-                // 更新UI状态为就绪
-                this.isStreaming = false;
-                this.sendBtn.disabled = false;
-                this.stopBtn.disabled = true;
-                this.updateStatus('ready', '已停止');
+                // 添加暂停指示器（橙色暂停图标）
+                const pauseIndicator = document.createElement('span');
+                pauseIndicator.className = 'pause-indicator';
+                pauseIndicator.innerHTML = ' <i class="fas fa-pause-circle"></i>';
+                pauseIndicator.title = '对话已暂停';
+                messageText.appendChild(pauseIndicator);
+                
+                // 将内容保存到聊天历史
+                this.chatHistory.push({ role: 'assistant', content: this.contentBuffer });
+                
+                // 更新消息时间戳
+                const timeElement = this.currentAssistantMessage.querySelector('.message-time');
+                timeElement.textContent = this.formatTime(new Date());
                 
-                // 显示停止成功通知
-                this.showNotification('对话已暂停', 'info');
+                // 清理状态变量
+                this.resetRenderState();
             }
+            
+            // 更新UI状态为就绪
+            this.isStreaming = false;
+            this.sendBtn.disabled = false;
+            this.stopBtn.disabled = true;
+            this.updateStatus('ready', '已停止');
+            
+            // 显示停止成功通知
+            this.showNotification('对话已暂停', 'info');
         } catch (error) {
             console.error('停止流失败:', error);
             this.updateStatus('error', '停止失败');
             this.showNotification('停止失败，请重试', 'error');
         }
-        
-        // 关闭事件源连接
-        if (this.currentEventSource) {
-            this.currentEventSource.close();
-            this.currentEventSource = null;
-        }
     }
     
     /**
@@ -931,6 +710,7 @@ class ChatApp {
         
         // 在当前消息或新消息中显示错误信息
         if (this.currentAssistantMessage) {
+            this.cancelRender();
             const messageText = this.currentAssistantMessage.querySelector('.message-text');
             messageText.textContent = errorMessage;
             messageText.style.color = '#ef4444';
@@ -1037,6 +817,187 @@ class ChatApp {
     }
 }
 
+// ==================== 增量Markdown渲染 ====================
+/**
+ * 增量Markdown渲染器
+ * 流式输出时只重新渲染末尾尚未结束的块，避免每个增量都重新解析全文：
+ * - 已结束的块（空行之前的段落、列表，已闭合的代码块）只解析一次，提交后不再改动
+ * - 空行之后的下一行有缩进、是列表项或引用时，空行前的块可能还会延续（松散列表、
+ *   列表项中的后续段落和代码块），此时不在空行处提交
+ * - 代码块在闭合、被提交时才进行语法高亮并添加复制按钮
+ * - 末尾未结束的块每次更新时单独解析，开销只与末尾块长度有关
+ * - 出现引用式链接定义时，结束后按全文重新渲染一次，使定义之前的引用也能解析
+ * 要求每次传入的文本都以上一次的文本为前缀
+ */
+class IncrementalMarkdownRenderer {
+    /**
+     * 构造函数
+     * @param {HTMLElement} element - 消息文本元素
+     * @param {Function} onCommit - 块提交后的回调，参数为新提交内容的DocumentFragment
+     */
+    constructor(element, onCommit) {
+        this.element = element;
+        this.onCommit = onCommit;
+        // 已提交文本的长度
+        this.committedLength = 0;
+        // 已扫描完整行的位置
+        this.scanOffset = 0;
+        // 最近一个块边界的位置，之前的内容都可以提交
+        this.boundary = 0;
+        // 最近一个空行之后的位置，要等到下一个非空行才能确定是否为块边界，没有时为-1
+        this.pendingBoundary = -1;
+        // 当前所在代码块的围栏标记，不在代码块中时为空
+        this.fenceMarker = '';
+        // 当前代码块是否有缩进（位于列表项中），有缩进时闭合后不是块边界
+        this.fenceIndented = false;
+        // 是否出现过引用式链接定义
+        this.hasReferenceDefinitions = false;
+        
+        // 末尾未结束块的容器，已提交的块插入在它前面
+        this.tail = document.createElement('div');
+        this.tail.className = 'markdown-tail';
+        this.element.appendChild(this.tail);
+        
+        // 打字光标
+        this.cursor = document.createElement('span');
+        this.cursor.className = 'typing-cursor';
+        this.cursor.textContent = '|';
+    }
+    
+    /**
+     * 更新显示内容
+     * @param {string} text - 当前要显示的完整文本
+     * @param {boolean} showCursor - 是否在末尾显示打字光标
+     */
+    update(text, showCursor) {
+        this.scanBoundaries(text);
+        if (this.boundary > this.committedLength) {
+            this.commit(text.substring(this.committedLength, this.boundary));
+            this.committedLength = this.boundary;
+        }
+        
+        this.tail.innerHTML = this.parse(text.substring(this.committedLength));
+        if (showCursor) {
+            // 光标跟在末尾段落文字后面，而不是另起一行
+            const last = this.tail.lastElementChild;
+            (last && last.tagName === 'P' ? last : this.tail).appendChild(this.cursor);
+        }
+    }
+    
+    /**
+     * 完成渲染
+     * 将剩余内容全部提交（包括未闭合的代码块），并移除末尾容器；
+     * 出现过引用式链接定义时丢弃已提交的块，按全文重新渲染一次
+     * @param {string} text - 完整文本
+     */
+    finish(text) {
+        if (this.hasReferenceDefinitions) {
+            this.tail.remove();
+            this.element.replaceChildren();
+            this.commit(text);
+            this.committedLength = text.length;
+            return;
+        }
+        if (text.length > this.committedLength) {
+            this.commit(text.substring(this.committedLength));
+            this.committedLength = text.length;
+        }
+        this.tail.remove();
+    }
+    
+    /**
+     * 从上次扫描的位置继续扫描完整行，记录最近的块边界
+     * 代码块内的空行不是边界；没有缩进的代码块闭合后是边界；
+     * 其他空行要看下一个非空行，下一行会延续空行前的块时不是边界
+     * @param {string} text - 当前完整文本
+     */
+    scanBoundaries(text) {
+        let lineStart = this.scanOffset;
+        let newline;
+        while ((newline = text.indexOf('\n', lineStart)) !== -1) {
+            const line = text.substring(lineStart, newline);
+            const fence = /^ {0,3}(`{3,}|~{3,})/.exec(line);
+            if (this.fenceMarker) {
+                // 闭合围栏：同种字符、不短于开始围栏、后面没有其他内容
+                if (fence && fence[1][0] === this.fenceMarker[0] && fence[1].length >= this.fenceMarker.length
+                        && line.trim() === fence[1]) {
+                    this.fenceMarker = '';
+                    if (!this.fenceIndented) {
+                        this.boundary = newline + 1;
+                    }
+                }
+            } else if (line.trim() === '') {
+                this.pendingBoundary = newline + 1;
+            } else {
+                if (this.pendingBoundary >= 0) {
+                    if (!this.continuesBlock(line)) {
+                        this.boundary = this.pendingBoundary;
+                    }
+                    this.pendingBoundary = -1;
+                }
+                if (fence) {
+                    this.fenceMarker = fence[1];
+                    this.fenceIndented = /^\s/.test(line);
+                } else if (/^ {0,3}\[[^\]]+\]:/.test(line)) {
+                    this.hasReferenceDefinitions = true;
+                }
+            }
+            lineStart = newline + 1;
+        }
+        this.scanOffset = lineStart;
+    }
+    
+    /**
+     * 判断空行之后的一行是否可能延续空行之前的块
+     * 有缩进的行（列表项中的段落、代码块）、列表项（松散列表）和引用都按延续处理
+     * @param {string} line - 空行之后的第一个非空行
+     * @returns {boolean} 可能延续时返回true
+     */
+    continuesBlock(line) {
+        return /^[ \t]/.test(line) || /^([-*+]|\d{1,9}[.)])([ \t]|$)/.test(line) || /^>/.test(line);
+    }
+    
+    /**
+     * 解析并提交已结束的块
+     * @param {string} markdown - 要提交的Markdown文本
+     */
+    commit(markdown) {
+        const template = document.createElement('template');
+        template.innerHTML = this.parse(markdown);
+        const fragment = template.content;
+        
+        // 代码块已闭合，只在这里高亮一次
+        if (typeof hljs !== 'undefined') {
+            fragment.querySelectorAll('pre code').forEach((block) => {
+                hljs.highlightElement(block);
+            });
+        }
+        if (this.onCommit) {
+            this.onCommit(fragment);
+        }
+        
+        this.element.insertBefore(fragment, this.tail.parentNode === this.element ? this.tail : null);
+    }
+    
+    /**
+     * 将Markdown文本解析为HTML
+     * marked.js不可用或解析失败时按纯文本显示
+     * @param {string} markdown - Markdown文本
+     * @returns {string} HTML字符串
+     */
+    parse(markdown) {
+        if (typeof marked !== 'undefined') {
+            try {
+                return marked.parse(markdown);
+            } catch (error) {
+                console.warn('Markdown渲染失败:', error);
+            }
+        }
+        const escaped = markdown.replace(/&/g, '&amp;').replace(/</g, '&lt;').replace(/>/g, '&gt;');
+        return escaped.replace(/\n/g, '<br>');
+    }
+}
+
 // ==================== 应用初始化 ====================
 /**
  * DOM内容加载完成后初始化聊天应用
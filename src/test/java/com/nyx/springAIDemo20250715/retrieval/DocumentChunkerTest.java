@@ -0,0 +1,92 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DocumentChunker测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class DocumentChunkerTest {
+    
+    /** 每块的token上限 */
+    private static final int MAX_TOKENS = 120;
+    
+    @Test
+    void chunksStayWithinLimitAndKeepAllText() {
+        List<String> paragraphs = paragraphs(40);
+        List<String> chunks = DocumentChunker.split(String.join("\n\n", paragraphs), MAX_TOKENS);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks) {
+            assertTrue(TokenEstimator.estimate(chunk) <= MAX_TOKENS, chunk);
+        }
+        assertEquals(String.join("\n\n", paragraphs), String.join("\n\n", chunks));
+    }
+    
+    @Test
+    void longParagraphIsSplitAtSentenceEnds() {
+        StringBuilder paragraph = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            paragraph.append("这是第").append(i).append("句比较长的测试内容，用来验证切分位置。");
+        }
+        List<String> chunks = DocumentChunker.split(paragraph.toString(), MAX_TOKENS);
+        assertTrue(chunks.size() > 1);
+        for (String chunk : chunks.subList(0, chunks.size() - 1)) {
+            assertTrue(chunk.endsWith("。"), chunk);
+            assertTrue(TokenEstimator.estimate(chunk) <= MAX_TOKENS, chunk);
+        }
+    }
+    
+    @Test
+    void headingStartsNewChunkAndFencedBlankLinesAreKept() {
+        String text = "开头的说明。\n\n# 标题\n\n```java\nint a = 1;\n\nint b = 2;\n```";
+        List<String> chunks = DocumentChunker.split(text, MAX_TOKENS);
+        assertEquals(List.of("开头的说明。", "# 标题\n\n```java\nint a = 1;\n\nint b = 2;\n```"), chunks);
+    }
+    
+    @Test
+    void insertedParagraphOnlyChangesNearbyChunks() {
+        List<String> paragraphs = paragraphs(60);
+        List<String> before = DocumentChunker.split(String.join("\n\n", paragraphs), MAX_TOKENS);
+        List<String> edited = new ArrayList<>(paragraphs);
+        edited.add(20, "新插入的一段内容，文档修改后重新导入。");
+        List<String> after = DocumentChunker.split(String.join("\n\n", edited), MAX_TOKENS);
+        
+        assertNotEquals(before, after);
+        Set<String> kept = new HashSet<>(after);
+        long changed = before.stream().filter(chunk -> !kept.contains(chunk)).count();
+        assertTrue(changed <= 2, "变化的块数: " + changed + " / " + before.size());
+        assertEquals(before.get(before.size() - 1), after.get(after.size() - 1));
+    }
+    
+    @Test
+    void contentHashDependsOnlyOnText() {
+        assertEquals(DocumentChunker.contentHash("同一段内容"), DocumentChunker.contentHash("同一段内容"));
+        assertNotEquals(DocumentChunker.contentHash("同一段内容"), DocumentChunker.contentHash("同一段内容。"));
+    }
+    
+    /**
+     * 生成互不相同的测试段落
+     * 
+     * @param count 段落数
+     * @return 段落
+     */
+    private static List<String> paragraphs(int count) {
+        List<String> paragraphs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            paragraphs.add("第" + i + "段：检索增强需要把文档切分为资料块，块边界应当尽量稳定。");
+        }
+        return paragraphs;
+    }
+}
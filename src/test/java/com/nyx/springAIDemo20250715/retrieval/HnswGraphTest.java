@@ -0,0 +1,151 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HnswGraph测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class HnswGraphTest {
+    
+    /** 向量维度 */
+    private static final int DIMENSION = 32;
+    
+    /** 上层最大邻居数 */
+    private static final int M = 8;
+    
+    /** 元数据中节点数的偏移 */
+    private static final int META_COUNT = 16;
+    
+    /** 元数据中正在插入的节点的偏移 */
+    private static final int META_PENDING = 44;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void recallMatchesBruteForce() {
+        Random random = new Random(42);
+        List<float[]> vectors = new ArrayList<>();
+        try (HnswGraph graph = open()) {
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random);
+                vectors.add(vector);
+                graph.add(i, vector);
+            }
+            int k = 10;
+            int found = 0;
+            int queries = 50;
+            for (int q = 0; q < queries; q++) {
+                float[] query = randomVector(random);
+                Set<Long> expected = new HashSet<>();
+                IntStream.range(0, vectors.size()).boxed()
+                        .sorted(Comparator.comparingDouble(i -> -VectorOps.scalarDot(query, vectors.get(i))))
+                        .limit(k)
+                        .forEach(i -> expected.add((long) i));
+                for (HnswGraph.Hit hit : graph.search(query, k, 64)) {
+                    if (expected.contains(hit.key())) {
+                        found++;
+                    }
+                }
+            }
+            double recall = (double) found / (queries * k);
+            assertTrue(recall >= 0.9, "recall@10 = " + recall);
+        }
+    }
+    
+    @Test
+    void deletedNodesAreSkippedAndPersisted() {
+        Random random = new Random(7);
+        float[] target = randomVector(random);
+        try (HnswGraph graph = open()) {
+            for (int i = 0; i < 100; i++) {
+                graph.add(i * 10L, i == 50 ? target : randomVector(random));
+            }
+            assertEquals(50, graph.find(500L));
+            assertTrue(graph.delete(50));
+            assertFalse(graph.delete(50));
+        }
+        try (HnswGraph graph = open()) {
+            assertEquals(100, graph.size());
+            assertEquals(99, graph.liveSize());
+            assertEquals(990L, graph.lastKey());
+            assertTrue(graph.search(target, 5, 32).stream().noneMatch(hit -> hit.key() == 500L));
+        }
+    }
+    
+    @Test
+    void uncommittedInsertIsDroppedOnReopen() throws IOException {
+        Random random = new Random(11);
+        float[] crashed = randomVector(random);
+        try (HnswGraph graph = open()) {
+            for (int i = 0; i < 300; i++) {
+                graph.add(i, randomVector(random));
+            }
+            graph.add(999L, crashed);
+        }
+        // 模拟插入过程中进程退出：反向边已写入，节点数尚未更新
+        try (FileChannel channel = FileChannel.open(directory.resolve("index.meta"),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer value = ByteBuffer.allocate(4).order(ByteOrder.nativeOrder());
+            channel.write(value.putInt(0, 300), META_COUNT);
+            channel.write(value.clear().putInt(0, 301), META_PENDING);
+        }
+        
+        try (HnswGraph graph = open()) {
+            assertEquals(300, graph.size());
+            assertTrue(graph.search(crashed, 10, 64).stream().noneMatch(hit -> hit.key() == 999L));
+            
+            float[] replacement = randomVector(random);
+            graph.add(1000L, replacement);
+            List<HnswGraph.Hit> hits = graph.search(replacement, 1, 64);
+            assertEquals(1000L, hits.get(0).key());
+            assertTrue(graph.search(crashed, 10, 64).stream().noneMatch(hit -> hit.key() == 999L));
+        }
+    }
+    
+    /**
+     * 打开测试目录中的向量图
+     * 
+     * @return 向量图
+     */
+    private HnswGraph open() {
+        return new HnswGraph(directory, DIMENSION, M, 64, 1);
+    }
+    
+    /**
+     * 生成随机单位向量
+     * 
+     * @param random 随机数生成器
+     * @return 单位向量
+     */
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return VectorOps.normalize(vector);
+    }
+}
\ No newline at end of file
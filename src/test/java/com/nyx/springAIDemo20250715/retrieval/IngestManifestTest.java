@@ -0,0 +1,115 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IngestManifest测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class IngestManifestTest {
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void latestEntriesAndRemovalsAreReplayed() {
+        Path file = directory.resolve("ingest.manifest");
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            manifest.put("a.md", new IngestManifest.Entry(1, 10, new long[] {11, 12}, new long[] {100, 200}));
+            manifest.put("b.md", new IngestManifest.Entry(2, 20, new long[] {21}, new long[] {300}));
+            manifest.put("a.md", new IngestManifest.Entry(3, 30, new long[] {12}, new long[] {200}));
+            manifest.remove("b.md");
+        }
+        
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertEquals(Set.of("a.md"), manifest.sources());
+            IngestManifest.Entry entry = manifest.get("a.md");
+            assertEquals(3, entry.modified());
+            assertEquals(30, entry.size());
+            assertArrayEquals(new long[] {12}, entry.hashes());
+            assertArrayEquals(new long[] {200}, entry.keys());
+            assertNull(manifest.get("b.md"));
+            assertTrue(manifest.pending().isEmpty());
+        }
+    }
+    
+    @Test
+    void unfinishedIntentSurvivesReopen() {
+        Path file = directory.resolve("ingest.manifest");
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            manifest.begin("a.md");
+            manifest.put("a.md", new IngestManifest.Entry(-1, -1, new long[] {1}, new long[] {10}));
+            manifest.end("a.md");
+            manifest.begin("b.md");
+        }
+        
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertEquals(Set.of("b.md"), manifest.pending());
+            manifest.end("b.md");
+        }
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertTrue(manifest.pending().isEmpty());
+            assertEquals(Set.of("a.md"), manifest.sources());
+        }
+    }
+    
+    @Test
+    void incompleteTailIsTruncatedOnReopen() throws IOException {
+        Path file = directory.resolve("ingest.manifest");
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            manifest.put("a.md", new IngestManifest.Entry(1, 10, new long[] {1}, new long[] {10}));
+        }
+        long size = Files.size(file);
+        // 只写入了一条记录的开头
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 64, 7, 7}));
+        }
+        
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertEquals(size, Files.size(file));
+            manifest.put("b.md", new IngestManifest.Entry(2, 20, new long[] {2}, new long[] {20}));
+        }
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertEquals(Set.of("a.md", "b.md"), manifest.sources());
+        }
+    }
+    
+    @Test
+    void compactionKeepsEntriesAndPendingIntents() throws IOException {
+        Path file = directory.resolve("ingest.manifest");
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            for (int i = 0; i < 50; i++) {
+                manifest.put("a.md", new IngestManifest.Entry(i, i, new long[] {i}, new long[] {i * 10L}));
+            }
+            manifest.begin("b.md");
+        }
+        long before = Files.size(file);
+        
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertTrue(Files.size(file) < before);
+            assertEquals(49, manifest.get("a.md").modified());
+            assertEquals(Set.of("b.md"), manifest.pending());
+        }
+        try (IngestManifest manifest = new IngestManifest(file)) {
+            assertArrayEquals(new long[] {490}, manifest.get("a.md").keys());
+            assertEquals(Set.of("b.md"), manifest.pending());
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import com.nyx.springAIDemo20250715.config.RetrievalConfig;
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * IngestService测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class IngestServiceTest {
+    
+    /** 每块的token上限，测试文档会被切分为多个块 */
+    private static final int CHUNK_TOKENS = 80;
+    
+    /** 测试文档来源 */
+    private static final String SOURCE = "guide.md";
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void unchangedChunksAreReusedByContentHash() {
+        List<String> paragraphs = paragraphs(30);
+        IngestService.Result first;
+        Set<Long> firstKeys;
+        try (Opened opened = open()) {
+            first = opened.ingest().ingest(SOURCE, String.join("\n\n", paragraphs));
+            assertTrue(first.chunks() > 2);
+            assertEquals(first.chunks(), first.added());
+            firstKeys = opened.retrieval().liveKeys(SOURCE);
+            assertEquals(first.chunks(), firstKeys.size());
+        }
+        
+        // 重启后再次导入相同内容，全部沿用
+        try (Opened opened = open()) {
+            IngestService.Result same = opened.ingest().ingest(SOURCE, String.join("\n\n", paragraphs));
+            assertEquals(0, same.added());
+            assertEquals(0, same.removed());
+            assertEquals(first.chunks(), same.unchanged());
+            assertEquals(firstKeys, opened.retrieval().liveKeys(SOURCE));
+            
+            // 末尾追加一段，只有最后的块变化
+            List<String> edited = new ArrayList<>(paragraphs);
+            edited.add("文末追加的一段内容，用来验证增量导入。");
+            IngestService.Result appended = opened.ingest().ingest(SOURCE, String.join("\n\n", edited));
+            assertTrue(appended.unchanged() >= first.chunks() - 1, appended.toString());
+            assertTrue(appended.added() >= 1);
+            assertEquals(appended.removed(), first.chunks() - appended.unchanged());
+            Set<Long> live = opened.retrieval().liveKeys(SOURCE);
+            assertEquals(appended.chunks(), live.size());
+            Set<Long> reused = new HashSet<>(live);
+            reused.retainAll(firstKeys);
+            assertEquals(appended.unchanged(), reused.size());
+        }
+    }
+    
+    @Test
+    void interruptedIngestDropsUnreferencedPassages() {
+        Set<Long> committed;
+        try (Opened opened = open()) {
+            opened.ingest().ingest(SOURCE, String.join("\n\n", paragraphs(20)));
+            committed = opened.retrieval().liveKeys(SOURCE);
+        }
+        // 模拟导入中途退出：记录意图并写入新资料块后，清单更新之前退出
+        try (Opened opened = openWithoutIngest(); IngestManifest manifest = openManifest()) {
+            manifest.begin(SOURCE);
+            opened.retrieval().addPassage(SOURCE, "导入中途写入的资料块");
+        }
+        
+        try (Opened opened = open()) {
+            assertEquals(committed, opened.retrieval().liveKeys(SOURCE));
+        }
+        try (IngestManifest manifest = openManifest()) {
+            assertTrue(manifest.pending().isEmpty());
+            assertEquals(committed.size(), manifest.get(SOURCE).keys().length);
+        }
+    }
+    
+    @Test
+    void interruptedRemoveDropsWholeDocument() {
+        try (Opened opened = open()) {
+            opened.ingest().ingest(SOURCE, String.join("\n\n", paragraphs(20)));
+            opened.ingest().ingest("other.md", "另一个文档的内容。");
+        }
+        // 模拟删除中途退出：记录意图并删除部分资料块后退出
+        try (Opened opened = openWithoutIngest(); IngestManifest manifest = openManifest()) {
+            manifest.begin(SOURCE);
+            opened.retrieval().removePassage(manifest.get(SOURCE).keys()[0]);
+        }
+        
+        try (Opened opened = open()) {
+            assertTrue(opened.retrieval().liveKeys(SOURCE).isEmpty());
+            assertEquals(1, opened.retrieval().liveKeys("other.md").size());
+        }
+        try (IngestManifest manifest = openManifest()) {
+            assertTrue(manifest.pending().isEmpty());
+            assertNull(manifest.get(SOURCE));
+            assertEquals(Set.of("other.md"), manifest.sources());
+        }
+    }
+    
+    @Test
+    void scanImportsChangedFilesInBatchesAndDropsMissingFiles() throws IOException {
+        Path docs = Files.createDirectories(directory.resolve("docs"));
+        // 并行度为2，5个文件分3批写入
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(docs.resolve("doc" + i + ".md"), "第" + i + "个文件：" + String.join("\n\n", paragraphs(10)));
+        }
+        try (Opened opened = open(docs)) {
+            IngestService.ScanResult first = opened.ingest().scan();
+            assertEquals(5, first.files());
+            assertEquals(5, first.changed());
+            assertEquals(0, first.failed());
+            for (int i = 0; i < 5; i++) {
+                assertTrue(opened.retrieval().liveKeys("doc" + i + ".md").size() > 1);
+            }
+            
+            Files.delete(docs.resolve("doc3.md"));
+            Files.writeString(docs.resolve("doc1.md"), "修改后的第1个文件。");
+            IngestService.ScanResult second = opened.ingest().scan();
+            assertEquals(4, second.files());
+            assertEquals(3, second.skipped());
+            assertEquals(1, second.changed());
+            assertEquals(1, second.deleted());
+            assertTrue(opened.retrieval().liveKeys("doc3.md").isEmpty());
+            assertEquals(1, opened.retrieval().liveKeys("doc1.md").size());
+        }
+    }
+    
+    /**
+     * 生成互不相同的测试段落
+     * 
+     * @param count 段落数
+     * @return 段落
+     */
+    private static List<String> paragraphs(int count) {
+        List<String> paragraphs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            paragraphs.add("第" + i + "节：导入服务按内容哈希比对资料块，未变化的块沿用原资料键。");
+        }
+        return paragraphs;
+    }
+    
+    /**
+     * 在测试目录中打开检索服务和导入服务
+     * 
+     * @return 打开的服务
+     */
+    private Opened open() {
+        return open(null);
+    }
+    
+    /**
+     * 在测试目录中打开检索服务和导入服务
+     * 
+     * @param docs 资料目录，不扫描目录时为null
+     * @return 打开的服务
+     */
+    private Opened open(Path docs) {
+        RetrievalConfig retrievalConfig = retrievalConfig();
+        if (docs != null) {
+            retrievalConfig.getIngest().setDirectory(docs.toString());
+        }
+        RetrievalService retrieval = openRetrieval(retrievalConfig);
+        return new Opened(retrieval, new IngestService(retrievalConfig, storageConfig(), retrieval, new StreamMetrics()));
+    }
+    
+    /**
+     * 只打开检索服务，不执行导入恢复
+     * 
+     * @return 打开的服务
+     */
+    private Opened openWithoutIngest() {
+        return new Opened(openRetrieval(retrievalConfig()), null);
+    }
+    
+    /**
+     * 打开导入清单，调用方在打开导入服务之前关闭
+     * 
+     * @return 导入清单
+     */
+    private IngestManifest openManifest() {
+        return new IngestManifest(directory.resolve("retrieval").resolve("ingest.manifest"));
+    }
+    
+    /**
+     * 打开检索服务
+     * 
+     * @param retrievalConfig 检索增强配置
+     * @return 检索服务
+     */
+    private RetrievalService openRetrieval(RetrievalConfig retrievalConfig) {
+        return new RetrievalService(retrievalConfig, storageConfig(), new HashingEmbedder(retrievalConfig),
+                new StreamMetrics());
+    }
+    
+    /**
+     * 测试用的检索增强配置
+     * 
+     * @return 检索增强配置
+     */
+    private static RetrievalConfig retrievalConfig() {
+        RetrievalConfig retrievalConfig = new RetrievalConfig();
+        retrievalConfig.setM(8);
+        retrievalConfig.getIngest().setChunkTokens(CHUNK_TOKENS);
+        retrievalConfig.getIngest().setParallelism(2);
+        return retrievalConfig;
+    }
+    
+    /**
+     * 测试用的本地存储配置
+     * 
+     * @return 本地存储配置
+     */
+    private StorageConfig storageConfig() {
+        StorageConfig storageConfig = new StorageConfig();
+        storageConfig.setDataDir(directory.toString());
+        return storageConfig;
+    }
+    
+    /**
+     * 打开的检索服务和导入服务，关闭时先关闭导入服务
+     * 
+     * @param retrieval 检索服务
+     * @param ingest 导入服务，只打开检索服务时为null
+     */
+    private record Opened(RetrievalService retrieval, IngestService ingest) implements AutoCloseable {
+        
+        @Override
+        public void close() {
+            if (ingest != null) {
+                ingest.close();
+            }
+            retrieval.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * PassageStore测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class PassageStoreTest {
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void incompleteTailIsTruncatedOnReopen() throws IOException {
+        Path file = directory.resolve("passages.log");
+        long size;
+        try (PassageStore store = new PassageStore(file)) {
+            store.append("a.md", "第一段");
+            store.append("a.md", "第二段");
+            size = store.size();
+        }
+        // 只写入了记录头的一部分
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1}));
+        }
+        
+        try (PassageStore store = new PassageStore(file)) {
+            assertEquals(size, store.size());
+            assertEquals(2, store.count());
+            long key = store.append("b.md", "第三段");
+            assertEquals(size, key);
+            assertEquals("第三段", store.read(key).text());
+        }
+    }
+    
+    @Test
+    void corruptRecordIsTruncatedWithEverythingAfterIt() throws IOException {
+        Path file = directory.resolve("passages.log");
+        long second;
+        try (PassageStore store = new PassageStore(file)) {
+            store.append("a.md", "第一段");
+            second = store.append("a.md", "第二段");
+            store.append("a.md", "第三段");
+        }
+        // 破坏第二条记录的正文，CRC校验失败
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), second + 12);
+        }
+        
+        try (PassageStore store = new PassageStore(file)) {
+            assertEquals(second, store.size());
+            assertEquals(1, store.count());
+            assertNull(store.read(second));
+        }
+    }
+    
+    @Test
+    void tombstonesAreReplayedInOrder() {
+        Path file = directory.resolve("passages.log");
+        long first;
+        try (PassageStore store = new PassageStore(file)) {
+            first = store.append("a.md", "第一段");
+            store.append("b.md", "第二段");
+            store.delete(first);
+        }
+        
+        try (PassageStore store = new PassageStore(file)) {
+            assertEquals(1, store.count());
+            List<String> passages = new ArrayList<>();
+            List<Long> removed = new ArrayList<>();
+            store.forEach(0, store.size(), entry -> passages.add(entry.source()), removed::add);
+            assertEquals(List.of("a.md", "b.md"), passages);
+            assertEquals(List.of(first), removed);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+package com.nyx.springAIDemo20250715.retrieval;
+
+import com.nyx.springAIDemo20250715.config.RetrievalConfig;
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.PassageHit;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RetrievalService测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class RetrievalServiceTest {
+    
+    /** 等待后台补入完成的最长时间（毫秒） */
+    private static final long AWAIT_MILLIS = 5000;
+    
+    /** 测试资料 */
+    private static final List<String> PASSAGES = List.of(
+            "Redis集群通过哈希槽分配数据，共有16384个槽",
+            "HNSW是一种分层的近似最近邻图索引",
+            "Spring WebFlux基于Reactor实现非阻塞的响应式编程",
+            "TCP拥塞控制包括慢启动和拥塞避免两个阶段",
+            "JVM的G1收集器把堆划分为大小相同的区域");
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void searchFindsPassageWithSameWords() {
+        RetrievalService service = open();
+        try {
+            long[] keys = addAll(service);
+            awaitIndexed(service);
+            for (int i = 0; i < PASSAGES.size(); i++) {
+                List<PassageHit> hits = service.search(PASSAGES.get(i), 1);
+                assertEquals(keys[i], hits.get(0).getKey());
+            }
+            assertEquals(keys[1], service.search("分层的近似最近邻", 1).get(0).getKey());
+        } finally {
+            service.close();
+        }
+    }
+    
+    @Test
+    void removedPassagesAreNotReturned() {
+        RetrievalService service = open();
+        try {
+            long[] keys = addAll(service);
+            awaitIndexed(service);
+            service.removePassage(keys[0]);
+            assertTrue(service.search(PASSAGES.get(0), PASSAGES.size()).stream()
+                    .noneMatch(hit -> hit.getKey() == keys[0]));
+            String context = service.buildContext("Redis的哈希槽有多少个");
+            assertTrue(context == null || !context.contains(PASSAGES.get(0)));
+        } finally {
+            service.close();
+        }
+    }
+    
+    @Test
+    void indexSurvivesRestart() {
+        long[] keys;
+        RetrievalService first = open();
+        try {
+            keys = addAll(first);
+            awaitIndexed(first);
+        } finally {
+            first.close();
+        }
+        
+        RetrievalService second = open();
+        try {
+            awaitIndexed(second);
+            assertEquals(keys[4], second.search(PASSAGES.get(4), 1).get(0).getKey());
+            String context = second.buildContext("G1收集器如何划分堆");
+            assertNotNull(context);
+            assertTrue(context.contains(PASSAGES.get(4)));
+        } finally {
+            second.close();
+        }
+    }
+    
+    @Test
+    void failedCatchUpIsRetriedFromLastPosition() {
+        addAllAndClose();
+        RetrievalConfig retrievalConfig = retrievalConfig();
+        retrievalConfig.setCatchUpRetryMillis(10L);
+        AtomicInteger failuresLeft = new AtomicInteger(2);
+        StreamMetrics metrics = new StreamMetrics();
+        // 更换嵌入模型名称，索引清空后从资料日志全部补入
+        RetrievalService service = open(retrievalConfig,
+                new FailingEmbedder(retrievalConfig, text -> failuresLeft.getAndDecrement() > 0), metrics);
+        try {
+            awaitIndexed(service);
+            Map<String, Long> snapshot = metrics.snapshot();
+            assertEquals(2L, snapshot.get("retrieval.catch-up.failures"));
+            assertEquals(0L, snapshot.get("retrieval.catch-up.failed"));
+            assertEquals(0L, snapshot.get("retrieval.catching-up"));
+        } finally {
+            service.close();
+        }
+    }
+    
+    @Test
+    void exhaustedCatchUpRetriesStopCatchingUp() {
+        addAllAndClose();
+        RetrievalConfig retrievalConfig = retrievalConfig();
+        retrievalConfig.setCatchUpRetries(2);
+        retrievalConfig.setCatchUpRetryMillis(10L);
+        StreamMetrics metrics = new StreamMetrics();
+        RetrievalService service = open(retrievalConfig,
+                new FailingEmbedder(retrievalConfig, PASSAGES::contains), metrics);
+        try {
+            awaitTrue(() -> metrics.snapshot().get("retrieval.catching-up") == 0);
+            assertEquals(1L, metrics.snapshot().get("retrieval.catch-up.failed"));
+            assertEquals(3L, metrics.snapshot().get("retrieval.catch-up.failures"));
+            
+            // 放弃补入后新增的资料直接写入索引
+            long key = service.addPassage("new", "Kafka按分区保证消息顺序");
+            assertEquals(key, service.search("Kafka分区", 1).get(0).getKey());
+            service.removePassage(key);
+            assertTrue(service.search("Kafka分区", 1).isEmpty());
+        } finally {
+            service.close();
+        }
+    }
+    
+    /**
+     * 写入全部测试资料并等待写入索引后关闭
+     */
+    private void addAllAndClose() {
+        RetrievalService service = open();
+        try {
+            addAll(service);
+            awaitIndexed(service);
+        } finally {
+            service.close();
+        }
+    }
+    
+    /**
+     * 写入全部测试资料
+     * 
+     * @param service 检索服务
+     * @return 资料键
+     */
+    private static long[] addAll(RetrievalService service) {
+        long[] keys = new long[PASSAGES.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = service.addPassage("test-" + i, PASSAGES.get(i));
+        }
+        return keys;
+    }
+    
+    /**
+     * 在测试目录中打开检索服务
+     * 
+     * @return 检索服务
+     */
+    private RetrievalService open() {
+        RetrievalConfig retrievalConfig = retrievalConfig();
+        return open(retrievalConfig, new HashingEmbedder(retrievalConfig), new StreamMetrics());
+    }
+    
+    /**
+     * 在测试目录中使用指定的嵌入模型打开检索服务
+     * 
+     * @param retrievalConfig 检索增强配置
+     * @param embeddingProvider 嵌入模型
+     * @param metrics 流式传输指标
+     * @return 检索服务
+     */
+    private RetrievalService open(RetrievalConfig retrievalConfig, EmbeddingProvider embeddingProvider,
+                                  StreamMetrics metrics) {
+        StorageConfig storageConfig = new StorageConfig();
+        storageConfig.setDataDir(directory.toString());
+        return new RetrievalService(retrievalConfig, storageConfig, embeddingProvider, metrics);
+    }
+    
+    /**
+     * 测试用的检索增强配置
+     * 
+     * @return 检索增强配置
+     */
+    private static RetrievalConfig retrievalConfig() {
+        RetrievalConfig retrievalConfig = new RetrievalConfig();
+        retrievalConfig.setM(8);
+        return retrievalConfig;
+    }
+    
+    /**
+     * 等待全部测试资料写入索引（资料在后台补入期间只写入资料日志）
+     * 
+     * @param service 检索服务
+     */
+    private static void awaitIndexed(RetrievalService service) {
+        awaitTrue(() -> service.search(PASSAGES.get(0), PASSAGES.size()).size() == PASSAGES.size());
+    }
+    
+    /**
+     * 等待条件成立
+     * 
+     * @param condition 条件
+     */
+    static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+    
+    /**
+     * 对满足条件的文本抛出异常的嵌入模型，名称与HashingEmbedder不同，打开时索引会被清空重建
+     */
+    private static final class FailingEmbedder extends HashingEmbedder {
+        
+        /** 需要失败的文本 */
+        private final Predicate<String> failing;
+        
+        private FailingEmbedder(RetrievalConfig retrievalConfig, Predicate<String> failing) {
+            super(retrievalConfig);
+            this.failing = failing;
+        }
+        
+        @Override
+        public String name() {
+            return "failing";
+        }
+        
+        @Override
+        public float[] embed(String text) {
+            if (failing.test(text)) {
+                throw new IllegalStateException("嵌入模型暂时不可用");
+            }
+            return super.embed(text);
+        }
+    }
+}
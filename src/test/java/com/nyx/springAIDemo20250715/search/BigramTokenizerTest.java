@@ -0,0 +1,42 @@
+package com.nyx.springAIDemo20250715.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * BigramTokenizer测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class BigramTokenizerTest {
+    
+    @Test
+    void cjkRunsAreSplitIntoBigramsAndWordsAreLowercased() {
+        assertEquals(List.of("我喜", "喜欢", "redis", "和", "hnsw"), BigramTokenizer.tokenize("我喜欢Redis，和 HNSW！"));
+    }
+    
+    @Test
+    void indexTokensAddUnigramsForEveryCjkCharacter() {
+        assertEquals(List.of("猫", "猫咪", "咪", "v2", "狗"), BigramTokenizer.tokenize("猫咪 v2 狗", true));
+    }
+    
+    @Test
+    void supplementaryCharactersAreKeptWhole() {
+        // U+20BB7 位于补充平面，由两个char组成
+        String rare = new String(Character.toChars(0x20BB7));
+        assertEquals(List.of(rare + "家"), BigramTokenizer.tokenize(rare + "家"));
+        assertEquals(List.of(rare, rare + "家", "家"), BigramTokenizer.tokenize(rare + "家", true));
+    }
+    
+    @Test
+    void blankTextHasNoTokens() {
+        assertTrue(BigramTokenizer.tokenize(null).isEmpty());
+        assertTrue(BigramTokenizer.tokenize(" ，。!").isEmpty());
+    }
+}
@@ -0,0 +1,153 @@
+package com.nyx.springAIDemo20250715.search;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.dto.ChatSearchHit;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import com.nyx.springAIDemo20250715.store.ConversationLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ChatSearchIndex测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class ChatSearchIndexTest {
+    
+    /** 等待后台写线程和索引线程的最长时间（毫秒） */
+    private static final long AWAIT_MILLIS = 5000;
+    
+    /** 段文件大小 */
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    
+    @TempDir
+    Path directory;
+    
+    private ConversationLog log;
+    
+    private ChatSearchIndex index;
+    
+    @BeforeEach
+    void setUp() {
+        StorageConfig config = new StorageConfig();
+        config.setDataDir(directory.toString());
+        config.getHistory().setSegmentBytes(SEGMENT_BYTES);
+        log = new ConversationLog(config, new StreamMetrics());
+        index = new ChatSearchIndex(log, config);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        index.shutdown();
+        log.close();
+    }
+    
+    @Test
+    void singleCharacterQueryMatchesInsideLongerText() {
+        log.append("a", new ChatMessage("user", "我家的猫咪很喜欢晒太阳"));
+        log.append("a", new ChatMessage("assistant", "小狗也喜欢"));
+        awaitTrue(() -> index.size() == 2);
+        
+        ChatSearchIndex.Result result = index.search("猫", null, 10);
+        assertEquals(1, result.total());
+        assertTrue(result.hits().get(0).getSnippet().contains("猫咪"));
+        assertEquals(2, index.search("喜欢", null, 10).total());
+        assertEquals(0, index.search("猫狗", null, 10).total());
+    }
+    
+    @Test
+    void termsAreIntersectedAndScopedToSession() {
+        log.append("a", new ChatMessage("user", "Redis集群通过哈希槽分配数据"));
+        log.append("b", new ChatMessage("user", "Redis的持久化包括RDB和AOF"));
+        log.append("b", new ChatMessage("user", "哈希槽共有16384个"));
+        awaitTrue(() -> index.size() == 3);
+        
+        assertEquals(2, index.search("redis", null, 10).total());
+        assertEquals(1, index.search("redis 哈希槽", null, 10).total());
+        List<ChatSearchHit> hits = index.search("哈希槽", "b", 10).hits();
+        assertEquals(1, hits.size());
+        assertEquals("b", hits.get(0).getSessionId());
+    }
+    
+    @Test
+    void deletedSessionIsRemovedFromIndex() {
+        log.append("a", new ChatMessage("user", "删除前的向量索引问题"));
+        log.append("a", new ChatMessage("assistant", "向量索引可以使用HNSW"));
+        log.append("b", new ChatMessage("user", "保留的向量索引问题"));
+        awaitTrue(() -> index.size() == 3);
+        
+        assertTrue(log.deleteSession("a"));
+        awaitTrue(() -> index.size() == 1);
+        ChatSearchIndex.Result result = index.search("向量索引", null, 10);
+        assertEquals(1, result.total());
+        assertEquals("b", result.hits().get(0).getSessionId());
+        assertEquals(0, index.search("hnsw", null, 10).total());
+        
+        // 删除后同一会话的新消息照常建立索引
+        log.append("a", new ChatMessage("user", "删除后的向量索引问题"));
+        awaitTrue(() -> index.size() == 2);
+        assertEquals(2, index.search("向量索引", null, 10).total());
+        assertEquals(1, index.search("删除后", "a", 10).total());
+    }
+    
+    @Test
+    void deletesAfterCompactionFollowRenumberedDocs() {
+        for (int i = 0; i < 4; i++) {
+            log.append("a", new ChatMessage("user", "会话甲的缓存问题" + i));
+        }
+        log.append("b", new ChatMessage("user", "会话乙的缓存问题"));
+        log.append("b", new ChatMessage("assistant", "会话乙的缓存回答"));
+        log.append("c", new ChatMessage("user", "会话丙的缓存问题"));
+        log.append("c", new ChatMessage("assistant", "会话丙的缓存回答"));
+        awaitTrue(() -> index.size() == 8);
+        
+        // 删除占比未超过阈值，只标记删除
+        assertTrue(log.deleteSession("b"));
+        awaitTrue(() -> index.size() == 6);
+        assertEquals(6, index.search("缓存", null, 10).total());
+        
+        // 超过阈值后回收并重新分配文档号，之后的删除按新的文档号进行
+        assertTrue(log.deleteSession("a"));
+        awaitTrue(() -> index.size() == 2);
+        assertEquals(2, index.search("缓存", "c", 10).total());
+        log.append("a", new ChatMessage("user", "会话甲删除后的缓存问题"));
+        awaitTrue(() -> index.size() == 3);
+        
+        assertTrue(log.deleteSession("c"));
+        awaitTrue(() -> index.size() == 1);
+        ChatSearchIndex.Result result = index.search("缓存", null, 10);
+        assertEquals(1, result.total());
+        assertEquals("a", result.hits().get(0).getSessionId());
+        assertEquals(0, index.search("会话丙", null, 10).total());
+    }
+    
+    /**
+     * 等待条件成立
+     * 
+     * @param condition 条件
+     */
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
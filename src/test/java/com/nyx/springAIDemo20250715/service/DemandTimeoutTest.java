@@ -0,0 +1,166 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DemandTimeout测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class DemandTimeoutTest {
+    
+    /** 增量间隔超时（毫秒） */
+    private static final long IDLE_MILLIS = 100;
+    
+    @Test
+    void slowSubscriberIsNotTimedOutWhileBufferIsPaused() throws InterruptedException {
+        SlowClientBuffer buffer = buffer(16, 4);
+        Flux<ChatResponse> source = deltas(10);
+        SlowSubscriber subscriber = new SlowSubscriber(IDLE_MILLIS * 2);
+        buffer.apply(timed(source, Mono.never()), "slow").subscribe(subscriber);
+        
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertNull(subscriber.error);
+        assertEquals(10, subscriber.received.size());
+    }
+    
+    @Test
+    void stalledUpstreamStillTimesOut() throws InterruptedException {
+        SlowClientBuffer buffer = buffer(64 * 1024, 4);
+        Flux<ChatResponse> source = Flux.concat(Flux.just(new ChatResponse("delta", false)), Flux.never());
+        SlowSubscriber subscriber = new SlowSubscriber(0);
+        buffer.apply(timed(source, Mono.never()), "stalled").subscribe(subscriber);
+        
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(StreamTimeoutException.class, subscriber.error);
+        assertEquals(StreamTimeoutException.Phase.IDLE, ((StreamTimeoutException) subscriber.error).getPhase());
+    }
+    
+    @Test
+    void pausedTimeoutStillApplies() throws InterruptedException {
+        SlowClientBuffer buffer = buffer(16, 4);
+        Flux<ChatResponse> source = deltas(20);
+        SlowSubscriber subscriber = new SlowSubscriber(IDLE_MILLIS * 5);
+        Mono<Long> total = Mono.delay(Duration.ofMillis(IDLE_MILLIS))
+                .then(Mono.error(new StreamTimeoutException(StreamTimeoutException.Phase.TOTAL, IDLE_MILLIS)));
+        buffer.apply(timed(source, total), "paused").subscribe(subscriber);
+        
+        assertTrue(subscriber.done.await(10, TimeUnit.SECONDS));
+        assertInstanceOf(StreamTimeoutException.class, subscriber.error);
+        assertEquals(StreamTimeoutException.Phase.TOTAL, ((StreamTimeoutException) subscriber.error).getPhase());
+    }
+    
+    /**
+     * 创建异步到达的增量，只在下游请求时发送
+     * 
+     * @param count 增量条数
+     * @return 增量数据流
+     */
+    private static Flux<ChatResponse> deltas(int count) {
+        return Flux.range(0, count)
+                .map(i -> new ChatResponse("delta-" + i, false))
+                .delayElements(Duration.ofMillis(10));
+    }
+    
+    /**
+     * 为源数据流加上首个增量和增量间隔超时
+     * 
+     * @param source 源数据流
+     * @param pausedTimeout 暂停期间的超时信号
+     * @return 加上超时的数据流
+     */
+    private static Flux<ChatResponse> timed(Flux<ChatResponse> source, Mono<?> pausedTimeout) {
+        return DemandTimeout.apply(source, idle(StreamTimeoutException.Phase.FIRST_DELTA),
+                response -> idle(StreamTimeoutException.Phase.IDLE), pausedTimeout);
+    }
+    
+    /**
+     * 创建阶段超时信号
+     * 
+     * @param phase 超时阶段
+     * @return 超时信号
+     */
+    private static Mono<Long> idle(StreamTimeoutException.Phase phase) {
+        return Mono.delay(Duration.ofMillis(IDLE_MILLIS))
+                .then(Mono.error(new StreamTimeoutException(phase, IDLE_MILLIS)));
+    }
+    
+    /**
+     * 创建pause策略的慢客户端缓冲
+     * 
+     * @param maxBufferedBytes 最大缓冲字节数
+     * @param prefetch 每次向上游请求的条数
+     * @return 慢客户端缓冲
+     */
+    static SlowClientBuffer buffer(int maxBufferedBytes, int prefetch) {
+        QwenConfig config = new QwenConfig();
+        config.getBackpressure().setPolicy("pause");
+        config.getBackpressure().setMaxBufferedBytes(maxBufferedBytes);
+        config.getBackpressure().setPrefetch(prefetch);
+        return new SlowClientBuffer(config, new StreamMetrics());
+    }
+    
+    /**
+     * 每收到一条增量后等待一段时间再请求下一条的订阅者
+     */
+    static final class SlowSubscriber extends BaseSubscriber<ChatResponse> {
+        
+        /** 每条增量之间的等待时间（毫秒） */
+        private final long delayMillis;
+        
+        /** 收到的增量 */
+        final List<ChatResponse> received = new CopyOnWriteArrayList<>();
+        
+        /** 流结束信号 */
+        final CountDownLatch done = new CountDownLatch(1);
+        
+        /** 流的错误，正常结束时为null */
+        volatile Throwable error;
+        
+        SlowSubscriber(long delayMillis) {
+            this.delayMillis = delayMillis;
+        }
+        
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+        
+        @Override
+        protected void hookOnNext(ChatResponse response) {
+            received.add(response);
+            Schedulers.parallel().schedule(() -> request(1), delayMillis, TimeUnit.MILLISECONDS);
+        }
+        
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            error = throwable;
+        }
+        
+        @Override
+        protected void hookFinally(SignalType type) {
+            done.countDown();
+        }
+    }
+}
\ No newline at end of file
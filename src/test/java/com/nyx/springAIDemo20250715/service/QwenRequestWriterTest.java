@@ -0,0 +1,214 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * QwenRequestWriter测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class QwenRequestWriterTest {
+    
+    /** 测试用的系统提示词 */
+    private static final String SYSTEM_PROMPT = "你是一个\"简洁\"的助手";
+    
+    /** 测试用的历史记录，包含需要转义的字符 */
+    private static final List<ChatMessage> HISTORY = List.of(
+            new ChatMessage("user", "第一个问题：引号\"和反斜杠\\"),
+            new ChatMessage("assistant", "第一个回答\n换行和制表\t"),
+            new ChatMessage("user", "emoji 😀 和控制字符\u0001"),
+            new ChatMessage("assistant", null),
+            new ChatMessage("assistant", "第二个回答"));
+    
+    /** JSON对象映射器 */
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Test
+    void promptFormatMatchesMapBasedBody() throws IOException {
+        QwenConfig config = config("prompt", null);
+        byte[] body = write(new QwenRequestWriter(config), "当前的问题", HISTORY);
+        
+        JsonNode parsed = objectMapper.readTree(body);
+        assertEquals("用户: 第一个问题：引号\"和反斜杠\\\n助手: 第一个回答\n换行和制表\t\n"
+                + "用户: emoji 😀 和控制字符\u0001\n助手: 第二个回答\n用户: 当前的问题\n助手: ",
+                parsed.path("input").path("prompt").asText());
+        assertArrayEquals(objectMapper.writeValueAsBytes(mapBasedBody(config, "当前的问题", HISTORY)), body,
+                new String(body, StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    void messagesFormatMatchesMapBasedBody() throws IOException {
+        QwenConfig config = config("messages", SYSTEM_PROMPT);
+        byte[] body = write(new QwenRequestWriter(config), "当前的问题", HISTORY);
+        
+        JsonNode messages = objectMapper.readTree(body).path("input").path("messages");
+        assertEquals(6, messages.size());
+        assertEquals("system", messages.get(0).path("role").asText());
+        assertEquals(SYSTEM_PROMPT, messages.get(0).path("content").asText());
+        assertEquals("当前的问题", messages.get(5).path("content").asText());
+        assertArrayEquals(objectMapper.writeValueAsBytes(mapBasedBody(config, "当前的问题", HISTORY)), body,
+                new String(body, StandardCharsets.UTF_8));
+        
+        // 未配置系统提示词时
+        QwenConfig withoutSystem = config("messages", null);
+        assertArrayEquals(objectMapper.writeValueAsBytes(mapBasedBody(withoutSystem, "当前的问题", HISTORY)),
+                write(new QwenRequestWriter(withoutSystem), "当前的问题", HISTORY));
+    }
+    
+    @Test
+    void messagesPrefixIsByteStableAcrossTurns() throws IOException {
+        QwenRequestWriter writer = new QwenRequestWriter(config("messages", SYSTEM_PROMPT));
+        List<ChatMessage> history = new ArrayList<>();
+        byte[] previous = null;
+        for (int turn = 0; turn < 4; turn++) {
+            String question = "第" + turn + "轮的问题\"" + "😀".repeat(turn);
+            byte[] body = write(writer, question, history);
+            objectMapper.readTree(body);
+            if (previous != null) {
+                // 上一轮请求中messages数组结束之前的全部字节是本轮请求的前缀
+                byte[] prefix = Arrays.copyOf(previous, messagesEnd(previous));
+                assertArrayEquals(prefix, Arrays.copyOf(body, prefix.length), "第" + turn + "轮");
+            }
+            history.add(new ChatMessage("user", question));
+            history.add(new ChatMessage("assistant", "第" + turn + "轮的回答\n"));
+            previous = body;
+        }
+    }
+    
+    /**
+     * 通过请求体写入器把请求体写入DefaultDataBufferFactory分配的缓冲区，返回全部字节
+     * 
+     * @param writer 请求体写入器
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @return 请求体字节
+     */
+    private static byte[] write(QwenRequestWriter writer, String message, List<ChatMessage> history) {
+        MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, "/");
+        assertInstanceOf(DefaultDataBufferFactory.class, request.bufferFactory());
+        // 写入器不使用BodyInserter.Context
+        writer.body(message, history).insert(request, null).block();
+        DataBuffer buffer = DataBufferUtils.join(request.getBody()).block();
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return bytes;
+    }
+    
+    /**
+     * 查找请求体中messages数组的结束位置
+     * 
+     * @param body 请求体字节
+     * @return 数组结束符的下标
+     */
+    private static int messagesEnd(byte[] body) {
+        byte[] marker = "]},\"parameters\"".getBytes(StandardCharsets.US_ASCII);
+        for (int i = body.length - marker.length; i >= 0; i--) {
+            if (Arrays.equals(body, i, i + marker.length, marker, 0, marker.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("请求体中没有messages数组");
+    }
+    
+    /**
+     * 按改为模板写入之前的方式构建请求体：嵌套的LinkedHashMap交给ObjectMapper序列化
+     * 
+     * @param config 通义千问配置
+     * @param message 用户当前输入的消息
+     * @param history 聊天历史记录
+     * @return 请求体
+     */
+    private static Map<String, Object> mapBasedBody(QwenConfig config, String message, List<ChatMessage> history) {
+        QwenConfig.Api api = config.getApi();
+        boolean messagesFormat = "messages".equalsIgnoreCase(api.getInputFormat());
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("model", api.getModel());
+        Map<String, Object> input = new LinkedHashMap<>();
+        if (messagesFormat) {
+            List<Map<String, String>> messages = new ArrayList<>();
+            if (api.getSystemPrompt() != null && !api.getSystemPrompt().isBlank()) {
+                messages.add(roleMessage("system", api.getSystemPrompt()));
+            }
+            for (ChatMessage msg : history) {
+                if (msg.getContent() != null) {
+                    messages.add(roleMessage(msg.getRole(), msg.getContent()));
+                }
+            }
+            messages.add(roleMessage("user", message));
+            input.put("messages", messages);
+        } else {
+            StringBuilder prompt = new StringBuilder();
+            for (ChatMessage msg : history) {
+                if (msg.getContent() == null) {
+                    continue;
+                }
+                prompt.append("user".equals(msg.getRole()) ? "用户: " : "助手: ").append(msg.getContent()).append("\n");
+            }
+            prompt.append("用户: ").append(message).append("\n助手: ");
+            input.put("prompt", prompt.toString());
+        }
+        request.put("input", input);
+        
+        Map<String, Object> parameters = new LinkedHashMap<>();
+        if (messagesFormat) {
+            parameters.put("result_format", "message");
+        }
+        parameters.put("max_tokens", api.getMaxTokens());
+        parameters.put("temperature", api.getTemperature());
+        parameters.put("incremental_output", true);
+        request.put("parameters", parameters);
+        return request;
+    }
+    
+    /**
+     * 创建单条角色消息
+     * 
+     * @param role 角色
+     * @param content 内容
+     * @return 按role、content顺序排列的消息
+     */
+    private static Map<String, String> roleMessage(String role, String content) {
+        Map<String, String> roleMessage = new LinkedHashMap<>();
+        roleMessage.put("role", role);
+        roleMessage.put("content", content);
+        return roleMessage;
+    }
+    
+    /**
+     * 测试用的通义千问配置
+     * 
+     * @param inputFormat 输入格式
+     * @param systemPrompt 系统提示词，为null时不配置
+     * @return 通义千问配置
+     */
+    private static QwenConfig config(String inputFormat, String systemPrompt) {
+        QwenConfig config = new QwenConfig();
+        config.getApi().setInputFormat(inputFormat);
+        config.getApi().setSystemPrompt(systemPrompt);
+        return config;
+    }
+}
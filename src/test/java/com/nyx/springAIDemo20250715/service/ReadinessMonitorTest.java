@@ -0,0 +1,157 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.nyx.springAIDemo20250715.service.UpstreamSchedulerTest.awaitTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ReadinessMonitor测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class ReadinessMonitorTest {
+    
+    /** 并发上限 */
+    private static final int CAPACITY = 10;
+    
+    @Test
+    void utilizationRecoversOnlyBelowRecoverRatio() {
+        QwenConfig config = config();
+        UpstreamScheduler scheduler = scheduler(config);
+        ReadinessMonitor monitor = monitor(config, scheduler);
+        List<Disposable> running = new ArrayList<>();
+        try {
+            hold(scheduler, running, 9);
+            assertTrue(monitor.status().ready());
+            
+            hold(scheduler, running, 10);
+            ReadinessMonitor.Status status = monitor.status();
+            assertFalse(status.ready());
+            assertEquals(List.of("utilization"), status.reasons());
+            
+            // 0.8仍高于恢复线0.9 * 0.8，保持未就绪
+            hold(scheduler, running, 8);
+            assertFalse(monitor.status().ready());
+            
+            hold(scheduler, running, 7);
+            assertTrue(monitor.status().ready());
+        } finally {
+            running.forEach(Disposable::dispose);
+        }
+    }
+    
+    @Test
+    void errorRateNeedsMinSamplesAndRecoversWithHysteresis() {
+        QwenConfig config = config();
+        ReadinessMonitor monitor = monitor(config, scheduler(config));
+        
+        // 样本不足时不参与判断
+        for (int i = 0; i < 3; i++) {
+            monitor.recordOutcome(true);
+        }
+        assertTrue(monitor.status().ready());
+        
+        for (int i = 0; i < 7; i++) {
+            monitor.recordOutcome(false);
+        }
+        ReadinessMonitor.Status status = monitor.status();
+        assertFalse(status.ready());
+        assertEquals(List.of("errorRate"), status.reasons());
+        assertEquals(0.3, status.errorRate(), 1e-9);
+        
+        // 3/15 = 0.2，未超过上限但高于恢复线0.16
+        for (int i = 0; i < 5; i++) {
+            monitor.recordOutcome(false);
+        }
+        assertFalse(monitor.status().ready());
+        
+        // 3/19 ≈ 0.158
+        for (int i = 0; i < 4; i++) {
+            monitor.recordOutcome(false);
+        }
+        assertTrue(monitor.status().ready());
+    }
+    
+    @Test
+    void samplesOutsideWindowAreIgnored() throws InterruptedException {
+        QwenConfig config = config();
+        config.getReadiness().setWindowSeconds(1L);
+        ReadinessMonitor monitor = monitor(config, scheduler(config));
+        for (int i = 0; i < 10; i++) {
+            monitor.recordTtft(8000);
+        }
+        ReadinessMonitor.Status status = monitor.status();
+        assertFalse(status.ready());
+        assertEquals(List.of("ttft"), status.reasons());
+        assertEquals(8000, status.ttftMillis());
+        
+        Thread.sleep(1100);
+        status = monitor.status();
+        assertTrue(status.ready());
+        assertEquals(-1, status.ttftMillis());
+    }
+    
+    /**
+     * 测试用配置：并发上限10，最少10个样本
+     * 
+     * @return 配置对象
+     */
+    private static QwenConfig config() {
+        QwenConfig config = new QwenConfig();
+        config.getScheduler().setMaxConcurrency(CAPACITY);
+        config.getScheduler().setInteractiveReserved(0);
+        config.getReadiness().setMinSamples(10);
+        return config;
+    }
+    
+    /**
+     * 创建调度器
+     * 
+     * @param config 配置对象
+     * @return 调度器
+     */
+    private static UpstreamScheduler scheduler(QwenConfig config) {
+        return new UpstreamScheduler(config, new StreamMetrics());
+    }
+    
+    /**
+     * 创建就绪状态监控
+     * 
+     * @param config 配置对象
+     * @param scheduler 调度器
+     * @return 就绪状态监控
+     */
+    private static ReadinessMonitor monitor(QwenConfig config, UpstreamScheduler scheduler) {
+        StreamMetrics metrics = new StreamMetrics();
+        return new ReadinessMonitor(config, scheduler, new UpstreamPoolMetrics(metrics), metrics);
+    }
+    
+    /**
+     * 把执行中的上游请求数调整到指定值
+     * 
+     * @param scheduler 调度器
+     * @param running 执行中的请求
+     * @param count 目标请求数
+     */
+    private static void hold(UpstreamScheduler scheduler, List<Disposable> running, int count) {
+        while (running.size() < count) {
+            running.add(scheduler.schedule(ChatPriority.INTERACTIVE, Flux.never()).subscribe());
+        }
+        while (running.size() > count) {
+            running.remove(running.size() - 1).dispose();
+        }
+        awaitTrue(() -> scheduler.inFlight() == count && scheduler.queued() == 0);
+    }
+}
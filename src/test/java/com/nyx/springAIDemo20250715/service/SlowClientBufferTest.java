@@ -0,0 +1,187 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.dto.ChatResponse;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import reactor.test.publisher.TestPublisher;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * SlowClientBuffer测试
+ * 
+ * 用TestPublisher手动发出上游增量，StepVerifier初始请求量为0来模拟尚未就绪的客户端
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class SlowClientBufferTest {
+    
+    /** 等待流结束的最长时间 */
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+    
+    /** 缓冲字节数汇总指标 */
+    private static final String TOTAL_BYTES = "stream.buffered-bytes.total";
+    
+    @Test
+    void coalescePolicyMergesDeltasHeldBackByClient() {
+        StreamMetrics metrics = new StreamMetrics();
+        SlowClientBuffer buffer = buffer("coalesce", 1024, 4, 10000, metrics);
+        TestPublisher<ChatResponse> upstream = TestPublisher.create();
+        
+        StepVerifier.create(buffer.apply(upstream.flux(), "coalesce"), 0)
+                .expectSubscription()
+                .then(() -> upstream.next(delta("ab"), delta("cd"), delta("ef")))
+                .then(() -> {
+                    assertEquals(12L, metrics.snapshot().get(TOTAL_BYTES));
+                    assertEquals(2L, metrics.snapshot().get("stream.backpressure.coalesced"));
+                })
+                .thenRequest(1)
+                .assertNext(response -> assertEquals("abcdef", response.getContent()))
+                .then(() -> assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES)))
+                // 结束信号在缓冲的增量发送完之后才传给客户端
+                .then(() -> upstream.next(new ChatResponse("gh", true)).complete())
+                .thenRequest(1)
+                .assertNext(response -> {
+                    assertEquals("gh", response.getContent());
+                    assertEquals(Boolean.TRUE, response.getFinished());
+                })
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES));
+    }
+    
+    @Test
+    void pausePolicyStopsRequestingAtByteLimitAndResumesAfterDrain() {
+        StreamMetrics metrics = new StreamMetrics();
+        // 每条增量6字节，两条即超过10字节上限
+        SlowClientBuffer buffer = buffer("pause", 10, 2, 10000, metrics);
+        TestPublisher<ChatResponse> upstream = TestPublisher.create();
+        AtomicLong requested = new AtomicLong();
+        Flux<ChatResponse> source = upstream.flux().doOnRequest(requested::addAndGet);
+        
+        StepVerifier.create(buffer.apply(source, "pause"), 0)
+                .expectSubscription()
+                .then(() -> assertEquals(2L, requested.get()))
+                // 第一条到达后未满且已消耗过半，补充请求一条
+                .then(() -> upstream.next(delta("abc")))
+                .then(() -> assertEquals(3L, requested.get()))
+                .then(() -> upstream.next(delta("def"), delta("ghi")))
+                .then(() -> {
+                    // 达到上限后只接收已请求的增量，不再向上游请求
+                    assertEquals(3L, requested.get());
+                    assertEquals(18L, metrics.snapshot().get(TOTAL_BYTES));
+                    assertEquals(1L, metrics.snapshot().get("stream.backpressure.paused"));
+                    assertEquals(0L, metrics.snapshot().getOrDefault("stream.backpressure.coalesced", 0L));
+                })
+                .thenRequest(1)
+                .assertNext(response -> assertEquals("abc", response.getContent()))
+                .then(() -> assertEquals(3L, requested.get()))
+                .thenRequest(1)
+                .assertNext(response -> assertEquals("def", response.getContent()))
+                .then(() -> {
+                    // 回到上限以下后恢复，按prefetch补充请求
+                    assertEquals(5L, requested.get());
+                    assertEquals(6L, metrics.snapshot().get(TOTAL_BYTES));
+                })
+                // 上游结束时仍有缓冲的增量，结束信号在增量发送完之后才传给客户端
+                .then(() -> upstream.next(delta("jkl")).complete())
+                .thenRequest(Long.MAX_VALUE)
+                .assertNext(response -> assertEquals("ghi", response.getContent()))
+                .assertNext(response -> assertEquals("jkl", response.getContent()))
+                .expectComplete()
+                .verify(TIMEOUT);
+        assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES));
+    }
+    
+    @Test
+    void dropPolicyDisconnectsClientThatStaysFull() {
+        StreamMetrics metrics = new StreamMetrics();
+        SlowClientBuffer buffer = buffer("drop", 10, 2, 50, metrics);
+        TestPublisher<ChatResponse> upstream = TestPublisher.create();
+        
+        StepVerifier.create(buffer.apply(upstream.flux(), "drop"), 0)
+                .expectSubscription()
+                .then(() -> upstream.next(delta("abc"), delta("def")))
+                .expectErrorMessage("客户端读取过慢，已断开")
+                .verify(TIMEOUT);
+        upstream.assertCancelled();
+        assertEquals(1L, metrics.snapshot().get("stream.backpressure.dropped"));
+        assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES));
+    }
+    
+    @Test
+    void dropPolicyKeepsClientThatCatchesUpInTime() {
+        StreamMetrics metrics = new StreamMetrics();
+        SlowClientBuffer buffer = buffer("drop", 10, 2, 200, metrics);
+        TestPublisher<ChatResponse> upstream = TestPublisher.create();
+        
+        StepVerifier.create(buffer.apply(upstream.flux(), "drop"), 0)
+                .expectSubscription()
+                .then(() -> upstream.next(delta("abc"), delta("def")))
+                .thenRequest(2)
+                .expectNextCount(2)
+                // 超过断开等待时间后仍然正常
+                .expectNoEvent(Duration.ofMillis(400))
+                .then(() -> upstream.next(delta("ghi")).complete())
+                .thenRequest(1)
+                .assertNext(response -> assertEquals("ghi", response.getContent()))
+                .expectComplete()
+                .verify(TIMEOUT);
+        upstream.assertNotCancelled();
+        assertEquals(0L, metrics.snapshot().getOrDefault("stream.backpressure.dropped", 0L));
+        assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES));
+    }
+    
+    @Test
+    void cancelReleasesBufferedBytes() {
+        StreamMetrics metrics = new StreamMetrics();
+        SlowClientBuffer buffer = buffer("pause", 1024, 4, 10000, metrics);
+        TestPublisher<ChatResponse> upstream = TestPublisher.create();
+        
+        StepVerifier.create(buffer.apply(upstream.flux(), "cancel"), 0)
+                .expectSubscription()
+                .then(() -> upstream.next(delta("abc"), delta("def")))
+                .then(() -> assertEquals(12L, metrics.snapshot().get(TOTAL_BYTES)))
+                .thenCancel()
+                .verify(TIMEOUT);
+        upstream.assertCancelled();
+        assertEquals(0L, metrics.snapshot().get(TOTAL_BYTES));
+    }
+    
+    /**
+     * 创建增量响应
+     * 
+     * @param content 增量内容
+     * @return 增量响应
+     */
+    private static ChatResponse delta(String content) {
+        return new ChatResponse(content, false);
+    }
+    
+    /**
+     * 创建慢客户端缓冲
+     * 
+     * @param policy 处理策略
+     * @param maxBufferedBytes 最大缓冲字节数
+     * @param prefetch 每次向上游请求的条数
+     * @param dropAfterMillis drop策略下的等待时间（毫秒）
+     * @param metrics 流式传输指标
+     * @return 慢客户端缓冲
+     */
+    private static SlowClientBuffer buffer(String policy, int maxBufferedBytes, int prefetch, long dropAfterMillis,
+                                           StreamMetrics metrics) {
+        QwenConfig config = new QwenConfig();
+        config.getBackpressure().setPolicy(policy);
+        config.getBackpressure().setMaxBufferedBytes(maxBufferedBytes);
+        config.getBackpressure().setPrefetch(prefetch);
+        config.getBackpressure().setDropAfterMillis(dropAfterMillis);
+        return new SlowClientBuffer(config, metrics);
+    }
+}
@@ -0,0 +1,91 @@
+package com.nyx.springAIDemo20250715.service;
+
+import com.nyx.springAIDemo20250715.config.QwenConfig;
+import com.nyx.springAIDemo20250715.model.ChatPriority;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * UpstreamScheduler测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class UpstreamSchedulerTest {
+    
+    /** 等待异步状态变化的最长时间（毫秒） */
+    private static final long AWAIT_MILLIS = 5000;
+    
+    @Test
+    void cancelRightAfterGrantReturnsSlot() {
+        UpstreamScheduler scheduler = scheduler(1, 0);
+        for (int i = 0; i < 500; i++) {
+            Disposable holder = scheduler.schedule(ChatPriority.INTERACTIVE, Flux.never()).subscribe();
+            Disposable waiter = scheduler.schedule(ChatPriority.INTERACTIVE, Flux.never()).subscribe();
+            // 归还名额时立即分配给waiter，紧接着取消waiter
+            holder.dispose();
+            waiter.dispose();
+        }
+        awaitTrue(() -> scheduler.inFlight() == 0);
+        assertEquals(0, scheduler.queued());
+    }
+    
+    @Test
+    void concurrentCancelsNeverLeakSlots() throws InterruptedException {
+        UpstreamScheduler scheduler = scheduler(2, 0);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    scheduler.schedule(ChatPriority.INTERACTIVE, Flux.never()).subscribe().dispose();
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        awaitTrue(() -> scheduler.inFlight() == 0);
+        assertEquals(0, scheduler.queued());
+    }
+    
+    /**
+     * 创建调度器
+     * 
+     * @param maxConcurrency 并发上限
+     * @param maxQueueWaitMillis 最长排队时间（毫秒），0表示不限制
+     * @return 调度器
+     */
+    static UpstreamScheduler scheduler(int maxConcurrency, long maxQueueWaitMillis) {
+        QwenConfig config = new QwenConfig();
+        config.getScheduler().setMaxConcurrency(maxConcurrency);
+        config.getScheduler().setInteractiveReserved(0);
+        config.getScheduler().setMaxQueueWaitMillis(maxQueueWaitMillis);
+        return new UpstreamScheduler(config, new StreamMetrics());
+    }
+    
+    /**
+     * 等待条件成立，超时则失败
+     * 
+     * @param condition 条件
+     */
+    static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
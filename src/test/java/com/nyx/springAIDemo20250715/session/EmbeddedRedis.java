@@ -0,0 +1,370 @@
+package com.nyx.springAIDemo20250715.session;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.BiFunction;
+
+/**
+ * 进程内的Redis协议服务端，没有Docker时代替Redis容器
+ * 
+ * 只实现RedisSessionStore用到的命令（RESP2）：GET、SET（EX/PX）、DEL、EXISTS、PING、
+ * PUBLISH、SUBSCRIBE、UNSUBSCRIBE，以及按脚本原文注册的EVAL；EVALSHA总是返回NOSCRIPT，
+ * 客户端随之改用EVAL。HELLO返回错误，客户端回退到RESP2。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+final class EmbeddedRedis implements AutoCloseable {
+    
+    /** 监听端口 */
+    private final ServerSocket serverSocket;
+    
+    /** 键值数据 */
+    private final Map<String, Entry> data = new ConcurrentHashMap<>();
+    
+    /** 频道订阅者 */
+    private final Map<String, Set<Client>> channels = new ConcurrentHashMap<>();
+    
+    /** 已注册的脚本，key为脚本原文，参数为KEYS和ARGV */
+    private final Map<String, BiFunction<List<String>, List<String>, Long>> scripts = new ConcurrentHashMap<>();
+    
+    /** 已连接的客户端 */
+    private final Set<Client> clients = new CopyOnWriteArraySet<>();
+    
+    /**
+     * 在本机随机端口上启动
+     * 
+     * @throws IOException 无法监听时抛出
+     */
+    EmbeddedRedis() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "embedded-redis-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+    
+    /**
+     * 监听地址
+     * 
+     * @return 本机回环地址
+     */
+    String host() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+    
+    /**
+     * 监听端口
+     * 
+     * @return 端口
+     */
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+    
+    /**
+     * 注册EVAL可以执行的脚本
+     * 
+     * @param script 脚本原文
+     * @param implementation 脚本的等价实现，参数为KEYS和ARGV，返回整数结果
+     */
+    void registerScript(String script, BiFunction<List<String>, List<String>, Long> implementation) {
+        scripts.put(script, implementation);
+    }
+    
+    /**
+     * 读取未过期的值
+     * 
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    String get(String key) {
+        Entry entry = data.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAtMillis > 0 && entry.expiresAtMillis <= System.currentTimeMillis()) {
+            data.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    /**
+     * 删除键
+     * 
+     * @param key 键
+     * @return 删除的键数
+     */
+    long del(String key) {
+        return get(key) != null && data.remove(key) != null ? 1 : 0;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+    
+    /**
+     * 接受连接，每个连接一个线程
+     */
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Client client = new Client(serverSocket.accept());
+                clients.add(client);
+                Thread thread = new Thread(client::serve, "embedded-redis-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 执行一条命令
+     * 
+     * @param client 发出命令的客户端
+     * @param command 命令及参数
+     * @throws IOException 写入回复失败时抛出
+     */
+    private void execute(Client client, List<String> command) throws IOException {
+        String name = command.get(0).toUpperCase(Locale.ROOT);
+        switch (name) {
+            case "PING" -> client.simple("PONG");
+            case "GET" -> client.bulk(get(command.get(1)));
+            case "SET" -> {
+                long expiresAt = 0;
+                for (int i = 3; i + 1 < command.size(); i += 2) {
+                    String option = command.get(i).toUpperCase(Locale.ROOT);
+                    long amount = Long.parseLong(command.get(i + 1));
+                    if (option.equals("EX")) {
+                        expiresAt = System.currentTimeMillis() + amount * 1000;
+                    } else if (option.equals("PX")) {
+                        expiresAt = System.currentTimeMillis() + amount;
+                    }
+                }
+                data.put(command.get(1), new Entry(command.get(2), expiresAt));
+                client.simple("OK");
+            }
+            case "DEL" -> {
+                long removed = 0;
+                for (String key : command.subList(1, command.size())) {
+                    removed += del(key);
+                }
+                client.integer(removed);
+            }
+            case "EXISTS" -> {
+                long found = 0;
+                for (String key : command.subList(1, command.size())) {
+                    found += get(key) != null ? 1 : 0;
+                }
+                client.integer(found);
+            }
+            case "EVALSHA" -> client.error("NOSCRIPT No matching script. Please use EVAL.");
+            case "EVAL" -> {
+                BiFunction<List<String>, List<String>, Long> script = scripts.get(command.get(1));
+                if (script == null) {
+                    client.error("ERR script not registered in EmbeddedRedis");
+                    return;
+                }
+                int keyCount = Integer.parseInt(command.get(2));
+                List<String> keys = command.subList(3, 3 + keyCount);
+                List<String> args = command.subList(3 + keyCount, command.size());
+                synchronized (this) {
+                    client.integer(script.apply(keys, args));
+                }
+            }
+            case "PUBLISH" -> {
+                Set<Client> subscribers = channels.getOrDefault(command.get(1), Set.of());
+                for (Client subscriber : subscribers) {
+                    subscriber.push("message", command.get(1), command.get(2));
+                }
+                client.integer(subscribers.size());
+            }
+            case "SUBSCRIBE" -> {
+                for (String channel : command.subList(1, command.size())) {
+                    channels.computeIfAbsent(channel, key -> new CopyOnWriteArraySet<>()).add(client);
+                    client.subscriptions.add(channel);
+                    client.subscriptionReply("subscribe", channel);
+                }
+            }
+            case "UNSUBSCRIBE" -> {
+                List<String> targets = command.size() > 1
+                        ? command.subList(1, command.size()) : new ArrayList<>(client.subscriptions);
+                for (String channel : targets) {
+                    channels.getOrDefault(channel, Set.of()).remove(client);
+                    client.subscriptions.remove(channel);
+                    client.subscriptionReply("unsubscribe", channel);
+                }
+            }
+            case "CLIENT", "SELECT" -> client.simple("OK");
+            default -> client.error("ERR unknown command '" + command.get(0) + "'");
+        }
+    }
+    
+    /**
+     * 键值数据
+     * 
+     * @param value 值
+     * @param expiresAtMillis 过期时间点，0表示不过期
+     */
+    private record Entry(String value, long expiresAtMillis) {
+    }
+    
+    /**
+     * 单个客户端连接
+     */
+    private final class Client {
+        
+        /** 连接 */
+        private final Socket socket;
+        
+        /** 输出流，命令回复和订阅消息可能来自不同线程，写入时加锁 */
+        private final OutputStream out;
+        
+        /** 已订阅的频道 */
+        private final Set<String> subscriptions = new CopyOnWriteArraySet<>();
+        
+        private Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+        
+        /**
+         * 逐条读取并执行命令，直到连接关闭
+         */
+        private void serve() {
+            try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+                while (true) {
+                    List<String> command = readCommand(in);
+                    if (command == null) {
+                        break;
+                    }
+                    if (!command.isEmpty()) {
+                        execute(this, command);
+                    }
+                }
+            } catch (IOException e) {
+                // 连接被关闭
+            } finally {
+                for (String channel : subscriptions) {
+                    channels.getOrDefault(channel, Set.of()).remove(this);
+                }
+                clients.remove(this);
+                close();
+            }
+        }
+        
+        /**
+         * 读取一条RESP数组命令
+         * 
+         * @param in 输入流
+         * @return 命令及参数，连接结束时返回null
+         * @throws IOException 读取失败时抛出
+         */
+        private List<String> readCommand(InputStream in) throws IOException {
+            String header = readLine(in);
+            if (header == null) {
+                return null;
+            }
+            if (header.charAt(0) != '*') {
+                return List.of(header.trim().split("\\s+"));
+            }
+            int count = Integer.parseInt(header.substring(1));
+            List<String> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String lengthLine = readLine(in);
+                if (lengthLine == null) {
+                    return null;
+                }
+                int length = Integer.parseInt(lengthLine.substring(1));
+                byte[] bytes = in.readNBytes(length + 2);
+                command.add(new String(bytes, 0, length, StandardCharsets.UTF_8));
+            }
+            return command;
+        }
+        
+        /**
+         * 读取以CRLF结尾的一行
+         * 
+         * @param in 输入流
+         * @return 不含CRLF的内容，连接结束时返回null
+         * @throws IOException 读取失败时抛出
+         */
+        private String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\r') {
+                    in.read();
+                    return line.toString();
+                }
+                line.append((char) c);
+            }
+            return null;
+        }
+        
+        private void simple(String value) throws IOException {
+            write("+" + value + "\r\n");
+        }
+        
+        private void error(String message) throws IOException {
+            write("-" + message + "\r\n");
+        }
+        
+        private void integer(long value) throws IOException {
+            write(":" + value + "\r\n");
+        }
+        
+        private void bulk(String value) throws IOException {
+            write(value == null ? "$-1\r\n" : bulkString(value));
+        }
+        
+        private void subscriptionReply(String kind, String channel) throws IOException {
+            write("*3\r\n" + bulkString(kind) + bulkString(channel) + ":" + subscriptions.size() + "\r\n");
+        }
+        
+        private void push(String kind, String channel, String message) {
+            try {
+                write("*3\r\n" + bulkString(kind) + bulkString(channel) + bulkString(message));
+            } catch (IOException e) {
+                close();
+            }
+        }
+        
+        private String bulkString(String value) {
+            return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+        }
+        
+        private synchronized void write(String reply) throws IOException {
+            out.write(reply.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 已关闭
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,166 @@
+package com.nyx.springAIDemo20250715.session;
+
+import com.nyx.springAIDemo20250715.config.SessionConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.GenericContainer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * RedisSessionStore测试
+ * 
+ * 两个RedisSessionStore实例共享同一个Redis，模拟两个节点。
+ * 有Docker时使用Testcontainers启动Redis容器，否则使用进程内的EmbeddedRedis，用例在任何环境都会执行。
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class RedisSessionStoreTest {
+    
+    /** 等待异步写入和消息送达的最长时间（毫秒） */
+    private static final long AWAIT_MILLIS = 5000;
+    
+    /** Redis容器，没有Docker时为null */
+    private static GenericContainer<?> container;
+    
+    /** 进程内Redis，有Docker时为null */
+    private static EmbeddedRedis embedded;
+    
+    /** Redis主机 */
+    private static String host;
+    
+    /** Redis端口 */
+    private static int port;
+    
+    /** Redis连接工厂 */
+    private LettuceConnectionFactory connectionFactory;
+    
+    /** 节点A */
+    private RedisSessionStore nodeA;
+    
+    /** 节点B */
+    private RedisSessionStore nodeB;
+    
+    @BeforeAll
+    static void startRedis() throws IOException {
+        if (DockerClientFactory.instance().isDockerAvailable()) {
+            container = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+            container.start();
+            host = container.getHost();
+            port = container.getMappedPort(6379);
+        } else {
+            embedded = new EmbeddedRedis();
+            embedded.registerScript(RedisSessionStore.DELETE_IF_OWNER.getScriptAsString(), (keys, args) ->
+                    args.get(0).equals(embedded.get(keys.get(0))) ? embedded.del(keys.get(0)) : 0L);
+            host = embedded.host();
+            port = embedded.port();
+        }
+    }
+    
+    @AfterAll
+    static void stopRedis() throws IOException {
+        if (container != null) {
+            container.stop();
+        }
+        if (embedded != null) {
+            embedded.close();
+        }
+    }
+    
+    @BeforeEach
+    void setUp() {
+        connectionFactory = new LettuceConnectionFactory(host, port);
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+        
+        // 每个用例使用独立的前缀，互不影响
+        SessionConfig sessionConfig = new SessionConfig();
+        sessionConfig.setKeyPrefix("test-" + UUID.randomUUID() + ":");
+        nodeA = new RedisSessionStore(connectionFactory, sessionConfig);
+        nodeB = new RedisSessionStore(connectionFactory, sessionConfig);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        nodeA.close();
+        nodeB.close();
+        connectionFactory.destroy();
+    }
+    
+    @Test
+    void markInactiveOnlyClearsMatchingToken() {
+        nodeA.markActive("s1", "old");
+        awaitTrue(() -> nodeB.isActive("s1"));
+        
+        // 同一会话的新流覆盖标记后，旧流结束不能清除新流的标记
+        nodeB.markActive("s1", "new");
+        nodeA.markInactive("s1", "old");
+        nodeA.markActive("probe", "p");
+        awaitTrue(() -> nodeA.isActive("probe"));
+        assertTrue(nodeA.isActive("s1"));
+        
+        nodeB.markInactive("s1", "new");
+        awaitTrue(() -> !nodeA.isActive("s1"));
+    }
+    
+    @Test
+    void publishStopReachesOtherNodesOnly() {
+        List<String> stoppedOnA = new CopyOnWriteArrayList<>();
+        List<String> stoppedOnB = new CopyOnWriteArrayList<>();
+        nodeA.subscribeStop(stoppedOnA::add);
+        nodeB.subscribeStop(stoppedOnB::add);
+        
+        // 订阅在后台建立，建立前发布的消息会丢失，因此重复发布直到送达
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (stoppedOnB.isEmpty() && System.currentTimeMillis() < deadline) {
+            nodeA.publishStop("s2");
+            sleep(100);
+        }
+        
+        assertFalse(stoppedOnB.isEmpty());
+        assertTrue(stoppedOnB.stream().allMatch("s2"::equals));
+        assertEquals(List.of(), stoppedOnA);
+    }
+    
+    /**
+     * 等待条件成立，超时则失败
+     * 
+     * @param condition 条件
+     */
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            sleep(20);
+        }
+    }
+    
+    /**
+     * 休眠指定时间
+     * 
+     * @param millis 毫秒
+     */
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
\ No newline at end of file
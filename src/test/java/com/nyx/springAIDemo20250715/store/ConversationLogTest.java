@@ -0,0 +1,251 @@
+package com.nyx.springAIDemo20250715.store;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.model.ChatMessage;
+import com.nyx.springAIDemo20250715.service.StreamMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ConversationLog测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class ConversationLogTest {
+    
+    /** 等待后台写线程的最长时间（毫秒） */
+    private static final long AWAIT_MILLIS = 5000;
+    
+    /** 段文件大小，几十条短消息即可写满一段 */
+    private static final int SEGMENT_BYTES = 2048;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void sessionsAndTombstonesAreRecoveredOnReopen() {
+        ConversationLog log = open(300);
+        log.append("kept", new ChatMessage("user", "你好"));
+        log.append("kept", new ChatMessage("assistant", "你好，有什么可以帮你？"));
+        log.append("deleted", new ChatMessage("user", "要删除的消息"));
+        awaitTrue(() -> log.readSession("kept").size() == 2 && log.readSession("deleted").size() == 1);
+        assertTrue(log.deleteSession("deleted"));
+        assertTrue(log.readSession("deleted").isEmpty());
+        log.close();
+        
+        ConversationLog reopened = open(300);
+        try {
+            List<ChatMessage> messages = reopened.readSession("kept");
+            assertEquals(List.of("你好", "你好，有什么可以帮你？"), messages.stream().map(ChatMessage::getContent).toList());
+            assertEquals("assistant", messages.get(1).getRole());
+            assertTrue(reopened.readSession("deleted").isEmpty());
+            assertNull(reopened.readMessage("deleted", 0));
+            
+            // 恢复后的序号接着已有记录分配，不会覆盖墓碑之前的序号
+            reopened.append("deleted", new ChatMessage("user", "删除后的新消息"));
+            awaitTrue(() -> reopened.readSession("deleted").size() == 1);
+            assertEquals("删除后的新消息", reopened.readMessage("deleted", 2).getContent());
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void segmentOfTombstonesIsCompacted() throws IOException {
+        ConversationLog log = open(0);
+        try {
+            // 每个会话一条消息，写到第一段滚动为止
+            int sessionCount = 0;
+            while (!Files.exists(segmentFile(1))) {
+                String sessionId = "s" + sessionCount++;
+                log.append(sessionId, new ChatMessage("user", "短消息"));
+                awaitTrue(() -> log.readSession(sessionId).size() == 1);
+            }
+            // 墓碑都写入第二段
+            for (int i = 0; i < sessionCount; i++) {
+                assertTrue(log.deleteSession("s" + i));
+            }
+            // 一条放不进第二段剩余空间的消息，使第二段封存
+            String large = "保留".repeat(SEGMENT_BYTES / 8);
+            log.append("live", new ChatMessage("user", large));
+            awaitTrue(() -> log.readSession("live").size() == 1);
+            
+            awaitTrue(() -> !Files.exists(segmentFile(0)) && !Files.exists(segmentFile(1)));
+            assertEquals(large, log.readMessage("live", 0).getContent());
+            assertTrue(log.readSession("s0").isEmpty());
+        } finally {
+            log.close();
+        }
+        
+        ConversationLog reopened = open(300);
+        try {
+            assertEquals(1, reopened.readSession("live").size());
+            assertTrue(reopened.readSession("s0").isEmpty());
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void compactionRelocatesLiveRecords() throws IOException {
+        ConversationLog log = open(0);
+        try {
+            for (int i = 0; i < 30; i++) {
+                log.append("deleted", new ChatMessage("user", "将被删除的消息 " + i));
+            }
+            log.append("kept", new ChatMessage("user", "旧段中仍有效的消息"));
+            awaitTrue(() -> log.readSession("kept").size() == 1);
+            log.deleteSession("deleted");
+            for (int i = 0; i < 40; i++) {
+                log.append("filler", new ChatMessage("user", "填充消息 " + i));
+            }
+            awaitTrue(() -> log.readSession("filler").size() == 40);
+            
+            awaitTrue(() -> !Files.exists(segmentFile(0)));
+            assertEquals("旧段中仍有效的消息", log.readMessage("kept", 0).getContent());
+        } finally {
+            log.close();
+        }
+        
+        ConversationLog reopened = open(300);
+        try {
+            assertEquals("旧段中仍有效的消息", reopened.readMessage("kept", 0).getContent());
+            assertTrue(reopened.readSession("deleted").isEmpty());
+            assertFalse(segmentFiles().contains(segmentFile(0)));
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void fullWriteQueueDropsAppendsAtOnceAndRejectsDelete() throws InterruptedException {
+        StorageConfig config = config(300);
+        config.getHistory().setQueueCapacity(1);
+        config.getHistory().setOfferTimeoutMillis(300L);
+        StreamMetrics metrics = new StreamMetrics();
+        ConversationLog log = new ConversationLog(config, metrics);
+        CountDownLatch writerBlocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 监听器在写线程中执行，阻塞它使写入队列不再被取出
+        log.addListener((sessionId, seq, message) -> {
+            writerBlocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            assertTrue(log.append("a", new ChatMessage("user", "第一条")));
+            assertTrue(writerBlocked.await(AWAIT_MILLIS, TimeUnit.MILLISECONDS));
+            assertTrue(log.append("b", new ChatMessage("user", "占满队列")));
+            
+            // 追加不等待队列空位，只有删除等待offer-timeout-millis
+            long start = System.nanoTime();
+            assertFalse(log.append("b", new ChatMessage("user", "队列已满")));
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+            assertEquals(1L, metrics.snapshot().get("history.dropped"));
+            start = System.nanoTime();
+            assertThrows(HistoryUnavailableException.class, () -> log.deleteSession("a"));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+            assertEquals(1, log.readSession("a").size());
+            
+            release.countDown();
+            awaitTrue(() -> log.readSession("b").size() == 1);
+            assertTrue(log.deleteSession("a"));
+            assertTrue(log.readSession("a").isEmpty());
+        } finally {
+            release.countDown();
+            log.close();
+        }
+        
+        ConversationLog reopened = open(300);
+        try {
+            assertTrue(reopened.readSession("a").isEmpty());
+            assertEquals(List.of("占满队列"), reopened.readSession("b").stream().map(ChatMessage::getContent).toList());
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    /**
+     * 在测试目录中打开会话历史日志
+     * 
+     * @param compactionIntervalSeconds 压缩检查间隔（秒），0表示写线程每轮都检查
+     * @return 会话历史日志
+     */
+    private ConversationLog open(long compactionIntervalSeconds) {
+        return new ConversationLog(config(compactionIntervalSeconds), new StreamMetrics());
+    }
+    
+    /**
+     * 指向测试目录的存储配置
+     * 
+     * @param compactionIntervalSeconds 压缩检查间隔（秒）
+     * @return 存储配置
+     */
+    private StorageConfig config(long compactionIntervalSeconds) {
+        StorageConfig config = new StorageConfig();
+        config.setDataDir(directory.toString());
+        config.getHistory().setSegmentBytes(SEGMENT_BYTES);
+        config.getHistory().setCompactionIntervalSeconds(compactionIntervalSeconds);
+        return config;
+    }
+    
+    /**
+     * 段文件路径
+     * 
+     * @param id 段号
+     * @return 段文件路径
+     */
+    private Path segmentFile(int id) {
+        return directory.resolve("history").resolve(String.format("conversation-%06d.log", id));
+    }
+    
+    /**
+     * 当前全部段文件
+     * 
+     * @return 段文件路径
+     * @throws IOException 列出目录失败时抛出
+     */
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("history"))) {
+            return files.toList();
+        }
+    }
+    
+    /**
+     * 等待条件成立
+     * 
+     * @param condition 条件
+     */
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
\ No newline at end of file
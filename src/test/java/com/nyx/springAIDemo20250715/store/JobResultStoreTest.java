@@ -0,0 +1,212 @@
+package com.nyx.springAIDemo20250715.store;
+
+import com.nyx.springAIDemo20250715.config.StorageConfig;
+import com.nyx.springAIDemo20250715.model.ChatJob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JobResultStore测试
+ * 
+ * @author nyx
+ * @version 1.0
+ * @since 2025-07-15
+ */
+class JobResultStoreTest {
+    
+    /** 段文件大小上限，每条记录都会写入新的段 */
+    private static final long SMALL_SEGMENT_BYTES = 64;
+    
+    @TempDir
+    Path directory;
+    
+    @Test
+    void jobsAreRecoveredAcrossSegments() throws IOException {
+        JobResultStore store = open(SMALL_SEGMENT_BYTES, 0);
+        ChatJob finished = store.create("finished");
+        store.updateStatus(finished, ChatJob.Status.RUNNING, null);
+        store.appendDelta(finished, "你好，");
+        store.appendDelta(finished, "世界");
+        store.updateStatus(finished, ChatJob.Status.SUCCEEDED, null);
+        ChatJob running = store.create("running");
+        store.updateStatus(running, ChatJob.Status.RUNNING, null);
+        store.appendDelta(running, "未完成");
+        store.close();
+        assertTrue(segmentFiles().size() > 1);
+        
+        JobResultStore reopened = open(SMALL_SEGMENT_BYTES, 0);
+        try {
+            ChatJob recovered = reopened.get("finished");
+            assertEquals(ChatJob.Status.SUCCEEDED, recovered.getStatus());
+            assertEquals("你好，世界", reopened.readContent(recovered));
+            ChatJob interrupted = reopened.get("running");
+            assertEquals(ChatJob.Status.FAILED, interrupted.getStatus());
+            assertNotNull(interrupted.getError());
+            assertEquals("未完成", reopened.readContent(interrupted));
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void corruptTailRecordIsTruncatedOnReopen() throws IOException {
+        JobResultStore store = open(64L * 1024, 0);
+        ChatJob job = store.create("job");
+        store.appendDelta(job, "第一段");
+        store.appendDelta(job, "第二段");
+        store.appendDelta(job, "第三段");
+        store.close();
+        // 破坏最后一条增量记录的最后一个字节，CRC校验失败
+        Path segment = segmentFiles().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), size - 1);
+        }
+        
+        JobResultStore reopened = open(64L * 1024, 0);
+        ChatJob recovered = reopened.get("job");
+        assertEquals(List.of("第一段", "第二段"), reopened.readDeltas(recovered, 0));
+        reopened.appendDelta(recovered, "续写");
+        reopened.close();
+        
+        // 损坏的记录已被截断，之后追加的记录在再次回放时可见
+        JobResultStore again = open(64L * 1024, 0);
+        try {
+            assertEquals("第一段第二段续写", again.readContent(again.get("job")));
+        } finally {
+            again.close();
+        }
+    }
+    
+    @Test
+    void unknownStatusCodeIsSkippedAndLaterRecordsSurvive() throws IOException {
+        JobResultStore store = open(64L * 1024, 0);
+        ChatJob job = store.create("job");
+        store.appendDelta(job, "第一段");
+        long statusRecord = Files.size(segmentFiles().get(0));
+        store.updateStatus(job, ChatJob.Status.RUNNING, null);
+        store.appendDelta(job, "第二段");
+        store.updateStatus(job, ChatJob.Status.SUCCEEDED, null);
+        store.close();
+        // 把RUNNING的状态编码改为未分配的值并重新计算CRC，模拟较新版本写入的记录
+        Path segment = segmentFiles().get(0);
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            channel.read(header, statusRecord);
+            ByteBuffer body = ByteBuffer.allocate(header.getInt(0));
+            channel.read(body, statusRecord + 8);
+            body.put(3 + "job".length(), (byte) 99);
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            header.putInt(4, (int) crc.getValue());
+            channel.write(header.flip(), statusRecord);
+            channel.write(body.flip(), statusRecord + 8);
+        }
+        
+        JobResultStore reopened = open(64L * 1024, 0);
+        try {
+            assertEquals(size, Files.size(segment));
+            ChatJob recovered = reopened.get("job");
+            assertEquals(ChatJob.Status.SUCCEEDED, recovered.getStatus());
+            assertEquals("第一段第二段", reopened.readContent(recovered));
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void corruptRecordInOlderSegmentIsNotTruncated() throws IOException {
+        JobResultStore store = open(SMALL_SEGMENT_BYTES, 0);
+        ChatJob broken = store.create("broken");
+        store.appendDelta(broken, "损坏的段");
+        ChatJob kept = store.create("kept");
+        store.appendDelta(kept, "后续段中的结果");
+        store.updateStatus(kept, ChatJob.Status.SUCCEEDED, null);
+        store.close();
+        List<Path> segments = segmentFiles();
+        assertTrue(segments.size() > 2);
+        // 破坏第一个段中记录的最后一个字节，CRC校验失败
+        Path first = segments.get(0);
+        long size = Files.size(first);
+        try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), size - 1);
+        }
+        
+        JobResultStore reopened = open(SMALL_SEGMENT_BYTES, 0);
+        try {
+            assertEquals(size, Files.size(first));
+            assertEquals(ChatJob.Status.SUCCEEDED, reopened.get("kept").getStatus());
+            assertEquals("后续段中的结果", reopened.readContent(reopened.get("kept")));
+        } finally {
+            reopened.close();
+        }
+    }
+    
+    @Test
+    void expiredJobsArePurgedWithTheirSegments() throws IOException {
+        JobResultStore store = open(SMALL_SEGMENT_BYTES, 1);
+        try {
+            ChatJob expired = store.create("expired");
+            store.appendDelta(expired, "旧结果");
+            store.updateStatus(expired, ChatJob.Status.SUCCEEDED, null);
+            expired.setFinishedAt(System.currentTimeMillis() - 60_000);
+            ChatJob kept = store.create("kept");
+            store.appendDelta(kept, "新结果");
+            store.updateStatus(kept, ChatJob.Status.SUCCEEDED, null);
+            int before = segmentFiles().size();
+            
+            store.purgeExpired();
+            
+            assertNull(store.get("expired"));
+            assertTrue(segmentFiles().size() < before);
+            assertThrows(JobExpiredException.class, () -> store.readContent(expired));
+            assertEquals("新结果", store.readContent(store.get("kept")));
+        } finally {
+            store.close();
+        }
+    }
+    
+    /**
+     * 在测试目录中打开任务结果存储
+     * 
+     * @param segmentBytes 段文件大小上限
+     * @param retentionSeconds 保留时长（秒），0表示不清理
+     * @return 任务结果存储
+     */
+    private JobResultStore open(long segmentBytes, long retentionSeconds) {
+        StorageConfig config = new StorageConfig();
+        config.setDataDir(directory.toString());
+        config.getJobs().setSegmentBytes(segmentBytes);
+        config.getJobs().setRetentionSeconds(retentionSeconds);
+        return new JobResultStore(config);
+    }
+    
+    /**
+     * 按段号排序的段文件
+     * 
+     * @return 段文件路径
+     * @throws IOException 列出目录失败时抛出
+     */
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory.resolve("jobs"))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().toList();
+        }
+    }
+}
\ No newline at end of file